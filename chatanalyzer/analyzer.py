@@ -7,141 +7,147 @@ Analyzes text for word frequency and emoji usage
 import sys
 import json
 import re
+import os
 from collections import Counter
-from typing import List, Tuple, Dict, Any
-import emoji
+from typing import List, Tuple, Dict, Any, FrozenSet
+
+# Stop word lists shared with the Java analyzer, one word per line, read
+# when the script runs on its own from the source tree; workers get the
+# words with each request
+STOP_WORDS_DIR = os.path.join(os.path.dirname(os.path.abspath(__file__)), 'src', 'main', 'resources', 'stopwords')
+DEFAULT_STOP_WORD_LANGUAGES = 'en'
+
+_stop_words_cache: Dict[Tuple[str, ...], FrozenSet[str]] = {}
+
+def load_stop_words(languages: str = DEFAULT_STOP_WORD_LANGUAGES) -> FrozenSet[str]:
+    """Union of the stop word lists of comma-separated languages, e.g. 'en,hinglish'"""
+    names = tuple(sorted({name.strip().lower() for name in languages.split(',') if name.strip()}))
+    if not names:
+        raise ValueError("No stop word languages given")
+    
+    if names not in _stop_words_cache:
+        words = set()
+        for name in names:
+            path = os.path.join(STOP_WORDS_DIR, name + '.txt')
+            if not re.fullmatch(r'[a-z]+(-[a-z]+)*', name) or not os.path.isfile(path):
+                raise ValueError(f"No stop words for language: {name}")
+            with open(path, 'r', encoding='utf-8') as file:
+                for line in file:
+                    word = line.strip()
+                    if word and not word.startswith('#'):
+                        words.add(word)
+        _stop_words_cache[names] = frozenset(words)
+    
+    return _stop_words_cache[names]
+
+ZERO_WIDTH_JOINER = '\u200d'
+VARIATION_SELECTOR = '\ufe0f'
+
+# Non-ASCII characters that Java lowercases to an ASCII letter
+ASCII_LOWER = {'\u0130': 'i', '\u212a': 'k'}
+
+def is_pictograph(code_point: int) -> bool:
+    """Miscellaneous symbols and dingbats, and the emoticon, pictograph,
+    transport and supplemental symbol blocks"""
+    return (0x1F300 <= code_point <= 0x1F5FF
+            or 0x1F600 <= code_point <= 0x1F64F
+            or 0x1F680 <= code_point <= 0x1F6FF
+            or 0x1F900 <= code_point <= 0x1F9FF
+            or 0x1FA70 <= code_point <= 0x1FAFF
+            or 0x2600 <= code_point <= 0x27BF)
+
+def is_regional_indicator(code_point: int) -> bool:
+    return 0x1F1E6 <= code_point <= 0x1F1FF
+
+def is_modifier(code_point: int) -> bool:
+    """Variation selector, skin tone or tag character"""
+    return (code_point == 0xFE0F
+            or 0x1F3FB <= code_point <= 0x1F3FF
+            or 0xE0020 <= code_point <= 0xE007F)
+
+def skip_modifiers(text: str, p: int) -> int:
+    while p < len(text) and is_modifier(ord(text[p])):
+        p += 1
+    return p
+
+def emoji_end(text: str, start: int) -> int:
+    """End of the emoji that starts at start"""
+    p = start + 1
+    if is_regional_indicator(ord(text[start])):
+        if p < len(text) and is_regional_indicator(ord(text[p])):
+            return p + 1
+        return p
+    
+    p = skip_modifiers(text, p)
+    while p + 1 < len(text) and text[p] == ZERO_WIDTH_JOINER and is_pictograph(ord(text[p + 1])):
+        p = skip_modifiers(text, p + 2)
+    return p
+
+def scan_tokens(text: str) -> Tuple[List[str], List[str]]:
+    """
+    Words and emojis of text, split exactly as the Java TokenScanner does,
+    so that counts from either analyzer can be added up: words are maximal
+    runs of ASCII letters after lowercasing, and an emoji is a pictograph
+    with its modifiers and the pictographs joined to it with ZWJ, or a flag
+    of two regional indicators, without variation selectors.
+    """
+    words = []
+    emojis = []
+    word = []
+    i = 0
+    while i < len(text):
+        c = text[i]
+        code_point = ord(c)
+        if code_point < 0x80:
+            if 'a' <= c <= 'z':
+                word.append(c)
+            elif 'A' <= c <= 'Z':
+                word.append(c.lower())
+            elif word:
+                words.append(''.join(word))
+                word = []
+            i += 1
+            continue
+        
+        if is_pictograph(code_point) or is_regional_indicator(code_point):
+            if word:
+                words.append(''.join(word))
+                word = []
+            end = emoji_end(text, i)
+            emojis.append(text[i:end].replace(VARIATION_SELECTOR, ''))
+            i = end
+            continue
+        
+        if c in ASCII_LOWER:
+            word.append(ASCII_LOWER[c])
+        elif word:
+            words.append(''.join(word))
+            word = []
+        i += 1
+    
+    if word:
+        words.append(''.join(word))
+    return words, emojis
 
 def extract_emojis(text: str) -> List[str]:
     """Extract all emojis from text"""
-    emoji_pattern = re.compile(
-        "["
-        "\U0001F600-\U0001F64F"  # emoticons
-        "\U0001F300-\U0001F5FF"  # symbols & pictographs
-        "\U0001F680-\U0001F6FF"  # transport & map symbols
-        "\U0001F1E0-\U0001F1FF"  # flags (iOS)
-        "\U00002702-\U000027B0"
-        "\U000024C2-\U0001F251"
-        "\U0001F900-\U0001F9FF"  # supplemental symbols
-        "\U0001F018-\U0001F270"
-        "]+", 
-        flags=re.UNICODE
-    )
-    
-    emojis = emoji_pattern.findall(text)
-    
-    # Also try using emoji library for better detection
-    try:
-        import emoji as emoji_lib
-        # Extract emojis using emoji library
-        emoji_chars = []
-        for char in text:
-            if char in emoji_lib.UNICODE_EMOJI['en']:
-                emoji_chars.append(char)
-        emojis.extend(emoji_chars)
-    except:
-        pass
-    
-    return emojis
+    return scan_tokens(text)[1]
 
-def clean_text(text: str) -> str:
-    """Clean text by removing URLs, special characters, etc."""
-    # Remove URLs
-    text = re.sub(r'http\S+|www\S+|https\S+', '', text, flags=re.MULTILINE)
-    
-    # Remove email addresses
-    text = re.sub(r'\S+@\S+', '', text)
+def extract_words(text: str, stop_words: FrozenSet[str] = None) -> List[str]:
+    """Words of more than two letters that are not stop words"""
+    if stop_words is None:
+        stop_words = load_stop_words()
     
-    # Remove phone numbers
-    text = re.sub(r'\+?\d[\d\s\-\(\)]+', '', text)
-    
-    # Remove special WhatsApp messages
-    whatsapp_patterns = [
-        r'<Media omitted>',
-        r'image omitted',
-        r'video omitted',
-        r'audio omitted',
-        r'document omitted',
-        r'sticker omitted',
-        r'This message was deleted',
-        r'You deleted this message',
-        r'Messages to this chat and calls are now secured with end-to-end encryption',
-        r'.+ added .+',
-        r'.+ left',
-        r'.+ joined using this group\'s invite link',
-        r'.+ changed the subject to',
-        r'.+ changed this group\'s icon',
-        r'.+ removed .+',
-    ]
-    
-    for pattern in whatsapp_patterns:
-        text = re.sub(pattern, '', text, flags=re.IGNORECASE)
-    
-    return text
+    words = scan_tokens(text)[0]
+    return [word for word in words if len(word) > 2 and word not in stop_words]
 
-def extract_words(text: str) -> List[str]:
-    """Extract and clean words from text"""
-    # Clean the text first
-    text = clean_text(text)
-    
-    # Remove emojis for word analysis
-    text = re.sub(r'[\U0001F600-\U0001F64F\U0001F300-\U0001F5FF\U0001F680-\U0001F6FF\U0001F1E0-\U0001F1FF\U00002702-\U000027B0\U000024C2-\U0001F251\U0001F900-\U0001F9FF]+', ' ', text)
-    
-    # Extract words (letters only, minimum length 2)
-    words = re.findall(r'\b[a-zA-Z]{2,}\b', text.lower())
-    
-    # Common stop words to filter out
-    stop_words = {
-        'the', 'be', 'to', 'of', 'and', 'a', 'in', 'that', 'have', 'i', 'it', 'for', 'not', 'on', 'with', 'he',
-        'as', 'you', 'do', 'at', 'this', 'but', 'his', 'by', 'from', 'they', 'we', 'say', 'her', 'she', 'or',
-        'an', 'will', 'my', 'one', 'all', 'would', 'there', 'their', 'what', 'so', 'up', 'out', 'if', 'about',
-        'who', 'get', 'which', 'go', 'me', 'when', 'make', 'can', 'like', 'time', 'no', 'just', 'him', 'know',
-        'take', 'people', 'into', 'year', 'your', 'good', 'some', 'could', 'them', 'see', 'other', 'than', 'then',
-        'now', 'look', 'only', 'come', 'its', 'over', 'think', 'also', 'back', 'after', 'use', 'two', 'how', 'our',
-        'work', 'first', 'well', 'way', 'even', 'new', 'want', 'because', 'any', 'these', 'give', 'day', 'most', 'us',
-        'is', 'was', 'are', 'been', 'has', 'had', 'were', 'said', 'each', 'did', 'get', 'may', 'old', 'see', 'way',
-        'who', 'boy', 'did', 'its', 'let', 'put', 'too', 'old', 'any', 'ago', 'off', 'far', 'set', 'own', 'under',
-        'last', 'very', 'what', 'much', 'where', 'right', 'still', 'try', 'kind', 'hand', 'eye', 'ask', 'felt',
-        'such', 'tell', 'try', 'leave', 'call', 'went', 'look', 'right', 'move', 'thing', 'place', 'sure', 'end',
-        'why', 'turn', 'every', 'start', 'might', 'story', 'saw', 'far', 'sea', 'draw', 'left', 'late', 'run',
-        'while', 'press', 'close', 'night', 'real', 'life', 'few', 'stop', 'open', 'seem', 'together', 'next',
-        'white', 'children', 'got', 'walk', 'example', 'begin', 'took', 'river', 'mountain', 'cut', 'young',
-        'talk', 'soon', 'list', 'song', 'leave', 'family', 'body', 'music', 'color', 'stand', 'sun', 'questions',
-        'fish', 'area', 'mark', 'dog', 'horse', 'birds', 'problem', 'complete', 'room', 'knew', 'since', 'ever',
-        'piece', 'told', 'usually', 'didn', 'friends', 'easy', 'heard', 'order', 'red', 'door', 'sure', 'become',
-        'top', 'ship', 'across', 'today', 'during', 'short', 'better', 'best', 'however', 'low', 'hours', 'black',
-        'products', 'happened', 'whole', 'measure', 'remember', 'early', 'waves', 'reached', 'listen', 'wind',
-        'rock', 'space', 'covered', 'fast', 'several', 'hold', 'himself', 'toward', 'five', 'step', 'morning',
-        'passed', 'vowel', 'true', 'hundred', 'against', 'pattern', 'numeral', 'table', 'north', 'slowly', 'money',
-        'map', 'farm', 'pulled', 'draw', 'voice', 'seen', 'cold', 'cried', 'plan', 'notice', 'south', 'sing',
-        'war', 'ground', 'fall', 'king', 'town', 'unit', 'figure', 'certain', 'field', 'travel', 'wood', 'fire',
-        'upon', 'done', 'english', 'road', 'half', 'ten', 'fly', 'gave', 'box', 'finally', 'wait', 'correct',
-        'oh', 'quickly', 'person', 'became', 'shown', 'minutes', 'strong', 'verb', 'stars', 'eat', 'front',
-        'feel', 'fact', 'inches', 'street', 'decided', 'contain', 'course', 'surface', 'produced', 'building',
-        'ocean', 'class', 'note', 'nothing', 'rest', 'carefully', 'scientists', 'inside', 'wheels', 'stay',
-        'green', 'known', 'island', 'week', 'less', 'machine', 'base', 'ago', 'stood', 'plane', 'system',
-        'behind', 'ran', 'round', 'boat', 'game', 'force', 'brought', 'heat', 'nothing', 'quite', 'brought',
-        'lot', 'gold', 'sit', 'meet', 'third', 'months', 'paragraph', 'raised', 'represent', 'soft', 'whether',
-        'clothes', 'flowers', 'shall', 'teacher', 'held', 'describe', 'drive', 'cross', 'speak', 'solve',
-        'appear', 'metal', 'son', 'either', 'ice', 'sleep', 'village', 'factors', 'result', 'jumped', 'snow',
-        'ride', 'care', 'floor', 'hill', 'pushed', 'baby', 'buy', 'century', 'outside', 'everything', 'tall',
-        'already', 'instead', 'phrase', 'soil', 'bed', 'copy', 'free', 'hope', 'spring', 'case', 'laughed',
-        'nation', 'quite', 'type', 'themselves', 'temperature', 'bright', 'lead', 'everyone', 'method', 'section',
-        'lake', 'iron', 'within', 'dictionary', 'hair', 'age', 'amount', 'scale', 'pounds', 'although', 'per',
-        'broken', 'moment', 'tiny', 'possible', 'gold', 'milk', 'quiet', 'natural', 'lot', 'stone', 'act',
-        'build', 'middle', 'speed', 'count', 'cat', 'someone', 'sail', 'rolled', 'bear', 'wonder', 'smiled',
-        'angle', 'fraction', 'africa', 'killed', 'melody', 'bottom', 'trip', 'hole', 'poor', 'let', 'fight',
-        'surprise', 'french', 'died', 'beat', 'exactly', 'remain', 'dress', 'iron', 'couldn', 'fingers',
-        'row', 'least', 'catch', 'climbed', 'wrote', 'shouted', 'continued', 'itself', 'else', 'plains',
-        'gas', 'england', 'burning', 'design', 'joined'
-    }
-    
-    # Filter out stop words and very short words
-    filtered_words = [word for word in words if word not in stop_words and len(word) > 2]
-    
-    return filtered_words
-
-def analyze_text(file_path: str) -> Dict[str, Any]:
+def analyze_text(file_path: str, stop_word_languages: str = DEFAULT_STOP_WORD_LANGUAGES) -> Dict[str, Any]:
     """Main analysis function"""
+    try:
+        stop_words = load_stop_words(stop_word_languages)
+    except ValueError as e:
+        return {"error": str(e)}
+    
     try:
         with open(file_path, 'r', encoding='utf-8') as file:
             text = file.read()
@@ -149,7 +155,7 @@ def analyze_text(file_path: str) -> Dict[str, Any]:
         return {"error": f"Failed to read file: {str(e)}"}
     
     # Extract and count words
-    words = extract_words(text)
+    words = extract_words(text, stop_words)
     word_counts = Counter(words)
     top_words = word_counts.most_common(30)
     
@@ -167,13 +173,63 @@ def analyze_text(file_path: str) -> Dict[str, Any]:
         "total_emojis": len(emojis)
     }
 
+def handle_request(request: Dict[str, Any]) -> Dict[str, Any]:
+    """Answers one worker request"""
+    op = request.get('op')
+    if op == 'ping':
+        return {"ok": True}
+    if op == 'count':
+        # Raw counts, so the caller can merge the results of many batches
+        # The caller sends its stop words, as this script may not be next to
+        # the lists once the application is packaged
+        text = request.get('text', '')
+        stop_words = request.get('stop_words')
+        if not isinstance(stop_words, list):
+            raise ValueError("count needs a list of stop_words")
+        stop_words = frozenset(stop_words)
+        words, emojis = scan_tokens(text)
+        return {
+            "words": Counter(word for word in words if len(word) > 2 and word not in stop_words),
+            "emojis": Counter(emojis)
+        }
+    raise ValueError(f"Unknown op: {op}")
+
+def serve():
+    """
+    Worker mode: answers requests on stdin until it is closed. Each request
+    and response is a 4-byte big-endian length followed by that many bytes
+    of UTF-8 JSON.
+    """
+    stdin = sys.stdin.buffer
+    stdout = sys.stdout.buffer
+    while True:
+        header = stdin.read(4)
+        if len(header) < 4:
+            break
+        payload = stdin.read(int.from_bytes(header, 'big'))
+        
+        try:
+            response = handle_request(json.loads(payload.decode('utf-8')))
+        except Exception as e:
+            response = {"error": str(e)}
+        
+        data = json.dumps(response, ensure_ascii=False).encode('utf-8')
+        stdout.write(len(data).to_bytes(4, 'big'))
+        stdout.write(data)
+        stdout.flush()
+
 def main():
-    if len(sys.argv) != 2:
-        print(json.dumps({"error": "Usage: python analyzer.py <file_path>"}))
+    if len(sys.argv) == 2 and sys.argv[1] == '--serve':
+        serve()
+        return
+    
+    if len(sys.argv) not in (2, 3):
+        print(json.dumps({"error": "Usage: python analyzer.py <file_path> [stop_word_languages] | --serve"}))
         sys.exit(1)
     
     file_path = sys.argv[1]
-    result = analyze_text(file_path)
+    stop_word_languages = sys.argv[2] if len(sys.argv) == 3 else DEFAULT_STOP_WORD_LANGUAGES
+    result = analyze_text(file_path, stop_word_languages)
     print(json.dumps(result, ensure_ascii=False))
 
 if __name__ == "__main__":
@@ -0,0 +1,87 @@
+package com.chatanalyzer.chatanalyzer.benchmark;
+
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.service.AnalysisFixtures;
+import com.chatanalyzer.chatanalyzer.service.ChatAnalyzerService;
+import com.chatanalyzer.chatanalyzer.service.TextStatistics;
+import org.openjdk.jmh.annotations.*;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The analysis stages over one generated export: the whole
+ * {@code analyzeChat} run, and {@code buildAnalysis}, {@code topWords} and
+ * {@code topEmojis} over aggregates parsed up front. Export shape is set
+ * with {@code -p}, e.g. {@code -p authors=200 -p emojiDensity=0.6}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AnalysisBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int messages;
+
+    @Param({"8"})
+    public int authors;
+
+    @Param({"0.1"})
+    public double emojiDensity;
+
+    @Param({"0.05"})
+    public double multiLineRatio;
+
+    @Param({"US"})
+    public SyntheticExport.Locale locale;
+
+    private ForkJoinPool analysisPool;
+    private ChatAnalyzerService service;
+    private byte[] export;
+    private AnalysisFixtures parsed;
+    private TextStatistics textStatistics;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        export = new SyntheticExport()
+            .messages(messages)
+            .authors(authors)
+            .emojiDensity(emojiDensity)
+            .multiLineRatio(multiLineRatio)
+            .locale(locale)
+            .bytes();
+        analysisPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        service = AnalysisFixtures.analyzerService(analysisPool);
+        parsed = AnalysisFixtures.parsed(service, export);
+        textStatistics = parsed.textStatistics();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        analysisPool.shutdown();
+    }
+
+    @Benchmark
+    public ChatAnalysis analyzeChat() {
+        return service.analyzeChat(new ByteArrayInputStream(export));
+    }
+
+    @Benchmark
+    public ChatAnalysis buildAnalysis() {
+        return parsed.buildAnalysis(10);
+    }
+
+    @Benchmark
+    public List<List<Object>> topWords() {
+        return textStatistics.topWords(10);
+    }
+
+    @Benchmark
+    public List<List<Object>> topEmojis() {
+        return textStatistics.topEmojis(10);
+    }
+}
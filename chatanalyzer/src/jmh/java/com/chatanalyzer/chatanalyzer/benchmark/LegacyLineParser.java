@@ -0,0 +1,63 @@
+package com.chatanalyzer.chatanalyzer.benchmark;
+
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex and formatter-loop line parser that WhatsAppLineParser
+ * replaced, kept as a benchmark baseline.
+ */
+final class LegacyLineParser {
+
+    private static final Pattern MESSAGE_PATTERN = Pattern.compile(
+        "^(\\d{1,2}/\\d{1,2}/\\d{2,4}),?\\s+(\\d{1,2}:\\d{2}(?:\\s*(?:AM|PM|am|pm))?)\\s*-\\s*([^:]+):\\s*(.*)$"
+    );
+
+    private LegacyLineParser() {
+    }
+
+    static ChatMessage parse(String line) {
+        if (line.trim().isEmpty()) return null;
+
+        Matcher matcher = MESSAGE_PATTERN.matcher(line.trim());
+        if (!matcher.matches()) return null;
+
+        String text = matcher.group(4).trim();
+        return new ChatMessage(
+            parseDate(matcher.group(1)),
+            matcher.group(2),
+            matcher.group(3).trim(),
+            text,
+            isMediaMessage(text));
+    }
+
+    static LocalDate parseDate(String dateStr) {
+        String[] formats = {
+            "M/d/yyyy", "MM/dd/yyyy", "d/M/yyyy", "dd/MM/yyyy",
+            "M/d/yy", "MM/dd/yy", "d/M/yy", "dd/MM/yy"
+        };
+
+        for (String format : formats) {
+            try {
+                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
+                return LocalDate.parse(dateStr, formatter);
+            } catch (DateTimeParseException e) {
+                // Try next format
+            }
+        }
+        return LocalDate.now();
+    }
+
+    private static boolean isMediaMessage(String text) {
+        return text.contains("<Media omitted>") ||
+               text.contains("image omitted") ||
+               text.contains("video omitted") ||
+               text.contains("audio omitted") ||
+               text.contains("document omitted") ||
+               text.contains("sticker omitted");
+    }
+}
@@ -0,0 +1,66 @@
+package com.chatanalyzer.chatanalyzer.benchmark;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * The replaceAll/split word count and regex emoji scan that the single-pass
+ * TokenScanner replaced, kept as a benchmark baseline. Both run over the
+ * whole chat joined into one string, as they originally did.
+ */
+final class LegacyTextAnalysis {
+
+    private static final Pattern EMOJI_PATTERN = Pattern.compile(
+        "[\\x{1F600}-\\x{1F64F}]|[\\x{1F300}-\\x{1F5FF}]|[\\x{1F680}-\\x{1F6FF}]|[\\x{1F1E0}-\\x{1F1FF}]|[\\x{2600}-\\x{26FF}]|[\\x{2700}-\\x{27BF}]"
+    );
+
+    private static final Set<String> STOP_WORDS = Set.of(
+        "the", "and", "or", "but", "in", "on", "at", "to", "for", "of", "with", "by",
+        "is", "are", "was", "were", "be", "been", "being", "have", "has", "had",
+        "do", "does", "did", "will", "would", "could", "should", "may", "might",
+        "a", "an", "this", "that", "these", "those", "i", "you", "he", "she", "it",
+        "we", "they", "me", "him", "her", "us", "them", "my", "your", "his",
+        "its", "our", "their", "am", "can", "not", "no", "yes", "ok", "okay", "so"
+    );
+
+    private LegacyTextAnalysis() {
+    }
+
+    static List<List<Object>> topWords(String text, int limit) {
+        String cleanText = text.toLowerCase()
+                              .replaceAll("[^a-zA-Z\\s]", " ")
+                              .replaceAll("\\s+", " ")
+                              .trim();
+        if (cleanText.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<String, Integer> wordCount = new HashMap<>();
+        for (String word : cleanText.split("\\s+")) {
+            if (word.length() > 2 && !STOP_WORDS.contains(word)) {
+                wordCount.put(word, wordCount.getOrDefault(word, 0) + 1);
+            }
+        }
+        return top(wordCount, limit);
+    }
+
+    static List<List<Object>> topEmojis(String text, int limit) {
+        Map<String, Integer> emojiCount = new HashMap<>();
+        Matcher matcher = EMOJI_PATTERN.matcher(text);
+        while (matcher.find()) {
+            String emoji = matcher.group();
+            emojiCount.put(emoji, emojiCount.getOrDefault(emoji, 0) + 1);
+        }
+        return top(emojiCount, limit);
+    }
+
+    private static List<List<Object>> top(Map<String, Integer> counts, int limit) {
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(limit)
+                .map(entry -> Arrays.<Object>asList(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,72 @@
+package com.chatanalyzer.chatanalyzer.benchmark;
+
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import com.chatanalyzer.chatanalyzer.parser.WhatsAppLineParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lines per second for the single-pass parser, with and without multi-line
+ * message assembly, against the regex parser it replaced, over month-first
+ * and day-first exports.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LineParserBenchmark {
+
+    private static final int LINES = 10_000;
+
+    @Param({"MONTH_FIRST", "DAY_FIRST"})
+    public WhatsAppLineParser.DateOrder dateOrder;
+
+    private String[] lines;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(42);
+        lines = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            int month = 1 + random.nextInt(12);
+            int day = 1 + random.nextInt(28);
+            String date = dateOrder == WhatsAppLineParser.DateOrder.MONTH_FIRST
+                ? month + "/" + day + "/23"
+                : day + "/" + month + "/2023";
+            lines[i] = date + ", " + (1 + random.nextInt(12)) + ":" + (10 + random.nextInt(50))
+                + " PM - Member " + random.nextInt(25) + ": message number " + i + " with some text";
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void singlePass(Blackhole blackhole) {
+        WhatsAppLineParser parser = new WhatsAppLineParser(dateOrder);
+        for (String line : lines) {
+            ChatMessage message = parser.parse(line);
+            blackhole.consume(message);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void singlePassWithContinuations(Blackhole blackhole) {
+        WhatsAppLineParser parser = new WhatsAppLineParser(dateOrder);
+        for (String line : lines) {
+            blackhole.consume(parser.accept(line));
+        }
+        blackhole.consume(parser.finish());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void legacyRegex(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(LegacyLineParser.parse(line));
+        }
+    }
+}
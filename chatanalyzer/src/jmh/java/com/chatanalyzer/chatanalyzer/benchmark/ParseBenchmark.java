@@ -0,0 +1,72 @@
+package com.chatanalyzer.chatanalyzer.benchmark;
+
+import com.chatanalyzer.chatanalyzer.parser.WhatsAppLineParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generated exports of 20,000 messages parsed per second.
+ * {@code parseMessages} assembles messages the way an analysis does, so
+ * consecutive lines mostly share a date. {@code parseDates} shuffles the
+ * header lines so that every line resolves a new date.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    private static final int MESSAGES = 20_000;
+
+    @Param({"US", "EU", "IN"})
+    public SyntheticExport.Locale locale;
+
+    @Param({"0.0", "0.2"})
+    public double multiLineRatio;
+
+    private String[] lines;
+    private String[] shuffledHeaders;
+    private WhatsAppLineParser.DateOrder dateOrder;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        List<String> export = new SyntheticExport()
+            .messages(MESSAGES)
+            .locale(locale)
+            .multiLineRatio(multiLineRatio)
+            .lines();
+        lines = export.toArray(new String[0]);
+
+        WhatsAppLineParser parser = new WhatsAppLineParser();
+        export.removeIf(line -> !parser.startsNewEntry(line));
+        Collections.shuffle(export, new Random(42));
+        shuffledHeaders = export.toArray(new String[0]);
+
+        dateOrder = locale == SyntheticExport.Locale.US
+            ? WhatsAppLineParser.DateOrder.MONTH_FIRST
+            : WhatsAppLineParser.DateOrder.DAY_FIRST;
+    }
+
+    @Benchmark
+    public void parseMessages(Blackhole blackhole) {
+        WhatsAppLineParser parser = new WhatsAppLineParser(dateOrder);
+        for (String line : lines) {
+            blackhole.consume(parser.accept(line));
+        }
+        blackhole.consume(parser.finish());
+    }
+
+    @Benchmark
+    public void parseDates(Blackhole blackhole) {
+        WhatsAppLineParser parser = new WhatsAppLineParser(dateOrder);
+        for (String line : shuffledHeaders) {
+            blackhole.consume(parser.parse(line));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.chatanalyzer.chatanalyzer.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of WhatsApp exports. The same settings and seed
+ * always give the same bytes, so scores from different runs are comparable.
+ *
+ * <p>Messages are written in chronological order starting 2021-01-01, a few
+ * minutes apart, by authors picked with a skewed distribution so that some
+ * talk much more than others, as in real groups.
+ */
+public final class SyntheticExport {
+
+    /**
+     * Header formats of the export, as produced by different phone locales.
+     */
+    public enum Locale {
+        /** {@code 1/5/21, 9:07 PM - } */
+        US,
+        /** {@code 05/01/2021, 21:07 - } */
+        EU,
+        /** {@code 5/1/21, 9:07 pm - } */
+        IN
+    }
+
+    private static final String[] WORDS = {
+        "hello", "meeting", "tomorrow", "dinner", "weekend", "movie", "coffee", "office",
+        "birthday", "party", "travel", "train", "picture", "thanks", "morning", "night",
+        "the", "and", "you", "are", "haha", "lol", "okay", "sure", "done", "call",
+        "yaar", "kya", "hai", "nahi", "accha", "chalo", "bhai", "kal", "abhi", "theek"
+    };
+
+    private static final String[] EMOJIS = {
+        "😀", "😂", "👍", "❤", "🎉", "🚀", "🙏", "🔥", "👍🏽", "👨‍👩‍👧", "🇮🇳"
+    };
+
+    private static final String[] MEDIA = {
+        "<Media omitted>", "image omitted", "sticker omitted"
+    };
+
+    private int messages = 10_000;
+    private int authors = 8;
+    private double emojiDensity = 0.1;
+    private double multiLineRatio = 0.05;
+    private double mediaRatio = 0.03;
+    private Locale locale = Locale.US;
+    private long seed = 42;
+
+    public SyntheticExport messages(int messages) {
+        this.messages = messages;
+        return this;
+    }
+
+    public SyntheticExport authors(int authors) {
+        this.authors = authors;
+        return this;
+    }
+
+    /**
+     * Probability that a message carries emojis.
+     */
+    public SyntheticExport emojiDensity(double emojiDensity) {
+        this.emojiDensity = emojiDensity;
+        return this;
+    }
+
+    /**
+     * Probability that a message continues over one to three more lines.
+     */
+    public SyntheticExport multiLineRatio(double multiLineRatio) {
+        this.multiLineRatio = multiLineRatio;
+        return this;
+    }
+
+    public SyntheticExport mediaRatio(double mediaRatio) {
+        this.mediaRatio = mediaRatio;
+        return this;
+    }
+
+    public SyntheticExport locale(Locale locale) {
+        this.locale = locale;
+        return this;
+    }
+
+    public SyntheticExport seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public List<String> lines() {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<>(messages + messages / 10);
+        LocalDateTime time = LocalDateTime.of(2021, 1, 1, 8, 0);
+        StringBuilder line = new StringBuilder(128);
+
+        for (int i = 0; i < messages; i++) {
+            time = time.plusMinutes(random.nextInt(20));
+            line.setLength(0);
+            header(line, time);
+            line.append(" - Member ").append(author(random)).append(": ");
+
+            if (random.nextDouble() < mediaRatio) {
+                lines.add(line.append(MEDIA[random.nextInt(MEDIA.length)]).toString());
+                continue;
+            }
+            text(line, random);
+            lines.add(line.toString());
+
+            if (random.nextDouble() < multiLineRatio) {
+                for (int extra = 1 + random.nextInt(3); extra > 0; extra--) {
+                    line.setLength(0);
+                    text(line, random);
+                    lines.add(line.toString());
+                }
+            }
+        }
+        return lines;
+    }
+
+    public String text() {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines()) {
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+
+    public byte[] bytes() {
+        return text().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void header(StringBuilder line, LocalDateTime time) {
+        int hour12 = time.getHour() % 12 == 0 ? 12 : time.getHour() % 12;
+        switch (locale) {
+            case EU:
+                line.append(pad(time.getDayOfMonth())).append('/').append(pad(time.getMonthValue()))
+                    .append('/').append(time.getYear()).append(", ")
+                    .append(pad(time.getHour())).append(':').append(pad(time.getMinute()));
+                break;
+            case IN:
+                line.append(time.getDayOfMonth()).append('/').append(time.getMonthValue())
+                    .append('/').append(time.getYear() % 100).append(", ")
+                    .append(hour12).append(':').append(pad(time.getMinute()))
+                    .append(time.getHour() < 12 ? " am" : " pm");
+                break;
+            default:
+                line.append(time.getMonthValue()).append('/').append(time.getDayOfMonth())
+                    .append('/').append(time.getYear() % 100).append(", ")
+                    .append(hour12).append(':').append(pad(time.getMinute()))
+                    .append(time.getHour() < 12 ? " AM" : " PM");
+        }
+    }
+
+    // Squaring skews towards low numbers: member 0 writes most
+    private int author(Random random) {
+        double r = random.nextDouble();
+        return (int) (r * r * authors);
+    }
+
+    private void text(StringBuilder line, Random random) {
+        int words = 1 + random.nextInt(15);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) line.append(' ');
+            line.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        if (random.nextDouble() < emojiDensity) {
+            for (int e = 1 + random.nextInt(3); e > 0; e--) {
+                line.append(' ').append(EMOJIS[random.nextInt(EMOJIS.length)]);
+            }
+        }
+    }
+
+    private static String pad(int value) {
+        return value < 10 ? "0" + value : Integer.toString(value);
+    }
+}
@@ -0,0 +1,65 @@
+package com.chatanalyzer.chatanalyzer.benchmark;
+
+import com.chatanalyzer.chatanalyzer.service.TextStatistics;
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to count words and emojis over a whole chat. Each invocation covers
+ * every message, so the score should grow linearly with {@code messages}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TextStatisticsBenchmark {
+
+    private static final String[] VOCABULARY = {
+        "hello", "meeting", "tomorrow", "dinner", "weekend", "movie", "coffee", "office",
+        "birthday", "party", "travel", "train", "picture", "thanks", "morning", "night",
+        "the", "and", "you", "are", "haha", "lol", "okay", "sure", "done", "call"
+    };
+
+    private static final String[] EMOJIS = {
+        "😀", "😂", "👍", "❤", "🎉", "🚀"
+    };
+
+    @Param({"10000", "100000", "1000000", "2000000"})
+    public int messages;
+
+    private String[] texts;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(42);
+        texts = new String[messages];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < messages; i++) {
+            text.setLength(0);
+            int words = 1 + random.nextInt(12);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) text.append(' ');
+                text.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+            }
+            if (random.nextInt(4) == 0) {
+                text.append(' ').append(EMOJIS[random.nextInt(EMOJIS.length)]);
+            }
+            texts[i] = text.toString();
+        }
+    }
+
+    @Benchmark
+    public List<List<Object>> countAndRank() {
+        TextStatistics statistics = new TextStatistics();
+        for (String text : texts) {
+            statistics.accept(text);
+        }
+        List<List<Object>> top = statistics.topWords(10);
+        top.addAll(statistics.topEmojis(10));
+        return top;
+    }
+}
@@ -0,0 +1,62 @@
+package com.chatanalyzer.chatanalyzer.benchmark;
+
+import com.chatanalyzer.chatanalyzer.parser.WhatsAppLineParser;
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import com.chatanalyzer.chatanalyzer.service.TextStatistics;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top words and emojis of 50,000 generated messages per second: the
+ * single-pass scanner fed message by message, against the regex pair it
+ * replaced running over the joined text.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenizerBenchmark {
+
+    private static final int MESSAGES = 50_000;
+
+    @Param({"0.05", "0.5"})
+    public double emojiDensity;
+
+    private String[] texts;
+    private String joined;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        WhatsAppLineParser parser = new WhatsAppLineParser();
+        List<String> messages = new ArrayList<>();
+        for (String line : new SyntheticExport().messages(MESSAGES).emojiDensity(emojiDensity).lines()) {
+            ChatMessage message = parser.accept(line);
+            if (message != null && !message.isMediaMessage()) {
+                messages.add(message.getText());
+            }
+        }
+        texts = messages.toArray(new String[0]);
+        joined = String.join(" ", messages);
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole blackhole) {
+        TextStatistics statistics = new TextStatistics();
+        for (String text : texts) {
+            statistics.accept(text);
+        }
+        blackhole.consume(statistics.topWords(10));
+        blackhole.consume(statistics.topEmojis(10));
+    }
+
+    @Benchmark
+    public void legacyRegexPair(Blackhole blackhole) {
+        blackhole.consume(LegacyTextAnalysis.topWords(joined, 10));
+        blackhole.consume(LegacyTextAnalysis.topEmojis(joined, 10));
+    }
+}
@@ -0,0 +1,48 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Gives the benchmarks access to the package-private analysis stages, and
+ * wires services the way the application context would.
+ */
+public final class AnalysisFixtures {
+
+    private final ChatAnalyzerService service;
+    private final ChatAnalysisAccumulator accumulator;
+
+    private AnalysisFixtures(ChatAnalyzerService service, ChatAnalysisAccumulator accumulator) {
+        this.service = service;
+        this.accumulator = accumulator;
+    }
+
+    public static ChatAnalyzerService analyzerService(ForkJoinPool analysisPool) {
+        ChatAnalyzerService service = new ChatAnalyzerService();
+        ReflectionTestUtils.setField(service, "pythonAnalysisService", new PythonAnalysisService());
+        ReflectionTestUtils.setField(service, "analysisPool", analysisPool);
+        ReflectionTestUtils.setField(service, "chunkSize", 512 * 1024);
+        ReflectionTestUtils.setField(service, "analysisMetrics", new AnalysisMetrics(new SimpleMeterRegistry()));
+        return service;
+    }
+
+    /**
+     * Parses {@code export} into the aggregates that {@link #buildAnalysis} reads.
+     */
+    public static AnalysisFixtures parsed(ChatAnalyzerService service, byte[] export) {
+        ChatAnalysisAccumulator accumulator = service.newAccumulator();
+        service.parseChat(new ByteArrayInputStream(export), accumulator::accept);
+        return new AnalysisFixtures(service, accumulator);
+    }
+
+    public ChatAnalysis buildAnalysis(int topLimit) {
+        return service.buildAnalysis(accumulator, topLimit);
+    }
+
+    public TextStatistics textStatistics() {
+        return accumulator.getTextStatistics();
+    }
+}
@@ -0,0 +1,59 @@
+package com.chatanalyzer.chatanalyzer.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class AnalysisConfig {
+
+    /**
+     * Worker pool for chunked analysis of large exports. A parallelism of 0
+     * uses one worker per available processor.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool analysisPool(@Value("${chat.analysis.parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Runs background analysis jobs. The queue is bounded and submissions
+     * beyond it are rejected, which is how job admission is enforced.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor analysisJobExecutor(@Value("${chat.jobs.workers:2}") int workers,
+                                                  @Value("${chat.jobs.queue-capacity:16}") int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "analysis-job-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * Analyzes the chats of batch requests, a chat per task. Each request
+     * bounds the tasks it has queued, so the queue itself is not. A worker
+     * count of 0 uses one worker per available processor.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor batchAnalysisExecutor(@Value("${chat.batch.workers:0}") int workers) {
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "batch-analysis-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,182 @@
+package com.chatanalyzer.chatanalyzer.config;
+
+import com.chatanalyzer.chatanalyzer.controller.AnalysisResponse;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.service.AnalysisMetrics;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.AnnotatedField;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import org.springframework.beans.BeanUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes {@link AnalysisResponse}s field by field with Jackson's streaming
+ * generator, gzipping the body when the response carries
+ * {@code Content-Encoding: gzip}. Each field is written by the property
+ * writer the object mapper serializes {@link ChatAnalysis} with, so the
+ * output matches that of the JSON converter for the selected fields;
+ * fields the mapper is told to ignore, like the quarter-hour activity
+ * heatmap, are only sent when selected by name, and written from their
+ * getter. The same mapper decides which fields can be selected, so their
+ * names follow its naming settings. Writing is timed as the
+ * {@code serialize} analysis stage.
+ */
+public class AnalysisResponseConverter extends AbstractHttpMessageConverter<AnalysisResponse> {
+
+    private final ObjectMapper objectMapper;
+    private final AnalysisMetrics analysisMetrics;
+    // In the order the mapper writes them
+    private final Map<String, PropertyWriter> writers = new LinkedHashMap<>();
+    private final Map<String, Method> onRequest = new LinkedHashMap<>();
+    private final List<String> fields;
+
+    public AnalysisResponseConverter(ObjectMapper objectMapper, AnalysisMetrics analysisMetrics) {
+        super(MediaType.APPLICATION_JSON);
+        this.objectMapper = objectMapper;
+        this.analysisMetrics = analysisMetrics;
+        try {
+            JsonSerializer<Object> serializer = objectMapper.getSerializerProviderInstance()
+                .findValueSerializer(ChatAnalysis.class);
+            serializer.properties().forEachRemaining(writer -> writers.put(writer.getName(), writer));
+        } catch (JsonMappingException e) {
+            throw new IllegalStateException("Cannot serialize analyses", e);
+        }
+        SerializationConfig config = objectMapper.getSerializationConfig();
+        BeanDescription description = config.introspect(objectMapper.constructType(ChatAnalysis.class));
+        for (AnnotatedField field : description.getClassInfo().fields()) {
+            if (config.getAnnotationIntrospector().hasIgnoreMarker(field)) {
+                PropertyDescriptor property = BeanUtils.getPropertyDescriptor(ChatAnalysis.class, field.getName());
+                if (property == null || property.getReadMethod() == null) {
+                    throw new IllegalStateException("Ignored field " + field.getName() + " has no getter");
+                }
+                PropertyNamingStrategy naming = config.getPropertyNamingStrategy();
+                onRequest.put(naming == null ? field.getName() : naming.nameForField(config, field, field.getName()),
+                    property.getReadMethod());
+            }
+        }
+        List<String> fields = new ArrayList<>(writers.keySet());
+        fields.addAll(onRequest.keySet());
+        this.fields = Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * Fields that can be selected: the properties of {@link ChatAnalysis} in
+     * the order the mapper writes them, then those only sent on request.
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * The fields listed in a {@code fields} parameter, or {@code null} for
+     * all of them.
+     *
+     * @throws IllegalArgumentException if a field is unknown
+     */
+    public Set<String> parseFields(String fields) {
+        if (fields == null || fields.trim().isEmpty()) {
+            return null;
+        }
+        Set<String> selected = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!this.fields.contains(name)) {
+                throw new IllegalArgumentException("Unknown field: " + name + ", expected any of " + this.fields);
+            }
+            selected.add(name);
+        }
+        return selected;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return AnalysisResponse.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected AnalysisResponse readInternal(Class<? extends AnalysisResponse> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Analysis responses are write-only", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(AnalysisResponse response, HttpOutputMessage outputMessage) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if ("gzip".equals(outputMessage.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING))) {
+                GZIPOutputStream compressed = new GZIPOutputStream(outputMessage.getBody(), 8192);
+                write(response, compressed);
+                compressed.finish();
+            } else {
+                write(response, outputMessage.getBody());
+            }
+        } finally {
+            analysisMetrics.recordSince(AnalysisMetrics.Stage.SERIALIZE, start);
+        }
+    }
+
+    private void write(AnalysisResponse response, OutputStream out) throws IOException {
+        ChatAnalysis analysis = response.getAnalysis();
+        SerializerProvider provider = objectMapper.getSerializerProviderInstance();
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.writeStartObject();
+            Set<String> selected = response.getFields();
+            for (String field : fields) {
+                if (selected == null ? !onRequest.containsKey(field) : selected.contains(field)) {
+                    writeField(field, analysis, json, provider);
+                }
+            }
+            json.writeEndObject();
+        }
+    }
+
+    private void writeField(String field, ChatAnalysis analysis, JsonGenerator json, SerializerProvider provider)
+            throws IOException {
+        try {
+            PropertyWriter writer = writers.get(field);
+            if (writer != null) {
+                writer.serializeAsField(analysis, json, provider);
+            } else {
+                json.writeFieldName(field);
+                provider.defaultSerializeValue(onRequest.get(field).invoke(analysis), json);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw JsonMappingException.from(json, "Failed to write " + field, e);
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package com.chatanalyzer.chatanalyzer.config;
 
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.service.AnalysisMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.multipart.MultipartResolver;
 import org.springframework.web.multipart.support.StandardServletMultipartResolver;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import java.io.IOException;
+import java.lang.reflect.Type;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
@@ -22,4 +30,39 @@ public class WebConfig implements WebMvcConfigurer {
     public MultipartResolver multipartResolver() {
         return new StandardServletMultipartResolver();
     }
+
+    /**
+     * Replaces Spring Boot's JSON converter with one that times writing
+     * model responses (analyses, stats, job status) as the
+     * {@code serialize} analysis stage.
+     */
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper,
+                                                                                   AnalysisMetrics analysisMetrics) {
+        return new MappingJackson2HttpMessageConverter(objectMapper) {
+            @Override
+            protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+                    throws IOException, HttpMessageNotWritableException {
+                if (object == null || object.getClass().getPackage() != ChatAnalysis.class.getPackage()) {
+                    super.writeInternal(object, type, outputMessage);
+                    return;
+                }
+                long start = System.nanoTime();
+                try {
+                    super.writeInternal(object, type, outputMessage);
+                } finally {
+                    analysisMetrics.recordSince(AnalysisMetrics.Stage.SERIALIZE, start);
+                }
+            }
+        };
+    }
+
+    /**
+     * Streams analyses for clients that select fields or accept gzip.
+     */
+    @Bean
+    public AnalysisResponseConverter analysisResponseConverter(ObjectMapper objectMapper,
+                                                               AnalysisMetrics analysisMetrics) {
+        return new AnalysisResponseConverter(objectMapper, analysisMetrics);
+    }
 }
\ No newline at end of file
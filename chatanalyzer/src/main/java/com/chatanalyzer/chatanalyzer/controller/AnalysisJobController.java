@@ -0,0 +1,112 @@
+package com.chatanalyzer.chatanalyzer.controller;
+
+import com.chatanalyzer.chatanalyzer.model.AnalysisJobStatus;
+import com.chatanalyzer.chatanalyzer.service.AnalysisJobService;
+import com.chatanalyzer.chatanalyzer.service.ChatAnalyzerService;
+import com.chatanalyzer.chatanalyzer.service.ChatUploadService;
+import com.chatanalyzer.chatanalyzer.service.JobNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+// Background analysis: submit returns at once, clients poll for the result
+@RestController
+@RequestMapping("/api/jobs")
+@CrossOrigin(origins = "*")
+public class AnalysisJobController {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisJobController.class);
+
+    @Autowired
+    private AnalysisJobService analysisJobService;
+
+    @Autowired
+    private ChatAnalyzerService chatAnalyzerService;
+
+    @Autowired
+    private ChatUploadService chatUploadService;
+
+    @Value("${chat.upload.max-size:256MB}")
+    private DataSize maxUploadSize;
+
+    @PostMapping(consumes = "multipart/form-data")
+    public ResponseEntity<?> submitJob(
+            @RequestParam("chatFile") MultipartFile file,
+            @RequestParam(value = "stopWords", required = false) String stopWords) {
+        try {
+            if (file.isEmpty()) {
+                return createErrorResponse("File is empty", HttpStatus.BAD_REQUEST);
+            }
+
+            String originalFilename = file.getOriginalFilename();
+            if (!ChatUploadService.isSupported(originalFilename)) {
+                return createErrorResponse("Only .txt, .zip and .gz files are allowed", HttpStatus.BAD_REQUEST);
+            }
+
+            if (file.getSize() > maxUploadSize.toBytes()) {
+                return createErrorResponse("File size exceeds " + maxUploadSize.toMegabytes() + "MB limit", HttpStatus.BAD_REQUEST);
+            }
+
+            AnalysisJobStatus status;
+            try (InputStream content = chatUploadService.open(file)) {
+                status = analysisJobService.submit(content, chatAnalyzerService.stopWords(stopWords));
+            }
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(status);
+
+        } catch (RejectedExecutionException e) {
+            log.warn("Job rejected: {}", e.getMessage());
+            return createErrorResponse(e.getMessage() + ", try again later", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid job: {}", e.getMessage());
+            return createErrorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            log.error("Error submitting job", e);
+            return createErrorResponse("Error submitting job: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (Exception e) {
+            log.error("Unexpected error submitting job", e);
+            return createErrorResponse("An unexpected error occurred", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getJob(
+            @PathVariable String jobId,
+            @RequestParam(value = "parseReport", defaultValue = "false") boolean parseReport) {
+        try {
+            AnalysisJobStatus status = analysisJobService.getStatus(jobId);
+            if (status.getResult() != null) {
+                status.setResult(status.getResult().withParseReport(parseReport));
+            }
+            return ResponseEntity.ok(status);
+        } catch (JobNotFoundException e) {
+            return createErrorResponse(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<?> cancelJob(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(analysisJobService.cancel(jobId));
+        } catch (JobNotFoundException e) {
+            return createErrorResponse(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    private ResponseEntity<Map<String, String>> createErrorResponse(String message, HttpStatus status) {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("error", message);
+        errorResponse.put("status", status.toString());
+        errorResponse.put("timestamp", java.time.Instant.now().toString());
+        return ResponseEntity.status(status).body(errorResponse);
+    }
+}
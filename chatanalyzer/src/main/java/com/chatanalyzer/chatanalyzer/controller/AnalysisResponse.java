@@ -0,0 +1,75 @@
+package com.chatanalyzer.chatanalyzer.controller;
+
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import java.util.Set;
+
+/**
+ * An analysis to be streamed to the client, limited to selected fields
+ * ({@code ?fields=totalMessages,topWords}) and gzipped for clients sending
+ * {@code Accept-Encoding: gzip}. Written by
+ * {@link com.chatanalyzer.chatanalyzer.config.AnalysisResponseConverter}
+ * with Jackson's streaming generator, so a long timeline or a large group's
+ * author counts go straight to the response, and fields a client leaves
+ * out are neither serialized nor sent. The converter also parses the
+ * field selection, from the properties its object mapper finds on
+ * {@link ChatAnalysis}.
+ */
+public final class AnalysisResponse {
+
+    private final ChatAnalysis analysis;
+    private final Set<String> fields;
+
+    private AnalysisResponse(ChatAnalysis analysis, Set<String> fields) {
+        this.analysis = analysis;
+        this.fields = fields;
+    }
+
+    public ChatAnalysis getAnalysis() {
+        return analysis;
+    }
+
+    /**
+     * The selected fields, or {@code null} for all but those only sent on
+     * request.
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * A 200 response with {@code analysis}: streamed if fields are selected
+     * or the client accepts gzip, otherwise as usual. Either way it varies
+     * with {@code Accept-Encoding}, so that caches keep the two apart.
+     */
+    static ResponseEntity<?> ok(ChatAnalysis analysis, Set<String> fields, String acceptEncoding) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptsGzip(acceptEncoding);
+        if (fields == null && !gzip) {
+            return response.body(analysis);
+        }
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(new AnalysisResponse(analysis, fields));
+    }
+    // gzip is accepted if listed without q=0
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                for (int i = 1; i < parts.length; i++) {
+                    if (parts[i].replace(" ", "").matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
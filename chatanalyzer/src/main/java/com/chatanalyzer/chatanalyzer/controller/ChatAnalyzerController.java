@@ -1,53 +1,109 @@
 package com.chatanalyzer.chatanalyzer.controller;
 
+import com.chatanalyzer.chatanalyzer.config.AnalysisResponseConverter;
+import com.chatanalyzer.chatanalyzer.model.AnalysisMode;
+import com.chatanalyzer.chatanalyzer.model.BatchSummary;
 import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.service.AnalysisCache;
+import com.chatanalyzer.chatanalyzer.service.AnalysisMetrics;
+import com.chatanalyzer.chatanalyzer.service.AnalysisProgress;
+import com.chatanalyzer.chatanalyzer.service.BatchAnalysisService;
 import com.chatanalyzer.chatanalyzer.service.ChatAnalyzerService;
+import com.chatanalyzer.chatanalyzer.service.ChatUploadService;
+import com.chatanalyzer.chatanalyzer.service.ContentDigest;
+import com.chatanalyzer.chatanalyzer.service.PythonAnalysisService;
+import com.chatanalyzer.chatanalyzer.text.StopWords;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api")
 @CrossOrigin(origins = "*")
 public class ChatAnalyzerController {
 
+    private static final Logger log = LoggerFactory.getLogger(ChatAnalyzerController.class);
+
+    private static final String NDJSON = "application/x-ndjson";
+
     @Autowired
     private ChatAnalyzerService chatAnalyzerService;
 
+    @Autowired
+    private ChatUploadService chatUploadService;
+
+    @Autowired
+    private AnalysisCache analysisCache;
+
+    @Autowired
+    private PythonAnalysisService pythonAnalysisService;
+
+    @Autowired
+    private AnalysisMetrics analysisMetrics;
+
+    @Autowired
+    private BatchAnalysisService batchAnalysisService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AnalysisResponseConverter analysisResponseConverter;
+
+    @Value("${chat.upload.max-size:256MB}")
+    private DataSize maxUploadSize;
+
     // File upload endpoint
     @PostMapping(value = "/analyze", consumes = "multipart/form-data")
-    public ResponseEntity<?> analyzeChatFile(@RequestParam("chatFile") MultipartFile file) {
+    public ResponseEntity<?> analyzeChatFile(
+            @RequestParam("chatFile") MultipartFile file,
+            @RequestParam(value = "stopWords", required = false) String stopWords,
+            @RequestParam(value = "parseReport", defaultValue = "false") boolean parseReport,
+            @RequestParam(value = "mode", defaultValue = "exact") String mode,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         try {
+            Set<String> selected = analysisResponseConverter.parseFields(fields);
+
             // Validate file
             if (file.isEmpty()) {
                 return createErrorResponse("File is empty", HttpStatus.BAD_REQUEST);
             }
 
             String originalFilename = file.getOriginalFilename();
-            if (originalFilename == null || !originalFilename.toLowerCase().endsWith(".txt")) {
-                return createErrorResponse("Only .txt files are allowed", HttpStatus.BAD_REQUEST);
+            if (!ChatUploadService.isSupported(originalFilename)) {
+                return createErrorResponse("Only .txt, .zip and .gz files are allowed", HttpStatus.BAD_REQUEST);
             }
 
-            if (file.getSize() > 10 * 1024 * 1024) { // 10MB limit
-                return createErrorResponse("File size exceeds 10MB limit", HttpStatus.BAD_REQUEST);
-            }
-
-            // Read file content
-            String content = new String(file.getBytes(), StandardCharsets.UTF_8);
-
-            if (content.trim().isEmpty()) {
-                return createErrorResponse("File content is empty", HttpStatus.BAD_REQUEST);
+            if (file.getSize() > maxUploadSize.toBytes()) {
+                return createErrorResponse("File size exceeds " + maxUploadSize.toMegabytes() + "MB limit", HttpStatus.BAD_REQUEST);
             }
 
             // Analyze chat
-            ChatAnalysis analysis = chatAnalyzerService.analyzeChat(content);
-            return ResponseEntity.ok(analysis);
+            ChatAnalysis analysis = analyzeUpload(file, chatAnalyzerService.stopWords(stopWords),
+                AnalysisMode.fromString(mode));
+            return AnalysisResponse.ok(analysis.withParseReport(parseReport), selected, acceptEncoding);
             
         } catch (IllegalArgumentException e) {
             System.err.println("Validation error: " + e.getMessage());
@@ -64,16 +120,21 @@ public class ChatAnalyzerController {
 
     // Text content endpoint (for testing with raw text)
     @PostMapping(value = "/analyze/text", consumes = "application/json")
-    public ResponseEntity<?> analyzeChatText(@RequestBody Map<String, String> request) {
+    public ResponseEntity<?> analyzeChatText(
+            @RequestBody Map<String, String> request,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         try {
+            Set<String> selected = analysisResponseConverter.parseFields(request.get("fields"));
             String content = request.get("content");
             if (content == null || content.trim().isEmpty()) {
                 return createErrorResponse("Content cannot be empty", HttpStatus.BAD_REQUEST);
             }
 
             // Analyze chat
-            ChatAnalysis analysis = chatAnalyzerService.analyzeChat(content);
-            return ResponseEntity.ok(analysis);
+            ChatAnalysis analysis = analyzeText(content, chatAnalyzerService.stopWords(request.get("stopWords")),
+                AnalysisMode.fromString(request.get("mode")));
+            return AnalysisResponse.ok(analysis.withParseReport("true".equals(request.get("parseReport"))),
+                selected, acceptEncoding);
             
         } catch (IllegalArgumentException e) {
             System.err.println("Validation error: " + e.getMessage());
@@ -92,40 +153,40 @@ public class ChatAnalyzerController {
     @PostMapping("/analyze/upload")
     public ResponseEntity<?> analyzeChatUpload(
             @RequestParam(value = "chatFile", required = false) MultipartFile file,
-            @RequestParam(value = "content", required = false) String textContent) {
+            @RequestParam(value = "content", required = false) String textContent,
+            @RequestParam(value = "stopWords", required = false) String stopWords,
+            @RequestParam(value = "parseReport", defaultValue = "false") boolean parseReport,
+            @RequestParam(value = "mode", defaultValue = "exact") String mode,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         
         try {
-            String content = null;
+            Set<String> selected = analysisResponseConverter.parseFields(fields);
+            ChatAnalysis analysis;
             
             // Check if file was provided
             if (file != null && !file.isEmpty()) {
                 String originalFilename = file.getOriginalFilename();
-                if (originalFilename == null || !originalFilename.toLowerCase().endsWith(".txt")) {
-                    return createErrorResponse("Only .txt files are allowed", HttpStatus.BAD_REQUEST);
+                if (!ChatUploadService.isSupported(originalFilename)) {
+                    return createErrorResponse("Only .txt, .zip and .gz files are allowed", HttpStatus.BAD_REQUEST);
                 }
                 
-                if (file.getSize() > 10 * 1024 * 1024) { // 10MB limit
-                    return createErrorResponse("File size exceeds 10MB limit", HttpStatus.BAD_REQUEST);
+                if (file.getSize() > maxUploadSize.toBytes()) {
+                    return createErrorResponse("File size exceeds " + maxUploadSize.toMegabytes() + "MB limit", HttpStatus.BAD_REQUEST);
                 }
                 
-                content = new String(file.getBytes(), StandardCharsets.UTF_8);
+                analysis = analyzeUpload(file, chatAnalyzerService.stopWords(stopWords), AnalysisMode.fromString(mode));
             } 
             // Check if text content was provided
             else if (textContent != null && !textContent.trim().isEmpty()) {
-                content = textContent;
+                analysis = analyzeText(textContent, chatAnalyzerService.stopWords(stopWords), AnalysisMode.fromString(mode));
             } 
             // Neither file nor text provided
             else {
                 return createErrorResponse("Either chatFile or content parameter must be provided", HttpStatus.BAD_REQUEST);
             }
 
-            if (content.trim().isEmpty()) {
-                return createErrorResponse("Content cannot be empty", HttpStatus.BAD_REQUEST);
-            }
-
-            // Analyze chat
-            ChatAnalysis analysis = chatAnalyzerService.analyzeChat(content);
-            return ResponseEntity.ok(analysis);
+            return AnalysisResponse.ok(analysis.withParseReport(parseReport), selected, acceptEncoding);
             
         } catch (IllegalArgumentException e) {
             System.err.println("Validation error: " + e.getMessage());
@@ -140,6 +201,126 @@ public class ChatAnalyzerController {
         }
     }
 
+    // Many exports, or zips of them, in one request, answered with one line
+    // of JSON per chat as each finishes and optionally a combined summary
+    @PostMapping(value = "/analyze/batch", consumes = "multipart/form-data")
+    public ResponseEntity<?> analyzeBatch(
+            @RequestParam("chatFiles") MultipartFile[] files,
+            @RequestParam(value = "stopWords", required = false) String stopWords,
+            @RequestParam(value = "parseReport", defaultValue = "false") boolean parseReport,
+            @RequestParam(value = "mode", defaultValue = "exact") String mode,
+            @RequestParam(value = "summary", defaultValue = "false") boolean summary,
+            HttpServletResponse response) {
+        try {
+            if (files.length == 0) {
+                return createErrorResponse("No chat files given", HttpStatus.BAD_REQUEST);
+            }
+            StopWords resolvedStopWords = chatAnalyzerService.stopWords(stopWords);
+            AnalysisMode analysisMode = AnalysisMode.fromString(mode);
+
+            response.setContentType(NDJSON);
+            response.setCharacterEncoding("UTF-8");
+            OutputStream out = response.getOutputStream();
+            ObjectWriter lines = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            BatchSummary combined = batchAnalysisService.analyze(files, resolvedStopWords, analysisMode,
+                parseReport, summary, result -> writeLine(lines, out, result));
+            if (combined != null) {
+                writeLine(lines, out, combined);
+            }
+            // Written to the response already
+            return null;
+
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid batch request: {}", e.getMessage());
+            return createErrorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (UncheckedIOException e) {
+            log.warn("Batch response aborted", e);
+            return null;
+        } catch (RuntimeException e) {
+            log.error("Error analyzing batch", e);
+            return batchErrorResponse(response, "Error analyzing batch: " + e.getMessage());
+        } catch (Exception e) {
+            log.error("Unexpected error analyzing batch", e);
+            return batchErrorResponse(response, "An unexpected error occurred");
+        }
+    }
+
+    // Approximate aggregates of an export, in binary form, for merging with
+    // those of other parts of the chat
+    @PostMapping(value = "/sketch", consumes = "multipart/form-data")
+    public ResponseEntity<?> sketchChatFile(
+            @RequestParam("chatFile") MultipartFile file,
+            @RequestParam(value = "stopWords", required = false) String stopWords) {
+        try {
+            if (file.isEmpty()) {
+                return createErrorResponse("File is empty", HttpStatus.BAD_REQUEST);
+            }
+
+            String originalFilename = file.getOriginalFilename();
+            if (!ChatUploadService.isSupported(originalFilename)) {
+                return createErrorResponse("Only .txt, .zip and .gz files are allowed", HttpStatus.BAD_REQUEST);
+            }
+
+            if (file.getSize() > maxUploadSize.toBytes()) {
+                return createErrorResponse("File size exceeds " + maxUploadSize.toMegabytes() + "MB limit", HttpStatus.BAD_REQUEST);
+            }
+
+            byte[] sketch;
+            try (InputStream content = chatUploadService.open(file)) {
+                sketch = chatAnalyzerService.sketchChat(content, chatAnalyzerService.stopWords(stopWords));
+            }
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body(sketch);
+
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid sketch request: {}", e.getMessage());
+            return createErrorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            log.error("Error sketching chat", e);
+            return createErrorResponse("Error sketching chat: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (Exception e) {
+            log.error("Unexpected error sketching chat", e);
+            return createErrorResponse("An unexpected error occurred", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Combines sketches of parts of a chat into one approximate analysis
+    @PostMapping(value = "/sketch/merge", consumes = "multipart/form-data")
+    public ResponseEntity<?> mergeSketches(
+            @RequestParam("sketches") MultipartFile[] files,
+            @RequestParam(value = "top", defaultValue = "10") int top,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        List<InputStream> sketches = new ArrayList<>();
+        try {
+            Set<String> selected = analysisResponseConverter.parseFields(fields);
+            if (top < 0) {
+                return createErrorResponse("top must not be negative", HttpStatus.BAD_REQUEST);
+            }
+            for (MultipartFile file : files) {
+                sketches.add(file.getInputStream());
+            }
+            return AnalysisResponse.ok(chatAnalyzerService.mergeSketches(sketches, top), selected, acceptEncoding);
+
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid sketch merge request: {}", e.getMessage());
+            return createErrorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            log.error("Error merging sketches", e);
+            return createErrorResponse("Error merging sketches: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (Exception e) {
+            log.error("Unexpected error merging sketches", e);
+            return createErrorResponse("An unexpected error occurred", HttpStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            for (InputStream sketch : sketches) {
+                try {
+                    sketch.close();
+                } catch (IOException e) {
+                    log.warn("Could not close sketch upload", e);
+                }
+            }
+        }
+    }
+
     @GetMapping("/health")
     public ResponseEntity<Map<String, String>> health() {
         Map<String, String> response = new HashMap<>();
@@ -149,6 +330,71 @@ public class ChatAnalyzerController {
         return ResponseEntity.ok(response);
     }
 
+    // Uploads are digested as uploaded, in a first streaming pass so repeats
+    // skip parsing; compressed uploads are only decompressed to be parsed,
+    // and are keyed apart from plain text with the same bytes
+    private ChatAnalysis analyzeUpload(MultipartFile file, StopWords stopWords, AnalysisMode mode) throws IOException {
+        String digest;
+        long start = System.nanoTime();
+        try (InputStream upload = file.getInputStream()) {
+            digest = ContentDigest.of(upload);
+        }
+        analysisMetrics.recordSince(AnalysisMetrics.Stage.DIGEST, start);
+        String format = ChatUploadService.format(file.getOriginalFilename());
+        if (!"txt".equals(format)) {
+            digest += ":" + format;
+        }
+        
+        return analysisCache.get(cacheKey(digest, stopWords, mode), () -> {
+            try (InputStream content = chatUploadService.open(file)) {
+                return chatAnalyzerService.analyzeChat(content, stopWords, AnalysisProgress.NONE, mode);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read uploaded file", e);
+            }
+        });
+    }
+
+    // Once lines were sent, the client can only tell from the missing ones
+    private ResponseEntity<?> batchErrorResponse(HttpServletResponse response, String message) {
+        if (response.isCommitted()) {
+            return null;
+        }
+        response.reset();
+        return createErrorResponse(message, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    // Flushed at once, so clients see each chat as it finishes
+    private static void writeLine(ObjectWriter lines, OutputStream out, Object line) {
+        try {
+            lines.writeValue(out, line);
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write batch result", e);
+        }
+    }
+
+    private ChatAnalysis analyzeText(String content, StopWords stopWords, AnalysisMode mode) {
+        long start = System.nanoTime();
+        String digest = ContentDigest.of(content);
+        analysisMetrics.recordSince(AnalysisMetrics.Stage.DIGEST, start);
+        
+        return analysisCache.get(cacheKey(digest, stopWords, mode),
+            () -> chatAnalyzerService.analyzeChat(content, stopWords, mode));
+    }
+
+    // Top words depend on the stop words and mode, so results are cached per
+    // language set and approximate results apart from exact ones. Exact
+    // results counted by the Python workers are kept apart too, so that
+    // turning the pool on or off never serves the other analyzer's counts
+    private String cacheKey(String digest, StopWords stopWords, AnalysisMode mode) {
+        String key = digest + ":" + String.join(",", stopWords.getLanguages());
+        if (mode != AnalysisMode.EXACT) {
+            return key + ":" + mode.name().toLowerCase();
+        }
+        return pythonAnalysisService.usesWorkers() ? key + ":python" : key;
+    }
+
     private ResponseEntity<Map<String, String>> createErrorResponse(String message, HttpStatus status) {
         Map<String, String> errorResponse = new HashMap<>();
         errorResponse.put("error", message);
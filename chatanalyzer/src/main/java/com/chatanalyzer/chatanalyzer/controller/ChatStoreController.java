@@ -0,0 +1,242 @@
+package com.chatanalyzer.chatanalyzer.controller;
+
+import com.chatanalyzer.chatanalyzer.config.AnalysisResponseConverter;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.model.ChatStats;
+import com.chatanalyzer.chatanalyzer.model.Granularity;
+import com.chatanalyzer.chatanalyzer.model.SearchResults;
+import com.chatanalyzer.chatanalyzer.service.ChatAnalyzerService;
+import com.chatanalyzer.chatanalyzer.service.ChatUploadService;
+import com.chatanalyzer.chatanalyzer.service.ChatIndexService;
+import com.chatanalyzer.chatanalyzer.service.ChatNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Stored chats: parsed once on upload, then queried by ID
+@RestController
+@RequestMapping("/api/chats")
+@CrossOrigin(origins = "*")
+public class ChatStoreController {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatStoreController.class);
+
+    @Autowired
+    private ChatIndexService chatIndexService;
+
+    @Autowired
+    private ChatAnalyzerService chatAnalyzerService;
+
+    @Autowired
+    private ChatUploadService chatUploadService;
+
+    @Autowired
+    private AnalysisResponseConverter analysisResponseConverter;
+
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+
+    @Value("${chat.upload.max-size:256MB}")
+    private DataSize maxUploadSize;
+
+    @PostMapping(consumes = "multipart/form-data")
+    public ResponseEntity<?> storeChat(@RequestParam("chatFile") MultipartFile file) {
+        try {
+            if (file.isEmpty()) {
+                return createErrorResponse("File is empty", HttpStatus.BAD_REQUEST);
+            }
+
+            String originalFilename = file.getOriginalFilename();
+            if (!ChatUploadService.isSupported(originalFilename)) {
+                return createErrorResponse("Only .txt, .zip and .gz files are allowed", HttpStatus.BAD_REQUEST);
+            }
+
+            if (file.getSize() > maxUploadSize.toBytes()) {
+                return createErrorResponse("File size exceeds " + maxUploadSize.toMegabytes() + "MB limit", HttpStatus.BAD_REQUEST);
+            }
+
+            String chatId;
+            try (InputStream content = chatUploadService.open(file)) {
+                chatId = chatIndexService.createIndex(content);
+            }
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("chatId", chatId);
+            response.put("totalMessages", chatIndexService.getIndex(chatId).size());
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid store request: {}", e.getMessage());
+            return createErrorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            log.error("Error storing chat", e);
+            return createErrorResponse("Error storing chat: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (Exception e) {
+            log.error("Unexpected error storing chat", e);
+            return createErrorResponse("An unexpected error occurred", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Adds the messages of a newer export of a stored chat
+    @PostMapping(value = "/{chatId}/append", consumes = "multipart/form-data")
+    public ResponseEntity<?> appendChat(@PathVariable String chatId, @RequestParam("chatFile") MultipartFile file) {
+        try {
+            if (file.isEmpty()) {
+                return createErrorResponse("File is empty", HttpStatus.BAD_REQUEST);
+            }
+
+            String originalFilename = file.getOriginalFilename();
+            if (!ChatUploadService.isSupported(originalFilename)) {
+                return createErrorResponse("Only .txt, .zip and .gz files are allowed", HttpStatus.BAD_REQUEST);
+            }
+
+            if (file.getSize() > maxUploadSize.toBytes()) {
+                return createErrorResponse("File size exceeds " + maxUploadSize.toMegabytes() + "MB limit", HttpStatus.BAD_REQUEST);
+            }
+
+            int appended;
+            try (InputStream content = chatUploadService.open(file)) {
+                appended = chatIndexService.append(chatId, content);
+            }
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("chatId", chatId);
+            response.put("appendedMessages", appended);
+            response.put("totalMessages", chatIndexService.getIndex(chatId).size());
+            return ResponseEntity.ok(response);
+
+        } catch (ChatNotFoundException e) {
+            return createErrorResponse(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid append request: {}", e.getMessage());
+            return createErrorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            log.error("Error appending to chat", e);
+            return createErrorResponse("Error appending to chat: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (Exception e) {
+            log.error("Unexpected error appending to chat", e);
+            return createErrorResponse("An unexpected error occurred", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @GetMapping("/{chatId}/analysis")
+    public ResponseEntity<?> analyzeChat(
+            @PathVariable String chatId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "author", required = false) String author,
+            @RequestParam(value = "top", defaultValue = "10") int top,
+            @RequestParam(value = "stopWords", required = false) String stopWords,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        try {
+            Set<String> selected = analysisResponseConverter.parseFields(fields);
+            if (top < 0) {
+                return createErrorResponse("top must not be negative", HttpStatus.BAD_REQUEST);
+            }
+            if (from != null && to != null && from.isAfter(to)) {
+                return createErrorResponse("from must not be after to", HttpStatus.BAD_REQUEST);
+            }
+
+            ChatAnalysis analysis = chatIndexService.analyze(chatId, from, to, author, top,
+                chatAnalyzerService.stopWords(stopWords));
+            return AnalysisResponse.ok(analysis, selected, acceptEncoding);
+
+        } catch (ChatNotFoundException e) {
+            return createErrorResponse(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid analysis request: {}", e.getMessage());
+            return createErrorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            log.error("Error analyzing stored chat", e);
+            return createErrorResponse("Error analyzing chat: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Counts over a date range, served from the per-day rollup
+    @GetMapping("/{chatId}/stats")
+    public ResponseEntity<?> chatStats(
+            @PathVariable String chatId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "author", required = false) String author,
+            @RequestParam(value = "granularity", defaultValue = "day") String granularity) {
+
+        try {
+            if (from != null && to != null && from.isAfter(to)) {
+                return createErrorResponse("from must not be after to", HttpStatus.BAD_REQUEST);
+            }
+
+            ChatStats stats = chatIndexService.stats(chatId, from, to, author, Granularity.fromString(granularity));
+            return ResponseEntity.ok(stats);
+
+        } catch (ChatNotFoundException e) {
+            return createErrorResponse(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid stats request: {}", e.getMessage());
+            return createErrorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            log.error("Error computing chat stats", e);
+            return createErrorResponse("Error computing chat stats: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Messages containing all terms and "quoted phrases" of q, a page at a time
+    @GetMapping("/{chatId}/search")
+    public ResponseEntity<?> searchChat(
+            @PathVariable String chatId,
+            @RequestParam("q") String query,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "author", required = false) String author,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "20") int size) {
+
+        try {
+            if (page < 0) {
+                return createErrorResponse("page must not be negative", HttpStatus.BAD_REQUEST);
+            }
+            if (size < 1 || size > MAX_SEARCH_PAGE_SIZE) {
+                return createErrorResponse("size must be between 1 and " + MAX_SEARCH_PAGE_SIZE,
+                    HttpStatus.BAD_REQUEST);
+            }
+            if (from != null && to != null && from.isAfter(to)) {
+                return createErrorResponse("from must not be after to", HttpStatus.BAD_REQUEST);
+            }
+
+            SearchResults results = chatIndexService.search(chatId, query, from, to, author, page, size);
+            return ResponseEntity.ok(results);
+
+        } catch (ChatNotFoundException e) {
+            return createErrorResponse(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid search request: {}", e.getMessage());
+            return createErrorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            log.error("Error searching chat", e);
+            return createErrorResponse("Error searching chat: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private ResponseEntity<Map<String, String>> createErrorResponse(String message, HttpStatus status) {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("error", message);
+        errorResponse.put("status", status.toString());
+        errorResponse.put("timestamp", java.time.Instant.now().toString());
+        return ResponseEntity.status(status).body(errorResponse);
+    }
+}
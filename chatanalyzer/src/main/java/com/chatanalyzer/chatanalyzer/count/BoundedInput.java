@@ -0,0 +1,54 @@
+package com.chatanalyzer.chatanalyzer.count;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serialized counts and sketches, read from bytes held in memory.
+ *
+ * <p>Sketches are uploaded by clients, so every length or count in them is
+ * checked against the bytes left before anything is allocated for it: a
+ * count of 2^31 entries in a sketch of a few bytes is rejected rather than
+ * tried. Checks fail with an {@link IOException}, as does input that ends
+ * early.
+ */
+public final class BoundedInput extends DataInputStream {
+
+    public BoundedInput(byte[] bytes) {
+        super(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Bytes not read yet, exactly, as they are all in memory.
+     */
+    public int remaining() throws IOException {
+        return available();
+    }
+
+    /**
+     * Reads a count of entries that take at least {@code minBytes} each.
+     *
+     * @param max a hard cap on the count, whatever is left
+     * @param what what is counted, for the error message
+     * @throws IOException if the count is negative, over {@code max} or
+     *         more than the bytes left could hold
+     */
+    public int readCount(int max, int minBytes, String what) throws IOException {
+        int count = readInt();
+        if (count < 0 || count > max || (long) count * minBytes > remaining()) {
+            throw new IOException("Invalid " + what + " count " + count + " with " + remaining() + " bytes left");
+        }
+        return count;
+    }
+
+    /**
+     * Reads a string written as its UTF-8 length and bytes.
+     */
+    public String readString(String what) throws IOException {
+        byte[] bytes = new byte[readCount(Integer.MAX_VALUE, 1, what + " byte")];
+        readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
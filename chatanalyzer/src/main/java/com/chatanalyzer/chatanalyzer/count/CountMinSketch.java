@@ -0,0 +1,182 @@
+package com.chatanalyzer.chatanalyzer.count;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Approximate counts of any number of keys in {@code depth} rows of
+ * {@code width} counters.
+ *
+ * <p>A key is counted in one counter per row and estimated by the smallest
+ * of them, so estimates never fall below the true count. With {@code N}
+ * the total of all counts, an estimate exceeds the true count by more than
+ * {@code e / width * N} with probability at most {@code e^-depth}; the
+ * defaults of 4096 by 5 keep that under 0.07% of {@code N} with 99.3%
+ * confidence, in 160 KiB. Sketches of the same shape merge by adding their
+ * counters, with the same bound on the merged total. Not thread-safe.
+ */
+public final class CountMinSketch {
+
+    public static final int DEFAULT_WIDTH = 4096;
+    public static final int DEFAULT_DEPTH = 5;
+
+    private final int width;
+    private final int depth;
+    private final int mask;
+    private final long[] counters;
+    private long total;
+
+    public CountMinSketch() {
+        this(DEFAULT_WIDTH, DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param width counters per row, a power of two
+     * @param depth rows, each with its own hash
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width < 2 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("Count-Min width must be a power of two");
+        }
+        if (depth < 1 || (long) width * depth > 1 << 26) {
+            throw new IllegalArgumentException("Count-Min depth must be positive and the sketch at most 2^26 counters");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.mask = width - 1;
+        this.counters = new long[width * depth];
+    }
+
+    public void add(CharSequence text, int start, int end, long count) {
+        long hash = Hashing.hash64(text, start, end);
+        for (int row = 0; row < depth; row++) {
+            counters[row * width + column(hash, row)] += count;
+        }
+        total += count;
+    }
+
+    public void add(CharSequence key, long count) {
+        add(key, 0, key.length(), count);
+    }
+
+    /**
+     * An upper bound of the count of {@code text[start, end)}, exceeding it
+     * by at most {@link #errorBound()} with probability
+     * {@code 1 - }{@link #failureProbability()}.
+     */
+    public long estimate(CharSequence text, int start, int end) {
+        long hash = Hashing.hash64(text, start, end);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + column(hash, row)]);
+        }
+        return estimate;
+    }
+
+    public long estimate(CharSequence key) {
+        return estimate(key, 0, key.length());
+    }
+
+    /**
+     * Total of all counts added.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * The amount by which an estimate may exceed the true count,
+     * {@code ceil(e / width * total)}.
+     */
+    public long errorBound() {
+        return (long) Math.ceil(Math.E / width * total);
+    }
+
+    /**
+     * Probability that an estimate exceeds {@link #errorBound()}.
+     */
+    public double failureProbability() {
+        return Math.exp(-depth);
+    }
+
+    /**
+     * Adds the counts of {@code other}, which must have the same width and
+     * depth.
+     */
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Cannot merge Count-Min sketches of " + width + "x" + depth
+                + " and " + other.width + "x" + other.depth);
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        total += other.total;
+    }
+
+    /**
+     * Writes the sketch with each counter as a varint, so the many small or
+     * empty counters of a sketch over a short chat take a byte each.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(depth);
+        out.writeLong(total);
+        for (long counter : counters) {
+            writeVarLong(out, counter);
+        }
+    }
+
+    public static CountMinSketch readFrom(BoundedInput in) throws IOException {
+        int width = in.readInt();
+        int depth = in.readInt();
+        // At least a byte per counter, so a forged shape is never allocated
+        if ((long) width * depth > in.remaining()) {
+            throw new IOException("Invalid Count-Min sketch: " + width + " by " + depth + " counters with "
+                + in.remaining() + " bytes left");
+        }
+        CountMinSketch sketch;
+        try {
+            sketch = new CountMinSketch(width, depth);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid Count-Min sketch: " + e.getMessage());
+        }
+        sketch.total = in.readLong();
+        for (int i = 0; i < sketch.counters.length; i++) {
+            sketch.counters[i] = readVarLong(in);
+        }
+        return sketch;
+    }
+
+    // Each row remixes the hash, so two keys that share a column in one row
+    // are no more likely to share one in the next
+    private int column(long hash, int row) {
+        long h = hash + row * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xd6e8feb86659fd93L;
+        h ^= h >>> 32;
+        return (int) h & mask;
+    }
+
+    // Unsigned LEB128: seven bits per byte, low bits first
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in Count-Min sketch");
+    }
+}
@@ -0,0 +1,30 @@
+package com.chatanalyzer.chatanalyzer.count;
+
+/**
+ * 64-bit hashing of char slices for the sketches. The bits must be well
+ * mixed throughout: HyperLogLog reads its register from the top bits and
+ * the run of zeros from the rest.
+ */
+final class Hashing {
+
+    private Hashing() {}
+
+    /**
+     * FNV-1a over the chars of {@code text[start, end)}, finished with the
+     * MurmurHash3 64-bit mixer. Stable across JVMs, so serialized sketches
+     * can be merged with ones built elsewhere.
+     */
+    static long hash64(CharSequence text, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,124 @@
+package com.chatanalyzer.chatanalyzer.count;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Estimates the number of distinct keys in a fixed {@code 2^precision}
+ * bytes, however many keys are added.
+ *
+ * <p>The standard error of {@link #estimate()} is {@code 1.04 / sqrt(2^precision)},
+ * about 0.8% at the default precision of 14 (16 KiB). Small cardinalities
+ * are counted by linear counting, which is close to exact while most
+ * registers are still empty. Merging takes the register-wise maximum, so
+ * the estimate of merged sketches is that of a sketch fed all their keys.
+ * Not thread-safe.
+ */
+public final class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 14;
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between "
+                + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void add(CharSequence text, int start, int end) {
+        long hash = Hashing.hash64(text, start, end);
+        int register = (int) (hash >>> (64 - precision));
+        // Rank of the first one bit in the remaining bits; the sentinel bit
+        // bounds it when they are all zero
+        long rest = (hash << precision) | (1L << (precision - 1));
+        int rank = Long.numberOfLeadingZeros(rest) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    public void add(CharSequence key) {
+        add(key, 0, key.length());
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int empty = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) empty++;
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && empty > 0) {
+            estimate = m * Math.log((double) m / empty);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Standard error of {@link #estimate()} relative to the true count.
+     */
+    public double relativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Adds the keys of {@code other}, which must have the same precision.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge HyperLogLogs of precision "
+                + precision + " and " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(precision);
+        out.write(registers);
+    }
+
+    public static HyperLogLog readFrom(BoundedInput in) throws IOException {
+        HyperLogLog sketch;
+        try {
+            sketch = new HyperLogLog(in.readUnsignedByte());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid HyperLogLog: " + e.getMessage());
+        }
+        in.readFully(sketch.registers);
+        return sketch;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.chatanalyzer.chatanalyzer.count;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The most frequent keys of a stream, in a fixed number of counters
+ * (Metwally et al., Space-Saving).
+ *
+ * <p>Keys are tracked until all {@code capacity} counters are taken; a new
+ * key then replaces the key with the smallest count and inherits that
+ * count as its error. Counts therefore never fall below the true count,
+ * and exceed it by at most {@link #error(int)}, which is at most
+ * {@link #minCount()} and so at most {@code total / capacity}. Every key
+ * whose true count is above {@code total / capacity} is tracked.
+ *
+ * <p>Summaries merge as described by Agarwal et al. (Mergeable Summaries):
+ * a key missing from a full summary is assumed to have that summary's
+ * smallest count, the sums are taken, and the {@code capacity} largest are
+ * kept. The guarantees above hold for the merged total.
+ *
+ * <p>Tracked keys are found straight from a {@link CharSequence} slice, so
+ * counting one allocates nothing. Not thread-safe.
+ */
+public final class SpaceSaving {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+    private final String[] keys;
+    private final int[] hashes;
+    private final long[] counts;
+    private final long[] errors;
+    private int size;
+    private long total;
+
+    // Min-heap of ids by count, and the heap position of each id
+    private final int[] heap;
+    private final int[] heapIndex;
+
+    // Open-addressing index over the keys; slot values are id + 1
+    private final int[] slots;
+    private final int mask;
+
+    public SpaceSaving() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1 || capacity > 1 << 20) {
+            throw new IllegalArgumentException("Space-Saving capacity must be between 1 and 2^20");
+        }
+        this.capacity = capacity;
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        heap = new int[capacity];
+        heapIndex = new int[capacity];
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) * 2;
+        slots = new int[tableSize];
+        mask = tableSize - 1;
+    }
+
+    public void add(CharSequence text, int start, int end, long count) {
+        total += count;
+        int hash = (int) Hashing.hash64(text, start, end);
+        int slot = find(text, start, end, hash);
+        int id;
+        if (slots[slot] != 0) {
+            id = slots[slot] - 1;
+            counts[id] += count;
+        } else if (size < capacity) {
+            id = size++;
+            keys[id] = text.subSequence(start, end).toString();
+            hashes[id] = hash;
+            counts[id] = count;
+            errors[id] = 0;
+            slots[slot] = id + 1;
+            heap[id] = id;
+            heapIndex[id] = id;
+            siftUp(id);
+        } else {
+            // Evict the smallest count; the newcomer may have had that many
+            id = heap[0];
+            removeSlot(id);
+            keys[id] = text.subSequence(start, end).toString();
+            hashes[id] = hash;
+            errors[id] = counts[id];
+            counts[id] += count;
+            slots[find(text, start, end, hash)] = id + 1;
+        }
+        siftDown(heapIndex[id]);
+    }
+
+    public void add(CharSequence key, long count) {
+        add(key, 0, key.length(), count);
+    }
+
+    /**
+     * An upper bound of the count of {@code key}: its counter if it is
+     * tracked, otherwise {@link #minCount()}.
+     */
+    public long estimate(CharSequence key) {
+        int slot = find(key, 0, key.length(), (int) Hashing.hash64(key, 0, key.length()));
+        return slots[slot] != 0 ? counts[slots[slot] - 1] : minCount();
+    }
+
+    /**
+     * The largest count an untracked key can have: the smallest counter
+     * once all are taken, and 0 before.
+     */
+    public long minCount() {
+        return size == capacity ? counts[heap[0]] : 0;
+    }
+
+    /**
+     * Ids of the {@code limit} tracked keys with the highest counts, highest
+     * first, ties broken by key. Ids are valid until the next change.
+     */
+    public int[] top(int limit) {
+        Integer[] ids = new Integer[size];
+        for (int id = 0; id < size; id++) {
+            ids[id] = id;
+        }
+        Arrays.sort(ids, (a, b) -> counts[a] != counts[b]
+            ? Long.compare(counts[b], counts[a]) : keys[a].compareTo(keys[b]));
+        int[] top = new int[Math.max(0, Math.min(limit, size))];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = ids[i];
+        }
+        return top;
+    }
+
+    public String key(int id) {
+        return keys[id];
+    }
+
+    public long count(int id) {
+        return counts[id];
+    }
+
+    /**
+     * How much the count of a tracked key may exceed its true count.
+     */
+    public long error(int id) {
+        return errors[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Total of all counts added.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Folds in the keys of {@code other}, which must have the same capacity.
+     */
+    public void merge(SpaceSaving other) {
+        if (other.capacity != capacity) {
+            throw new IllegalArgumentException("Cannot merge Space-Saving summaries of capacity "
+                + capacity + " and " + other.capacity);
+        }
+        long missingHere = minCount();
+        long missingThere = other.minCount();
+
+        List<Entry> merged = new ArrayList<>(size + other.size);
+        for (int id = 0; id < size; id++) {
+            int there = other.indexOf(keys[id], hashes[id]);
+            merged.add(there >= 0
+                ? new Entry(keys[id], counts[id] + other.counts[there], errors[id] + other.errors[there])
+                : new Entry(keys[id], counts[id] + missingThere, errors[id] + missingThere));
+        }
+        for (int id = 0; id < other.size; id++) {
+            if (indexOf(other.keys[id], other.hashes[id]) < 0) {
+                merged.add(new Entry(other.keys[id], other.counts[id] + missingHere, other.errors[id] + missingHere));
+            }
+        }
+        merged.sort(Comparator.comparingLong((Entry entry) -> entry.count).reversed());
+
+        long mergedTotal = total + other.total;
+        clear();
+        for (int i = 0; i < Math.min(capacity, merged.size()); i++) {
+            Entry entry = merged.get(i);
+            put(entry.key, entry.count, entry.error);
+        }
+        total = mergedTotal;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(total);
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            byte[] key = keys[id].getBytes(StandardCharsets.UTF_8);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeLong(counts[id]);
+            out.writeLong(errors[id]);
+        }
+    }
+
+    public static SpaceSaving readFrom(BoundedInput in) throws IOException {
+        SpaceSaving summary;
+        try {
+            summary = new SpaceSaving(in.readInt());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid Space-Saving summary: " + e.getMessage());
+        }
+        long total = in.readLong();
+        // Each key has its length, count and error
+        int size = in.readCount(summary.capacity, 20, "Space-Saving key");
+        for (int i = 0; i < size; i++) {
+            try {
+                summary.put(in.readString("Space-Saving key"), in.readLong(), in.readLong());
+            } catch (IllegalStateException e) {
+                throw new IOException("Invalid Space-Saving summary: " + e.getMessage());
+            }
+        }
+        summary.total = total;
+        return summary;
+    }
+
+    // Adds a key known to be untracked while there is room
+    private void put(String key, long count, long error) {
+        int hash = (int) Hashing.hash64(key, 0, key.length());
+        int slot = find(key, 0, key.length(), hash);
+        if (slots[slot] != 0) {
+            throw new IllegalStateException("Duplicate key in Space-Saving summary: " + key);
+        }
+        int id = size++;
+        keys[id] = key;
+        hashes[id] = hash;
+        counts[id] = count;
+        errors[id] = error;
+        slots[slot] = id + 1;
+        heap[id] = id;
+        heapIndex[id] = id;
+        siftUp(id);
+    }
+
+    private void clear() {
+        Arrays.fill(slots, 0);
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+        total = 0;
+    }
+
+    private int indexOf(String key, int hash) {
+        int slot = find(key, 0, key.length(), hash);
+        return slots[slot] - 1;
+    }
+
+    // The slot holding the key, or the empty slot where it would go
+    private int find(CharSequence text, int start, int end, int hash) {
+        int slot = hash & mask;
+        for (int entry; (entry = slots[slot]) != 0; slot = (slot + 1) & mask) {
+            if (hashes[entry - 1] == hash && matches(keys[entry - 1], text, start, end)) {
+                break;
+            }
+        }
+        return slot;
+    }
+
+    // Deletes by shifting later entries of the probe run back into the hole
+    private void removeSlot(int id) {
+        int hole = hashes[id] & mask;
+        while (slots[hole] != id + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int next = (hole + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int home = hashes[slots[next] - 1] & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+        }
+        slots[hole] = 0;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[heap[i]]) break;
+            swap(parent, i);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) break;
+            int smallest = left + 1 < size && counts[heap[left + 1]] < counts[heap[left]] ? left + 1 : left;
+            if (counts[heap[i]] <= counts[heap[smallest]]) break;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+        heapIndex[heap[i]] = i;
+        heapIndex[heap[j]] = j;
+    }
+
+    private static boolean matches(String key, CharSequence text, int start, int end) {
+        if (key.length() != end - start) return false;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != text.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private static final class Entry {
+        final String key;
+        final long count;
+        final long error;
+
+        Entry(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
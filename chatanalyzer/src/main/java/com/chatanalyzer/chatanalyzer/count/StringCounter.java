@@ -0,0 +1,261 @@
+package com.chatanalyzer.chatanalyzer.count;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * String-to-int counts in an open-addressing hash table.
+ *
+ * <p>Keys are looked up straight from a {@link CharSequence} slice, so
+ * counting a key that was seen before allocates nothing; a {@code String}
+ * is only created the first time a key is added. Every key gets a dense id
+ * in insertion order, which makes the table an interner as well: the same
+ * slice always maps to the same id and the same {@code String} instance.
+ *
+ * <p>Counts live in an {@code int[]} indexed by id, so increments never
+ * box. Not thread-safe.
+ */
+public final class StringCounter {
+
+    // Slot values are id + 1; 0 marks an empty slot
+    private int[] slots;
+    private int mask;
+
+    private String[] keys;
+    private int[] hashes;
+    private int[] counts;
+    private int size;
+
+    public StringCounter() {
+        this(16);
+    }
+
+    public StringCounter(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedKeys) * 2 - 1) * 2;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        keys = new String[capacity / 2];
+        hashes = new int[capacity / 2];
+        counts = new int[capacity / 2];
+    }
+
+    /**
+     * Adds {@code delta} to the count of {@code text[start, end)}.
+     *
+     * @return the id of the key
+     */
+    public int add(CharSequence text, int start, int end, int delta) {
+        int id = intern(text, start, end);
+        counts[id] += delta;
+        return id;
+    }
+
+    public int add(CharSequence key, int delta) {
+        return add(key, 0, key.length(), delta);
+    }
+
+    /**
+     * Returns the id of {@code text[start, end)}, adding it with a count of
+     * 0 if it is new.
+     */
+    public int intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int slot = hash & mask;
+        for (int entry; (entry = slots[slot]) != 0; slot = (slot + 1) & mask) {
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(keys[id], text, start, end)) {
+                return id;
+            }
+        }
+        return insert(slot, text.subSequence(start, end).toString(), hash);
+    }
+
+    /**
+     * @return the id of {@code text[start, end)}, or -1 if it was never added
+     */
+    public int indexOf(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        for (int slot = hash & mask, entry; (entry = slots[slot]) != 0; slot = (slot + 1) & mask) {
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(keys[id], text, start, end)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(CharSequence text, int start, int end) {
+        return indexOf(text, start, end) >= 0;
+    }
+
+    /**
+     * @return the count of {@code key}, 0 if it was never added
+     */
+    public int get(CharSequence key) {
+        int id = indexOf(key, 0, key.length());
+        return id < 0 ? 0 : counts[id];
+    }
+
+    public void increment(int id, int delta) {
+        counts[id] += delta;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String key(int id) {
+        return keys[id];
+    }
+
+    public int count(int id) {
+        return counts[id];
+    }
+
+    /**
+     * Adds all counts of {@code other} to this table.
+     */
+    public void merge(StringCounter other) {
+        for (int i = 0; i < other.size; i++) {
+            String key = other.keys[i];
+            int hash = other.hashes[i];
+            int slot = hash & mask;
+            int id = -1;
+            for (int entry; (entry = slots[slot]) != 0; slot = (slot + 1) & mask) {
+                if (hashes[entry - 1] == hash && key.equals(keys[entry - 1])) {
+                    id = entry - 1;
+                    break;
+                }
+            }
+            if (id < 0) {
+                id = insert(slot, key, hash);
+            }
+            counts[id] += other.counts[i];
+        }
+    }
+
+    /**
+     * Ids of the {@code limit} keys with the highest counts, highest first,
+     * ties broken by key. Only keys with a positive count are considered.
+     * Runs in O(n log limit) with a bounded heap instead of sorting all keys.
+     */
+    public int[] top(int limit) {
+        if (limit <= 0) {
+            return new int[0];
+        }
+
+        // Min-heap on rank: the root is the weakest of the ids kept so far
+        int[] heap = new int[Math.min(limit, size)];
+        int heapSize = 0;
+        for (int id = 0; id < size; id++) {
+            if (counts[id] <= 0) continue;
+            if (heapSize < heap.length) {
+                heap[heapSize] = id;
+                siftUp(heap, heapSize++);
+            } else if (ranksAbove(id, heap[0])) {
+                heap[0] = id;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        int[] result = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+        }
+        return result;
+    }
+
+    /**
+     * Copies the counts into a map, e.g. for a response body.
+     */
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> map = new HashMap<>();
+        for (int id = 0; id < size; id++) {
+            if (counts[id] != 0) {
+                map.put(keys[id], counts[id]);
+            }
+        }
+        return map;
+    }
+
+    private int insert(int slot, String key, int hash) {
+        int id = size++;
+        if (id == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        keys[id] = key;
+        hashes[id] = hash;
+        counts[id] = 0;
+        slots[slot] = id + 1;
+
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = id + 1;
+        }
+    }
+
+    private boolean ranksAbove(int a, int b) {
+        if (counts[a] != counts[b]) return counts[a] > counts[b];
+        return keys[a].compareTo(keys[b]) < 0;
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!ranksAbove(heap[parent], heap[i])) break;
+            swap(heap, parent, i);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int heapSize) {
+        int i = 0;
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= heapSize) break;
+            int weakest = left + 1 < heapSize && ranksAbove(heap[left], heap[left + 1]) ? left + 1 : left;
+            if (!ranksAbove(heap[i], heap[weakest])) break;
+            swap(heap, i, weakest);
+            i = weakest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String key, CharSequence text, int start, int end) {
+        if (key.length() != end - start) return false;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != text.charAt(start + i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,213 @@
+package com.chatanalyzer.chatanalyzer.index;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only, memory-mapped view of a parsed chat.
+ *
+ * <p>File layout (big-endian): a {@value #HEADER_SIZE}-byte header with
+ * the message and author counts, the offset of each section and the
+ * generation of the file, followed by one column per field, in message
+ * order:
+ * <pre>
+ *   textEnds   long[n]   end of each message in the text blob
+ *   days       int[n]    epoch day
+ *   authorIds  int[n]    index into the author dictionary
+ *   words      int[n]    whitespace-separated tokens (0 for media)
+ *   minutes    short[n]  minute of day, -1 if unknown
+ *   flags      byte[n]   {@link #FLAG_MEDIA}
+ *   authors    (int length, UTF-8 bytes) per author, in first-seen order
+ *   text       UTF-8 message bodies, back to back
+ * </pre>
+ * Column reads use absolute positions only, so an instance can be shared
+ * between threads. A file is never changed once written: adding messages
+ * writes the next generation to a new file, and an instance stays valid
+ * for as long as it is referenced.
+ */
+public final class ChatIndex {
+
+    static final int MAGIC = 0x57434958; // "WCIX"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 96;
+    static final byte FLAG_MEDIA = 1;
+
+    private final MappedByteBuffer columns;
+    private final MappedByteBuffer text;
+    private final int count;
+    private final String[] authors;
+    private final Map<String, Integer> authorIds = new HashMap<>();
+    private final int textEndsOffset;
+    private final int daysOffset;
+    private final int authorIdsOffset;
+    private final int wordsOffset;
+    private final int minutesOffset;
+    private final int flagsOffset;
+    private final int minEpochDay;
+    private final int maxEpochDay;
+    private final int generation;
+
+    private ChatIndex(MappedByteBuffer columns, MappedByteBuffer text) {
+        this.columns = columns;
+        this.text = text;
+
+        count = columns.getInt(8);
+        authors = new String[columns.getInt(12)];
+        textEndsOffset = (int) columns.getLong(16);
+        daysOffset = (int) columns.getLong(24);
+        authorIdsOffset = (int) columns.getLong(32);
+        wordsOffset = (int) columns.getLong(40);
+        minutesOffset = (int) columns.getLong(48);
+        flagsOffset = (int) columns.getLong(56);
+        generation = columns.getInt(88);
+
+        int position = (int) columns.getLong(64);
+        for (int i = 0; i < authors.length; i++) {
+            byte[] name = new byte[columns.getInt(position)];
+            ByteBuffer slice = columns.duplicate();
+            slice.position(position + 4);
+            slice.get(name);
+            authors[i] = new String(name, StandardCharsets.UTF_8);
+            authorIds.put(authors[i], i);
+            position += 4 + name.length;
+        }
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int day = epochDay(i);
+            if (day == Integer.MIN_VALUE) continue;
+            min = Math.min(min, day);
+            max = Math.max(max, day);
+        }
+        minEpochDay = min;
+        maxEpochDay = max;
+    }
+
+    public static ChatIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) != -1) {
+                // Fill the header
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IllegalStateException("Not a chat index or unsupported version: " + file);
+            }
+            long textOffset = header.getLong(72);
+            long textLength = header.getLong(80);
+            if (textOffset > Integer.MAX_VALUE || textLength > Integer.MAX_VALUE) {
+                throw new IOException("Chat index is too large to map: " + file);
+            }
+            return new ChatIndex(
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, textOffset),
+                channel.map(FileChannel.MapMode.READ_ONLY, textOffset, textLength));
+        }
+    }
+
+    /**
+     * Number of times messages were added to the chat since it was first
+     * written, 0 for the first file.
+     */
+    public int generation() {
+        return generation;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int authorCount() {
+        return authors.length;
+    }
+
+    public String author(int authorId) {
+        return authors[authorId];
+    }
+
+    /**
+     * @return the dictionary id of the author, or -1 if they never wrote
+     */
+    public int authorId(String author) {
+        Integer id = authorIds.get(author);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Earliest epoch day in the chat, or {@code Integer.MAX_VALUE} if empty.
+     */
+    public int minEpochDay() {
+        return minEpochDay;
+    }
+
+    /**
+     * Latest epoch day in the chat, or {@code Integer.MIN_VALUE} if empty.
+     */
+    public int maxEpochDay() {
+        return maxEpochDay;
+    }
+
+    public int epochDay(int message) {
+        return columns.getInt(daysOffset + 4 * message);
+    }
+
+    public int authorIdAt(int message) {
+        return columns.getInt(authorIdsOffset + 4 * message);
+    }
+
+    public int wordCount(int message) {
+        return columns.getInt(wordsOffset + 4 * message);
+    }
+
+    public int minuteOfDay(int message) {
+        return columns.getShort(minutesOffset + 2 * message);
+    }
+
+    public boolean isMedia(int message) {
+        return (columns.get(flagsOffset + message) & FLAG_MEDIA) != 0;
+    }
+
+    /**
+     * Minutes since the epoch at which a message was written, as given by
+     * {@link com.chatanalyzer.chatanalyzer.parser.WhatsAppLineParser#epochMinute},
+     * or {@link Long#MIN_VALUE} if it has no date.
+     */
+    public long epochMinute(int message) {
+        int day = epochDay(message);
+        if (day == Integer.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        return day * 1440L + Math.max(0, minuteOfDay(message));
+    }
+
+    // End of a message in the text blob, for copying the index
+    long textEnd(int message) {
+        return columns.getLong(textEndsOffset + 8 * message);
+    }
+
+    long textLength() {
+        return text.capacity();
+    }
+
+    void writeText(OutputStream out) throws IOException {
+        Channels.newChannel(out).write(text.duplicate());
+    }
+
+    public String text(int message) {
+        int start = message == 0 ? 0 : (int) columns.getLong(textEndsOffset + 8 * (message - 1));
+        int end = (int) columns.getLong(textEndsOffset + 8 * message);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer slice = text.duplicate();
+        slice.position(start);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,200 @@
+package com.chatanalyzer.chatanalyzer.index;
+
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import com.chatanalyzer.chatanalyzer.service.TextStatistics;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes parsed messages to the columnar file read by {@link ChatIndex}.
+ *
+ * <p>Fixed-width columns are buffered as primitive arrays and the message
+ * text is spooled to a side file, so memory stays at a few bytes per
+ * message. {@link #finish()} assembles the file under a temporary name
+ * and moves it into place atomically. A writer started from an existing
+ * index writes its next generation, which goes to a new file, so the
+ * existing one is never replaced while it may still be mapped.
+ */
+public class ChatIndexWriter implements Closeable {
+
+    private final Path target;
+    private final int generation;
+    private final Path textFile;
+    private final OutputStream text;
+    private final Map<String, Integer> authorIds = new HashMap<>();
+    private final List<String> authors = new ArrayList<>();
+
+    private int count;
+    private long textLength;
+    private long[] textEnds = new long[1024];
+    private int[] days = new int[1024];
+    private int[] authorColumn = new int[1024];
+    private int[] words = new int[1024];
+    private short[] minutes = new short[1024];
+    private byte[] flags = new byte[1024];
+
+    public ChatIndexWriter(Path target) throws IOException {
+        this(target, 0);
+    }
+
+    private ChatIndexWriter(Path target, int generation) throws IOException {
+        this.target = target;
+        this.generation = generation;
+        this.textFile = target.resolveSibling(target.getFileName() + ".text");
+        this.text = new BufferedOutputStream(Files.newOutputStream(textFile), 64 * 1024);
+    }
+
+    /**
+     * Starts with the messages of {@code base}, so that messages added
+     * afterwards are appended to them. Authors keep their ids. The columns
+     * and text are copied as they are, without decoding any message. The
+     * result is the next generation of {@code base}, so {@code target}
+     * must be a file other than the one {@code base} was opened from.
+     */
+    public ChatIndexWriter(Path target, ChatIndex base) throws IOException {
+        this(target, base.generation() + 1);
+        try {
+            base.writeText(text);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        textLength = base.textLength();
+
+        for (int i = 0; i < base.authorCount(); i++) {
+            authors.add(base.author(i));
+            authorIds.put(base.author(i), i);
+        }
+        grow(base.size());
+        for (int i = 0; i < base.size(); i++) {
+            textEnds[i] = base.textEnd(i);
+            days[i] = base.epochDay(i);
+            authorColumn[i] = base.authorIdAt(i);
+            words[i] = base.wordCount(i);
+            minutes[i] = (short) base.minuteOfDay(i);
+            flags[i] = base.isMedia(i) ? ChatIndex.FLAG_MEDIA : 0;
+        }
+        count = base.size();
+    }
+
+    public void add(ChatMessage message) {
+        if (count == days.length) {
+            grow(count + 1);
+        }
+
+        byte[] bytes = message.getText() != null ? message.getText().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        try {
+            text.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write chat index", e);
+        }
+        textLength += bytes.length;
+
+        textEnds[count] = textLength;
+        days[count] = message.getDate() != null ? (int) message.getDate().toEpochDay() : Integer.MIN_VALUE;
+        authorColumn[count] = authorIds.computeIfAbsent(message.getAuthor(), author -> {
+            authors.add(author);
+            return authors.size() - 1;
+        });
+        words[count] = message.isMediaMessage() ? 0 : TextStatistics.countTokens(message.getText());
+        minutes[count] = (short) message.getMinuteOfDay();
+        flags[count] = message.isMediaMessage() ? ChatIndex.FLAG_MEDIA : 0;
+        count++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Writes the index file. The writer cannot be used afterwards.
+     *
+     * @throws FileAlreadyExistsException if the target file exists
+     */
+    public void finish() throws IOException {
+        text.close();
+        // Moving over it would replace a file that readers may have mapped
+        if (Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+
+        byte[][] authorBytes = new byte[authors.size()][];
+        long authorsLength = 0;
+        for (int i = 0; i < authorBytes.length; i++) {
+            authorBytes[i] = authors.get(i).getBytes(StandardCharsets.UTF_8);
+            authorsLength += 4 + authorBytes[i].length;
+        }
+
+        long textEndsOffset = ChatIndex.HEADER_SIZE;
+        long daysOffset = textEndsOffset + 8L * count;
+        long authorIdsOffset = daysOffset + 4L * count;
+        long wordsOffset = authorIdsOffset + 4L * count;
+        long minutesOffset = wordsOffset + 4L * count;
+        long flagsOffset = minutesOffset + 2L * count;
+        long authorsOffset = flagsOffset + count;
+        long textOffset = authorsOffset + authorsLength;
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            out.writeInt(ChatIndex.MAGIC);
+            out.writeInt(ChatIndex.VERSION);
+            out.writeInt(count);
+            out.writeInt(authors.size());
+            for (long offset : new long[] {textEndsOffset, daysOffset, authorIdsOffset, wordsOffset,
+                                           minutesOffset, flagsOffset, authorsOffset, textOffset, textLength}) {
+                out.writeLong(offset);
+            }
+            out.writeInt(generation);
+            for (int i = out.size(); i < ChatIndex.HEADER_SIZE; i++) {
+                out.writeByte(0);
+            }
+
+            for (int i = 0; i < count; i++) out.writeLong(textEnds[i]);
+            for (int i = 0; i < count; i++) out.writeInt(days[i]);
+            for (int i = 0; i < count; i++) out.writeInt(authorColumn[i]);
+            for (int i = 0; i < count; i++) out.writeInt(words[i]);
+            for (int i = 0; i < count; i++) out.writeShort(minutes[i]);
+            out.write(flags, 0, count);
+            for (byte[] author : authorBytes) {
+                out.writeInt(author.length);
+                out.write(author);
+            }
+            Files.copy(textFile, out);
+        }
+
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(textFile);
+    }
+
+    /**
+     * Discards the side file; a finished index is left in place.
+     */
+    @Override
+    public void close() throws IOException {
+        text.close();
+        Files.deleteIfExists(textFile);
+        Files.deleteIfExists(target.resolveSibling(target.getFileName() + ".tmp"));
+    }
+
+    private void grow(int minCapacity) {
+        if (minCapacity <= days.length) {
+            return;
+        }
+        int capacity = Math.max(days.length * 2, minCapacity);
+        textEnds = Arrays.copyOf(textEnds, capacity);
+        days = Arrays.copyOf(days, capacity);
+        authorColumn = Arrays.copyOf(authorColumn, capacity);
+        words = Arrays.copyOf(words, capacity);
+        minutes = Arrays.copyOf(minutes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+}
@@ -0,0 +1,219 @@
+package com.chatanalyzer.chatanalyzer.index;
+
+import java.util.Arrays;
+
+/**
+ * Per-day, per-author message, word and media counts of a {@link ChatIndex}.
+ *
+ * <p>Counts are stored day-major in compressed-row form: the cells of day
+ * {@code d} are {@code [dayStart[d - firstDay], dayStart[d - firstDay + 1])},
+ * one cell per author who wrote that day, in author id order. A date range
+ * query therefore reads only the cells of the days it covers, however many
+ * messages they hold. Messages without a date are not rolled up.
+ *
+ * <p>Each cell also counts its timed messages by quarter hour of the day,
+ * again in compressed-row form with only the quarters that have messages,
+ * and each day knows its first and last message, so that what does need
+ * the messages themselves reads only the ones of the days in range. If the
+ * chat is chronological, those are exactly the messages between the first
+ * of its first day and the last of its last day.
+ */
+public final class ChatRollup {
+
+    private final int firstDay;
+    private final int[] dayStart;
+    private final int[] cellAuthor;
+    private final int[] cellMessages;
+    private final int[] cellWords;
+    private final int[] cellMedia;
+    private final int[] quarterStart;
+    private final byte[] quarters;
+    private final int[] quarterMessages;
+    private final int[] dayFirstMessage;
+    private final int[] dayLastMessage;
+    private final boolean chronological;
+
+    private ChatRollup(int firstDay, int[] dayStart, int[] cellAuthor,
+                       int[] cellMessages, int[] cellWords, int[] cellMedia,
+                       int[] quarterStart, byte[] quarters, int[] quarterMessages,
+                       int[] dayFirstMessage, int[] dayLastMessage, boolean chronological) {
+        this.firstDay = firstDay;
+        this.dayStart = dayStart;
+        this.cellAuthor = cellAuthor;
+        this.cellMessages = cellMessages;
+        this.cellWords = cellWords;
+        this.cellMedia = cellMedia;
+        this.quarterStart = quarterStart;
+        this.quarters = quarters;
+        this.quarterMessages = quarterMessages;
+        this.dayFirstMessage = dayFirstMessage;
+        this.dayLastMessage = dayLastMessage;
+        this.chronological = chronological;
+    }
+
+    public static ChatRollup of(ChatIndex index) {
+        int firstDay = index.minEpochDay();
+        int dayCount = index.maxEpochDay() >= firstDay ? index.maxEpochDay() - firstDay + 1 : 0;
+        int authors = Math.max(1, index.authorCount());
+        if ((long) dayCount * authors > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Chat spans too many days to roll up");
+        }
+
+        // Sort (day, author) keys together with the message they came from,
+        // so that every cell is one run of equal keys
+        long[] keys = new long[index.size()];
+        int[] dayFirstMessage = new int[dayCount];
+        int[] dayLastMessage = new int[dayCount];
+        Arrays.fill(dayFirstMessage, -1);
+        Arrays.fill(dayLastMessage, -1);
+        int n = 0;
+        boolean chronological = true;
+        int lastDay = Integer.MIN_VALUE;
+        for (int i = 0; i < index.size(); i++) {
+            int day = index.epochDay(i);
+            chronological &= day != Integer.MIN_VALUE && day >= lastDay;
+            if (day == Integer.MIN_VALUE) continue;
+            lastDay = day;
+            long cell = (long) (day - firstDay) * authors + index.authorIdAt(i);
+            keys[n++] = cell << 32 | i;
+            if (dayFirstMessage[day - firstDay] < 0) {
+                dayFirstMessage[day - firstDay] = i;
+            }
+            dayLastMessage[day - firstDay] = i;
+        }
+        Arrays.sort(keys, 0, n);
+
+        int cells = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || keys[i] >>> 32 != keys[i - 1] >>> 32) cells++;
+        }
+
+        int[] dayStart = new int[dayCount + 1];
+        int[] cellAuthor = new int[cells];
+        int[] cellMessages = new int[cells];
+        int[] cellWords = new int[cells];
+        int[] cellMedia = new int[cells];
+        int[] quarterStart = new int[cells + 1];
+        // At most one quarter per message; trimmed once filled
+        byte[] quarters = new byte[n];
+        int[] quarterMessages = new int[n];
+        int[] cellQuarters = new int[96];
+        int used = 0;
+
+        int cell = -1;
+        for (int i = 0; i < n; i++) {
+            long key = keys[i] >>> 32;
+            int message = (int) keys[i];
+            if (i == 0 || key != keys[i - 1] >>> 32) {
+                cell++;
+                cellAuthor[cell] = (int) (key % authors);
+                dayStart[(int) (key / authors) + 1]++;
+            }
+            cellMessages[cell]++;
+            if (index.isMedia(message)) {
+                cellMedia[cell]++;
+            } else {
+                cellWords[cell] += index.wordCount(message);
+            }
+            int minute = index.minuteOfDay(message);
+            if (minute >= 0) {
+                cellQuarters[minute / 15]++;
+            }
+            if (i == n - 1 || key != keys[i + 1] >>> 32) {
+                for (int quarter = 0; quarter < 96; quarter++) {
+                    if (cellQuarters[quarter] > 0) {
+                        quarters[used] = (byte) quarter;
+                        quarterMessages[used++] = cellQuarters[quarter];
+                        cellQuarters[quarter] = 0;
+                    }
+                }
+                quarterStart[cell + 1] = used;
+            }
+        }
+        for (int d = 0; d < dayCount; d++) {
+            dayStart[d + 1] += dayStart[d];
+        }
+
+        return new ChatRollup(firstDay, dayStart, cellAuthor, cellMessages, cellWords, cellMedia,
+            quarterStart, Arrays.copyOf(quarters, used), Arrays.copyOf(quarterMessages, used),
+            dayFirstMessage, dayLastMessage, chronological);
+    }
+
+    /**
+     * First epoch day covered, meaningless if {@link #dayCount()} is 0.
+     */
+    public int firstDay() {
+        return firstDay;
+    }
+
+    public int dayCount() {
+        return dayStart.length - 1;
+    }
+
+    /**
+     * First cell of {@code epochDay}; the cells of a day range
+     * {@code [from, to]} are {@code [cellStart(from), cellStart(to + 1))}.
+     */
+    public int cellStart(int epochDay) {
+        return dayStart[epochDay - firstDay];
+    }
+
+    public int cellAuthor(int cell) {
+        return cellAuthor[cell];
+    }
+
+    public int cellMessages(int cell) {
+        return cellMessages[cell];
+    }
+
+    public int cellWords(int cell) {
+        return cellWords[cell];
+    }
+
+    public int cellMedia(int cell) {
+        return cellMedia[cell];
+    }
+
+    /**
+     * First quarter-hour entry of {@code cell}; its entries are
+     * {@code [quarterStart(cell), quarterStart(cell + 1))}.
+     */
+    public int quarterStart(int cell) {
+        return quarterStart[cell];
+    }
+
+    /**
+     * Quarter hour of the day of an entry, from 0 to 95.
+     */
+    public int quarterOfDay(int entry) {
+        return quarters[entry];
+    }
+
+    public int quarterMessages(int entry) {
+        return quarterMessages[entry];
+    }
+
+    /**
+     * Ordinal of the first message of {@code epochDay}, or -1 if there is
+     * none.
+     */
+    public int firstMessage(int epochDay) {
+        return dayFirstMessage[epochDay - firstDay];
+    }
+
+    /**
+     * Ordinal of the last message of {@code epochDay}, or -1 if there is
+     * none.
+     */
+    public int lastMessage(int epochDay) {
+        return dayLastMessage[epochDay - firstDay];
+    }
+
+    /**
+     * Whether every message has a date and none is dated before the one
+     * preceding it.
+     */
+    public boolean isChronological() {
+        return chronological;
+    }
+}
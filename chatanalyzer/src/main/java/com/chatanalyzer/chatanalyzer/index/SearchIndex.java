@@ -0,0 +1,340 @@
+package com.chatanalyzer.chatanalyzer.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only, memory-mapped inverted index of a stored chat, from each word
+ * or emoji to the messages containing it, by ordinal in the
+ * {@link ChatIndex}.
+ *
+ * <p>File layout (big-endian): a {@value #HEADER_SIZE}-byte header with
+ * the message and term counts and the offset of the dictionary, then the
+ * postings of each term, then the dictionary:
+ * <pre>
+ *   postings    per term: its messages, its positions in them, its skips
+ *     messages    per message, varint (ordinal delta &lt;&lt; 1 | 1) if the term
+ *                 occurs once in it, else varint (delta &lt;&lt; 1) and the
+ *                 varint count; the first delta is the ordinal plus one
+ *     positions   per message, token position deltas as varints, from 0;
+ *                 punctuation that ends a clause takes up a position, so
+ *                 words on either side of it are never next to each other
+ *     skips       after every {@value #SKIP_INTERVAL} messages, int last
+ *                 message, int end in messages, int end in positions
+ *   dictionary  per term, in term order: (short length, UTF-8 bytes),
+ *               int messages, int last message, long postings offset,
+ *               int messages length, int positions length
+ * </pre>
+ * Varints are unsigned LEB128. A term has one skip per full interval of
+ * its messages, which lets cursors jump over whole intervals without
+ * decoding them. The dictionary is read into memory on opening; postings
+ * are decoded from the mapping as queries walk them, so an instance can be
+ * shared between threads.
+ */
+public final class SearchIndex {
+
+    static final int MAGIC = 0x57435349; // "WCSI"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    static final int MAX_TERM_LENGTH = 255;
+    static final int SKIP_INTERVAL = 128;
+    static final int SKIP_SIZE = 12;
+
+    private final MappedByteBuffer data;
+    private final int messages;
+    private final String[] terms;
+    private final Map<String, Integer> termIds;
+    private final int[] docFreq;
+    private final int[] lastDoc;
+    private final int[] offsets;
+    private final int[] docsLength;
+    private final int[] positionsLength;
+
+    private SearchIndex(MappedByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Not a search index or unsupported version");
+        }
+        messages = data.getInt(8);
+        int count = data.getInt(12);
+        terms = new String[count];
+        termIds = new HashMap<>(count * 2);
+        docFreq = new int[count];
+        lastDoc = new int[count];
+        offsets = new int[count];
+        docsLength = new int[count];
+        positionsLength = new int[count];
+
+        ByteBuffer dictionary = data.duplicate();
+        dictionary.position((int) data.getLong(16));
+        byte[] term = new byte[MAX_TERM_LENGTH * 3];
+        for (int i = 0; i < count; i++) {
+            int length = dictionary.getShort();
+            dictionary.get(term, 0, length);
+            terms[i] = new String(term, 0, length, StandardCharsets.UTF_8);
+            termIds.put(terms[i], i);
+            docFreq[i] = dictionary.getInt();
+            lastDoc[i] = dictionary.getInt();
+            offsets[i] = (int) dictionary.getLong();
+            docsLength[i] = dictionary.getInt();
+            positionsLength[i] = dictionary.getInt();
+        }
+    }
+
+    public static SearchIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Search index is too large to map: " + file);
+            }
+            return new SearchIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Messages indexed, media included; the index is current for a
+     * {@link ChatIndex} of this size.
+     */
+    public int messageCount() {
+        return messages;
+    }
+
+    /**
+     * Messages containing {@code term}, 0 if it never occurs.
+     */
+    public int docFreq(String term) {
+        Integer id = termIds.get(term);
+        return id != null ? docFreq[id] : 0;
+    }
+
+    /**
+     * A cursor over the messages containing {@code term}, or {@code null}
+     * if it never occurs.
+     */
+    public Postings postings(String term) {
+        Integer id = termIds.get(term);
+        return id != null
+            ? new Postings(data, offsets[id], docsLength[id], positionsLength[id], docFreq[id] / SKIP_INTERVAL)
+            : null;
+    }
+
+    int termCount() {
+        return terms.length;
+    }
+
+    String term(int id) {
+        return terms[id];
+    }
+
+    int docFreq(int id) {
+        return docFreq[id];
+    }
+
+    int lastDoc(int id) {
+        return lastDoc[id];
+    }
+
+    byte[] copyDocs(int id) {
+        return copy(offsets[id], docsLength[id]);
+    }
+
+    byte[] copyPositions(int id) {
+        return copy(offsets[id] + docsLength[id], positionsLength[id]);
+    }
+
+    int[] copySkips(int id) {
+        int[] skips = new int[docFreq[id] / SKIP_INTERVAL * 3];
+        int offset = offsets[id] + docsLength[id] + positionsLength[id];
+        for (int i = 0; i < skips.length; i++) {
+            skips[i] = data.getInt(offset + 4 * i);
+        }
+        return skips;
+    }
+
+    private byte[] copy(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = data.duplicate();
+        slice.position(offset);
+        slice.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Walks the postings of a term in message order. Not thread-safe.
+     */
+    public static final class Postings {
+
+        private final ByteBuffer data;
+        private final int docsStart;
+        private final int docsEnd;
+        private final int skipsStart;
+        private final int skips;
+        private int docsPosition;
+        private int positionsPosition;
+        private int doc = -1;
+        private int freq;
+        // Messages moved over, the current one included
+        private int read;
+        // Positions of the current message not read yet, and positions of
+        // earlier messages not skipped yet; positions are only walked when
+        // they are asked for
+        private int unread;
+        private int unskipped;
+        // Skip entry ahead of the current message, and the last message of
+        // its interval
+        private int interval = -1;
+        private int intervalEnd;
+
+        private Postings(ByteBuffer data, int offset, int docsLength, int positionsLength, int skips) {
+            this.data = data;
+            this.docsStart = offset;
+            this.docsPosition = offset;
+            this.docsEnd = offset + docsLength;
+            this.positionsPosition = docsEnd;
+            this.skipsStart = docsEnd + positionsLength;
+            this.skips = skips;
+        }
+
+        /**
+         * The current message, -1 before the first call to {@link #next}.
+         */
+        public int doc() {
+            return doc;
+        }
+
+        /**
+         * Occurrences of the term in the current message.
+         */
+        public int freq() {
+            return freq;
+        }
+
+        /**
+         * Messages of the term before the current one; all of them once
+         * there is none left.
+         */
+        public int rank() {
+            return doc == Integer.MAX_VALUE ? read : read - 1;
+        }
+
+        /**
+         * Moves to the next message.
+         *
+         * @return false if there is none
+         */
+        public boolean next() {
+            if (docsPosition >= docsEnd) {
+                doc = Integer.MAX_VALUE;
+                return false;
+            }
+            int delta = readVarint(true);
+            doc += delta >>> 1;
+            freq = (delta & 1) != 0 ? 1 : readVarint(true);
+            unskipped += unread;
+            unread = freq;
+            read++;
+            return true;
+        }
+
+        /**
+         * Moves to the first message at or after {@code target}, jumping
+         * over the intervals of messages that all come before it.
+         *
+         * @return false if there is none
+         */
+        public boolean advance(int target) {
+            if (doc >= target) {
+                return doc != Integer.MAX_VALUE;
+            }
+            skipTo(target);
+            while (doc < target) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Token positions of the term in the current message, ascending;
+         * only valid before moving on.
+         *
+         * @return the number of positions written to {@code into}, which
+         *         must hold {@link #freq()} of them
+         */
+        public int positions(int[] into) {
+            for (; unskipped > 0; unskipped--) {
+                while (data.get(positionsPosition++) < 0) {
+                    // Continuation bytes
+                }
+            }
+            int position = 0;
+            for (int i = 0; i < unread; i++) {
+                position += readVarint(false);
+                into[i] = position;
+            }
+            int count = unread;
+            unread = 0;
+            return count;
+        }
+
+        // Moves to the end of the last interval whose messages all come
+        // before target, if it is ahead
+        private void skipTo(int target) {
+            int low = read / SKIP_INTERVAL;
+            if (low != interval) {
+                interval = low;
+                intervalEnd = low < skips ? data.getInt(skipsStart + low * SKIP_SIZE) : Integer.MAX_VALUE;
+            }
+            if (intervalEnd >= target) {
+                // Target is in the current interval
+                return;
+            }
+            int high = skips - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (data.getInt(skipsStart + middle * SKIP_SIZE) < target) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (found < 0) {
+                return;
+            }
+            int skip = skipsStart + found * SKIP_SIZE;
+            doc = data.getInt(skip);
+            docsPosition = docsStart + data.getInt(skip + 4);
+            positionsPosition = docsEnd + data.getInt(skip + 8);
+            read = (found + 1) * SKIP_INTERVAL;
+            unread = 0;
+            unskipped = 0;
+        }
+
+        private int readVarint(boolean docs) {
+            int position = docs ? docsPosition : positionsPosition;
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data.get(position++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            if (docs) {
+                docsPosition = position;
+            } else {
+                positionsPosition = position;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.chatanalyzer.chatanalyzer.index;
+
+import com.chatanalyzer.chatanalyzer.count.StringCounter;
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import com.chatanalyzer.chatanalyzer.text.TokenScanner;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Writes the inverted index read by {@link SearchIndex}, fed the same
+ * messages in the same order as the {@link ChatIndexWriter} of the chat,
+ * so that postings refer to its message ordinals.
+ *
+ * <p>Messages are split into words and emojis by {@link TokenScanner}, as
+ * for top words; the punctuation that ends a phrase for top phrases leaves
+ * a gap in token positions, so phrase queries stop at it too. Postings are
+ * encoded as messages are added, into a growing byte array per term, so
+ * memory stays close to the size of the finished index; terms are interned
+ * without allocating while they repeat.
+ */
+public class SearchIndexWriter {
+
+    private final TokenScanner scanner = new TokenScanner();
+    private final StringCounter terms = new StringCounter(1 << 12);
+    private final TokenScanner.TokenSink sink = new TokenScanner.TokenSink() {
+        @Override
+        public void word(CharSequence word, int start, int end) {
+            token(word, start, end);
+        }
+
+        @Override
+        public void emoji(CharSequence text, int start, int end) {
+            token(text, start, end);
+        }
+
+        @Override
+        public void boundary() {
+            // One gap is enough, however much punctuation there is
+            if (tokenCount > 0 && tokens[tokenCount - 1] != BREAK) {
+                append(BREAK);
+            }
+        }
+    };
+
+    // Token position left unused at a phrase break
+    private static final int BREAK = -1;
+
+    private int messages;
+
+    // By term id: encoded postings, messages containing the term and the
+    // last of them
+    private byte[][] docs = new byte[1024][];
+    private int[] docsLength = new int[1024];
+    private byte[][] positions = new byte[1024][];
+    private int[] positionsLength = new int[1024];
+    private int[] docFreq = new int[1024];
+    private int[] lastDoc = new int[1024];
+    // Skip entries, three ints each, see SearchIndex
+    private int[][] skips = new int[1024][];
+
+    // Tokens of the message being added, by position, and per term its
+    // count and last position in it
+    private int[] tokens = new int[256];
+    private int tokenCount;
+    private int[] messageFreq = new int[1024];
+    private int[] lastPosition = new int[1024];
+    private int[] touched = new int[256];
+
+    public SearchIndexWriter() {
+    }
+
+    /**
+     * Starts with the postings of {@code base}, so that messages added
+     * afterwards follow its messages.
+     */
+    public SearchIndexWriter(SearchIndex base) {
+        for (int i = 0; i < base.termCount(); i++) {
+            String term = base.term(i);
+            int id = terms.intern(term, 0, term.length());
+            grow(id);
+            docs[id] = base.copyDocs(i);
+            docsLength[id] = docs[id].length;
+            positions[id] = base.copyPositions(i);
+            positionsLength[id] = positions[id].length;
+            docFreq[id] = base.docFreq(i);
+            lastDoc[id] = base.lastDoc(i);
+            skips[id] = base.copySkips(i);
+        }
+        messages = base.messageCount();
+    }
+
+    /**
+     * Indexes the next message. Media placeholders are not indexed, but
+     * take up their ordinal.
+     */
+    public void add(ChatMessage message) {
+        int doc = messages++;
+        if (message.isMediaMessage() || message.getText() == null) {
+            return;
+        }
+
+        tokenCount = 0;
+        scanner.scan(message.getText(), sink);
+
+        int distinct = 0;
+        for (int p = 0; p < tokenCount; p++) {
+            int id = tokens[p];
+            if (id == BREAK) continue;
+            if (messageFreq[id]++ == 0) {
+                if (distinct == touched.length) {
+                    touched = Arrays.copyOf(touched, distinct * 2);
+                }
+                touched[distinct++] = id;
+            }
+        }
+        for (int i = 0; i < distinct; i++) {
+            int id = touched[i];
+            // The first message is stored as its ordinal plus one; most
+            // terms occur once in a message, which is flagged in the delta
+            int delta = doc - (docFreq[id] == 0 ? -1 : lastDoc[id]);
+            if (messageFreq[id] == 1) {
+                writeVarint(id, true, delta << 1 | 1);
+            } else {
+                writeVarint(id, true, delta << 1);
+                writeVarint(id, true, messageFreq[id]);
+            }
+            docFreq[id]++;
+            lastDoc[id] = doc;
+            lastPosition[id] = 0;
+        }
+        for (int p = 0; p < tokenCount; p++) {
+            int id = tokens[p];
+            if (id == BREAK) continue;
+            writeVarint(id, false, p - lastPosition[id]);
+            lastPosition[id] = p;
+        }
+        for (int i = 0; i < distinct; i++) {
+            int id = touched[i];
+            messageFreq[id] = 0;
+            if (docFreq[id] % SearchIndex.SKIP_INTERVAL == 0) {
+                addSkip(id, doc);
+            }
+        }
+    }
+
+    public int getCount() {
+        return messages;
+    }
+
+    /**
+     * Writes the index file and moves it into place atomically. Readers may
+     * have a previous index mapped, so it is never replaced.
+     *
+     * @throws FileAlreadyExistsException if {@code target} exists
+     */
+    public void finish(Path target) throws IOException {
+        if (Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        int termCount = terms.size();
+        Integer[] order = new Integer[termCount];
+        for (int id = 0; id < termCount; id++) {
+            order[id] = id;
+        }
+        Arrays.sort(order, (a, b) -> terms.key(a).compareTo(terms.key(b)));
+
+        long dictionaryOffset = SearchIndex.HEADER_SIZE;
+        for (int id = 0; id < termCount; id++) {
+            dictionaryOffset += postingsLength(id);
+        }
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            out.writeInt(SearchIndex.MAGIC);
+            out.writeInt(SearchIndex.VERSION);
+            out.writeInt(messages);
+            out.writeInt(termCount);
+            out.writeLong(dictionaryOffset);
+            for (int i = out.size(); i < SearchIndex.HEADER_SIZE; i++) {
+                out.writeByte(0);
+            }
+
+            for (int id : order) {
+                out.write(docs[id], 0, docsLength[id]);
+                out.write(positions[id], 0, positionsLength[id]);
+                for (int i = 0; i < skipCount(id) * 3; i++) {
+                    out.writeInt(skips[id][i]);
+                }
+            }
+
+            long offset = SearchIndex.HEADER_SIZE;
+            for (int id : order) {
+                byte[] term = terms.key(id).getBytes(StandardCharsets.UTF_8);
+                out.writeShort(term.length);
+                out.write(term);
+                out.writeInt(docFreq[id]);
+                out.writeInt(lastDoc[id]);
+                out.writeLong(offset);
+                out.writeInt(docsLength[id]);
+                out.writeInt(positionsLength[id]);
+                offset += postingsLength(id);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void token(CharSequence text, int start, int end) {
+        // Terms longer than a dictionary entry allows are not searchable
+        if (end - start > SearchIndex.MAX_TERM_LENGTH) {
+            return;
+        }
+        int id = terms.intern(text, start, end);
+        grow(id);
+        append(id);
+    }
+
+    private void append(int id) {
+        if (tokenCount == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokenCount * 2);
+        }
+        tokens[tokenCount++] = id;
+    }
+
+    // After the interval of messages of the term that ends with doc
+    private void addSkip(int id, int doc) {
+        int used = (docFreq[id] / SearchIndex.SKIP_INTERVAL - 1) * 3;
+        if (skips[id] == null) {
+            skips[id] = new int[12];
+        } else if (used + 3 > skips[id].length) {
+            skips[id] = Arrays.copyOf(skips[id], Math.max(12, skips[id].length * 2));
+        }
+        skips[id][used] = doc;
+        skips[id][used + 1] = docsLength[id];
+        skips[id][used + 2] = positionsLength[id];
+    }
+
+    private int skipCount(int id) {
+        return docFreq[id] / SearchIndex.SKIP_INTERVAL;
+    }
+
+    private long postingsLength(int id) {
+        return docsLength[id] + positionsLength[id] + (long) skipCount(id) * SearchIndex.SKIP_SIZE;
+    }
+
+    // Unsigned LEB128: seven bits per byte, high bit set on all but the last
+    private void writeVarint(int id, boolean toDocs, int value) {
+        byte[] bytes = toDocs ? docs[id] : positions[id];
+        int length = toDocs ? docsLength[id] : positionsLength[id];
+        if (bytes == null) {
+            bytes = new byte[8];
+        } else if (length + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+        }
+        while ((value & ~0x7F) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+        if (toDocs) {
+            docs[id] = bytes;
+            docsLength[id] = length;
+        } else {
+            positions[id] = bytes;
+            positionsLength[id] = length;
+        }
+    }
+
+    private void grow(int id) {
+        if (id < docFreq.length) {
+            return;
+        }
+        int capacity = Math.max(docFreq.length * 2, id + 1);
+        docs = Arrays.copyOf(docs, capacity);
+        docsLength = Arrays.copyOf(docsLength, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        positionsLength = Arrays.copyOf(positionsLength, capacity);
+        docFreq = Arrays.copyOf(docFreq, capacity);
+        lastDoc = Arrays.copyOf(lastDoc, capacity);
+        skips = Arrays.copyOf(skips, capacity);
+        messageFreq = Arrays.copyOf(messageFreq, capacity);
+        lastPosition = Arrays.copyOf(lastPosition, capacity);
+    }
+}
@@ -0,0 +1,232 @@
+package com.chatanalyzer.chatanalyzer.index;
+
+import com.chatanalyzer.chatanalyzer.text.TokenScanner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * A search for messages containing all of some terms and quoted phrases,
+ * e.g. {@code pizza "see you tonight"}. The query is split into words and
+ * emojis like message text, so case does not matter; a phrase matches its
+ * words in a row, within a clause. Punctuation inside quotes that ends a
+ * clause splits the phrase in two, each of which must match.
+ */
+public final class SearchQuery {
+
+    static final int MAX_TOKENS = 32;
+
+    // Each a term or the words of a phrase
+    private final List<String[]> phrases;
+
+    private SearchQuery(List<String[]> phrases) {
+        this.phrases = phrases;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the query has nothing to search
+     *         for, or too many words
+     */
+    public static SearchQuery parse(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Query must not be empty");
+        }
+        List<String[]> phrases = new ArrayList<>();
+        TokenScanner scanner = new TokenScanner();
+        int tokens = 0;
+        // Text between quotes is a phrase, a quote left open runs to the end
+        String[] parts = query.split("\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            for (List<String> words : tokenize(scanner, parts[i])) {
+                tokens += words.size();
+                if (i % 2 == 1 && words.size() > 1) {
+                    phrases.add(words.toArray(new String[0]));
+                } else {
+                    words.forEach(word -> phrases.add(new String[] {word}));
+                }
+            }
+        }
+        if (phrases.isEmpty()) {
+            throw new IllegalArgumentException("Query has no words or emojis to search for");
+        }
+        if (tokens > MAX_TOKENS) {
+            throw new IllegalArgumentException("Query has more than " + MAX_TOKENS + " words");
+        }
+        return new SearchQuery(phrases);
+    }
+
+    /**
+     * Finds the matching messages among {@code [first, last]} that pass
+     * {@code filter}, in chat order. The postings of the rarest term lead,
+     * the others jumping over skips to its messages, and phrases are
+     * checked on the positions of their words in messages containing all
+     * of them. A single term without a filter is only walked for the page;
+     * its total is counted from the skips.
+     *
+     * @param last the last message in range, which may be past the end of
+     *        the index
+     * @param filter a further test of the messages in range, or
+     *        {@code null} if they all count
+     * @param skip matches to pass over before the page
+     * @param page receives the ordinals of the next {@code size} matches
+     * @return the number of matches
+     */
+    public int run(SearchIndex index, int first, int last, IntPredicate filter, long skip, int size,
+                   IntConsumer page) {
+        List<Cursor> cursors = new ArrayList<>();
+        List<Cursor[]> phraseCursors = new ArrayList<>();
+        for (String[] phrase : phrases) {
+            Cursor[] words = new Cursor[phrase.length];
+            for (int i = 0; i < phrase.length; i++) {
+                SearchIndex.Postings postings = index.postings(phrase[i]);
+                if (postings == null) {
+                    return 0;
+                }
+                words[i] = new Cursor(phrase[i], postings, index.docFreq(phrase[i]));
+                cursors.add(words[i]);
+            }
+            if (words.length > 1) {
+                phraseCursors.add(words);
+            }
+        }
+        // Exhausted postings are at Integer.MAX_VALUE, which must be past
+        // the range
+        last = Math.min(last, index.messageCount() - 1);
+        if (first > last) {
+            return 0;
+        }
+        if (cursors.size() == 1 && filter == null) {
+            return runTerm(index, cursors.get(0), first, last, skip, size, page);
+        }
+        // The rarest term leads, so most jumps are long
+        cursors.sort(Comparator.comparingInt(cursor -> cursor.docFreq));
+
+        SearchIndex.Postings lead = cursors.get(0).postings;
+        int matches = 0;
+        int doc = lead.advance(first) ? lead.doc() : Integer.MAX_VALUE;
+        candidates:
+        while (doc <= last) {
+            for (int i = 1; i < cursors.size(); i++) {
+                SearchIndex.Postings other = cursors.get(i).postings;
+                if (!other.advance(doc)) {
+                    return matches;
+                }
+                if (other.doc() > doc) {
+                    doc = lead.advance(other.doc()) ? lead.doc() : Integer.MAX_VALUE;
+                    continue candidates;
+                }
+            }
+            if ((filter == null || filter.test(doc)) && phrasesMatch(phraseCursors)) {
+                if (matches >= skip && matches - skip < size) {
+                    page.accept(doc);
+                }
+                matches++;
+            }
+            doc = lead.next() ? lead.doc() : Integer.MAX_VALUE;
+        }
+        return matches;
+    }
+
+    private static int runTerm(SearchIndex index, Cursor term, int first, int last, long skip, int size,
+                               IntConsumer page) {
+        SearchIndex.Postings postings = term.postings;
+        if (!postings.advance(first) || postings.doc() > last) {
+            return 0;
+        }
+        int before = postings.rank();
+        for (long match = 0; match < skip + size && postings.doc() <= last; match++) {
+            if (match >= skip) {
+                page.accept(postings.doc());
+            }
+            if (!postings.next()) {
+                break;
+            }
+        }
+        // A fresh cursor, as the page may have walked past the end
+        SearchIndex.Postings end = index.postings(term.term);
+        end.advance(last + 1);
+        return end.rank() - before;
+    }
+
+    private static boolean phrasesMatch(List<Cursor[]> phrases) {
+        for (Cursor[] words : phrases) {
+            for (Cursor word : words) {
+                word.readPositions();
+            }
+            if (!phraseMatches(words)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Whether the first word is followed by the others at some position
+    private static boolean phraseMatches(Cursor[] words) {
+        Cursor first = words[0];
+        for (int i = 0; i < first.count; i++) {
+            int start = first.positions[i];
+            boolean matches = true;
+            for (int w = 1; w < words.length && matches; w++) {
+                matches = Arrays.binarySearch(words[w].positions, 0, words[w].count, start + w) >= 0;
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Runs of words and emojis between clause breaks
+    private static List<List<String>> tokenize(TokenScanner scanner, String text) {
+        List<List<String>> runs = new ArrayList<>();
+        runs.add(new ArrayList<>());
+        scanner.scan(text, new TokenScanner.TokenSink() {
+            @Override
+            public void word(CharSequence word, int start, int end) {
+                current().add(word.subSequence(start, end).toString());
+            }
+
+            @Override
+            public void emoji(CharSequence emoji, int start, int end) {
+                current().add(emoji.subSequence(start, end).toString());
+            }
+
+            @Override
+            public void boundary() {
+                if (!current().isEmpty()) {
+                    runs.add(new ArrayList<>());
+                }
+            }
+
+            private List<String> current() {
+                return runs.get(runs.size() - 1);
+            }
+        });
+        return runs;
+    }
+
+    private static final class Cursor {
+
+        final String term;
+        final SearchIndex.Postings postings;
+        final int docFreq;
+        int[] positions = new int[8];
+        int count;
+
+        Cursor(String term, SearchIndex.Postings postings, int docFreq) {
+            this.term = term;
+            this.postings = postings;
+            this.docFreq = docFreq;
+        }
+
+        void readPositions() {
+            if (positions.length < postings.freq()) {
+                positions = new int[Math.max(postings.freq(), positions.length * 2)];
+            }
+            count = postings.positions(positions);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Messages by weekday and time of day, as written in the export. Each
+ * matrix has a row per weekday, Monday first, and a column per slot of
+ * {@code slotMinutes} from midnight. Messages without a readable date or
+ * time are left out.
+ */
+public class ActivityHeatmap {
+    private int slotMinutes;
+    private int[][] messages;
+    private Map<String, int[][]> byAuthor;
+
+    // Default constructor
+    public ActivityHeatmap() {}
+
+    // Getters and Setters
+    public int getSlotMinutes() {
+        return slotMinutes;
+    }
+
+    public void setSlotMinutes(int slotMinutes) {
+        this.slotMinutes = slotMinutes;
+    }
+
+    public int[][] getMessages() {
+        return messages;
+    }
+
+    public void setMessages(int[][] messages) {
+        this.messages = messages;
+    }
+
+    public Map<String, int[][]> getByAuthor() {
+        return byAuthor;
+    }
+
+    public void setByAuthor(Map<String, int[][]> byAuthor) {
+        this.byAuthor = byAuthor;
+    }
+
+    @Override
+    public String toString() {
+        return "ActivityHeatmap{" +
+                "slotMinutes=" + slotMinutes +
+                ", messages=" + Arrays.deepToString(messages) +
+                ", byAuthor=" + (byAuthor != null ? byAuthor.keySet() : null) +
+                '}';
+    }
+}
\ No newline at end of file
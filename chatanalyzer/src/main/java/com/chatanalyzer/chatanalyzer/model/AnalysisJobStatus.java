@@ -0,0 +1,122 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+public class AnalysisJobStatus {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED
+    }
+
+    private String jobId;
+    private State state;
+    private long bytesTotal;
+    private long bytesParsed;
+    private long messagesFound;
+    private String submittedAt;
+    private String startedAt;
+    private String finishedAt;
+    private String error;
+    private ChatAnalysis result;
+
+    // Default constructor
+    public AnalysisJobStatus() {}
+
+    // Getters and Setters
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public void setBytesTotal(long bytesTotal) {
+        this.bytesTotal = bytesTotal;
+    }
+
+    public long getBytesParsed() {
+        return bytesParsed;
+    }
+
+    public void setBytesParsed(long bytesParsed) {
+        this.bytesParsed = bytesParsed;
+    }
+
+    public long getMessagesFound() {
+        return messagesFound;
+    }
+
+    public void setMessagesFound(long messagesFound) {
+        this.messagesFound = messagesFound;
+    }
+
+    public String getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public void setSubmittedAt(String submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(String startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(String finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public ChatAnalysis getResult() {
+        return result;
+    }
+
+    public void setResult(ChatAnalysis result) {
+        this.result = result;
+    }
+
+    @Override
+    public String toString() {
+        return "AnalysisJobStatus{" +
+                "jobId='" + jobId + '\'' +
+                ", state=" + state +
+                ", bytesTotal=" + bytesTotal +
+                ", bytesParsed=" + bytesParsed +
+                ", messagesFound=" + messagesFound +
+                ", submittedAt='" + submittedAt + '\'' +
+                ", startedAt='" + startedAt + '\'' +
+                ", finishedAt='" + finishedAt + '\'' +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+// Exact counts, or word and emoji counts in bounded-memory sketches
+public enum AnalysisMode {
+    EXACT,
+    APPROXIMATE;
+
+    public static AnalysisMode fromString(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return EXACT;
+        }
+        for (AnalysisMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value.trim())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Mode must be exact or approximate");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,60 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+/**
+ * Error bounds of an approximate analysis. Top word and emoji counts never
+ * fall below the true counts and exceed them by at most the given errors;
+ * the distinct word count is an estimate with the given relative standard
+ * error.
+ */
+public class Approximation {
+    private long distinctWords;
+    private double distinctWordsRelativeError;
+    private long wordCountError;
+    private long emojiCountError;
+
+    // Default constructor
+    public Approximation() {}
+
+    // Getters and Setters
+    public long getDistinctWords() {
+        return distinctWords;
+    }
+
+    public void setDistinctWords(long distinctWords) {
+        this.distinctWords = distinctWords;
+    }
+
+    public double getDistinctWordsRelativeError() {
+        return distinctWordsRelativeError;
+    }
+
+    public void setDistinctWordsRelativeError(double distinctWordsRelativeError) {
+        this.distinctWordsRelativeError = distinctWordsRelativeError;
+    }
+
+    public long getWordCountError() {
+        return wordCountError;
+    }
+
+    public void setWordCountError(long wordCountError) {
+        this.wordCountError = wordCountError;
+    }
+
+    public long getEmojiCountError() {
+        return emojiCountError;
+    }
+
+    public void setEmojiCountError(long emojiCountError) {
+        this.emojiCountError = emojiCountError;
+    }
+
+    @Override
+    public String toString() {
+        return "Approximation{" +
+                "distinctWords=" + distinctWords +
+                ", distinctWordsRelativeError=" + distinctWordsRelativeError +
+                ", wordCountError=" + wordCountError +
+                ", emojiCountError=" + emojiCountError +
+                '}';
+    }
+}
\ No newline at end of file
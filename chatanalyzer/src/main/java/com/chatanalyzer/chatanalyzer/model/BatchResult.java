@@ -0,0 +1,67 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One line of a batch analysis response: the analysis of one chat, or why
+ * it could not be analyzed.
+ */
+public class BatchResult {
+    // File name, followed by the entry name for chats in a zip
+    private String name;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ChatAnalysis analysis;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String error;
+
+    // Default constructor
+    public BatchResult() {}
+
+    public static BatchResult succeeded(String name, ChatAnalysis analysis) {
+        BatchResult result = new BatchResult();
+        result.name = name;
+        result.analysis = analysis;
+        return result;
+    }
+
+    public static BatchResult failed(String name, String error) {
+        BatchResult result = new BatchResult();
+        result.name = name;
+        result.error = error;
+        return result;
+    }
+
+    // Getters and Setters
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public ChatAnalysis getAnalysis() {
+        return analysis;
+    }
+
+    public void setAnalysis(ChatAnalysis analysis) {
+        this.analysis = analysis;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" +
+                "name='" + name + '\'' +
+                ", analysis=" + analysis +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+/**
+ * Last line of a batch analysis response, on request: all chats of the
+ * batch analyzed as one.
+ */
+public class BatchSummary {
+    private int chats;
+    private int failedChats;
+    // Null if no chat could be analyzed
+    private ChatAnalysis combined;
+
+    // Default constructor
+    public BatchSummary() {}
+
+    // Getters and Setters
+    public int getChats() {
+        return chats;
+    }
+
+    public void setChats(int chats) {
+        this.chats = chats;
+    }
+
+    public int getFailedChats() {
+        return failedChats;
+    }
+
+    public void setFailedChats(int failedChats) {
+        this.failedChats = failedChats;
+    }
+
+    public ChatAnalysis getCombined() {
+        return combined;
+    }
+
+    public void setCombined(ChatAnalysis combined) {
+        this.combined = combined;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchSummary{" +
+                "chats=" + chats +
+                ", failedChats=" + failedChats +
+                ", combined=" + combined +
+                '}';
+    }
+}
\ No newline at end of file
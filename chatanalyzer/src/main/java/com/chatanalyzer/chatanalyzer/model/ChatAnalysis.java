@@ -1,5 +1,7 @@
 package com.chatanalyzer.chatanalyzer.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.List;
 import java.util.Map;
 
@@ -13,10 +15,61 @@ public class ChatAnalysis {
     private Map<String, Integer> timeline;
     private List<List<Object>> topWords;
     private List<List<Object>> topEmojis;
+    // Only included on request
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ParseReport parseReport;
+    // Only set in approximate mode
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Approximation approximation;
+    private ActivityHeatmap activity;
+    // Only sent when asked for by name in ?fields
+    @JsonIgnore
+    private ActivityHeatmap quarterHourActivity;
+    private ConversationStats conversations;
+    private TopPhrases topPhrases;
+    private Map<String, HeavyHitters> topWordsByAuthor;
 
     // Default constructor
     public ChatAnalysis() {}
 
+    /**
+     * A shallow copy, e.g. for leaving out optional sections of a shared
+     * result.
+     */
+    public ChatAnalysis copy() {
+        ChatAnalysis copy = new ChatAnalysis();
+        copy.totalMessages = totalMessages;
+        copy.totalWords = totalWords;
+        copy.mediaMessages = mediaMessages;
+        copy.userMessageCounts = userMessageCounts;
+        copy.mostActiveUser = mostActiveUser;
+        copy.mostActiveUserCount = mostActiveUserCount;
+        copy.timeline = timeline;
+        copy.topWords = topWords;
+        copy.topEmojis = topEmojis;
+        copy.parseReport = parseReport;
+        copy.approximation = approximation;
+        copy.activity = activity;
+        copy.quarterHourActivity = quarterHourActivity;
+        copy.conversations = conversations;
+        copy.topPhrases = topPhrases;
+        copy.topWordsByAuthor = topWordsByAuthor;
+        return copy;
+    }
+
+    /**
+     * This analysis, or a copy of it without the parse report, which is only
+     * sent to clients that ask for it.
+     */
+    public ChatAnalysis withParseReport(boolean include) {
+        if (include || parseReport == null) {
+            return this;
+        }
+        ChatAnalysis copy = copy();
+        copy.parseReport = null;
+        return copy;
+    }
+
     // Getters and Setters
     public int getTotalMessages() {
         return totalMessages;
@@ -90,6 +143,62 @@ public class ChatAnalysis {
         this.topEmojis = topEmojis;
     }
 
+    public ParseReport getParseReport() {
+        return parseReport;
+    }
+
+    public void setParseReport(ParseReport parseReport) {
+        this.parseReport = parseReport;
+    }
+
+    public Approximation getApproximation() {
+        return approximation;
+    }
+
+    public void setApproximation(Approximation approximation) {
+        this.approximation = approximation;
+    }
+
+    public ActivityHeatmap getActivity() {
+        return activity;
+    }
+
+    public void setActivity(ActivityHeatmap activity) {
+        this.activity = activity;
+    }
+
+    public ActivityHeatmap getQuarterHourActivity() {
+        return quarterHourActivity;
+    }
+
+    public void setQuarterHourActivity(ActivityHeatmap quarterHourActivity) {
+        this.quarterHourActivity = quarterHourActivity;
+    }
+
+    public ConversationStats getConversations() {
+        return conversations;
+    }
+
+    public void setConversations(ConversationStats conversations) {
+        this.conversations = conversations;
+    }
+
+    public TopPhrases getTopPhrases() {
+        return topPhrases;
+    }
+
+    public void setTopPhrases(TopPhrases topPhrases) {
+        this.topPhrases = topPhrases;
+    }
+
+    public Map<String, HeavyHitters> getTopWordsByAuthor() {
+        return topWordsByAuthor;
+    }
+
+    public void setTopWordsByAuthor(Map<String, HeavyHitters> topWordsByAuthor) {
+        this.topWordsByAuthor = topWordsByAuthor;
+    }
+
     @Override
     public String toString() {
         return "ChatAnalysis{" +
@@ -102,6 +211,13 @@ public class ChatAnalysis {
                 ", timeline=" + timeline +
                 ", topWords=" + topWords +
                 ", topEmojis=" + topEmojis +
+                ", parseReport=" + parseReport +
+                ", approximation=" + approximation +
+                ", activity=" + activity +
+                ", quarterHourActivity=" + quarterHourActivity +
+                ", conversations=" + conversations +
+                ", topPhrases=" + topPhrases +
+                ", topWordsByAuthor=" + topWordsByAuthor +
                 '}';
     }
 }
\ No newline at end of file
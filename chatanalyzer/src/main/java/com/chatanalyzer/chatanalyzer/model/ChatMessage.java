@@ -1,10 +1,16 @@
 package com.chatanalyzer.chatanalyzer.model;
 
+import com.chatanalyzer.chatanalyzer.parser.WhatsAppLineParser;
 import java.time.LocalDate;
 
 public class ChatMessage {
+    // Marks a minute of day to be worked out from the time when asked for
+    private static final int FROM_TIME = -2;
+
     private LocalDate date;
     private String time;
+    // Minute since midnight of the time, -1 if unknown
+    private int minuteOfDay = FROM_TIME;
     private String author;
     private String text;
     private boolean mediaMessage;
@@ -21,6 +27,12 @@ public class ChatMessage {
         this.mediaMessage = mediaMessage;
     }
 
+    // Constructor with all fields and the time as parsed
+    public ChatMessage(LocalDate date, String time, int minuteOfDay, String author, String text, boolean mediaMessage) {
+        this(date, time, author, text, mediaMessage);
+        this.minuteOfDay = minuteOfDay;
+    }
+
     // Getters and Setters
     public LocalDate getDate() {
         return date;
@@ -36,6 +48,19 @@ public class ChatMessage {
 
     public void setTime(String time) {
         this.time = time;
+        this.minuteOfDay = FROM_TIME;
+    }
+
+    // The parser passes it in; otherwise it follows the time
+    public int getMinuteOfDay() {
+        if (minuteOfDay == FROM_TIME) {
+            minuteOfDay = WhatsAppLineParser.minuteOfDay(time);
+        }
+        return minuteOfDay;
+    }
+
+    public void setMinuteOfDay(int minuteOfDay) {
+        this.minuteOfDay = minuteOfDay;
     }
 
     public String getAuthor() {
@@ -67,6 +92,7 @@ public class ChatMessage {
         return "ChatMessage{" +
                 "date=" + date +
                 ", time='" + time + '\'' +
+                ", minuteOfDay=" + getMinuteOfDay() +
                 ", author='" + author + '\'' +
                 ", text='" + text + '\'' +
                 ", mediaMessage=" + mediaMessage +
@@ -0,0 +1,106 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+import java.util.Map;
+
+public class ChatStats {
+    private String from;
+    private String to;
+    private String author;
+    private String granularity;
+    private int totalMessages;
+    private int totalWords;
+    private int mediaMessages;
+    private Map<String, Integer> userMessageCounts;
+    private Map<String, Integer> timeline;
+
+    // Default constructor
+    public ChatStats() {}
+
+    // Getters and Setters
+    public String getFrom() {
+        return from;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public String getGranularity() {
+        return granularity;
+    }
+
+    public void setGranularity(String granularity) {
+        this.granularity = granularity;
+    }
+
+    public int getTotalMessages() {
+        return totalMessages;
+    }
+
+    public void setTotalMessages(int totalMessages) {
+        this.totalMessages = totalMessages;
+    }
+
+    public int getTotalWords() {
+        return totalWords;
+    }
+
+    public void setTotalWords(int totalWords) {
+        this.totalWords = totalWords;
+    }
+
+    public int getMediaMessages() {
+        return mediaMessages;
+    }
+
+    public void setMediaMessages(int mediaMessages) {
+        this.mediaMessages = mediaMessages;
+    }
+
+    public Map<String, Integer> getUserMessageCounts() {
+        return userMessageCounts;
+    }
+
+    public void setUserMessageCounts(Map<String, Integer> userMessageCounts) {
+        this.userMessageCounts = userMessageCounts;
+    }
+
+    public Map<String, Integer> getTimeline() {
+        return timeline;
+    }
+
+    public void setTimeline(Map<String, Integer> timeline) {
+        this.timeline = timeline;
+    }
+
+    @Override
+    public String toString() {
+        return "ChatStats{" +
+                "from='" + from + '\'' +
+                ", to='" + to + '\'' +
+                ", author='" + author + '\'' +
+                ", granularity='" + granularity + '\'' +
+                ", totalMessages=" + totalMessages +
+                ", totalWords=" + totalWords +
+                ", mediaMessages=" + mediaMessages +
+                ", userMessageCounts=" + userMessageCounts +
+                ", timeline=" + timeline +
+                '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+import java.util.Map;
+
+/**
+ * Conversation dynamics of a chat. A session is a run of messages without a
+ * pause longer than {@code idleGapMinutes}; within a session, a message
+ * following one by another author is a reply to that author.
+ */
+public class ConversationStats {
+    private int idleGapMinutes;
+    private int sessions;
+    private double averageSessionMessages;
+    private double averageSessionMinutes;
+    private int longestSessionMessages;
+    private Map<String, Integer> sessionsStartedBy;
+    private Map<String, ReplyLatency> replyLatency;
+    // Replies by author, then by the author replied to
+    private Map<String, Map<String, Integer>> replies;
+
+    // Default constructor
+    public ConversationStats() {}
+
+    // Getters and Setters
+    public int getIdleGapMinutes() {
+        return idleGapMinutes;
+    }
+
+    public void setIdleGapMinutes(int idleGapMinutes) {
+        this.idleGapMinutes = idleGapMinutes;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(int sessions) {
+        this.sessions = sessions;
+    }
+
+    public double getAverageSessionMessages() {
+        return averageSessionMessages;
+    }
+
+    public void setAverageSessionMessages(double averageSessionMessages) {
+        this.averageSessionMessages = averageSessionMessages;
+    }
+
+    public double getAverageSessionMinutes() {
+        return averageSessionMinutes;
+    }
+
+    public void setAverageSessionMinutes(double averageSessionMinutes) {
+        this.averageSessionMinutes = averageSessionMinutes;
+    }
+
+    public int getLongestSessionMessages() {
+        return longestSessionMessages;
+    }
+
+    public void setLongestSessionMessages(int longestSessionMessages) {
+        this.longestSessionMessages = longestSessionMessages;
+    }
+
+    public Map<String, Integer> getSessionsStartedBy() {
+        return sessionsStartedBy;
+    }
+
+    public void setSessionsStartedBy(Map<String, Integer> sessionsStartedBy) {
+        this.sessionsStartedBy = sessionsStartedBy;
+    }
+
+    public Map<String, ReplyLatency> getReplyLatency() {
+        return replyLatency;
+    }
+
+    public void setReplyLatency(Map<String, ReplyLatency> replyLatency) {
+        this.replyLatency = replyLatency;
+    }
+
+    public Map<String, Map<String, Integer>> getReplies() {
+        return replies;
+    }
+
+    public void setReplies(Map<String, Map<String, Integer>> replies) {
+        this.replies = replies;
+    }
+
+    @Override
+    public String toString() {
+        return "ConversationStats{" +
+                "idleGapMinutes=" + idleGapMinutes +
+                ", sessions=" + sessions +
+                ", averageSessionMessages=" + averageSessionMessages +
+                ", averageSessionMinutes=" + averageSessionMinutes +
+                ", longestSessionMessages=" + longestSessionMessages +
+                ", sessionsStartedBy=" + sessionsStartedBy +
+                ", replyLatency=" + replyLatency +
+                ", replies=" + replies +
+                '}';
+    }
+}
\ No newline at end of file
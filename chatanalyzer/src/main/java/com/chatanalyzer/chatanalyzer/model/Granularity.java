@@ -0,0 +1,43 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+// Timeline bucket size; weeks start on Monday
+public enum Granularity {
+    DAY,
+    WEEK,
+    MONTH;
+
+    public LocalDate bucketStart(LocalDate date) {
+        switch (this) {
+            case WEEK:
+                return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH:
+                return date.withDayOfMonth(1);
+            default:
+                return date;
+        }
+    }
+
+    public LocalDate nextBucketStart(LocalDate bucketStart) {
+        switch (this) {
+            case WEEK:
+                return bucketStart.plusWeeks(1);
+            case MONTH:
+                return bucketStart.plusMonths(1);
+            default:
+                return bucketStart.plusDays(1);
+        }
+    }
+
+    public static Granularity fromString(String value) {
+        for (Granularity granularity : values()) {
+            if (granularity.name().equalsIgnoreCase(value)) {
+                return granularity;
+            }
+        }
+        throw new IllegalArgumentException("Granularity must be one of day, week or month");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+/**
+ * One of the most frequent words or phrases of a {@link HeavyHitters}
+ * list. Its true count is at most {@code count} and at least
+ * {@code count - error}; an error of 0 means the count is exact.
+ */
+public class HeavyHitter {
+    private String key;
+    private long count;
+    private long error;
+    private boolean guaranteed;
+
+    // Default constructor
+    public HeavyHitter() {}
+
+    public HeavyHitter(String key, long count, long error, boolean guaranteed) {
+        this.key = key;
+        this.count = count;
+        this.error = error;
+        this.guaranteed = guaranteed;
+    }
+
+    // Getters and Setters
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getError() {
+        return error;
+    }
+
+    public void setError(long error) {
+        this.error = error;
+    }
+
+    /**
+     * Whether the key certainly belongs in the list: it occurs at least
+     * {@code count - error} times, and no key left out can occur more often.
+     */
+    public boolean isGuaranteed() {
+        return guaranteed;
+    }
+
+    public void setGuaranteed(boolean guaranteed) {
+        this.guaranteed = guaranteed;
+    }
+
+    @Override
+    public String toString() {
+        return "HeavyHitter{" +
+                "key='" + key + '\'' +
+                ", count=" + count +
+                ", error=" + error +
+                ", guaranteed=" + guaranteed +
+                '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+import java.util.List;
+
+/**
+ * The most frequent words or phrases of a stream, counted in a fixed
+ * number of counters. Every key occurring more than {@code threshold}
+ * times is counted and listed, unless more frequent keys fill the list;
+ * counts of rarer keys may be overestimated, by up to their
+ * {@link HeavyHitter#getError() error}.
+ */
+public class HeavyHitters {
+    private long total;
+    private int capacity;
+    private long threshold;
+    private List<HeavyHitter> top;
+
+    // Default constructor
+    public HeavyHitters() {}
+
+    // Getters and Setters
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(long threshold) {
+        this.threshold = threshold;
+    }
+
+    public List<HeavyHitter> getTop() {
+        return top;
+    }
+
+    public void setTop(List<HeavyHitter> top) {
+        this.top = top;
+    }
+
+    @Override
+    public String toString() {
+        return "HeavyHitters{" +
+                "total=" + total +
+                ", capacity=" + capacity +
+                ", threshold=" + threshold +
+                ", top=" + top +
+                '}';
+    }
+}
\ No newline at end of file
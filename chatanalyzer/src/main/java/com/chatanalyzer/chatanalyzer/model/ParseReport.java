@@ -0,0 +1,106 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Anomalies met while parsing an export: counts of each kind, plus the
+ * first few offending lines as examples. Lines are only copied while there
+ * is room for another example, so a badly formatted export costs a counter
+ * increment per line.
+ */
+public class ParseReport {
+
+    // Examples kept per kind of anomaly, and characters kept per example
+    public static final int MAX_SAMPLES = 5;
+    private static final int MAX_SAMPLE_LENGTH = 200;
+
+    private int rejectedLines;
+    private int dateFallbacks;
+    private List<String> rejectedSamples = new ArrayList<>();
+    private List<String> dateFallbackSamples = new ArrayList<>();
+
+    // Default constructor
+    public ParseReport() {}
+
+    /**
+     * A non-blank line that was neither a message nor part of one.
+     */
+    public void rejected(String line) {
+        rejectedLines++;
+        addSample(rejectedSamples, line);
+    }
+
+    /**
+     * A message whose date could not be resolved and was replaced by today's.
+     */
+    public void dateFallback(String line) {
+        dateFallbacks++;
+        addSample(dateFallbackSamples, line);
+    }
+
+    /**
+     * Adds the anomalies of a later part of the same export.
+     */
+    public void merge(ParseReport other) {
+        rejectedLines += other.rejectedLines;
+        dateFallbacks += other.dateFallbacks;
+        for (String line : other.rejectedSamples) addSample(rejectedSamples, line);
+        for (String line : other.dateFallbackSamples) addSample(dateFallbackSamples, line);
+    }
+
+    @JsonIgnore
+    public boolean isClean() {
+        return rejectedLines == 0 && dateFallbacks == 0;
+    }
+
+    private static void addSample(List<String> samples, String line) {
+        if (samples.size() < MAX_SAMPLES) {
+            samples.add(line.length() > MAX_SAMPLE_LENGTH ? line.substring(0, MAX_SAMPLE_LENGTH) : line);
+        }
+    }
+
+    // Getters and Setters
+    public int getRejectedLines() {
+        return rejectedLines;
+    }
+
+    public void setRejectedLines(int rejectedLines) {
+        this.rejectedLines = rejectedLines;
+    }
+
+    public int getDateFallbacks() {
+        return dateFallbacks;
+    }
+
+    public void setDateFallbacks(int dateFallbacks) {
+        this.dateFallbacks = dateFallbacks;
+    }
+
+    public List<String> getRejectedSamples() {
+        return rejectedSamples;
+    }
+
+    public void setRejectedSamples(List<String> rejectedSamples) {
+        this.rejectedSamples = rejectedSamples;
+    }
+
+    public List<String> getDateFallbackSamples() {
+        return dateFallbackSamples;
+    }
+
+    public void setDateFallbackSamples(List<String> dateFallbackSamples) {
+        this.dateFallbackSamples = dateFallbackSamples;
+    }
+
+    @Override
+    public String toString() {
+        return "ParseReport{" +
+                "rejectedLines=" + rejectedLines +
+                ", dateFallbacks=" + dateFallbacks +
+                ", rejectedSamples=" + rejectedSamples +
+                ", dateFallbackSamples=" + dateFallbackSamples +
+                '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+/**
+ * How quickly an author replies: minutes between a message and the author's
+ * next message after it in the same session, when that message was by
+ * someone else.
+ */
+public class ReplyLatency {
+    private long replies;
+    private int medianMinutes;
+    private int p90Minutes;
+
+    // Default constructor
+    public ReplyLatency() {}
+
+    // Getters and Setters
+    public long getReplies() {
+        return replies;
+    }
+
+    public void setReplies(long replies) {
+        this.replies = replies;
+    }
+
+    public int getMedianMinutes() {
+        return medianMinutes;
+    }
+
+    public void setMedianMinutes(int medianMinutes) {
+        this.medianMinutes = medianMinutes;
+    }
+
+    public int getP90Minutes() {
+        return p90Minutes;
+    }
+
+    public void setP90Minutes(int p90Minutes) {
+        this.p90Minutes = p90Minutes;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplyLatency{" +
+                "replies=" + replies +
+                ", medianMinutes=" + medianMinutes +
+                ", p90Minutes=" + p90Minutes +
+                '}';
+    }
+}
\ No newline at end of file
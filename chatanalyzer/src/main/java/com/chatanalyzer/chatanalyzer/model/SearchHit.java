@@ -0,0 +1,68 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+/**
+ * A message found by a search. {@code message} is its position in the
+ * stored chat, counting from 0.
+ */
+public class SearchHit {
+    private int message;
+    private String date;
+    private String time;
+    private String author;
+    private String text;
+
+    // Default constructor
+    public SearchHit() {}
+
+    // Getters and Setters
+    public int getMessage() {
+        return message;
+    }
+
+    public void setMessage(int message) {
+        this.message = message;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public void setDate(String date) {
+        this.date = date;
+    }
+
+    public String getTime() {
+        return time;
+    }
+
+    public void setTime(String time) {
+        this.time = time;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchHit{" +
+                "message=" + message +
+                ", date='" + date + '\'' +
+                ", time='" + time + '\'' +
+                ", author='" + author + '\'' +
+                ", text='" + text + '\'' +
+                '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+import java.util.List;
+
+/**
+ * One page of the messages matching a search, in chat order, with the
+ * number of matches over all pages.
+ */
+public class SearchResults {
+    private String query;
+    private int total;
+    private int page;
+    private int size;
+    private List<SearchHit> hits;
+
+    // Default constructor
+    public SearchResults() {}
+
+    // Getters and Setters
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public List<SearchHit> getHits() {
+        return hits;
+    }
+
+    public void setHits(List<SearchHit> hits) {
+        this.hits = hits;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResults{" +
+                "query='" + query + '\'' +
+                ", total=" + total +
+                ", page=" + page +
+                ", size=" + size +
+                ", hits=" + hits +
+                '}';
+    }
+}
\ No newline at end of file
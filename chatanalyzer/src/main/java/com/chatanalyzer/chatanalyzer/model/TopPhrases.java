@@ -0,0 +1,39 @@
+package com.chatanalyzer.chatanalyzer.model;
+
+/**
+ * The most frequent two- and three-word phrases. Phrases do not run across
+ * messages, emojis or sentence punctuation, and start and end with words
+ * that could be top words, so "of the" and the like are left out.
+ */
+public class TopPhrases {
+    private HeavyHitters bigrams;
+    private HeavyHitters trigrams;
+
+    // Default constructor
+    public TopPhrases() {}
+
+    // Getters and Setters
+    public HeavyHitters getBigrams() {
+        return bigrams;
+    }
+
+    public void setBigrams(HeavyHitters bigrams) {
+        this.bigrams = bigrams;
+    }
+
+    public HeavyHitters getTrigrams() {
+        return trigrams;
+    }
+
+    public void setTrigrams(HeavyHitters trigrams) {
+        this.trigrams = trigrams;
+    }
+
+    @Override
+    public String toString() {
+        return "TopPhrases{" +
+                "bigrams=" + bigrams +
+                ", trigrams=" + trigrams +
+                '}';
+    }
+}
\ No newline at end of file
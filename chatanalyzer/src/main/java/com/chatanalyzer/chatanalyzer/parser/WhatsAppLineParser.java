@@ -0,0 +1,533 @@
+package com.chatanalyzer.chatanalyzer.parser;
+
+import com.chatanalyzer.chatanalyzer.count.StringCounter;
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import com.chatanalyzer.chatanalyzer.model.ParseReport;
+import java.io.BufferedReader;
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.util.Arrays;
+
+/**
+ * Single-pass parser for WhatsApp export lines of the form
+ * {@code date, time - author: text}.
+ *
+ * <p>The line is scanned once, character by character, and its fields are
+ * recorded as offsets; strings are only cut for a line that turns out to be
+ * a message. Dates are resolved arithmetically instead of by trying a list
+ * of {@code DateTimeFormatter}s. An instance holds per-file state (the date
+ * order, the last resolved date, interned authors and times, and the message
+ * being assembled) and is not thread-safe. A time is converted to its minute
+ * of day once, when first met, and shared like the time string.
+ *
+ * <p>Lines are fed in order through {@link #accept}. A message is emitted
+ * once the next entry starts, so continuation lines of multi-line messages
+ * are appended to it in the same pass.
+ */
+public class WhatsAppLineParser {
+
+    /**
+     * Field order of ambiguous dates such as 05/06/2023.
+     */
+    public enum DateOrder {
+        MONTH_FIRST,
+        DAY_FIRST
+    }
+
+    /**
+     * Number of characters inspected by {@link #detectDateOrder}.
+     */
+    static final int SAMPLE_SIZE = 64 * 1024;
+
+    /**
+     * Returned by {@link #entryMinute} for lines that do not open an entry.
+     */
+    public static final long NO_MINUTE = Long.MIN_VALUE;
+
+    private static final String[] MEDIA_MARKERS = {
+        "<Media omitted>", "image omitted", "video omitted",
+        "audio omitted", "document omitted", "sticker omitted"
+    };
+
+    private final DateOrder dateOrder;
+
+    // Fields of the last scanned line
+    private int first;
+    private int second;
+    private int year;
+    private int yearDigits;
+    private int timeStart;
+    private int timeEnd;
+    private int authorStart;
+    private int authorEnd;
+    private int textStart;
+    private int textEnd;
+
+    // Message being assembled; continuation lines go to the reused buffer
+    private boolean pending;
+    private LocalDate pendingDate;
+    private String pendingTime;
+    private int pendingMinute;
+    private String pendingAuthor;
+    private String pendingText;
+    private boolean continued;
+    private final StringBuilder continuation = new StringBuilder();
+
+    // Authors and times repeat on most lines, so each distinct one is
+    // allocated once and shared by every message that has it
+    private final StringCounter authors = new StringCounter();
+    private final StringCounter times = new StringCounter(256);
+    // Minute of day of each interned time, by id
+    private int[] timeMinutes = new int[256];
+    private int convertedTimes;
+
+    // Consecutive messages usually share a date, so the last one is reused
+    private int cachedFirst = -1;
+    private int cachedSecond;
+    private int cachedYear;
+    private int cachedYearDigits;
+    private LocalDate cachedDate;
+
+    // Diagnostics, read after parsing
+    private final ParseReport report = new ParseReport();
+    private long dateNanos;
+
+    public WhatsAppLineParser() {
+        this(DateOrder.MONTH_FIRST);
+    }
+
+    public WhatsAppLineParser(DateOrder dateOrder) {
+        this.dateOrder = dateOrder;
+    }
+
+    /**
+     * Detects the date order of a file from its first lines. The first date
+     * whose day is above 12 decides; files without one are month-first.
+     * The reader is reset to where it was, so it must support marking.
+     */
+    public static DateOrder detectDateOrder(BufferedReader reader) throws IOException {
+        char[] sample = new char[SAMPLE_SIZE];
+        int length = 0;
+        reader.mark(SAMPLE_SIZE);
+        try {
+            int read;
+            while (length < sample.length && (read = reader.read(sample, length, sample.length - length)) != -1) {
+                length += read;
+            }
+        } finally {
+            reader.reset();
+        }
+
+        WhatsAppLineParser probe = new WhatsAppLineParser();
+        BufferedReader lines = new BufferedReader(new CharArrayReader(sample, 0, length));
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (!probe.scan(line)) continue;
+            if (probe.first > 12 && probe.first <= 31 && probe.second <= 12) {
+                return DateOrder.DAY_FIRST;
+            }
+            if (probe.second > 12 && probe.second <= 31 && probe.first <= 12) {
+                return DateOrder.MONTH_FIRST;
+            }
+        }
+        return DateOrder.MONTH_FIRST;
+    }
+
+    public DateOrder getDateOrder() {
+        return dateOrder;
+    }
+
+    /**
+     * Parses one export line on its own, ignoring any surrounding lines.
+     *
+     * @return the message, or {@code null} if the line is not a message
+     *         (continuation lines, system notices, blank lines)
+     */
+    public ChatMessage parse(String line) {
+        if (!scan(line)) {
+            if (!line.isBlank()) report.rejected(line);
+            return null;
+        }
+
+        String text = line.substring(textStart, textEnd);
+        int time = internTime(line);
+        return new ChatMessage(
+            resolveDate(line),
+            times.key(time),
+            timeMinutes[time],
+            authors.key(authors.intern(line, authorStart, authorEnd)),
+            text,
+            isMediaMessage(text));
+    }
+
+    /**
+     * Feeds the next line of the export. A line without an entry header is
+     * a continuation of the message before it; a new header completes that
+     * message. System notices complete it too but are not messages.
+     *
+     * @return the message completed by this line, or {@code null}
+     */
+    public ChatMessage accept(String line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) <= ' ') end--;
+        int p = scanHeader(line, end);
+
+        if (p < 0) {
+            if (pending) {
+                if (!continued) {
+                    continuation.append(pendingText);
+                    continued = true;
+                }
+                continuation.append('\n').append(line, 0, end);
+            } else if (end > 0) {
+                report.rejected(line);
+            }
+            return null;
+        }
+
+        ChatMessage completed = finish();
+        if (scanMessage(line, p, end)) {
+            pending = true;
+            pendingDate = resolveDate(line);
+            int time = internTime(line);
+            pendingTime = times.key(time);
+            pendingMinute = timeMinutes[time];
+            pendingAuthor = authors.key(authors.intern(line, authorStart, authorEnd));
+            pendingText = line.substring(textStart, textEnd);
+        } else {
+            report.rejected(line);
+        }
+        return completed;
+    }
+
+    /**
+     * Minute since the epoch at which the entry opened by {@code line} was
+     * written, read from its header alone: the author and text are not
+     * scanned, and nothing is allocated while dates and times repeat. Used
+     * to skip the part of an export that is already known.
+     *
+     * @return the minute, or {@link #NO_MINUTE} if the line does not open an
+     *         entry or its date cannot be resolved
+     */
+    public long entryMinute(String line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) <= ' ') end--;
+        if (scanHeader(line, end) < 0) {
+            return NO_MINUTE;
+        }
+
+        LocalDate date = cachedDate();
+        if (date == null) {
+            return NO_MINUTE;
+        }
+        // Interned first: it may grow timeMinutes
+        int time = internTime(line);
+        return date.toEpochDay() * 1440 + Math.max(0, timeMinutes[time]);
+    }
+
+    /**
+     * Completes the message still being assembled, at the end of input.
+     *
+     * @return the message, or {@code null} if none is pending
+     */
+    public ChatMessage finish() {
+        if (!pending) {
+            return null;
+        }
+
+        String text = pendingText;
+        if (continued) {
+            int length = continuation.length();
+            while (length > 0 && continuation.charAt(length - 1) <= ' ') length--;
+            continuation.setLength(length);
+            text = continuation.toString().trim();
+            continuation.setLength(0);
+            continued = false;
+        }
+
+        ChatMessage message = new ChatMessage(pendingDate, pendingTime, pendingMinute, pendingAuthor, text,
+            isMediaMessage(text));
+        pending = false;
+        pendingDate = null;
+        pendingTime = null;
+        pendingAuthor = null;
+        pendingText = null;
+        return message;
+    }
+
+    // Ids are handed out in order, so a time is new when its id is past the
+    // last one converted
+    private int internTime(String line) {
+        int id = times.intern(line, timeStart, timeEnd);
+        if (id == convertedTimes) {
+            if (id == timeMinutes.length) {
+                timeMinutes = Arrays.copyOf(timeMinutes, id * 2);
+            }
+            timeMinutes[id] = minuteOfDay(times.key(id));
+            convertedTimes++;
+        }
+        return id;
+    }
+
+    /**
+     * Anomalies met so far: rejected lines (system notices, and text before
+     * the first message) and dates replaced by today's.
+     */
+    public ParseReport getReport() {
+        return report;
+    }
+
+    /**
+     * Time spent resolving dates. Consecutive messages on the same date
+     * reuse the last one, so this only covers changes of date.
+     */
+    public long getDateNanos() {
+        return dateNanos;
+    }
+
+    /**
+     * Converts a time as captured from a message header ({@code 21:42},
+     * {@code 9:41 PM}, {@code 10:00 am}) to minutes since midnight.
+     *
+     * @return the minute of day, or -1 if the time is out of range
+     */
+    public static int minuteOfDay(String time) {
+        if (time == null) return -1;
+
+        int end = time.length();
+        int colon = time.indexOf(':');
+        if (colon < 1 || colon + 3 > end) return -1;
+        int hour = number(time, 0, colon);
+        int minute = number(time, colon + 1, colon + 3);
+        if (minute > 59) return -1;
+
+        if (end - colon > 3) {
+            boolean pm = Character.toUpperCase(time.charAt(end - 2)) == 'P';
+            if (hour < 1 || hour > 12) return -1;
+            hour = hour % 12 + (pm ? 12 : 0);
+        } else if (hour > 23) {
+            return -1;
+        }
+        return hour * 60 + minute;
+    }
+
+    /**
+     * Minutes since the epoch of a date and a header time; a time out of
+     * range counts as midnight.
+     */
+    public static long epochMinute(LocalDate date, String time) {
+        return date.toEpochDay() * 1440 + Math.max(0, minuteOfDay(time));
+    }
+
+    public static boolean isMediaMessage(String text) {
+        if (text == null) return false;
+
+        for (String marker : MEDIA_MARKERS) {
+            if (text.contains(marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the line opens a new entry, i.e. starts with the
+     * {@code date, time -} header shared by messages and system notices.
+     * Lines that do not are continuations of the entry before them.
+     */
+    public boolean startsNewEntry(String line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) <= ' ') end--;
+        return scanHeader(line, end) >= 0;
+    }
+
+    /**
+     * Matches the trimmed line against
+     * {@code d{1,2}/d{1,2}/d{2,4},? time( AM|PM)? - author: text}
+     * and records the field offsets.
+     */
+    private boolean scan(String line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) <= ' ') end--;
+        int p = scanHeader(line, end);
+        return p >= 0 && scanMessage(line, p, end);
+    }
+
+    /**
+     * Scans the {@code author: text} part that follows a header ending at
+     * {@code p}, recording author and text offsets.
+     */
+    private boolean scanMessage(String line, int p, int end) {
+        // Author, up to the first colon
+        int colon = line.indexOf(':', p);
+        if (colon < 0 || colon >= end || colon == p) return false;
+        authorStart = p;
+        authorEnd = colon;
+        while (authorEnd > authorStart && line.charAt(authorEnd - 1) <= ' ') authorEnd--;
+        while (authorStart < authorEnd && line.charAt(authorStart) <= ' ') authorStart++;
+
+        // Text
+        p = colon + 1;
+        while (p < end && line.charAt(p) <= ' ') p++;
+        for (int i = p; i < end; i++) {
+            if (isLineTerminator(line.charAt(i))) return false;
+        }
+        textStart = p;
+        textEnd = end;
+        return true;
+    }
+
+    /**
+     * Scans the {@code date, time -} header of a line trimmed at
+     * {@code end}, recording date and time offsets.
+     *
+     * @return the index just past the dash, or -1 if there is no header
+     */
+    private int scanHeader(String line, int end) {
+        int p = 0;
+        while (p < end && line.charAt(p) <= ' ') p++;
+
+        // Date
+        int q = skipDigits(line, p, end);
+        if (q - p < 1 || q - p > 2 || q >= end || line.charAt(q) != '/') return -1;
+        first = number(line, p, q);
+        p = q + 1;
+
+        q = skipDigits(line, p, end);
+        if (q - p < 1 || q - p > 2 || q >= end || line.charAt(q) != '/') return -1;
+        second = number(line, p, q);
+        p = q + 1;
+
+        q = skipDigits(line, p, end);
+        if (q - p < 2 || q - p > 4) return -1;
+        year = number(line, p, q);
+        yearDigits = q - p;
+        p = q;
+
+        // Separator
+        if (p < end && line.charAt(p) == ',') p++;
+        if (p >= end || !isSpace(line.charAt(p))) return -1;
+        p = skipSpaces(line, p, end);
+
+        // Time
+        timeStart = p;
+        q = skipDigits(line, p, end);
+        if (q - p < 1 || q - p > 2 || q >= end || line.charAt(q) != ':') return -1;
+        p = q + 1;
+        q = skipDigits(line, p, end);
+        if (q - p != 2) return -1;
+        timeEnd = q;
+
+        p = skipSpaces(line, q, end);
+        if (p + 2 <= end && isMeridiem(line.charAt(p), line.charAt(p + 1))) {
+            int dash = skipSpaces(line, p + 2, end);
+            if (dash < end && line.charAt(dash) == '-') {
+                timeEnd = p + 2;
+                p = dash;
+            }
+        }
+        if (p >= end || line.charAt(p) != '-') return -1;
+        return p + 1;
+    }
+
+    private LocalDate resolveDate(String line) {
+        LocalDate date = cachedDate();
+        if (date == null) {
+            // Default to current date if parsing fails
+            report.dateFallback(line);
+            return LocalDate.now();
+        }
+        return date;
+    }
+
+    // The scanned date, or null if it cannot be resolved
+    private LocalDate cachedDate() {
+        if (first == cachedFirst && second == cachedSecond
+                && year == cachedYear && yearDigits == cachedYearDigits) {
+            return cachedDate;
+        }
+
+        long start = System.nanoTime();
+        LocalDate date = toDate();
+        dateNanos += System.nanoTime() - start;
+        if (date == null) {
+            return null;
+        }
+
+        cachedFirst = first;
+        cachedSecond = second;
+        cachedYear = year;
+        cachedYearDigits = yearDigits;
+        cachedDate = date;
+        return date;
+    }
+
+    /**
+     * Resolves the scanned fields the way the M/d/yyyy, d/M/yyyy, M/d/yy
+     * and d/M/yy patterns would: four-digit years are taken as is, two-digit
+     * years are 20xx, and a day past the end of its month is clamped to the
+     * last day. Returns {@code null} for anything no pattern accepts.
+     */
+    private LocalDate toDate() {
+        int fullYear;
+        if (yearDigits == 4 && year > 0) {
+            fullYear = year;
+        } else if (yearDigits == 2) {
+            fullYear = 2000 + year;
+        } else {
+            return null;
+        }
+
+        boolean monthFirst = first >= 1 && first <= 12 && second >= 1 && second <= 31;
+        boolean dayFirst = second >= 1 && second <= 12 && first >= 1 && first <= 31;
+        if (monthFirst && (dateOrder == DateOrder.MONTH_FIRST || !dayFirst)) {
+            return date(fullYear, first, second);
+        }
+        if (dayFirst) {
+            return date(fullYear, second, first);
+        }
+        return null;
+    }
+
+    private static LocalDate date(int year, int month, int day) {
+        int lastDay = Month.of(month).length(Year.isLeap(year));
+        return LocalDate.of(year, month, Math.min(day, lastDay));
+    }
+
+    private static int skipDigits(String line, int p, int end) {
+        while (p < end && isDigit(line.charAt(p))) p++;
+        return p;
+    }
+
+    private static int skipSpaces(String line, int p, int end) {
+        while (p < end && isSpace(line.charAt(p))) p++;
+        return p;
+    }
+
+    private static int number(String line, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isMeridiem(char a, char b) {
+        return (a == 'A' || a == 'P') && b == 'M' || (a == 'a' || a == 'p') && b == 'm';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
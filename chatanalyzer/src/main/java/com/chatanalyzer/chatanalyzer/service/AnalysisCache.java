@@ -0,0 +1,343 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.model.ActivityHeatmap;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.model.ConversationStats;
+import com.chatanalyzer.chatanalyzer.model.HeavyHitter;
+import com.chatanalyzer.chatanalyzer.model.HeavyHitters;
+import com.chatanalyzer.chatanalyzer.model.ParseReport;
+import com.chatanalyzer.chatanalyzer.model.TopPhrases;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of analysis results keyed by content digest, so that
+ * re-uploading the same export skips parsing entirely.
+ *
+ * <p>Entries are evicted least-recently-used once their estimated heap
+ * footprint exceeds {@code chat.cache.max-size}, and expire after
+ * {@code chat.cache.ttl}. Concurrent requests for the same key share a
+ * single computation. Hit, miss and eviction counts are published as
+ * {@code cache.*} meters with {@code cache=chatAnalysis}; requests that
+ * waited for another one's computation count as {@code coalesced} once it
+ * succeeded, and as nothing if it failed.
+ */
+@Component
+public class AnalysisCache implements MeterBinder {
+
+    private static final String CACHE_NAME = "chatAnalysis";
+
+    // Rough heap bytes of an object, a hash map entry with its boxed
+    // value, and a string or array besides its contents
+    private static final int OBJECT_BYTES = 16;
+    private static final int MAP_ENTRY_BYTES = 48;
+    private static final int STRING_BYTES = 40;
+    private static final int ARRAY_BYTES = 16;
+
+    @Value("${chat.cache.max-size:64MB}")
+    private DataSize maxSize;
+
+    @Value("${chat.cache.ttl:1h}")
+    private Duration ttl;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<String, CompletableFuture<ChatAnalysis>> inFlight = new ConcurrentHashMap<>();
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Returns the cached analysis for {@code key}, computing it with
+     * {@code loader} on a miss. If the same key is already being computed,
+     * waits for that result instead of starting another computation.
+     */
+    public ChatAnalysis get(String key, Supplier<ChatAnalysis> loader) {
+        ChatAnalysis cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<ChatAnalysis> computation = new CompletableFuture<>();
+        CompletableFuture<ChatAnalysis> existing = inFlight.putIfAbsent(key, computation);
+        if (existing != null) {
+            ChatAnalysis analysis = await(existing);
+            coalesced.increment();
+            return analysis;
+        }
+
+        try {
+            // Another request may have finished between the lookup and now
+            ChatAnalysis analysis = lookup(key);
+            if (analysis != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                analysis = loader.get();
+                store(key, analysis);
+            }
+            computation.complete(analysis);
+            return analysis;
+        } catch (RuntimeException | Error e) {
+            computation.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, computation);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tag("cache", CACHE_NAME).tag("result", "hit")
+                .description("Analyses served from the cache")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tag("cache", CACHE_NAME).tag("result", "miss")
+                .description("Analyses that had to be computed")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", coalesced, LongAdder::sum)
+                .tag("cache", CACHE_NAME).tag("result", "coalesced")
+                .description("Analyses shared from another request's computation")
+                .register(registry);
+        FunctionCounter.builder("cache.puts", puts, LongAdder::sum)
+                .tag("cache", CACHE_NAME)
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+                .tag("cache", CACHE_NAME)
+                .register(registry);
+        Gauge.builder("cache.size", this, AnalysisCache::size)
+                .tag("cache", CACHE_NAME)
+                .register(registry);
+        Gauge.builder("cache.weight", this, AnalysisCache::weight)
+                .tag("cache", CACHE_NAME)
+                .baseUnit("bytes")
+                .description("Estimated heap footprint of cached analyses")
+                .register(registry);
+    }
+
+    private synchronized ChatAnalysis lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key);
+            weight -= entry.weight;
+            evictions.increment();
+            return null;
+        }
+        return entry.analysis;
+    }
+
+    private void store(String key, ChatAnalysis analysis) {
+        long entryWeight = estimateWeight(analysis);
+        if (entryWeight > maxSize.toBytes()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(analysis, entryWeight, now + ttl.toNanos()));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entryWeight;
+            puts.increment();
+
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.isExpired(now)) {
+                    it.remove();
+                    weight -= entry.weight;
+                    evictions.increment();
+                }
+            }
+
+            it = entries.values().iterator();
+            while (weight > maxSize.toBytes() && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                weight -= eldest.weight;
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Estimates the heap an analysis holds on to from the sizes of its
+     * collections, the lengths of the author names and words in them, and
+     * the slots of its heatmaps. Only walks keys and lists that are already
+     * there, so storing costs far less than the analysis did.
+     */
+    static long estimateWeight(ChatAnalysis analysis) {
+        long weight = OBJECT_BYTES * 8
+            + countsWeight(analysis.getUserMessageCounts())
+            + countsWeight(analysis.getTimeline())
+            + rankingWeight(analysis.getTopWords())
+            + rankingWeight(analysis.getTopEmojis())
+            + heatmapWeight(analysis.getActivity())
+            + heatmapWeight(analysis.getQuarterHourActivity());
+        ParseReport parseReport = analysis.getParseReport();
+        if (parseReport != null) {
+            weight += stringsWeight(parseReport.getRejectedSamples())
+                + stringsWeight(parseReport.getDateFallbackSamples());
+        }
+        ConversationStats conversations = analysis.getConversations();
+        if (conversations != null) {
+            weight += countsWeight(conversations.getSessionsStartedBy())
+                + keysWeight(conversations.getReplyLatency(), OBJECT_BYTES * 2);
+            if (conversations.getReplies() != null) {
+                for (Map.Entry<String, Map<String, Integer>> replies : conversations.getReplies().entrySet()) {
+                    weight += MAP_ENTRY_BYTES + stringWeight(replies.getKey()) + countsWeight(replies.getValue());
+                }
+            }
+        }
+        TopPhrases topPhrases = analysis.getTopPhrases();
+        if (topPhrases != null) {
+            weight += hittersWeight(topPhrases.getBigrams()) + hittersWeight(topPhrases.getTrigrams());
+        }
+        if (analysis.getTopWordsByAuthor() != null) {
+            for (Map.Entry<String, HeavyHitters> hitters : analysis.getTopWordsByAuthor().entrySet()) {
+                weight += MAP_ENTRY_BYTES + stringWeight(hitters.getKey()) + hittersWeight(hitters.getValue());
+            }
+        }
+        return weight;
+    }
+
+    private static long countsWeight(Map<String, Integer> counts) {
+        return keysWeight(counts, 0);
+    }
+
+    private static long keysWeight(Map<String, ?> map, int valueBytes) {
+        if (map == null) {
+            return 0;
+        }
+        long weight = OBJECT_BYTES * 3 + (long) map.size() * (MAP_ENTRY_BYTES + valueBytes);
+        for (String key : map.keySet()) {
+            weight += stringWeight(key);
+        }
+        return weight;
+    }
+
+    // Lists of [word, count] pairs
+    private static long rankingWeight(List<List<Object>> ranking) {
+        if (ranking == null) {
+            return 0;
+        }
+        long weight = OBJECT_BYTES * 2 + (long) ranking.size() * (OBJECT_BYTES * 3 + ARRAY_BYTES);
+        for (List<Object> entry : ranking) {
+            if (!entry.isEmpty() && entry.get(0) instanceof String) {
+                weight += stringWeight((String) entry.get(0));
+            }
+        }
+        return weight;
+    }
+
+    private static long hittersWeight(HeavyHitters hitters) {
+        if (hitters == null || hitters.getTop() == null) {
+            return 0;
+        }
+        long weight = OBJECT_BYTES * 3 + (long) hitters.getTop().size() * OBJECT_BYTES * 3;
+        for (HeavyHitter hitter : hitters.getTop()) {
+            weight += stringWeight(hitter.getKey());
+        }
+        return weight;
+    }
+
+    private static long heatmapWeight(ActivityHeatmap heatmap) {
+        if (heatmap == null) {
+            return 0;
+        }
+        long weight = OBJECT_BYTES + matrixWeight(heatmap.getMessages());
+        if (heatmap.getByAuthor() != null) {
+            for (Map.Entry<String, int[][]> author : heatmap.getByAuthor().entrySet()) {
+                weight += MAP_ENTRY_BYTES + stringWeight(author.getKey()) + matrixWeight(author.getValue());
+            }
+        }
+        return weight;
+    }
+
+    private static long matrixWeight(int[][] matrix) {
+        if (matrix == null) {
+            return 0;
+        }
+        long weight = ARRAY_BYTES + matrix.length * 8L;
+        for (int[] row : matrix) {
+            weight += ARRAY_BYTES + row.length * 4L;
+        }
+        return weight;
+    }
+
+    private static long stringsWeight(List<String> strings) {
+        if (strings == null) {
+            return 0;
+        }
+        long weight = OBJECT_BYTES * 2 + strings.size() * 8L;
+        for (String string : strings) {
+            weight += stringWeight(string);
+        }
+        return weight;
+    }
+
+    // Emoji and other characters beyond Latin-1 take two bytes
+    private static long stringWeight(String string) {
+        return string == null ? 0 : STRING_BYTES + string.length() * 2L;
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized long weight() {
+        return weight;
+    }
+
+    private static ChatAnalysis await(CompletableFuture<ChatAnalysis> computation) {
+        try {
+            return computation.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry {
+        final ChatAnalysis analysis;
+        final long weight;
+        final long expiresAt;
+
+        Entry(ChatAnalysis analysis, long weight, long expiresAt) {
+            this.analysis = analysis;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.model.AnalysisJobStatus;
+import com.chatanalyzer.chatanalyzer.model.AnalysisJobStatus.State;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import org.apache.commons.io.input.CountingInputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mutable state of one analysis job. State changes are synchronized so that
+ * a cancel can never race a job that is just starting or finishing.
+ */
+class AnalysisJob implements AnalysisProgress {
+
+    private final String id;
+    private final Path spoolFile;
+    private final long bytesTotal;
+    private final Instant submittedAt = Instant.now();
+    private final AtomicLong messagesFound = new AtomicLong();
+
+    private volatile State state = State.QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile CountingInputStream input;
+    private Future<?> future;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private ChatAnalysis result;
+    private String error;
+
+    AnalysisJob(String id, Path spoolFile, long bytesTotal) {
+        this.id = id;
+        this.spoolFile = spoolFile;
+        this.bytesTotal = bytesTotal;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    Path getSpoolFile() {
+        return spoolFile;
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * @return false if the job was cancelled while it was queued
+     */
+    synchronized boolean start() {
+        if (state != State.QUEUED) {
+            return false;
+        }
+        state = State.RUNNING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    void setInput(CountingInputStream input) {
+        this.input = input;
+    }
+
+    synchronized void succeed(ChatAnalysis result) {
+        this.result = result;
+        finish(State.SUCCEEDED);
+    }
+
+    synchronized void fail(String error) {
+        this.error = error;
+        finish(State.FAILED);
+    }
+
+    synchronized void cancelled() {
+        finish(State.CANCELLED);
+    }
+
+    /**
+     * Cancels a queued job outright; a running one stops at its next
+     * cancellation check in the parse loop.
+     *
+     * @return true if the job never started, so its spool file can go
+     */
+    synchronized boolean cancel() {
+        cancelRequested = true;
+        if (state == State.QUEUED) {
+            if (future != null) {
+                future.cancel(false);
+            }
+            finish(State.CANCELLED);
+            return true;
+        }
+        return false;
+    }
+
+    synchronized boolean isFinishedBefore(Instant instant) {
+        return finishedAt != null && finishedAt.isBefore(instant);
+    }
+
+    @Override
+    public void messagesParsed(int count) {
+        messagesFound.addAndGet(count);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    synchronized AnalysisJobStatus toStatus() {
+        AnalysisJobStatus status = new AnalysisJobStatus();
+        status.setJobId(id);
+        status.setState(state);
+        status.setBytesTotal(bytesTotal);
+        status.setBytesParsed(state == State.SUCCEEDED ? bytesTotal : input != null ? input.getByteCount() : 0);
+        status.setMessagesFound(messagesFound.get());
+        status.setSubmittedAt(submittedAt.toString());
+        status.setStartedAt(startedAt != null ? startedAt.toString() : null);
+        status.setFinishedAt(finishedAt != null ? finishedAt.toString() : null);
+        status.setError(error);
+        status.setResult(result);
+        return status;
+    }
+
+    private void finish(State finalState) {
+        if (finishedAt == null) {
+            state = finalState;
+            finishedAt = Instant.now();
+        }
+    }
+}
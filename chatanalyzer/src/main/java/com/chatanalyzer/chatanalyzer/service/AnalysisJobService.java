@@ -0,0 +1,138 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.model.AnalysisJobStatus;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.text.StopWords;
+import org.apache.commons.io.input.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Runs analyses in the background. Uploads are spooled to disk and queued
+ * on the bounded job executor; when its queue is full, new jobs are
+ * rejected up front instead of piling up in memory. Finished jobs are kept
+ * for {@code chat.jobs.retention} so their results can be collected.
+ */
+@Service
+public class AnalysisJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisJobService.class);
+
+    @Autowired
+    private ChatAnalyzerService chatAnalyzerService;
+
+    @Autowired
+    private ThreadPoolExecutor analysisJobExecutor;
+
+    @Value("${chat.jobs.spool-dir:${java.io.tmpdir}/chatanalyzer/jobs}")
+    private String spoolDir;
+
+    @Value("${chat.jobs.retention:1h}")
+    private Duration retention;
+
+    private final ConcurrentHashMap<String, AnalysisJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Spools {@code content} and queues its analysis, leaving
+     * {@code stopWords} out of the top words ({@code null} for the
+     * configured default).
+     *
+     * @throws RejectedExecutionException if the job queue is full
+     */
+    public AnalysisJobStatus submit(InputStream content, StopWords stopWords) throws IOException {
+        evictExpired();
+        // Checked again on submit; this only avoids spooling uploads that would be rejected
+        if (analysisJobExecutor.getQueue().remainingCapacity() == 0) {
+            throw new RejectedExecutionException("Too many analysis jobs are queued");
+        }
+
+        String jobId = UUID.randomUUID().toString().replace("-", "");
+        Path spoolFile = Paths.get(spoolDir, jobId + ".txt");
+        Files.createDirectories(spoolFile.getParent());
+        try {
+            Files.copy(content, spoolFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spoolFile);
+            throw e;
+        }
+
+        AnalysisJob job = new AnalysisJob(jobId, spoolFile, Files.size(spoolFile));
+        jobs.put(jobId, job);
+        try {
+            job.setFuture(analysisJobExecutor.submit(() -> run(job, stopWords)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(jobId);
+            deleteSpoolFile(job);
+            throw new RejectedExecutionException("Too many analysis jobs are queued", e);
+        }
+        return job.toStatus();
+    }
+
+    public AnalysisJobStatus getStatus(String jobId) {
+        return getJob(jobId).toStatus();
+    }
+
+    public AnalysisJobStatus cancel(String jobId) {
+        AnalysisJob job = getJob(jobId);
+        if (job.cancel()) {
+            analysisJobExecutor.purge();
+            deleteSpoolFile(job);
+        }
+        return job.toStatus();
+    }
+
+    private void run(AnalysisJob job, StopWords stopWords) {
+        if (!job.start()) {
+            return;
+        }
+
+        try (CountingInputStream input = new CountingInputStream(Files.newInputStream(job.getSpoolFile()))) {
+            job.setInput(input);
+            ChatAnalysis analysis = chatAnalyzerService.analyzeChat(input, stopWords, job);
+            job.succeed(analysis);
+        } catch (CancellationException e) {
+            job.cancelled();
+        } catch (Exception e) {
+            log.error("Analysis job {} failed", job.getId(), e);
+            job.fail(e.getCause() != null ? e.getMessage() + ": " + e.getCause().getMessage() : e.getMessage());
+        } finally {
+            deleteSpoolFile(job);
+        }
+    }
+
+    private AnalysisJob getJob(String jobId) {
+        AnalysisJob job = jobId != null ? jobs.get(jobId) : null;
+        if (job == null) {
+            throw new JobNotFoundException(jobId);
+        }
+        return job;
+    }
+
+    private void evictExpired() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.isFinishedBefore(cutoff));
+    }
+
+    private static void deleteSpoolFile(AnalysisJob job) {
+        try {
+            Files.deleteIfExists(job.getSpoolFile());
+        } catch (IOException e) {
+            log.warn("Could not delete spool file {}", job.getSpoolFile(), e);
+        }
+    }
+}
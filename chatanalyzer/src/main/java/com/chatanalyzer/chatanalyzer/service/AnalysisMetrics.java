@@ -0,0 +1,106 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.model.ParseReport;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters of the analysis pipeline. Every stage has a
+ * {@code chat.analysis.stage} timer, tagged with the stage name and
+ * published with a percentile histogram; alongside are counters of
+ * messages, rejected lines, date fallbacks and bytes, and a gauge of the
+ * analyses in flight.
+ */
+@Component
+public class AnalysisMetrics {
+
+    /**
+     * A step of the analysis, timed separately.
+     */
+    public enum Stage {
+        // Reading the upload and cutting it into chunks
+        READ,
+        // Hashing an upload for the result cache
+        DIGEST,
+        // Scanning lines into messages, excluding date resolution
+        PARSE,
+        DATE,
+        // Message, author, word and day counts
+        AGGREGATE,
+        // Word and emoji counting
+        TEXT,
+        // Picking top words and emojis
+        SUMMARIZE,
+        // Writing a JSON response
+        SERIALIZE
+    }
+
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+    private final Counter messagesParsed;
+    private final Counter linesRejected;
+    private final Counter dateFallbacks;
+    private final Counter bytesProcessed;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public AnalysisMetrics(MeterRegistry registry) {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, Timer.builder("chat.analysis.stage")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        messagesParsed = Counter.builder("chat.messages.parsed")
+                .register(registry);
+        linesRejected = Counter.builder("chat.lines.rejected")
+                .description("Non-blank lines that were neither a message nor part of one")
+                .register(registry);
+        dateFallbacks = Counter.builder("chat.dates.fallback")
+                .description("Messages whose unparseable date was replaced by the current date")
+                .register(registry);
+        bytesProcessed = Counter.builder("chat.bytes.processed")
+                .baseUnit("bytes")
+                .description("Bytes of uploaded exports read by analyses")
+                .register(registry);
+        Gauge.builder("chat.analyses.in.flight", inFlight, AtomicInteger::get)
+                .description("Analyses currently running")
+                .register(registry);
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the time of a stage since {@code startNanos}, as returned by
+     * {@link System#nanoTime()}.
+     */
+    public void recordSince(Stage stage, long startNanos) {
+        record(stage, System.nanoTime() - startNanos);
+    }
+
+    public void parsed(int messages, ParseReport report) {
+        messagesParsed.increment(messages);
+        linesRejected.increment(report.getRejectedLines());
+        dateFallbacks.increment(report.getDateFallbacks());
+    }
+
+    public void bytesProcessed(long bytes) {
+        bytesProcessed.increment(bytes);
+    }
+
+    public void analysisStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void analysisFinished() {
+        inFlight.decrementAndGet();
+    }
+}
@@ -0,0 +1,30 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+/**
+ * Receives progress from a running analysis and tells it when to stop.
+ * Callbacks may come from analysis pool threads.
+ */
+public interface AnalysisProgress {
+
+    AnalysisProgress NONE = new AnalysisProgress() {
+        @Override
+        public void messagesParsed(int count) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * Called each time a batch of {@code count} further messages has been parsed.
+     */
+    void messagesParsed(int count);
+
+    /**
+     * Polled by the parse loop; once this returns true the analysis ends
+     * with a {@link java.util.concurrent.CancellationException}.
+     */
+    boolean isCancelled();
+}
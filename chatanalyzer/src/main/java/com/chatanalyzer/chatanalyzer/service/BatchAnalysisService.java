@@ -0,0 +1,213 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.model.AnalysisMode;
+import com.chatanalyzer.chatanalyzer.model.BatchResult;
+import com.chatanalyzer.chatanalyzer.model.BatchSummary;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.text.StopWords;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Analyzes many exports in one request. Each chat is a task on the shared
+ * batch executor, so small chats keep all workers busy side by side, while
+ * a large chat is further cut into chunks on the analysis pool like any
+ * other. Results are handed out as chats finish, not in upload order.
+ *
+ * <p>Uploaded files are opened by the worker analyzing them. Chats inside a
+ * zip can only be read in archive order, so they are read into memory one
+ * by one and handed over; at most two tasks per worker are queued at a
+ * time, which bounds how many are held.
+ */
+@Service
+public class BatchAnalysisService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchAnalysisService.class);
+
+    @Autowired
+    private ChatAnalyzerService chatAnalyzerService;
+
+    @Autowired
+    private ChatUploadService chatUploadService;
+
+    @Autowired
+    private ThreadPoolExecutor batchAnalysisExecutor;
+
+    /**
+     * Analyzes the chats of {@code files}: text or gzipped exports, and zips
+     * holding one or more chats. Each result is passed to {@code results} on
+     * the calling thread as soon as it is ready; chats that cannot be
+     * analyzed get a result with the error.
+     *
+     * @param summary whether to also analyze all chats as one
+     * @return the combined analysis if {@code summary} is set, otherwise
+     *         {@code null}
+     */
+    public BatchSummary analyze(MultipartFile[] files, StopWords stopWords, AnalysisMode mode, boolean parseReport,
+                                boolean summary, Consumer<BatchResult> results) {
+        Batch batch = new Batch(chatAnalyzerService.accumulators(stopWords, mode), parseReport, summary, results);
+        try {
+            for (MultipartFile file : files) {
+                String name = file.getOriginalFilename() != null ? file.getOriginalFilename() : "";
+                if (!ChatUploadService.isSupported(name)) {
+                    batch.fail(name, "Only .txt, .zip and .gz files are allowed");
+                } else if (ChatUploadService.isArchive(name)) {
+                    submitArchive(batch, file, name);
+                } else {
+                    batch.submit(name, () -> chatUploadService.open(file));
+                }
+            }
+            batch.drain(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while analyzing batch", e);
+        } finally {
+            batch.cancel();
+        }
+        return summary ? batch.summarize() : null;
+    }
+
+    private void submitArchive(Batch batch, MultipartFile file, String name) {
+        try {
+            chatUploadService.forEachChat(file, (entry, text) -> {
+                byte[] content = IOUtils.toByteArray(text);
+                try {
+                    batch.submit(name + "/" + entry, () -> new ByteArrayInputStream(content));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while analyzing batch", e);
+                }
+            });
+        } catch (IllegalArgumentException e) {
+            batch.fail(name, e.getMessage());
+        } catch (IOException e) {
+            log.warn("Error reading archive {}", name, e);
+            batch.fail(name, "Failed to read archive: " + e.getMessage());
+        }
+    }
+
+    private interface ChatSource {
+        InputStream open() throws IOException;
+    }
+
+    // State of one batch request; only touched by the calling thread, except
+    // for the combined aggregates
+    private final class Batch {
+
+        private final Supplier<ChatAnalysisAccumulator> accumulators;
+        private final boolean parseReport;
+        private final Consumer<BatchResult> results;
+        private final CompletionService<BatchResult> completed;
+        private final Semaphore queued;
+        private final List<Future<BatchResult>> pending = new ArrayList<>();
+        private final ChatAnalysisAccumulator combined;
+        private int succeeded;
+        private int failed;
+
+        Batch(Supplier<ChatAnalysisAccumulator> accumulators, boolean parseReport, boolean summary,
+              Consumer<BatchResult> results) {
+            this.accumulators = accumulators;
+            this.parseReport = parseReport;
+            this.results = results;
+            this.completed = new ExecutorCompletionService<>(batchAnalysisExecutor);
+            this.queued = new Semaphore(batchAnalysisExecutor.getMaximumPoolSize() * 2);
+            this.combined = summary ? accumulators.get() : null;
+        }
+
+        // Waits for a free slot, handing out results that finish meanwhile
+        void submit(String name, ChatSource source) throws InterruptedException {
+            drain(false);
+            queued.acquire();
+            try {
+                pending.add(completed.submit(() -> {
+                    try {
+                        return analyze(name, source);
+                    } finally {
+                        queued.release();
+                    }
+                }));
+            } catch (RuntimeException e) {
+                queued.release();
+                throw e;
+            }
+        }
+
+        void fail(String name, String error) {
+            report(BatchResult.failed(name, error));
+        }
+
+        // Hands out finished results, all of them once done if wait is set
+        void drain(boolean wait) throws InterruptedException {
+            while (!pending.isEmpty()) {
+                Future<BatchResult> next = wait ? completed.take() : completed.poll();
+                if (next == null) {
+                    return;
+                }
+                pending.remove(next);
+                try {
+                    report(next.get());
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Failed to analyze batch", e.getCause());
+                }
+            }
+        }
+
+        void cancel() {
+            pending.forEach(future -> future.cancel(true));
+        }
+
+        BatchSummary summarize() {
+            BatchSummary summary = new BatchSummary();
+            summary.setChats(succeeded);
+            summary.setFailedChats(failed);
+            if (succeeded > 0) {
+                summary.setCombined(chatAnalyzerService.buildAnalysis(combined, 10).withParseReport(parseReport));
+            }
+            return summary;
+        }
+
+        private void report(BatchResult result) {
+            if (result.getError() != null) {
+                failed++;
+            } else {
+                succeeded++;
+            }
+            results.accept(result);
+        }
+
+        private BatchResult analyze(String name, ChatSource source) {
+            try (InputStream content = source.open()) {
+                ChatAnalysisAccumulator accumulator = chatAnalyzerService.accumulateChat(content, accumulators);
+                ChatAnalysis analysis = chatAnalyzerService.buildAnalysis(accumulator, 10);
+                if (combined != null) {
+                    synchronized (combined) {
+                        combined.mergeChat(accumulator);
+                    }
+                }
+                return BatchResult.succeeded(name, analysis.withParseReport(parseReport));
+            } catch (IllegalArgumentException e) {
+                return BatchResult.failed(name, e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                log.error("Error analyzing {}", name, e);
+                return BatchResult.failed(name, "Error analyzing chat: " + e.getMessage());
+            }
+        }
+    }
+}
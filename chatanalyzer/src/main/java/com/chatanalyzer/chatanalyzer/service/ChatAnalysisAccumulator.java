@@ -0,0 +1,473 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.count.BoundedInput;
+import com.chatanalyzer.chatanalyzer.count.StringCounter;
+import com.chatanalyzer.chatanalyzer.model.ActivityHeatmap;
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import com.chatanalyzer.chatanalyzer.model.ConversationStats;
+import com.chatanalyzer.chatanalyzer.model.ParseReport;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Running aggregates for a single chat. Messages are fed in one at a time
+ * as they are parsed, so the message list itself is never materialized.
+ */
+class ChatAnalysisAccumulator {
+
+    private static final int SKETCH_MAGIC = 0x5743534B; // "WCSK"
+    private static final int SKETCH_VERSION = 1;
+
+    /** Quarter hours of a week: weekday (Monday first) * 96 + quarter of day. */
+    static final int WEEK_SLOTS = 7 * 96;
+
+    private int totalMessages;
+    private int totalWords;
+    private int mediaCount;
+    private final StringCounter userCounts = new StringCounter();
+    private final Map<String, Integer> dailyMessageCount = new HashMap<>();
+    // Messages by quarter hour of the week, overall and by author id in
+    // userCounts; an author's row is created with their first timed message
+    private final int[] activity = new int[WEEK_SLOTS];
+    private int[][] authorActivity = new int[16][];
+    // Sessions and replies, by author id in userCounts
+    private final ConversationTracker conversations;
+    private final TextStatistics textStatistics;
+    // Only set when the messages were parsed here
+    private ParseReport parseReport;
+
+    // Messages arrive in date order, so days are counted in runs and only
+    // keyed by date string once per run
+    private LocalDate runDate;
+    private int runLength;
+    private long runDay;
+    private int runWeekday;
+
+    ChatAnalysisAccumulator(TextStatistics textStatistics) {
+        this(textStatistics, ConversationTracker.DEFAULT_IDLE_GAP);
+    }
+
+    /**
+     * @param idleGapMinutes the longest pause within a conversation session
+     */
+    ChatAnalysisAccumulator(TextStatistics textStatistics, int idleGapMinutes) {
+        this.textStatistics = textStatistics;
+        this.conversations = new ConversationTracker(idleGapMinutes);
+    }
+
+    void accept(ChatMessage message) {
+        count(message);
+        countText(message);
+    }
+
+    /**
+     * Counts a message without looking at its words and emojis.
+     */
+    void count(ChatMessage message) {
+        totalMessages++;
+
+        // User counts
+        String author = message.getAuthor();
+        int authorId = -1;
+        if (author != null && !author.isEmpty()) {
+            authorId = userCounts.add(author, 1);
+        }
+
+        // Word counts
+        if (!message.isMediaMessage()) {
+            totalWords += TextStatistics.countTokens(message.getText());
+        }
+
+        // Media count
+        if (message.isMediaMessage()) {
+            mediaCount++;
+        }
+
+        // Daily message count
+        LocalDate date = message.getDate();
+        if (date != null) {
+            if (!date.equals(runDate)) {
+                flushRun();
+                runDate = date;
+                runDay = date.toEpochDay();
+                runWeekday = weekday(runDay);
+            }
+            runLength++;
+
+            // Activity by weekday and time of day, and conversations
+            int minute = message.getMinuteOfDay();
+            if (minute >= 0) {
+                int slot = runWeekday * 96 + minute / 15;
+                activity[slot]++;
+                if (authorId >= 0) {
+                    authorActivity(authorId)[slot]++;
+                    conversations.accept(authorId, runDay * 1440 + minute);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the word, emoji and phrase frequencies of a message.
+     */
+    void countText(ChatMessage message) {
+        if (!message.isMediaMessage()) {
+            textStatistics.accept(message.getAuthor(), message.getText());
+        }
+    }
+
+    /**
+     * Folds the aggregates of another part of the same chat into this one.
+     * Conversations carry over from this part into the other if it starts
+     * right after this one ends.
+     */
+    void merge(ChatAnalysisAccumulator other) {
+        merge(other, true);
+    }
+
+    /**
+     * Folds the aggregates of a different chat into this one, keeping its
+     * conversations apart from ours.
+     */
+    void mergeChat(ChatAnalysisAccumulator other) {
+        merge(other, false);
+    }
+
+    private void merge(ChatAnalysisAccumulator other, boolean sameChat) {
+        totalMessages += other.totalMessages;
+        totalWords += other.totalWords;
+        mediaCount += other.mediaCount;
+        userCounts.merge(other.userCounts);
+        other.flushRun();
+        other.dailyMessageCount.forEach((day, count) -> dailyMessageCount.merge(day, count, Integer::sum));
+        addSlots(activity, other.activity);
+        for (int id = 0; id < other.userCounts.size() && id < other.authorActivity.length; id++) {
+            if (other.authorActivity[id] != null) {
+                String author = other.userCounts.key(id);
+                addSlots(authorActivity(userCounts.indexOf(author, 0, author.length())), other.authorActivity[id]);
+            }
+        }
+        addConversations(other.conversations, other.userCounts::key, sameChat);
+        textStatistics.merge(other.textStatistics);
+        if (other.parseReport != null) {
+            addParseReport(other.parseReport);
+        }
+    }
+
+    /**
+     * Adds counts that were aggregated elsewhere, e.g. read from a stored
+     * chat index, without going through individual messages.
+     */
+    void addTotals(int messages, int words, int media) {
+        totalMessages += messages;
+        totalWords += words;
+        mediaCount += media;
+    }
+
+    void addUserCount(String author, int count) {
+        if (author != null && !author.isEmpty() && count > 0) {
+            userCounts.add(author, count);
+        }
+    }
+
+    void addDailyCount(LocalDate day, int count) {
+        if (count > 0) {
+            dailyMessageCount.merge(day.toString(), count, Integer::sum);
+        }
+    }
+
+    /**
+     * Adds messages by quarter hour of the week, indexed as
+     * {@link #WEEK_SLOTS}, of {@code author}, or of no one in particular if
+     * {@code null}. The author's messages must be added to the user counts
+     * too.
+     */
+    void addActivity(String author, int[] slots) {
+        addSlots(activity, slots);
+        if (author != null && !author.isEmpty()) {
+            int id = userCounts.intern(author, 0, author.length());
+            addSlots(authorActivity(id), slots);
+        }
+    }
+
+    /**
+     * A tracker for following messages outside of this accumulator, with the
+     * same idle gap.
+     */
+    ConversationTracker newConversationTracker() {
+        return new ConversationTracker(conversations.getIdleGap());
+    }
+
+    /**
+     * Adds the conversations of the part of this chat followed by
+     * {@code tracker}, whose author ids are named by {@code authors}.
+     */
+    void addConversations(ConversationTracker tracker, IntFunction<String> authors) {
+        addConversations(tracker, authors, true);
+    }
+
+    private void addConversations(ConversationTracker tracker, IntFunction<String> authors, boolean join) {
+        int[] ids = new int[tracker.authorCount()];
+        for (int id = 0; id < ids.length; id++) {
+            String author = authors.apply(id);
+            ids[id] = userCounts.intern(author, 0, author.length());
+        }
+        conversations.merge(tracker, ids, join);
+    }
+
+    void addParseReport(ParseReport report) {
+        if (parseReport == null) {
+            parseReport = new ParseReport();
+        }
+        parseReport.merge(report);
+    }
+
+    int getTotalMessages() {
+        return totalMessages;
+    }
+
+    int getTotalWords() {
+        return totalWords;
+    }
+
+    int getMediaCount() {
+        return mediaCount;
+    }
+
+    Map<String, Integer> getUserCounts() {
+        return userCounts.toMap();
+    }
+
+    Map<String, Integer> getDailyMessageCount() {
+        flushRun();
+        return dailyMessageCount;
+    }
+
+    ParseReport getParseReport() {
+        return parseReport;
+    }
+
+    TextStatistics getTextStatistics() {
+        return textStatistics;
+    }
+
+    /**
+     * Messages by weekday and slots of {@code slotMinutes}, a divisor of 60
+     * that is a multiple of 15, overall and by author.
+     */
+    ActivityHeatmap getActivity(int slotMinutes) {
+        ActivityHeatmap heatmap = new ActivityHeatmap();
+        heatmap.setSlotMinutes(slotMinutes);
+        heatmap.setMessages(weekMatrix(activity, slotMinutes / 15));
+        Map<String, int[][]> byAuthor = new HashMap<>();
+        for (int id = 0; id < userCounts.size() && id < authorActivity.length; id++) {
+            if (authorActivity[id] != null) {
+                byAuthor.put(userCounts.key(id), weekMatrix(authorActivity[id], slotMinutes / 15));
+            }
+        }
+        heatmap.setByAuthor(byAuthor);
+        return heatmap;
+    }
+
+    ConversationStats getConversations() {
+        return conversations.stats(userCounts::key);
+    }
+
+    // Monday is 0; epoch day 0 was a Thursday
+    static int weekday(long epochDay) {
+        return (int) Math.floorMod(epochDay + 3, 7L);
+    }
+
+    private int[] authorActivity(int id) {
+        if (id >= authorActivity.length) {
+            authorActivity = Arrays.copyOf(authorActivity, Math.max(id + 1, authorActivity.length * 2));
+        }
+        if (authorActivity[id] == null) {
+            authorActivity[id] = new int[WEEK_SLOTS];
+        }
+        return authorActivity[id];
+    }
+
+    private static void addSlots(int[] into, int[] slots) {
+        for (int i = 0; i < WEEK_SLOTS; i++) {
+            into[i] += slots[i];
+        }
+    }
+
+    private static int[][] weekMatrix(int[] slots, int quartersPerSlot) {
+        int[][] matrix = new int[7][96 / quartersPerSlot];
+        for (int i = 0; i < WEEK_SLOTS; i++) {
+            matrix[i / 96][i % 96 / quartersPerSlot] += slots[i];
+        }
+        return matrix;
+    }
+
+    /**
+     * Writes the aggregates of an approximate analysis, so that they can be
+     * merged with those of other parts of the chat, e.g. analyzed on
+     * another node. Totals, authors, days, activity and conversations are
+     * kept exactly, as there are few of them; words, emojis and phrases are
+     * written as their sketches. The parse report is left out.
+     *
+     * @throws IllegalStateException if the word and emoji counts are exact
+     */
+    void writeSketch(DataOutput out) throws IOException {
+        if (!(textStatistics instanceof SketchTextStatistics)) {
+            throw new IllegalStateException("Only approximate analyses can be written as sketches");
+        }
+        out.writeInt(SKETCH_MAGIC);
+        out.writeInt(SKETCH_VERSION);
+        out.writeInt(totalMessages);
+        out.writeInt(totalWords);
+        out.writeInt(mediaCount);
+
+        // By id, which the conversations refer to
+        out.writeInt(userCounts.size());
+        for (int id = 0; id < userCounts.size(); id++) {
+            byte[] name = userCounts.key(id).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            out.writeInt(userCounts.count(id));
+        }
+
+        Map<String, Integer> days = getDailyMessageCount();
+        out.writeInt(days.size());
+        for (Map.Entry<String, Integer> day : days.entrySet()) {
+            out.writeInt((int) LocalDate.parse(day.getKey()).toEpochDay());
+            out.writeInt(day.getValue());
+        }
+
+        writeSlots(out, activity);
+        int authors = 0;
+        for (int id = 0; id < userCounts.size() && id < authorActivity.length; id++) {
+            if (authorActivity[id] != null) {
+                authors++;
+            }
+        }
+        out.writeInt(authors);
+        for (int id = 0; id < userCounts.size() && id < authorActivity.length; id++) {
+            if (authorActivity[id] != null) {
+                byte[] name = userCounts.key(id).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                writeSlots(out, authorActivity[id]);
+            }
+        }
+        conversations.writeTo(out);
+
+        ((SketchTextStatistics) textStatistics).writeTo(out);
+    }
+
+    /**
+     * Reads aggregates written by {@link #writeSketch}.
+     *
+     * @throws IOException if the input is not a sketch of this version,
+     *         or a length or count in it is more than the rest could hold
+     */
+    static ChatAnalysisAccumulator readSketch(BoundedInput in) throws IOException {
+        if (in.readInt() != SKETCH_MAGIC) {
+            throw new IOException("Not a chat sketch");
+        }
+        int version = in.readInt();
+        if (version != SKETCH_VERSION) {
+            throw new IOException("Unsupported chat sketch version " + version);
+        }
+        int messages = in.readInt();
+        int words = in.readInt();
+        int media = in.readInt();
+
+        List<String> users = new ArrayList<>();
+        List<Integer> userMessages = new ArrayList<>();
+        // Each a name length and a message count
+        for (int i = in.readCount(Integer.MAX_VALUE, 8, "author"); i > 0; i--) {
+            users.add(in.readString("author name"));
+            userMessages.add(in.readInt());
+        }
+        Map<LocalDate, Integer> days = new HashMap<>();
+        try {
+            // Each an epoch day and a message count
+            for (int i = in.readCount(Integer.MAX_VALUE, 8, "day"); i > 0; i--) {
+                days.put(LocalDate.ofEpochDay(in.readInt()), in.readInt());
+            }
+        } catch (DateTimeException e) {
+            throw new IOException("Invalid day in chat sketch", e);
+        }
+        int[] activity = readSlots(in);
+        Map<String, int[]> authorActivity = new HashMap<>();
+        // Each a name length and a slot count
+        for (int i = in.readCount(users.size(), 6, "author activity"); i > 0; i--) {
+            authorActivity.put(in.readString("author name"), readSlots(in));
+        }
+        ConversationTracker conversations;
+        try {
+            conversations = ConversationTracker.read(in, users.size());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        ChatAnalysisAccumulator accumulator = new ChatAnalysisAccumulator(SketchTextStatistics.read(in),
+            conversations.getIdleGap());
+        accumulator.addTotals(messages, words, media);
+        for (int i = 0; i < users.size(); i++) {
+            String user = users.get(i);
+            accumulator.userCounts.intern(user, 0, user.length());
+            accumulator.addUserCount(user, userMessages.get(i));
+        }
+        accumulator.addConversations(conversations, users::get);
+        days.forEach(accumulator::addDailyCount);
+        addSlots(accumulator.activity, activity);
+        authorActivity.forEach((author, slots) ->
+            addSlots(accumulator.authorActivity(accumulator.userCounts.intern(author, 0, author.length())), slots));
+        return accumulator;
+    }
+
+    // Only the slots with messages, as most of the week is usually quiet
+    private static void writeSlots(DataOutput out, int[] slots) throws IOException {
+        int used = 0;
+        for (int count : slots) {
+            if (count != 0) {
+                used++;
+            }
+        }
+        out.writeShort(used);
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] != 0) {
+                out.writeShort(slot);
+                out.writeInt(slots[slot]);
+            }
+        }
+    }
+
+    private static int[] readSlots(BoundedInput in) throws IOException {
+        int[] slots = new int[WEEK_SLOTS];
+        int used = in.readUnsignedShort();
+        // Each a slot and a count
+        if (used > WEEK_SLOTS || used * 6 > in.remaining()) {
+            throw new IOException("Invalid activity slot count " + used + " in chat sketch");
+        }
+        for (int i = used; i > 0; i--) {
+            int slot = in.readUnsignedShort();
+            if (slot >= WEEK_SLOTS) {
+                throw new IOException("Invalid activity slot in chat sketch");
+            }
+            slots[slot] = in.readInt();
+        }
+        return slots;
+    }
+
+    private void flushRun() {
+        if (runLength > 0) {
+            dailyMessageCount.merge(runDate.toString(), runLength, Integer::sum);
+            runLength = 0;
+        }
+    }
+}
\ No newline at end of file
@@ -1,160 +1,598 @@
 package com.chatanalyzer.chatanalyzer.service;
 
+import com.chatanalyzer.chatanalyzer.count.BoundedInput;
+import com.chatanalyzer.chatanalyzer.count.CountMinSketch;
+import com.chatanalyzer.chatanalyzer.count.HyperLogLog;
+import com.chatanalyzer.chatanalyzer.count.SpaceSaving;
+import com.chatanalyzer.chatanalyzer.model.AnalysisMode;
 import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
 import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import com.chatanalyzer.chatanalyzer.model.ParseReport;
+import com.chatanalyzer.chatanalyzer.parser.WhatsAppLineParser;
+import com.chatanalyzer.chatanalyzer.service.AnalysisMetrics.Stage;
+import com.chatanalyzer.chatanalyzer.text.StopWords;
+import org.apache.commons.io.input.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 public class ChatAnalyzerService {
 
+    private static final Logger log = LoggerFactory.getLogger(ChatAnalyzerService.class);
+
     @Autowired
     private PythonAnalysisService pythonAnalysisService;
 
-    private static final Pattern MESSAGE_PATTERN = Pattern.compile(
-        "^(\\d{1,2}/\\d{1,2}/\\d{2,4}),?\\s+(\\d{1,2}:\\d{2}(?:\\s*(?:AM|PM|am|pm))?)\\s*-\\s*([^:]+):\\s*(.*)$"
-    );
+    @Autowired
+    private ForkJoinPool analysisPool;
+
+    @Autowired
+    private AnalysisMetrics analysisMetrics;
+
+    // Lines between cancellation checks, minus one
+    private static final int CANCEL_CHECK_INTERVAL = 4096 - 1;
+
+    // Lines between stage timing samples, minus one
+    private static final int TIMING_SAMPLE_INTERVAL = 16 - 1;
+
+    // Sketches are read whole before they are checked; one at default
+    // sizes takes well under a megabyte plus about 20 KB per author
+    static final int MAX_SKETCH_BYTES = 64 << 20;
+
+    // Characters per chunk; smaller exports are analyzed on the request thread
+    @Value("${chat.analysis.chunk-size:524288}")
+    private int chunkSize;
+
+    // Sketch sizes of the approximate mode; see SketchTextStatistics
+    @Value("${chat.sketch.width:" + CountMinSketch.DEFAULT_WIDTH + "}")
+    private int sketchWidth = CountMinSketch.DEFAULT_WIDTH;
+
+    @Value("${chat.sketch.depth:" + CountMinSketch.DEFAULT_DEPTH + "}")
+    private int sketchDepth = CountMinSketch.DEFAULT_DEPTH;
+
+    @Value("${chat.sketch.capacity:" + SpaceSaving.DEFAULT_CAPACITY + "}")
+    private int sketchCapacity = SpaceSaving.DEFAULT_CAPACITY;
+
+    @Value("${chat.sketch.precision:" + HyperLogLog.DEFAULT_PRECISION + "}")
+    private int sketchPrecision = HyperLogLog.DEFAULT_PRECISION;
+
+    // Counters of the phrase and per-author word summaries; see PhraseStatistics
+    @Value("${chat.phrases.capacity:" + PhraseStatistics.DEFAULT_CAPACITY + "}")
+    private int phraseCapacity = PhraseStatistics.DEFAULT_CAPACITY;
+
+    @Value("${chat.phrases.author-capacity:" + PhraseStatistics.DEFAULT_AUTHOR_CAPACITY + "}")
+    private int authorWordCapacity = PhraseStatistics.DEFAULT_AUTHOR_CAPACITY;
+
+    // Longest pause within a conversation session; see ConversationTracker
+    @Value("${chat.conversation.idle-gap-minutes:" + ConversationTracker.DEFAULT_IDLE_GAP + "}")
+    private int idleGapMinutes = ConversationTracker.DEFAULT_IDLE_GAP;
 
     public ChatAnalysis analyzeChat(String content) {
+        return analyzeChat(content, null);
+    }
+
+    /**
+     * Analyzes {@code content}, leaving {@code stopWords} out of the top
+     * words; {@code null} uses the configured default.
+     */
+    public ChatAnalysis analyzeChat(String content, StopWords stopWords) {
+        return analyzeChat(content, stopWords, AnalysisMode.EXACT);
+    }
+
+    /**
+     * Like {@link #analyzeChat(String, StopWords)}; in
+     * {@link AnalysisMode#APPROXIMATE} mode words and emojis are counted in
+     * fixed-size sketches, and the result carries their error bounds.
+     */
+    public ChatAnalysis analyzeChat(String content, StopWords stopWords, AnalysisMode mode) {
         if (content == null || content.trim().isEmpty()) {
             throw new IllegalArgumentException("Chat content cannot be null or empty");
         }
         
+        return analyzeChat(new StringReader(content), accumulators(stopWords, mode), AnalysisProgress.NONE);
+    }
+
+    /**
+     * Streams an export straight from the upload, one line at a time, so the
+     * file is never held in memory as a whole.
+     */
+    public ChatAnalysis analyzeChat(InputStream inputStream) {
+        return analyzeChat(inputStream, null, AnalysisProgress.NONE);
+    }
+
+    /**
+     * Like {@link #analyzeChat(InputStream)}, reporting parsed messages to
+     * {@code progress} and stopping early once it is cancelled.
+     *
+     * @throws CancellationException if {@code progress} was cancelled
+     */
+    public ChatAnalysis analyzeChat(InputStream inputStream, AnalysisProgress progress) {
+        return analyzeChat(inputStream, null, progress);
+    }
+
+    /**
+     * Like {@link #analyzeChat(InputStream, AnalysisProgress)}, leaving
+     * {@code stopWords} out of the top words; {@code null} uses the
+     * configured default.
+     *
+     * @throws CancellationException if {@code progress} was cancelled
+     */
+    public ChatAnalysis analyzeChat(InputStream inputStream, StopWords stopWords, AnalysisProgress progress) {
+        return analyzeChat(inputStream, stopWords, progress, AnalysisMode.EXACT);
+    }
+
+    /**
+     * Like {@link #analyzeChat(InputStream, StopWords, AnalysisProgress)},
+     * in the given mode.
+     *
+     * @throws CancellationException if {@code progress} was cancelled
+     */
+    public ChatAnalysis analyzeChat(InputStream inputStream, StopWords stopWords, AnalysisProgress progress,
+                                    AnalysisMode mode) {
+        CountingInputStream counted = new CountingInputStream(inputStream);
+        try {
+            return analyzeChat(new InputStreamReader(counted, StandardCharsets.UTF_8),
+                accumulators(stopWords, mode), progress);
+        } finally {
+            if (analysisMetrics != null) {
+                analysisMetrics.bytesProcessed(counted.getByteCount());
+            }
+        }
+    }
+
+    /**
+     * The aggregates of an export, for callers that combine several chats.
+     *
+     * @throws IllegalArgumentException if the export has no messages
+     */
+    ChatAnalysisAccumulator accumulateChat(InputStream inputStream, Supplier<ChatAnalysisAccumulator> accumulators) {
+        CountingInputStream counted = new CountingInputStream(inputStream);
+        ChatAnalysisAccumulator accumulator;
+        try {
+            accumulator = accumulateChat(new InputStreamReader(counted, StandardCharsets.UTF_8), accumulators,
+                AnalysisProgress.NONE);
+        } finally {
+            if (analysisMetrics != null) {
+                analysisMetrics.bytesProcessed(counted.getByteCount());
+            }
+        }
+        if (accumulator.getTotalMessages() == 0) {
+            throw new IllegalArgumentException("No valid chat messages found in the provided content");
+        }
+        return accumulator;
+    }
+
+    /**
+     * Analyzes an export in approximate mode and returns its aggregates in
+     * binary form, to be combined with those of other parts of the same
+     * chat by {@link #mergeSketches}. The size of the result depends on the
+     * number of authors and days, not on the length of the chat.
+     */
+    public byte[] sketchChat(InputStream inputStream, StopWords stopWords) {
+        CountingInputStream counted = new CountingInputStream(inputStream);
+        ChatAnalysisAccumulator accumulator;
         try {
-            List<ChatMessage> messages = parseMessages(content);
-            return buildAnalysis(messages);
+            accumulator = accumulateChat(new InputStreamReader(counted, StandardCharsets.UTF_8),
+                accumulators(stopWords, AnalysisMode.APPROXIMATE), AnalysisProgress.NONE);
+        } finally {
+            if (analysisMetrics != null) {
+                analysisMetrics.bytesProcessed(counted.getByteCount());
+            }
+        }
+        if (accumulator.getTotalMessages() == 0) {
+            throw new IllegalArgumentException("No valid chat messages found in the provided content");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            accumulator.writeSketch(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write chat sketch", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Combines sketches written by {@link #sketchChat} into one approximate
+     * analysis, as if the parts had been analyzed together. The sketches
+     * must have been made with the same stop words and sketch sizes.
+     *
+     * @throws IllegalArgumentException if a sketch is malformed or does not
+     *         match the others
+     */
+    public ChatAnalysis mergeSketches(List<InputStream> sketches, int topLimit) {
+        if (sketches.isEmpty()) {
+            throw new IllegalArgumentException("No sketches given");
+        }
+        ChatAnalysisAccumulator merged = null;
+        for (InputStream sketch : sketches) {
+            ChatAnalysisAccumulator part;
+            try {
+                byte[] bytes = sketch.readNBytes(MAX_SKETCH_BYTES + 1);
+                if (bytes.length > MAX_SKETCH_BYTES) {
+                    throw new IllegalArgumentException("Chat sketch exceeds " + (MAX_SKETCH_BYTES >> 20) + "MB");
+                }
+                part = ChatAnalysisAccumulator.readSketch(new BoundedInput(bytes));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Invalid chat sketch: " + e.getMessage(), e);
+            }
+            merged = mergeInto(merged, part);
+        }
+        return buildAnalysis(merged, topLimit);
+    }
+
+    /**
+     * Stop words for a comma-separated list of languages, or the configured
+     * default if {@code languages} is null or blank.
+     *
+     * @throws IllegalArgumentException if a language has no stop word list
+     */
+    public StopWords stopWords(String languages) {
+        if (pythonAnalysisService != null) {
+            return pythonAnalysisService.stopWords(languages);
+        }
+        return StopWords.forLanguages(languages == null || languages.trim().isEmpty()
+            ? StopWords.DEFAULT_LANGUAGES : languages);
+    }
+
+    /**
+     * Parses an export in order on the calling thread, handing each message
+     * to {@code sink}. Used where messages are needed rather than aggregates.
+     *
+     * @return the number of messages parsed
+     */
+    public int parseChat(InputStream inputStream, Consumer<ChatMessage> sink) {
+        return parseChatSince(inputStream, WhatsAppLineParser.NO_MINUTE, 0, sink);
+    }
+
+    /**
+     * Like {@link #parseChat(InputStream, Consumer)}, for a later export of a
+     * chat that was parsed up to {@code since}, the minute since the epoch of
+     * its last message (see {@link WhatsAppLineParser#epochMinute}). Lines up
+     * to that minute are skipped on their header alone, without parsing
+     * them. Of the messages written in that minute, the first
+     * {@code seenAtSince} are the ones already parsed and are left out too.
+     *
+     * @return the number of messages handed to {@code sink}
+     */
+    public int parseChatSince(InputStream inputStream, long since, int seenAtSince, Consumer<ChatMessage> sink) {
+        int count = 0;
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            WhatsAppLineParser parser = new WhatsAppLineParser(WhatsAppLineParser.detectDateOrder(lines));
+            boolean skipping = since != WhatsAppLineParser.NO_MINUTE;
+            int repeats = seenAtSince;
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (skipping) {
+                    long minute = parser.entryMinute(line);
+                    if (minute == WhatsAppLineParser.NO_MINUTE || minute < since) continue;
+                    skipping = false;
+                }
+                ChatMessage message = parser.accept(line);
+                if (message != null) {
+                    if (repeats > 0 && isAt(message, since)) {
+                        repeats--;
+                    } else {
+                        sink.accept(message);
+                        count++;
+                    }
+                }
+            }
+            ChatMessage last = parser.finish();
+            if (last != null && !(repeats > 0 && isAt(last, since))) {
+                sink.accept(last);
+                count++;
+            }
+            if (analysisMetrics != null) {
+                analysisMetrics.parsed(count, parser.getReport());
+            }
+            logParseReport(count, parser.getReport());
+        } catch (IOException e) {
+            log.warn("Could not read chat", e);
+            throw new UncheckedIOException("Failed to read chat content", e);
+        }
+        return count;
+    }
+
+    private static boolean isAt(ChatMessage message, long minute) {
+        return WhatsAppLineParser.epochMinute(message.getDate(), message.getTime()) == minute;
+    }
+
+    private ChatAnalysis analyzeChat(Reader reader, Supplier<ChatAnalysisAccumulator> accumulators,
+                                     AnalysisProgress progress) {
+        ChatAnalysisAccumulator accumulator = accumulateChat(reader, accumulators, progress);
+        try {
+            if (accumulator.getTotalMessages() == 0) {
+                throw new IllegalArgumentException("No valid chat messages found in the provided content");
+            }
+            return buildAnalysis(accumulator);
         } catch (Exception e) {
-            System.err.println("Error analyzing chat: " + e.getMessage());
+            log.warn("Could not analyze chat", e);
             throw new RuntimeException("Failed to analyze chat content", e);
         }
     }
 
-    private List<ChatMessage> parseMessages(String content) {
-        List<ChatMessage> messages = new ArrayList<>();
-        String[] lines = content.split("\n");
+    // Fresh accumulators for each chunk, counting words exactly or in sketches
+    Supplier<ChatAnalysisAccumulator> accumulators(StopWords stopWords, AnalysisMode mode) {
+        StopWords resolved = stopWords != null ? stopWords : stopWords(null);
+        if (mode == AnalysisMode.APPROXIMATE) {
+            return () -> new ChatAnalysisAccumulator(new SketchTextStatistics(resolved, newPhraseStatistics(),
+                sketchWidth, sketchDepth, sketchCapacity, sketchPrecision), idleGapMinutes);
+        }
+        return () -> newAccumulator(resolved);
+    }
+
+    private ChatAnalysisAccumulator accumulateChat(Reader reader, Supplier<ChatAnalysisAccumulator> accumulators,
+                                                   AnalysisProgress progress) {
+        ChatAnalysisAccumulator accumulator;
         
-        for (String line : lines) {
-            if (line.trim().isEmpty()) continue;
-            
-            Matcher matcher = MESSAGE_PATTERN.matcher(line.trim());
-            if (matcher.matches()) {
-                try {
-                    String dateStr = matcher.group(1);
-                    String timeStr = matcher.group(2);
-                    String author = matcher.group(3).trim();
-                    String text = matcher.group(4).trim();
-                    
-                    // Parse date
-                    LocalDate date = parseDate(dateStr);
-                    
-                    ChatMessage message = new ChatMessage();
-                    message.setDate(date);
-                    message.setTime(timeStr);
-                    message.setAuthor(author);
-                    message.setText(text);
-                    message.setMediaMessage(isMediaMessage(text));
-                    
-                    messages.add(message);
-                } catch (Exception e) {
-                    // Skip malformed messages but log them
-                    System.err.println("Failed to parse message: " + line + " - " + e.getMessage());
-                }
+        if (analysisMetrics != null) {
+            analysisMetrics.analysisStarted();
+        }
+        try (BufferedReader lines = new BufferedReader(reader)) {
+            accumulator = accumulate(lines, accumulators, progress);
+        } catch (IOException e) {
+            log.warn("Could not read chat", e);
+            throw new UncheckedIOException("Failed to read chat content", e);
+        } finally {
+            if (analysisMetrics != null) {
+                analysisMetrics.analysisFinished();
             }
         }
         
-        if (messages.isEmpty()) {
-            throw new IllegalArgumentException("No valid chat messages found in the provided content");
+        if (accumulator == null) {
+            throw new IllegalArgumentException("Chat content cannot be null or empty");
         }
         
-        return messages;
+        logParseReport(accumulator.getTotalMessages(), accumulator.getParseReport());
+        return accumulator;
     }
 
-    private LocalDate parseDate(String dateStr) {
-        // Try different date formats
-        String[] formats = {
-            "M/d/yyyy", "MM/dd/yyyy", "d/M/yyyy", "dd/MM/yyyy",
-            "M/d/yy", "MM/dd/yy", "d/M/yy", "dd/MM/yy"
-        };
+    /**
+     * Parses and aggregates the export. Exports that fit in a single chunk
+     * are handled on the calling thread; larger ones are cut into chunks at
+     * entry boundaries, analyzed on the analysis pool and merged in chat
+     * order. Message, word, emoji and activity counts are the same either
+     * way. Conversations depend on message order; each chunk keeps its
+     * first and last session open and merging stitches them across the
+     * chunk edges, so sessions, replies and latencies are the same too. The
+     * Space-Saving summaries, i.e. top phrases, top words by author and, in
+     * approximate mode, top words and emojis, are not: merged counts stay
+     * within their error bounds, but the bounds and the entries listed near
+     * the cut-off depend on where the chunks end. The time spent reading
+     * the export into chunks is recorded as one {@link Stage#READ} sample.
+     *
+     * @return the aggregates, or {@code null} if the export has no content
+     */
+    private ChatAnalysisAccumulator accumulate(BufferedReader lines, Supplier<ChatAnalysisAccumulator> accumulators,
+                                               AnalysisProgress progress) throws IOException {
+        long readStart = System.nanoTime();
+        WhatsAppLineParser.DateOrder dateOrder = WhatsAppLineParser.detectDateOrder(lines);
+        ChatChunkReader chunks = new ChatChunkReader(lines, new WhatsAppLineParser(dateOrder), chunkSize);
         
-        for (String format : formats) {
-            try {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
-                return LocalDate.parse(dateStr, formatter);
-            } catch (DateTimeParseException e) {
-                // Try next format
+        List<String> first = chunks.next();
+        List<String> second = first != null ? chunks.next() : null;
+        long readNanos = System.nanoTime() - readStart;
+        if (!chunks.isContentSeen()) {
+            return null;
+        }
+        if (second == null || analysisPool == null || analysisPool.getParallelism() < 2) {
+            ChatAnalysisAccumulator accumulator = analyzeChunk(first, dateOrder, accumulators, progress);
+            for (List<String> chunk = second; chunk != null; ) {
+                accumulator.merge(analyzeChunk(chunk, dateOrder, accumulators, progress));
+                readStart = System.nanoTime();
+                chunk = chunks.next();
+                readNanos += System.nanoTime() - readStart;
             }
+            recordRead(readNanos);
+            return accumulator;
         }
         
-        // Default to current date if parsing fails
-        System.err.println("Could not parse date: " + dateStr + ", using current date");
-        return LocalDate.now();
+        // Bound the chunks held in memory while workers catch up
+        Semaphore inFlight = new Semaphore(analysisPool.getParallelism() * 2);
+        Deque<Future<ChatAnalysisAccumulator>> pending = new ArrayDeque<>();
+        ChatAnalysisAccumulator result = null;
+        try {
+            pending.add(submitChunk(first, dateOrder, accumulators, progress, inFlight));
+            for (List<String> chunk = second; chunk != null; ) {
+                pending.add(submitChunk(chunk, dateOrder, accumulators, progress, inFlight));
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    result = mergeInto(result, pending.poll().get());
+                }
+                readStart = System.nanoTime();
+                chunk = chunks.next();
+                readNanos += System.nanoTime() - readStart;
+            }
+            recordRead(readNanos);
+            while (!pending.isEmpty()) {
+                result = mergeInto(result, pending.poll().get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while analyzing chat", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                throw (CancellationException) e.getCause();
+            }
+            throw new RuntimeException("Failed to analyze chat chunk", e.getCause());
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
     }
 
-    private boolean isMediaMessage(String text) {
-        if (text == null) return false;
+    private Future<ChatAnalysisAccumulator> submitChunk(List<String> lines, WhatsAppLineParser.DateOrder dateOrder,
+                                                        Supplier<ChatAnalysisAccumulator> accumulators,
+                                                        AnalysisProgress progress, Semaphore inFlight)
+            throws InterruptedException {
+        inFlight.acquire();
+        try {
+            return analysisPool.submit(() -> {
+                try {
+                    return analyzeChunk(lines, dateOrder, accumulators, progress);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private ChatAnalysisAccumulator analyzeChunk(List<String> lines, WhatsAppLineParser.DateOrder dateOrder,
+                                                 Supplier<ChatAnalysisAccumulator> accumulators,
+                                                 AnalysisProgress progress) {
+        ChatAnalysisAccumulator accumulator = accumulators.get();
+        WhatsAppLineParser parser = new WhatsAppLineParser(dateOrder);
+        // Time of the sampled lines in each stage
+        long parseNanos = 0;
+        long aggregateNanos = 0;
+        long textNanos = 0;
+        long start = System.nanoTime();
         
-        return text.contains("<Media omitted>") || 
-               text.contains("image omitted") || 
-               text.contains("video omitted") || 
-               text.contains("audio omitted") ||
-               text.contains("document omitted") ||
-               text.contains("sticker omitted");
+        for (int i = 0; i < lines.size(); i++) {
+            if ((i & CANCEL_CHECK_INTERVAL) == 0 && progress.isCancelled()) {
+                throw new CancellationException("Analysis cancelled");
+            }
+            if ((i & TIMING_SAMPLE_INTERVAL) != 0) {
+                ChatMessage message = parser.accept(lines.get(i));
+                if (message != null) {
+                    accumulator.accept(message);
+                }
+                continue;
+            }
+            
+            long parsed = System.nanoTime();
+            ChatMessage message = parser.accept(lines.get(i));
+            long counted = System.nanoTime();
+            parseNanos += counted - parsed;
+            if (message != null) {
+                accumulator.count(message);
+                long texted = System.nanoTime();
+                accumulator.countText(message);
+                aggregateNanos += texted - counted;
+                textNanos += System.nanoTime() - texted;
+            }
+        }
+        ChatMessage last = parser.finish();
+        if (last != null) {
+            accumulator.accept(last);
+        }
+        accumulator.addParseReport(parser.getReport());
+        recordChunk(parser, accumulator.getTotalMessages(), System.nanoTime() - start,
+            parseNanos, aggregateNanos, textNanos);
+        progress.messagesParsed(accumulator.getTotalMessages());
+        return accumulator;
+    }
+
+    /**
+     * Records the stage times and counts of a chunk. Only every 16th line is
+     * timed stage by stage, which keeps clock reads out of the hot loop; the
+     * chunk's total time is split between the stages in proportion to those
+     * samples. Date resolution is timed by the parser itself, as it only
+     * runs when the date changes, and is taken out of the parse time.
+     */
+    private void recordChunk(WhatsAppLineParser parser, int messages, long totalNanos,
+                             long parseNanos, long aggregateNanos, long textNanos) {
+        if (analysisMetrics == null) {
+            return;
+        }
+        long sampled = parseNanos + aggregateNanos + textNanos;
+        double scale = sampled > 0 ? (double) totalNanos / sampled : 0;
+        long parse = sampled > 0 ? Math.round(parseNanos * scale) : totalNanos;
+        long date = Math.min(parser.getDateNanos(), parse);
+        
+        analysisMetrics.record(Stage.PARSE, parse - date);
+        analysisMetrics.record(Stage.DATE, date);
+        analysisMetrics.record(Stage.AGGREGATE, Math.round(aggregateNanos * scale));
+        analysisMetrics.record(Stage.TEXT, Math.round(textNanos * scale));
+        analysisMetrics.parsed(messages, parser.getReport());
+    }
+
+    // Once per export, never per line
+    private static void logParseReport(int messages, ParseReport report) {
+        if (report == null || report.isClean()) {
+            log.debug("Parsed {} messages", messages);
+        } else {
+            log.warn("Parsed {} messages with {} rejected lines and {} unparseable dates, e.g. {} {}",
+                messages, report.getRejectedLines(), report.getDateFallbacks(),
+                report.getRejectedSamples(), report.getDateFallbackSamples());
+        }
+    }
+
+    private void recordRead(long nanos) {
+        if (analysisMetrics != null) {
+            analysisMetrics.record(Stage.READ, nanos);
+        }
+    }
+
+    ChatAnalysisAccumulator newAccumulator() {
+        return newAccumulator(stopWords(null));
+    }
+
+    ChatAnalysisAccumulator newAccumulator(StopWords stopWords) {
+        return new ChatAnalysisAccumulator(pythonAnalysisService != null
+            ? pythonAnalysisService.newTextStatistics(stopWords, newPhraseStatistics())
+            : new TextStatistics(stopWords, newPhraseStatistics()), idleGapMinutes);
+    }
+
+    // Empty phrase summaries with the configured capacities
+    PhraseStatistics newPhraseStatistics() {
+        return new PhraseStatistics(phraseCapacity, authorWordCapacity);
     }
 
-    private ChatAnalysis buildAnalysis(List<ChatMessage> messages) {
+    private static ChatAnalysisAccumulator mergeInto(ChatAnalysisAccumulator result, ChatAnalysisAccumulator part) {
+        if (result == null) {
+            return part;
+        }
+        result.merge(part);
+        return result;
+    }
+
+    private ChatAnalysis buildAnalysis(ChatAnalysisAccumulator accumulator) {
+        return buildAnalysis(accumulator, 10);
+    }
+
+    ChatAnalysis buildAnalysis(ChatAnalysisAccumulator accumulator, int topLimit) {
         ChatAnalysis analysis = new ChatAnalysis();
         
         try {
             // Basic statistics
-            analysis.setTotalMessages(messages.size());
-            
-            // User message counts
-            Map<String, Integer> userCounts = new HashMap<>();
-            int totalWords = 0;
-            int mediaCount = 0;
-            Map<String, Integer> dailyMessageCount = new HashMap<>();
-            
-            for (ChatMessage message : messages) {
-                // User counts
-                String author = message.getAuthor();
-                if (author != null && !author.isEmpty()) {
-                    userCounts.put(author, userCounts.getOrDefault(author, 0) + 1);
-                }
-                
-                // Word counts
-                if (!message.isMediaMessage() && message.getText() != null && !message.getText().isEmpty()) {
-                    String[] words = message.getText().split("\\s+");
-                    totalWords += words.length;
-                }
-                
-                // Media count
-                if (message.isMediaMessage()) {
-                    mediaCount++;
-                }
-                
-                // Daily message count
-                if (message.getDate() != null) {
-                    String dateKey = message.getDate().toString();
-                    dailyMessageCount.put(dateKey, dailyMessageCount.getOrDefault(dateKey, 0) + 1);
-                }
-            }
+            analysis.setTotalMessages(accumulator.getTotalMessages());
             
+            Map<String, Integer> userCounts = accumulator.getUserCounts();
             analysis.setUserMessageCounts(userCounts);
-            analysis.setTotalWords(totalWords);
-            analysis.setMediaMessages(mediaCount);
-            analysis.setTimeline(dailyMessageCount);
+            analysis.setTotalWords(accumulator.getTotalWords());
+            analysis.setMediaMessages(accumulator.getMediaCount());
+            analysis.setTimeline(accumulator.getDailyMessageCount());
+            analysis.setParseReport(accumulator.getParseReport());
+            analysis.setApproximation(accumulator.getTextStatistics().approximation());
+            analysis.setActivity(accumulator.getActivity(60));
+            analysis.setQuarterHourActivity(accumulator.getActivity(15));
+            analysis.setConversations(accumulator.getConversations());
+            analysis.setTopPhrases(accumulator.getTextStatistics().topPhrases(topLimit));
+            analysis.setTopWordsByAuthor(accumulator.getTextStatistics().topWordsByAuthor(topLimit));
             
             // Find most active user
             if (!userCounts.isEmpty()) {
+                // Ties go to the alphabetically first author
                 Map.Entry<String, Integer> mostActive = userCounts.entrySet().stream()
-                    .max(Map.Entry.comparingByValue())
+                    .max(Map.Entry.<String, Integer>comparingByValue()
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())))
                     .orElse(null);
                 
                 if (mostActive != null) {
@@ -165,13 +603,12 @@ public class ChatAnalyzerService {
             
             // Use Python service for advanced analysis
             try {
-                String allText = messages.stream()
-                    .filter(m -> m != null && !m.isMediaMessage() && m.getText() != null)
-                    .map(ChatMessage::getText)
-                    .reduce("", (a, b) -> a + " " + b);
-                
                 if (pythonAnalysisService != null) {
-                    Map<String, Object> pythonResults = pythonAnalysisService.analyzeText(allText);
+                    long start = System.nanoTime();
+                    Map<String, Object> pythonResults = pythonAnalysisService.summarize(accumulator.getTextStatistics(), topLimit);
+                    if (analysisMetrics != null) {
+                        analysisMetrics.recordSince(Stage.SUMMARIZE, start);
+                    }
                     
                     if (pythonResults != null) {
                         analysis.setTopWords((List<List<Object>>) pythonResults.get("top_words"));
@@ -183,12 +620,12 @@ public class ChatAnalyzerService {
                     setDefaultAnalysisResults(analysis);
                 }
             } catch (Exception e) {
-                System.err.println("Python analysis failed: " + e.getMessage());
+                log.error("Could not summarize words and emojis", e);
                 setDefaultAnalysisResults(analysis);
             }
             
         } catch (Exception e) {
-            System.err.println("Error building analysis: " + e.getMessage());
+            log.error("Could not build analysis", e);
             throw new RuntimeException("Failed to build chat analysis", e);
         }
         
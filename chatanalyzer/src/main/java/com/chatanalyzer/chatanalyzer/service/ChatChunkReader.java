@@ -0,0 +1,61 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.parser.WhatsAppLineParser;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts an export into chunks of roughly {@code chunkSize} characters.
+ * A chunk only ever ends right before a line that opens a new entry, so
+ * continuation lines always stay in the chunk of the message they belong to.
+ */
+class ChatChunkReader {
+
+    private final BufferedReader reader;
+    private final WhatsAppLineParser boundaries;
+    private final int chunkSize;
+    private String pending;
+    private boolean contentSeen;
+
+    ChatChunkReader(BufferedReader reader, WhatsAppLineParser boundaries, int chunkSize) {
+        this.reader = reader;
+        this.boundaries = boundaries;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the next chunk of lines, or {@code null} at end of input
+     */
+    List<String> next() throws IOException {
+        List<String> chunk = new ArrayList<>();
+        long chars = 0;
+        if (pending != null) {
+            chunk.add(pending);
+            chars += pending.length();
+            pending = null;
+        }
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!contentSeen && !line.isBlank()) {
+                contentSeen = true;
+            }
+            if (chars >= chunkSize && boundaries.startsNewEntry(line)) {
+                pending = line;
+                return chunk;
+            }
+            chunk.add(line);
+            chars += line.length() + 1;
+        }
+        return chunk.isEmpty() ? null : chunk;
+    }
+
+    /**
+     * Whether any non-blank line has been read so far.
+     */
+    boolean isContentSeen() {
+        return contentSeen;
+    }
+}
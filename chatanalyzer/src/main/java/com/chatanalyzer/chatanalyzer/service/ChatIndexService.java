@@ -0,0 +1,725 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.count.BoundedInput;
+import com.chatanalyzer.chatanalyzer.index.ChatIndex;
+import com.chatanalyzer.chatanalyzer.index.ChatIndexWriter;
+import com.chatanalyzer.chatanalyzer.index.ChatRollup;
+import com.chatanalyzer.chatanalyzer.index.SearchIndex;
+import com.chatanalyzer.chatanalyzer.index.SearchIndexWriter;
+import com.chatanalyzer.chatanalyzer.index.SearchQuery;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.model.ChatStats;
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import com.chatanalyzer.chatanalyzer.model.Granularity;
+import com.chatanalyzer.chatanalyzer.model.SearchHit;
+import com.chatanalyzer.chatanalyzer.model.SearchResults;
+import com.chatanalyzer.chatanalyzer.parser.WhatsAppLineParser;
+import com.chatanalyzer.chatanalyzer.text.StopWords;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+
+/**
+ * Stores parsed chats as memory-mapped column files, so that later queries
+ * with different parameters never go through the text parser again.
+ *
+ * <p>Next to each index are the word and emoji counts of the whole chat,
+ * with the default stop words, which answer unfiltered analyses without
+ * decoding any message text, and an inverted index of its words and
+ * emojis for searching it. Later exports of the same chat are appended:
+ * only the messages after the last stored one are parsed, and they are
+ * added to the index, the counts and the search index.
+ *
+ * <p>Each append writes the next generation of the index to a new file
+ * and switches readers over to it. A reader still holding the previous
+ * generation keeps reading its file, which is deleted once it is replaced
+ * where the platform allows deleting a mapped file, and otherwise the next
+ * time the chat is opened.
+ */
+@Service
+public class ChatIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatIndexService.class);
+
+    private static final Pattern CHAT_ID = Pattern.compile("[0-9a-f]{32}");
+
+    private static final int WORDS_MAGIC = 0x57435743; // "WCWC"
+    private static final int WORDS_VERSION = 2;
+
+    // Times a search looks up the search index of a chat being appended to
+    private static final int SEARCH_INDEX_ATTEMPTS = 3;
+
+    @Autowired
+    private ChatAnalyzerService chatAnalyzerService;
+
+    @Value("${chat.index.dir:${java.io.tmpdir}/chatanalyzer/chats}")
+    private String indexDir;
+
+    private final ConcurrentHashMap<String, ChatIndex> openIndexes = new ConcurrentHashMap<>();
+    // Keyed by index, so that readers of a replaced index never see the
+    // summaries of its successor. Only current indexes are kept, see cached
+    private final ConcurrentHashMap<ChatIndex, ChatRollup> rollups = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ChatIndex, TextStatistics> storedTextStatistics = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ChatIndex, SearchIndex> searchIndexes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ChatIndex, AtomicReferenceArray<long[]>> authorBitmaps = new ConcurrentHashMap<>();
+    // Serializes appends to the same chat
+    private final ConcurrentHashMap<String, Object> appendLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Parses an export and writes its index.
+     *
+     * @return the ID of the new chat
+     */
+    public String createIndex(InputStream content) {
+        String chatId = UUID.randomUUID().toString().replace("-", "");
+
+        try {
+            Files.createDirectories(Paths.get(indexDir));
+            TextStatistics textStatistics = new TextStatistics(chatAnalyzerService.stopWords(null),
+                chatAnalyzerService.newPhraseStatistics());
+            SearchIndexWriter search = new SearchIndexWriter();
+            try (ChatIndexWriter writer = new ChatIndexWriter(indexFile(chatId, 0))) {
+                chatAnalyzerService.parseChat(content, message -> {
+                    writer.add(message);
+                    countText(textStatistics, message);
+                    search.add(message);
+                });
+                if (writer.getCount() == 0) {
+                    throw new IllegalArgumentException("No valid chat messages found in the provided content");
+                }
+                writer.finish();
+                writeTextStatistics(chatId, textStatistics, writer.getCount());
+                search.finish(searchFile(chatId, 0));
+            }
+        } catch (IOException e) {
+            log.error("Error writing index of chat {}", chatId, e);
+            throw new UncheckedIOException("Failed to store chat", e);
+        }
+        return chatId;
+    }
+
+    /**
+     * Adds the messages of a later export of a stored chat. The export is
+     * expected to repeat the stored history: lines up to the minute of the
+     * last stored message are skipped on their date and time alone, so only
+     * the new messages are parsed, counted and written. The stored columns
+     * and text are copied over as they are.
+     *
+     * @return the number of messages added
+     */
+    public int append(String chatId, InputStream content) {
+        ChatIndex parsedFrom = getIndex(chatId);
+        long parsedSince = lastMinute(parsedFrom);
+        int parsedSeen = seenAt(parsedFrom, parsedSince);
+
+        // New messages are few, so they are held until it is clear there are
+        // any. They are parsed before taking the lock, so that appends to the
+        // same chat only wait for each other's writes
+        List<ChatMessage> parsed = new ArrayList<>();
+        chatAnalyzerService.parseChatSince(content, parsedSince, parsedSeen, parsed::add);
+
+        synchronized (appendLocks.computeIfAbsent(chatId, id -> new Object())) {
+            ChatIndex base = getIndex(chatId);
+            List<ChatMessage> added = base == parsedFrom ? parsed : stillNew(parsed, base, parsedSince, parsedSeen);
+            if (added.isEmpty()) {
+                return 0;
+            }
+
+            int generation = base.generation() + 1;
+            try {
+                TextStatistics textStatistics = copyTextStatistics(chatId, base);
+                SearchIndexWriter search = new SearchIndexWriter(searchIndexOf(chatId, base));
+                try (ChatIndexWriter writer = new ChatIndexWriter(indexFile(chatId, generation), base)) {
+                    for (ChatMessage message : added) {
+                        writer.add(message);
+                        countText(textStatistics, message);
+                        search.add(message);
+                    }
+                    writer.finish();
+                    writeTextStatistics(chatId, textStatistics, writer.getCount());
+                    search.finish(searchFile(chatId, generation));
+                }
+                openIndexes.put(chatId, ChatIndex.open(indexFile(chatId, generation)));
+            } catch (IOException e) {
+                log.error("Error appending to chat {}", chatId, e);
+                // Readers stay on base; a generation left behind would stop
+                // the next append from writing its own
+                deleteGeneration(chatId, generation);
+                throw new UncheckedIOException("Failed to append to chat " + chatId, e);
+            }
+            rollups.remove(base);
+            storedTextStatistics.remove(base);
+            searchIndexes.remove(base);
+            authorBitmaps.remove(base);
+            deleteOlderGenerations(chatId, generation);
+            return added.size();
+        }
+    }
+
+    private static long lastMinute(ChatIndex index) {
+        return index.epochMinute(index.size() - 1);
+    }
+
+    // Messages at the end of the index written in the given minute
+    private static int seenAt(ChatIndex index, long minute) {
+        int seen = 0;
+        for (int i = index.size() - 1; i >= 0 && index.epochMinute(i) == minute; i--) {
+            seen++;
+        }
+        return seen;
+    }
+
+    /**
+     * Of messages parsed against an index that another append has replaced
+     * since, those that {@code base} does not have yet: skipped as
+     * {@link ChatAnalyzerService#parseChatSince} would have against
+     * {@code base}, less the repeats already skipped while parsing.
+     */
+    private static List<ChatMessage> stillNew(List<ChatMessage> parsed, ChatIndex base,
+                                              long parsedSince, int parsedSeen) {
+        long since = lastMinute(base);
+        int repeats = seenAt(base, since) - (since == parsedSince ? parsedSeen : 0);
+        List<ChatMessage> added = new ArrayList<>();
+        boolean skipping = true;
+        for (ChatMessage message : parsed) {
+            long minute = WhatsAppLineParser.epochMinute(message.getDate(), message.getTime());
+            if (skipping && minute < since) continue;
+            skipping = false;
+            if (repeats > 0 && minute == since) {
+                repeats--;
+            } else {
+                added.add(message);
+            }
+        }
+        return added;
+    }
+
+    public ChatIndex getIndex(String chatId) {
+        if (chatId == null || !CHAT_ID.matcher(chatId).matches()) {
+            throw new ChatNotFoundException(chatId);
+        }
+
+        return openIndexes.computeIfAbsent(chatId, id -> {
+            try {
+                int generation = latestGeneration(id);
+                if (generation < 0) {
+                    throw new ChatNotFoundException(id);
+                }
+                ChatIndex index = ChatIndex.open(indexFile(id, generation));
+                deleteOlderGenerations(id, generation);
+                return index;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open chat " + id, e);
+            }
+        });
+    }
+
+    // Generations are only ever moved into place complete, so the latest
+    // file is the current index; -1 if the chat has none
+    private int latestGeneration(String chatId) throws IOException {
+        Path dir = Paths.get(indexDir);
+        if (!Files.isDirectory(dir)) {
+            return -1;
+        }
+        int latest = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, chatId + ".*.idx")) {
+            for (Path file : files) {
+                latest = Math.max(latest, generationOf(file));
+            }
+        }
+        return latest;
+    }
+
+    // Index and search files replaced by the given generation. Deleting one
+    // fails where a reader still maps it, e.g. on Windows; it is then left
+    // for the next open
+    private void deleteOlderGenerations(String chatId, int generation) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(indexDir),
+                chatId + ".*.{idx,search}")) {
+            for (Path file : files) {
+                int older = generationOf(file);
+                if (older >= 0 && older < generation) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        log.debug("Keeping replaced index {} while it is in use", file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Error removing replaced indexes of chat {}", chatId, e);
+        }
+    }
+
+    private void deleteGeneration(String chatId, int generation) {
+        try {
+            Files.deleteIfExists(indexFile(chatId, generation));
+            Files.deleteIfExists(searchFile(chatId, generation));
+        } catch (IOException e) {
+            log.warn("Error removing generation {} of chat {}", generation, chatId, e);
+        }
+    }
+
+    // "<chat id>.<generation>.<extension>"; -1 for any other name
+    private static int generationOf(Path file) {
+        String name = file.getFileName().toString();
+        int start = name.indexOf('.') + 1;
+        int end = name.lastIndexOf('.');
+        try {
+            return start > 0 && end > start ? Integer.parseInt(name.substring(start, end)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public ChatRollup getRollup(String chatId) {
+        return rollupOf(chatId, getIndex(chatId));
+    }
+
+    private ChatRollup rollupOf(String chatId, ChatIndex index) {
+        return cached(rollups, chatId, index, ChatRollup::of);
+    }
+
+    /**
+     * Looks up or computes what is kept per index in {@code cache}. Once an
+     * append has switched readers to its successor, it removes the entries
+     * of the replaced index; a reader still on that index may compute them
+     * again afterwards, so its entry is dropped as soon as the index is no
+     * longer current. Either the reader sees the switch, or the append's
+     * removal comes after the reader's entry.
+     */
+    private <V> V cached(ConcurrentHashMap<ChatIndex, V> cache, String chatId, ChatIndex index,
+                         Function<ChatIndex, V> compute) {
+        V value = cache.get(index);
+        if (value != null) {
+            return value;
+        }
+        value = cache.computeIfAbsent(index, compute);
+        if (openIndexes.get(chatId) != index) {
+            cache.remove(index);
+        }
+        return value;
+    }
+
+    /**
+     * Analyzes the messages of a stored chat that fall in the date range and,
+     * if given, were written by {@code author}. Counts and activity come
+     * from the rollup; conversations are followed over the messages of the
+     * days in range only, which the rollup locates. Top words leave out
+     * {@code stopWords} ({@code null} for the configured default); they come
+     * from the stored counts if the whole chat is asked for with the stop
+     * words they were counted with, and message text is only decoded
+     * otherwise.
+     */
+    public ChatAnalysis analyze(String chatId, LocalDate from, LocalDate to, String author, int topLimit,
+                                StopWords stopWords) {
+        ChatIndex index = getIndex(chatId);
+        ChatRollup rollup = rollupOf(chatId, index);
+        DayRange range = DayRange.of(index, rollup, from, to, author);
+
+        StopWords resolved = stopWords != null ? stopWords : chatAnalyzerService.stopWords(null);
+        ChatAnalysisAccumulator accumulator = chatAnalyzerService.newAccumulator(resolved);
+        int[] perAuthor = new int[index.authorCount()];
+        int[][] activity = new int[index.authorCount()][];
+        int messages = 0;
+        int words = 0;
+        int media = 0;
+
+        for (int day = range.fromDay; day <= range.toDay; day++) {
+            int dayMessages = 0;
+            int weekday = ChatAnalysisAccumulator.weekday(day);
+            for (int cell = rollup.cellStart(day), end = rollup.cellStart(day + 1); cell < end; cell++) {
+                int cellAuthor = rollup.cellAuthor(cell);
+                if (range.authorId >= 0 && cellAuthor != range.authorId) continue;
+                dayMessages += rollup.cellMessages(cell);
+                perAuthor[cellAuthor] += rollup.cellMessages(cell);
+                words += rollup.cellWords(cell);
+                media += rollup.cellMedia(cell);
+                for (int q = rollup.quarterStart(cell), qEnd = rollup.quarterStart(cell + 1); q < qEnd; q++) {
+                    if (activity[cellAuthor] == null) {
+                        activity[cellAuthor] = new int[ChatAnalysisAccumulator.WEEK_SLOTS];
+                    }
+                    activity[cellAuthor][weekday * 96 + rollup.quarterOfDay(q)] += rollup.quarterMessages(q);
+                }
+            }
+            if (dayMessages > 0) {
+                accumulator.addDailyCount(LocalDate.ofEpochDay(day), dayMessages);
+                messages += dayMessages;
+            }
+        }
+        accumulator.addTotals(messages, words, media);
+        for (int id = 0; id < perAuthor.length; id++) {
+            accumulator.addUserCount(index.author(id), perAuthor[id]);
+        }
+        for (int id = 0; id < activity.length; id++) {
+            if (activity[id] != null) {
+                accumulator.addActivity(index.author(id), activity[id]);
+            }
+        }
+
+        // Conversations follow the messages themselves, of the days in range
+        // only. Replies need everyone's messages, so an author filter does
+        // not apply to them
+        ConversationTracker conversations = accumulator.newConversationTracker();
+        for (int i = range.firstMessage; i <= range.lastMessage; i++) {
+            int day = index.epochDay(i);
+            int minute = index.minuteOfDay(i);
+            if (minute < 0 || day < range.fromDay || day > range.toDay) continue;
+            conversations.accept(index.authorIdAt(i), day * 1440L + minute);
+        }
+        accumulator.addConversations(conversations, index::author);
+
+        if (topLimit > 0 && messages > 0) {
+            TextStatistics textStatistics = accumulator.getTextStatistics();
+            TextStatistics stored = from == null && to == null && author == null
+                ? storedTextStatistics(chatId, index) : null;
+            if (stored != null && stored.getStopWords().getLanguages().equals(resolved.getLanguages())) {
+                textStatistics.merge(stored);
+            } else {
+                for (int i = range.firstMessage; i <= range.lastMessage; i++) {
+                    if (range.contains(index, i) && !index.isMedia(i)) {
+                        textStatistics.accept(index.author(index.authorIdAt(i)), index.text(i));
+                    }
+                }
+            }
+        }
+        return chatAnalyzerService.buildAnalysis(accumulator, topLimit);
+    }
+
+    /**
+     * Message, word and media counts of a stored chat over a date range,
+     * bucketed by {@code granularity}. Reads only the rollup cells of the
+     * days in the range.
+     */
+    public ChatStats stats(String chatId, LocalDate from, LocalDate to, String author, Granularity granularity) {
+        ChatIndex index = getIndex(chatId);
+        ChatRollup rollup = rollupOf(chatId, index);
+        DayRange range = DayRange.of(index, rollup, from, to, author);
+
+        int[] perAuthor = new int[index.authorCount()];
+        Map<String, Integer> timeline = new LinkedHashMap<>();
+        int messages = 0;
+        int words = 0;
+        int media = 0;
+
+        LocalDate bucket = null;
+        int bucketEnd = Integer.MIN_VALUE;
+        int bucketMessages = 0;
+        for (int day = range.fromDay; day <= range.toDay; day++) {
+            if (day >= bucketEnd) {
+                if (bucketMessages > 0) {
+                    timeline.put(bucket.toString(), bucketMessages);
+                }
+                bucket = granularity.bucketStart(LocalDate.ofEpochDay(day));
+                bucketEnd = (int) granularity.nextBucketStart(bucket).toEpochDay();
+                bucketMessages = 0;
+            }
+            for (int cell = rollup.cellStart(day), end = rollup.cellStart(day + 1); cell < end; cell++) {
+                int cellAuthor = rollup.cellAuthor(cell);
+                if (range.authorId >= 0 && cellAuthor != range.authorId) continue;
+                bucketMessages += rollup.cellMessages(cell);
+                perAuthor[cellAuthor] += rollup.cellMessages(cell);
+                words += rollup.cellWords(cell);
+                media += rollup.cellMedia(cell);
+            }
+        }
+        if (bucketMessages > 0) {
+            timeline.put(bucket.toString(), bucketMessages);
+        }
+
+        Map<String, Integer> userMessageCounts = new LinkedHashMap<>();
+        for (int id = 0; id < perAuthor.length; id++) {
+            if (perAuthor[id] > 0) {
+                userMessageCounts.put(index.author(id), perAuthor[id]);
+                messages += perAuthor[id];
+            }
+        }
+
+        ChatStats stats = new ChatStats();
+        stats.setFrom(from != null ? from.toString() : null);
+        stats.setTo(to != null ? to.toString() : null);
+        stats.setAuthor(author);
+        stats.setGranularity(granularity.name().toLowerCase());
+        stats.setTotalMessages(messages);
+        stats.setTotalWords(words);
+        stats.setMediaMessages(media);
+        stats.setUserMessageCounts(userMessageCounts);
+        stats.setTimeline(timeline);
+        return stats;
+    }
+
+    /**
+     * Messages of a stored chat matching {@code query} (see
+     * {@link SearchQuery}), in chat order, optionally limited to a date
+     * range and an author. Matches are found in the search index; only the
+     * messages on the requested page are decoded.
+     *
+     * @throws IllegalArgumentException if the query has nothing to search for
+     * @throws IllegalStateException if appends kept replacing the chat
+     */
+    public SearchResults search(String chatId, String query, LocalDate from, LocalDate to, String author,
+                                int page, int size) {
+        SearchQuery parsed = SearchQuery.parse(query);
+        ChatIndex index = null;
+        SearchIndex search = null;
+        // Each miss means an append replaced the index and has finished, so
+        // the next attempt sees its successor
+        for (int attempt = 0; attempt < SEARCH_INDEX_ATTEMPTS && search == null; attempt++) {
+            index = getIndex(chatId);
+            search = searchIndexOf(chatId, index);
+        }
+        if (search == null) {
+            throw new IllegalStateException("Chat " + chatId + " kept changing while its search index was opened");
+        }
+
+        ChatIndex chat = index;
+        ChatRollup rollup = rollupOf(chatId, index);
+        DayRange range = DayRange.of(index, rollup, from, to, author);
+        // Without dates, undated messages match too; an unknown author
+        // matches nothing
+        boolean dated = from != null || to != null;
+        int firstMessage = dated ? range.firstMessage : 0;
+        int lastMessage = author != null && range.authorId < 0 ? -1
+            : dated ? range.lastMessage : index.size() - 1;
+        IntPredicate filter = null;
+        if (dated && !rollup.isChronological()) {
+            filter = message -> {
+                int day = chat.epochDay(message);
+                return day >= range.fromDay && day <= range.toDay;
+            };
+        }
+        if (range.authorId >= 0) {
+            long[] bits = authorBitmap(chatId, index, range.authorId);
+            IntPredicate byAuthor = message -> (bits[message >>> 6] & 1L << message) != 0;
+            filter = filter != null ? filter.and(byAuthor) : byAuthor;
+        }
+        List<SearchHit> hits = new ArrayList<>();
+        int total = parsed.run(search, firstMessage, lastMessage, filter, (long) page * size, size,
+            message -> hits.add(hit(chat, message)));
+
+        SearchResults results = new SearchResults();
+        results.setQuery(query);
+        results.setTotal(total);
+        results.setPage(page);
+        results.setSize(size);
+        results.setHits(hits);
+        return results;
+    }
+
+    // One bit per message of the author, built the first time a search
+    // filters by them
+    private long[] authorBitmap(String chatId, ChatIndex index, int authorId) {
+        AtomicReferenceArray<long[]> bitmaps = cached(authorBitmaps, chatId, index,
+            key -> new AtomicReferenceArray<>(key.authorCount()));
+        long[] bits = bitmaps.get(authorId);
+        if (bits == null) {
+            bits = new long[(index.size() + 63) >>> 6];
+            for (int i = 0; i < index.size(); i++) {
+                if (index.authorIdAt(i) == authorId) {
+                    bits[i >>> 6] |= 1L << i;
+                }
+            }
+            bitmaps.set(authorId, bits);
+        }
+        return bits;
+    }
+
+    private static SearchHit hit(ChatIndex index, int message) {
+        SearchHit hit = new SearchHit();
+        hit.setMessage(message);
+        int day = index.epochDay(message);
+        hit.setDate(day != Integer.MIN_VALUE ? LocalDate.ofEpochDay(day).toString() : null);
+        int minute = index.minuteOfDay(message);
+        hit.setTime(minute >= 0 ? String.format("%02d:%02d", minute / 60, minute % 60) : null);
+        hit.setAuthor(index.author(index.authorIdAt(message)));
+        hit.setText(index.text(message));
+        return hit;
+    }
+
+    /**
+     * The search index of {@code index}, built from its messages if there is
+     * none for this version of it, e.g. for chats stored before search was.
+     * Builds are serialized with appends, so that a build for an index being
+     * replaced never overwrites the search index of its successor.
+     *
+     * @return the search index, or {@code null} if {@code index} has been
+     *         replaced meanwhile
+     */
+    private SearchIndex searchIndexOf(String chatId, ChatIndex index) {
+        SearchIndex search = searchIndexes.get(index);
+        if (search != null) {
+            return search;
+        }
+        synchronized (appendLocks.computeIfAbsent(chatId, id -> new Object())) {
+            if (openIndexes.get(chatId) != index) {
+                return null;
+            }
+            search = searchIndexes.get(index);
+            if (search != null) {
+                return search;
+            }
+            Path file = searchFile(chatId, index.generation());
+            if (Files.isRegularFile(file)) {
+                try {
+                    search = SearchIndex.open(file);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Rebuilding search index of chat {}", chatId, e);
+                }
+            }
+            try {
+                if (search == null || search.messageCount() != index.size()) {
+                    // Only a damaged file can disagree with its generation
+                    Files.deleteIfExists(file);
+                    SearchIndexWriter writer = new SearchIndexWriter();
+                    for (int i = 0; i < index.size(); i++) {
+                        writer.add(new ChatMessage(null, null, null, index.text(i), index.isMedia(i)));
+                    }
+                    writer.finish(file);
+                    search = SearchIndex.open(file);
+                }
+            } catch (IOException e) {
+                log.error("Error building search index of chat {}", chatId, e);
+                throw new UncheckedIOException("Failed to build search index of chat " + chatId, e);
+            }
+            searchIndexes.put(index, search);
+            return search;
+        }
+    }
+
+    private Path indexFile(String chatId, int generation) {
+        return Paths.get(indexDir, chatId + "." + generation + ".idx");
+    }
+
+    private Path wordsFile(String chatId) {
+        return Paths.get(indexDir, chatId + ".words");
+    }
+
+    private Path searchFile(String chatId, int generation) {
+        return Paths.get(indexDir, chatId + "." + generation + ".search");
+    }
+
+    private static void countText(TextStatistics textStatistics, ChatMessage message) {
+        if (!message.isMediaMessage()) {
+            textStatistics.accept(message.getAuthor(), message.getText());
+        }
+    }
+
+    /**
+     * The stored counts of {@code index}, or {@code null} if there are none
+     * for this version of it, e.g. for chats stored before counts were.
+     */
+    private TextStatistics storedTextStatistics(String chatId, ChatIndex index) {
+        return cached(storedTextStatistics, chatId, index, ignored -> {
+            Path file = wordsFile(chatId);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            try (BoundedInput in = new BoundedInput(Files.readAllBytes(file))) {
+                if (in.readInt() != WORDS_MAGIC || in.readInt() != WORDS_VERSION || in.readInt() != index.size()) {
+                    return null;
+                }
+                TextStatistics textStatistics = new TextStatistics(StopWords.forLanguages(in.readUTF()));
+                textStatistics.readCounts(in);
+                return textStatistics;
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Ignoring stored word counts of chat {}", chatId, e);
+                return null;
+            }
+        });
+    }
+
+    // Counts of the whole chat with the default stop words, to add new messages to
+    private TextStatistics copyTextStatistics(String chatId, ChatIndex index) {
+        StopWords stopWords = chatAnalyzerService.stopWords(null);
+        TextStatistics copy = new TextStatistics(stopWords, chatAnalyzerService.newPhraseStatistics());
+        TextStatistics stored = storedTextStatistics(chatId, index);
+        if (stored != null && stored.getStopWords().getLanguages().equals(stopWords.getLanguages())) {
+            copy.merge(stored);
+        } else {
+            for (int i = 0; i < index.size(); i++) {
+                if (!index.isMedia(i)) {
+                    copy.accept(index.author(index.authorIdAt(i)), index.text(i));
+                }
+            }
+        }
+        return copy;
+    }
+
+    // Written after the index, and tagged with its message count so that
+    // counts left behind by a failed append are not mistaken for current
+    private void writeTextStatistics(String chatId, TextStatistics textStatistics, int messages) throws IOException {
+        Path file = wordsFile(chatId);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            out.writeInt(WORDS_MAGIC);
+            out.writeInt(WORDS_VERSION);
+            out.writeInt(messages);
+            out.writeUTF(String.join(",", textStatistics.getStopWords().getLanguages()));
+            textStatistics.writeCounts(out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Query range clipped to the days the chat covers, with the ordinals of
+    // the first and last dated message in it; empty if nothing can match
+    private static final class DayRange {
+        final int fromDay;
+        final int toDay;
+        final int authorId;
+        final int firstMessage;
+        final int lastMessage;
+
+        private DayRange(int fromDay, int toDay, int authorId, int firstMessage, int lastMessage) {
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.authorId = authorId;
+            this.firstMessage = firstMessage;
+            this.lastMessage = lastMessage;
+        }
+
+        static DayRange of(ChatIndex index, ChatRollup rollup, LocalDate from, LocalDate to, String author) {
+            // Clipped as longs, so that dates far outside the chat cannot
+            // wrap around; in range, both fit an int
+            long fromDay = Math.max(index.minEpochDay(), from != null ? from.toEpochDay() : Long.MIN_VALUE);
+            long toDay = Math.min(index.maxEpochDay(), to != null ? to.toEpochDay() : Long.MAX_VALUE);
+            int authorId = author != null ? index.authorId(author) : -1;
+            if (fromDay > toDay || author != null && authorId < 0) {
+                return new DayRange(0, -1, -1, Integer.MAX_VALUE, -1);
+            }
+            int firstMessage = Integer.MAX_VALUE;
+            int lastMessage = -1;
+            for (int day = (int) fromDay; day <= toDay; day++) {
+                if (rollup.firstMessage(day) >= 0) {
+                    firstMessage = Math.min(firstMessage, rollup.firstMessage(day));
+                    lastMessage = Math.max(lastMessage, rollup.lastMessage(day));
+                }
+            }
+            return new DayRange((int) fromDay, (int) toDay, authorId, firstMessage, lastMessage);
+        }
+
+        boolean contains(ChatIndex index, int message) {
+            int day = index.epochDay(message);
+            return day >= fromDay && day <= toDay
+                    && (authorId < 0 || index.authorIdAt(message) == authorId);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+/**
+ * Thrown when a chat ID does not refer to a stored chat.
+ */
+public class ChatNotFoundException extends RuntimeException {
+
+    public ChatNotFoundException(String chatId) {
+        super("Chat not found: " + chatId);
+    }
+}
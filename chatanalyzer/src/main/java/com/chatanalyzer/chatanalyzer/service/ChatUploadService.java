@@ -0,0 +1,273 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens uploaded exports as chat text. Besides plain {@code .txt} exports,
+ * uploads may be gzipped ({@code .gz}) or the {@code .zip} WhatsApp's
+ * "Export chat" produces, holding {@code _chat.txt} and any attached media.
+ *
+ * <p>Compressed uploads are decompressed as they are read, so neither the
+ * text nor the media are ever held in memory: media entries are read
+ * through and discarded on the way to the chat text. Limits guard against
+ * archives that expand far beyond their upload size:
+ * <ul>
+ *   <li>{@code chat.upload.max-size} caps the decompressed chat text;</li>
+ *   <li>{@code chat.upload.max-ratio} caps how many times larger everything
+ *       decompressed so far, media included, may be than the compressed
+ *       bytes read to produce it;</li>
+ *   <li>{@code chat.upload.max-entries} caps the entries of a zip passed
+ *       over while looking for the chat.</li>
+ * </ul>
+ * Uploads breaking a limit, or that are not valid archives, fail with an
+ * {@link IllegalArgumentException} while being read.
+ */
+@Service
+public class ChatUploadService {
+
+    // Small uploads may expand a lot (repetitive text), without any harm
+    private static final long RATIO_FREE_BYTES = 1024 * 1024;
+
+    @Value("${chat.upload.max-size:256MB}")
+    private DataSize maxSize = DataSize.ofMegabytes(256);
+
+    @Value("${chat.upload.max-ratio:100}")
+    private int maxRatio = 100;
+
+    @Value("${chat.upload.max-entries:10000}")
+    private int maxEntries = 10000;
+
+    /**
+     * Whether uploads named {@code filename} can be opened.
+     */
+    public static boolean isSupported(String filename) {
+        return format(filename) != null;
+    }
+
+    /**
+     * How uploads named {@code filename} are stored: {@code txt}, {@code gz}
+     * or {@code zip}, or {@code null} if they cannot be opened.
+     */
+    public static String format(String filename) {
+        if (filename == null) {
+            return null;
+        }
+        String name = filename.toLowerCase(Locale.ROOT);
+        for (String format : new String[] {"txt", "gz", "zip"}) {
+            if (name.endsWith("." + format)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The chat text of an upload, decompressed as it is read.
+     *
+     * @throws IllegalArgumentException if the file type is not supported,
+     *         or a zip holds no chat text
+     */
+    public InputStream open(MultipartFile file) throws IOException {
+        String name = file.getOriginalFilename() != null ? file.getOriginalFilename().toLowerCase(Locale.ROOT) : "";
+        if (name.endsWith(".txt")) {
+            return file.getInputStream();
+        }
+        if (name.endsWith(".gz")) {
+            CountingInputStream compressed = new CountingInputStream(file.getInputStream());
+            try {
+                return new ChatText(new GZIPInputStream(compressed, 64 * 1024), compressed, 0, maxSize.toBytes());
+            } catch (ZipException | EOFException e) {
+                compressed.close();
+                throw new IllegalArgumentException("Invalid .gz file: " + e.getMessage(), e);
+            }
+        }
+        if (name.endsWith(".zip")) {
+            return openZip(file);
+        }
+        throw new IllegalArgumentException("Only .txt, .zip and .gz files are allowed");
+    }
+
+    /**
+     * Whether an upload is a zip, which may hold several chats.
+     */
+    public static boolean isArchive(String filename) {
+        return filename != null && filename.toLowerCase(Locale.ROOT).endsWith(".zip");
+    }
+
+    /**
+     * Passes the text of each chat in a zip to {@code handler}, in archive
+     * order, under the same limits as {@link #open}; each chat text counts
+     * against {@code chat.upload.max-size} on its own. Other entries are
+     * read through and discarded.
+     *
+     * @throws IllegalArgumentException if the zip is invalid, breaks a limit
+     *         or holds no chat text
+     */
+    public void forEachChat(MultipartFile file, ChatHandler handler) throws IOException {
+        CountingInputStream compressed = new CountingInputStream(new BufferedInputStream(file.getInputStream()));
+        try (ZipInputStream zip = new ZipInputStream(compressed, StandardCharsets.UTF_8)) {
+            byte[] buffer = new byte[64 * 1024];
+            long inflated = 0;
+            int chats = 0;
+            for (int entries = 1; ; entries++) {
+                ZipEntry entry = nextEntry(zip);
+                if (entry == null) {
+                    break;
+                }
+                if (entries > maxEntries) {
+                    throw new IllegalArgumentException("Archive has more than " + maxEntries + " entries");
+                }
+                boolean chat = isChatEntry(entry);
+                ChatText text = new ChatText(zip, compressed, inflated, chat ? maxSize.toBytes() : Long.MAX_VALUE);
+                if (chat) {
+                    handler.accept(entry.getName(), CloseShieldInputStream.wrap(text));
+                    chats++;
+                }
+                // Whatever the handler left, and all of other entries
+                while (text.read(buffer, 0, buffer.length) != -1) {
+                }
+                inflated = text.inflated;
+            }
+            if (chats == 0) {
+                throw new IllegalArgumentException("No chat text (.txt) found in the archive");
+            }
+        }
+    }
+
+    /**
+     * Receives the chats of an archive.
+     */
+    public interface ChatHandler {
+
+        /**
+         * @param name the entry name of the chat in the archive
+         * @param text the chat text, valid until this returns
+         */
+        void accept(String name, InputStream text) throws IOException;
+    }
+
+    // Reads through the entries up to the first text file, which WhatsApp
+    // names _chat.txt or after the chat
+    private InputStream openZip(MultipartFile file) throws IOException {
+        CountingInputStream compressed = new CountingInputStream(new BufferedInputStream(file.getInputStream()));
+        ZipInputStream zip = new ZipInputStream(compressed, StandardCharsets.UTF_8);
+        try {
+            ChatText media = new ChatText(zip, compressed, 0, Long.MAX_VALUE);
+            byte[] buffer = new byte[64 * 1024];
+            for (int entries = 1; ; entries++) {
+                ZipEntry entry = nextEntry(zip);
+                if (entry == null) {
+                    throw new IllegalArgumentException("No chat text (.txt) found in the archive");
+                }
+                if (entries > maxEntries) {
+                    throw new IllegalArgumentException("Archive has more than " + maxEntries + " entries");
+                }
+                if (isChatEntry(entry)) {
+                    return new ChatText(zip, compressed, media.inflated, maxSize.toBytes());
+                }
+                // Media are only decompressed far enough to find the next entry
+                while (media.read(buffer, 0, buffer.length) != -1) {
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    private static ZipEntry nextEntry(ZipInputStream zip) throws IOException {
+        try {
+            return zip.getNextEntry();
+        } catch (ZipException | EOFException e) {
+            throw new IllegalArgumentException("Invalid .zip file: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isChatEntry(ZipEntry entry) {
+        String name = entry.getName();
+        return !entry.isDirectory() && !name.startsWith("__MACOSX/")
+            && name.toLowerCase(Locale.ROOT).endsWith(".txt");
+    }
+
+    /**
+     * Decompressed bytes, counted against the text and ratio limits.
+     */
+    private final class ChatText extends FilterInputStream {
+
+        private final CountingInputStream compressed;
+        private final long textLimit;
+        // Decompressed so far from the whole upload, and from this stream
+        private long inflated;
+        private long text;
+
+        ChatText(InputStream decompressed, CountingInputStream compressed, long inflated, long textLimit) {
+            super(decompressed);
+            this.compressed = compressed;
+            this.inflated = inflated;
+            this.textLimit = textLimit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int read = read(one, 0, 1);
+            return read == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read;
+            try {
+                read = super.read(buffer, offset, length);
+            } catch (ZipException | EOFException e) {
+                throw new IllegalArgumentException("Invalid compressed upload: " + e.getMessage(), e);
+            }
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            for (int read; skipped < n
+                    && (read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) != -1; ) {
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        private void count(int read) {
+            text += read;
+            inflated += read;
+            if (text > textLimit) {
+                throw new IllegalArgumentException("Decompressed chat exceeds " + maxSize.toMegabytes() + "MB limit");
+            }
+            if (inflated > RATIO_FREE_BYTES && inflated > (double) maxRatio * compressed.getByteCount()) {
+                throw new IllegalArgumentException("Upload expands more than " + maxRatio
+                    + " times when decompressed");
+            }
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.count.BoundedInput;
+import com.chatanalyzer.chatanalyzer.model.ConversationStats;
+import com.chatanalyzer.chatanalyzer.model.ReplyLatency;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Conversation dynamics of a chat, followed message by message in chat
+ * order. Sessions are split wherever nobody writes for longer than the idle
+ * gap; within a session, a message following one by another author is a
+ * reply to that author, after the minutes between the two.
+ *
+ * <p>Nothing is kept per message. Authors are ids handed out by the owner;
+ * per author there is a reply count for every other author and a latency
+ * histogram with a bucket per minute up to the idle gap, which bounds reply
+ * latency, so medians and percentiles are exact at the minute resolution of
+ * exports without storing or sorting latencies.
+ *
+ * <p>A tracker may follow only a part of a chat. The first and the last
+ * session are kept open, as they may continue into the parts before and
+ * after, until parts are joined by {@link #merge}.
+ */
+final class ConversationTracker {
+
+    static final int DEFAULT_IDLE_GAP = 60;
+
+    // A week, which keeps the latency histograms small
+    static final int MAX_IDLE_GAP = 7 * 1440;
+
+    // Authors of a tracker read back; their reply rows alone take up to
+    // 4 * MAX_AUTHORS^2 bytes, however short the input
+    static final int MAX_AUTHORS = 1 << 12;
+
+    private final int idleGap;
+
+    // By author id: replies to each other author, reply latencies by minute,
+    // sessions started; rows are created as needed
+    private int[][] replies = new int[16][];
+    private int[][] latencies = new int[16][];
+    private int[] started = new int[16];
+    private int authors;
+
+    // Closed sessions other than the first
+    private int sessions;
+    private long sessionMessages;
+    private long sessionMinutes;
+    private int longestSession;
+
+    private Session first;
+    private Session last;
+    private int lastAuthor = -1;
+
+    /**
+     * @throws IllegalArgumentException if the idle gap is not between a
+     *         minute and {@link #MAX_IDLE_GAP}
+     */
+    ConversationTracker(int idleGapMinutes) {
+        if (idleGapMinutes < 1 || idleGapMinutes > MAX_IDLE_GAP) {
+            throw new IllegalArgumentException("Idle gap must be between 1 and " + MAX_IDLE_GAP
+                + " minutes, got " + idleGapMinutes);
+        }
+        this.idleGap = idleGapMinutes;
+    }
+
+    int getIdleGap() {
+        return idleGap;
+    }
+
+    int authorCount() {
+        return authors;
+    }
+
+    /**
+     * Follows the next message of the chat.
+     *
+     * @param minute minutes since the epoch at which it was written
+     */
+    void accept(int author, long minute) {
+        grow(author);
+        if (last == null) {
+            first = last = new Session(author, minute);
+        } else {
+            long gap = minute - last.end;
+            if (gap > idleGap) {
+                close(last);
+                last = new Session(author, minute);
+            } else {
+                last.messages++;
+                last.end = Math.max(last.end, minute);
+                if (author != lastAuthor) {
+                    reply(author, lastAuthor, gap);
+                }
+            }
+        }
+        lastAuthor = author;
+    }
+
+    /**
+     * Adds what {@code other} followed, with its author ids mapped to ours by
+     * {@code authorIds}. If {@code join} is set and the other part starts
+     * within the idle gap after this one ends, it is taken as the
+     * continuation of this part: the sessions at the seam become one, and
+     * its first message may reply to our last.
+     *
+     * @throws IllegalArgumentException if the idle gaps differ
+     */
+    void merge(ConversationTracker other, int[] authorIds, boolean join) {
+        if (other.idleGap != idleGap) {
+            throw new IllegalArgumentException("Cannot combine conversations split by idle gaps of "
+                + idleGap + " and " + other.idleGap + " minutes");
+        }
+        for (int author = 0; author < other.authors; author++) {
+            int id = authorIds[author];
+            grow(id);
+            started[id] += other.started[author];
+            if (other.latencies[author] != null) {
+                int[] latency = latencies(id);
+                for (int minute = 0; minute <= idleGap; minute++) {
+                    latency[minute] += other.latencies[author][minute];
+                }
+            }
+            if (other.replies[author] != null) {
+                for (int to = 0; to < other.replies[author].length; to++) {
+                    if (other.replies[author][to] != 0) {
+                        replies(id, authorIds[to])[authorIds[to]] += other.replies[author][to];
+                    }
+                }
+            }
+        }
+        sessions += other.sessions;
+        sessionMessages += other.sessionMessages;
+        sessionMinutes += other.sessionMinutes;
+        longestSession = Math.max(longestSession, other.longestSession);
+        if (other.first == null) {
+            return;
+        }
+
+        Session head = other.first.mapped(authorIds);
+        Session tail = other.last == other.first ? head : other.last.mapped(authorIds);
+        long gap = last != null ? head.start - last.end : -1;
+        if (last == null) {
+            first = head;
+            last = tail;
+        } else if (join && gap >= 0 && gap <= idleGap) {
+            if (head.starter != lastAuthor) {
+                reply(head.starter, lastAuthor, gap);
+            }
+            last.messages += head.messages;
+            last.end = Math.max(last.end, head.end);
+            if (tail != head) {
+                close(last);
+                last = tail;
+            }
+        } else {
+            close(last);
+            if (tail != head) {
+                close(head);
+            }
+            last = tail;
+        }
+        lastAuthor = authorIds[other.lastAuthor];
+    }
+
+    /**
+     * Sessions, reply latencies and replies, with authors named by
+     * {@code names}.
+     */
+    ConversationStats stats(IntFunction<String> names) {
+        ConversationStats stats = new ConversationStats();
+        stats.setIdleGapMinutes(idleGap);
+
+        int[] startedBy = Arrays.copyOf(started, authors);
+        int count = sessions;
+        long messages = sessionMessages;
+        long minutes = sessionMinutes;
+        int longest = longestSession;
+        if (first != null) {
+            count++;
+            messages += first.messages;
+            minutes += first.end - first.start;
+            longest = Math.max(longest, first.messages);
+            startedBy[first.starter]++;
+        }
+        if (last != first) {
+            count++;
+            messages += last.messages;
+            minutes += last.end - last.start;
+            longest = Math.max(longest, last.messages);
+            startedBy[last.starter]++;
+        }
+        stats.setSessions(count);
+        stats.setAverageSessionMessages(count > 0 ? (double) messages / count : 0);
+        stats.setAverageSessionMinutes(count > 0 ? (double) minutes / count : 0);
+        stats.setLongestSessionMessages(longest);
+
+        Map<String, Integer> sessionsStartedBy = new HashMap<>();
+        Map<String, ReplyLatency> replyLatency = new HashMap<>();
+        Map<String, Map<String, Integer>> repliesTo = new HashMap<>();
+        for (int author = 0; author < authors; author++) {
+            String name = names.apply(author);
+            if (startedBy[author] > 0) {
+                sessionsStartedBy.put(name, startedBy[author]);
+            }
+            if (latencies[author] != null) {
+                replyLatency.put(name, latency(latencies[author]));
+            }
+            if (replies[author] != null) {
+                Map<String, Integer> to = new HashMap<>();
+                for (int other = 0; other < replies[author].length; other++) {
+                    if (replies[author][other] != 0) {
+                        to.put(names.apply(other), replies[author][other]);
+                    }
+                }
+                repliesTo.put(name, to);
+            }
+        }
+        stats.setSessionsStartedBy(sessionsStartedBy);
+        stats.setReplyLatency(replyLatency);
+        stats.setReplies(repliesTo);
+        return stats;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(idleGap);
+        out.writeInt(authors);
+        for (int author = 0; author < authors; author++) {
+            out.writeInt(started[author]);
+            writeSparse(out, latencies[author]);
+            writeSparse(out, replies[author]);
+        }
+        out.writeInt(sessions);
+        out.writeLong(sessionMessages);
+        out.writeLong(sessionMinutes);
+        out.writeInt(longestSession);
+        out.writeBoolean(first != null);
+        if (first != null) {
+            first.writeTo(out);
+            out.writeBoolean(last != first);
+            if (last != first) {
+                last.writeTo(out);
+            }
+            out.writeInt(lastAuthor);
+        }
+    }
+
+    /**
+     * Reads a tracker written by {@link #writeTo}.
+     *
+     * @param knownAuthors authors the ids read must be below
+     * @throws IOException if an author id or count is out of range
+     */
+    static ConversationTracker read(BoundedInput in, int knownAuthors) throws IOException {
+        ConversationTracker tracker = new ConversationTracker(in.readInt());
+        // Each with sessions started and two sparse counts
+        int authors = in.readCount(Math.min(knownAuthors, MAX_AUTHORS), 12, "conversation author");
+        tracker.grow(authors - 1);
+        for (int author = 0; author < authors; author++) {
+            tracker.started[author] = in.readInt();
+            tracker.latencies[author] = readSparse(in, tracker.idleGap + 1);
+            tracker.replies[author] = readSparse(in, authors);
+        }
+        tracker.sessions = in.readInt();
+        tracker.sessionMessages = in.readLong();
+        tracker.sessionMinutes = in.readLong();
+        tracker.longestSession = in.readInt();
+        if (in.readBoolean()) {
+            tracker.first = Session.read(in, authors);
+            tracker.last = in.readBoolean() ? Session.read(in, authors) : tracker.first;
+            tracker.lastAuthor = in.readInt();
+            if (tracker.lastAuthor < 0 || tracker.lastAuthor >= authors) {
+                throw new IOException("Invalid author in conversations");
+            }
+        }
+        return tracker;
+    }
+
+    private void reply(int author, int to, long gap) {
+        replies(author, to)[to]++;
+        latencies(author)[(int) Math.max(0, gap)]++;
+    }
+
+    // Only sessions after the first are closed here; the first may still
+    // continue into an earlier part
+    private void close(Session session) {
+        if (session == first) {
+            return;
+        }
+        sessions++;
+        sessionMessages += session.messages;
+        sessionMinutes += session.end - session.start;
+        longestSession = Math.max(longestSession, session.messages);
+        started[session.starter]++;
+    }
+
+    private void grow(int author) {
+        if (author >= authors) {
+            authors = author + 1;
+        }
+        if (author >= started.length) {
+            int capacity = Math.max(author + 1, started.length * 2);
+            replies = Arrays.copyOf(replies, capacity);
+            latencies = Arrays.copyOf(latencies, capacity);
+            started = Arrays.copyOf(started, capacity);
+        }
+    }
+
+    private int[] replies(int author, int to) {
+        int[] row = replies[author];
+        if (row == null || to >= row.length) {
+            row = replies[author] = row == null ? new int[Math.max(to + 1, authors)] : Arrays.copyOf(row, to + 1);
+        }
+        return row;
+    }
+
+    private int[] latencies(int author) {
+        if (latencies[author] == null) {
+            latencies[author] = new int[idleGap + 1];
+        }
+        return latencies[author];
+    }
+
+    // Nearest-rank median and 90th percentile of a histogram
+    private static ReplyLatency latency(int[] histogram) {
+        long replies = 0;
+        for (int count : histogram) {
+            replies += count;
+        }
+        ReplyLatency latency = new ReplyLatency();
+        latency.setReplies(replies);
+        latency.setMedianMinutes(rank(histogram, (replies + 1) / 2));
+        latency.setP90Minutes(rank(histogram, (replies * 9 + 9) / 10));
+        return latency;
+    }
+
+    private static int rank(int[] histogram, long rank) {
+        long seen = 0;
+        for (int minute = 0; minute < histogram.length; minute++) {
+            seen += histogram[minute];
+            if (seen >= rank) {
+                return minute;
+            }
+        }
+        return histogram.length - 1;
+    }
+
+    private static void writeSparse(DataOutput out, int[] counts) throws IOException {
+        int used = 0;
+        if (counts != null) {
+            for (int count : counts) {
+                if (count != 0) {
+                    used++;
+                }
+            }
+        }
+        out.writeInt(used);
+        for (int i = 0; used > 0 && i < counts.length; i++) {
+            if (counts[i] != 0) {
+                out.writeInt(i);
+                out.writeInt(counts[i]);
+            }
+        }
+    }
+
+    private static int[] readSparse(BoundedInput in, int length) throws IOException {
+        // Each an index and a count
+        int used = in.readCount(length, 8, "conversation count");
+        if (used == 0) {
+            return null;
+        }
+        int[] counts = new int[length];
+        for (int i = 0; i < used; i++) {
+            int index = in.readInt();
+            if (index < 0 || index >= length) {
+                throw new IOException("Invalid counts in conversations");
+            }
+            counts[index] = in.readInt();
+        }
+        return counts;
+    }
+
+    private static final class Session {
+
+        final int starter;
+        final long start;
+        long end;
+        int messages;
+
+        Session(int starter, long start) {
+            this.starter = starter;
+            this.start = start;
+            this.end = start;
+            this.messages = 1;
+        }
+
+        Session mapped(int[] authorIds) {
+            Session session = new Session(authorIds[starter], start);
+            session.end = end;
+            session.messages = messages;
+            return session;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(starter);
+            out.writeLong(start);
+            out.writeLong(end);
+            out.writeInt(messages);
+        }
+
+        static Session read(BoundedInput in, int authors) throws IOException {
+            int starter = in.readInt();
+            if (starter < 0 || starter >= authors) {
+                throw new IOException("Invalid author in conversations");
+            }
+            Session session = new Session(starter, in.readLong());
+            session.end = in.readLong();
+            session.messages = in.readInt();
+            return session;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+/**
+ * Thrown when a job ID does not refer to a known analysis job.
+ */
+public class JobNotFoundException extends RuntimeException {
+
+    public JobNotFoundException(String jobId) {
+        super("Job not found: " + jobId);
+    }
+}
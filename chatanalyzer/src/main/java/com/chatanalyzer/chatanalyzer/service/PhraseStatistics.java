@@ -0,0 +1,232 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.count.BoundedInput;
+import com.chatanalyzer.chatanalyzer.count.SpaceSaving;
+import com.chatanalyzer.chatanalyzer.model.HeavyHitter;
+import com.chatanalyzer.chatanalyzer.model.HeavyHitters;
+import com.chatanalyzer.chatanalyzer.model.TopPhrases;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The most frequent two- and three-word phrases of a chat, and the most
+ * frequent words of each author, in {@link SpaceSaving} summaries. Exact
+ * counts would keep every distinct phrase, and every distinct word once per
+ * author; here each summary has a fixed number of counters, so memory only
+ * grows with the number of authors. Keys counted more than
+ * {@code total / capacity} times are always kept, with counts that exceed
+ * the true ones by at most a known error.
+ *
+ * <p>Words are fed in message order by {@link TextStatistics}, marked as
+ * counted if they passed the top word filters. A phrase is made of words in
+ * a row, not broken by an emoji or punctuation, whose first and last words
+ * were counted; a phrase key is its words joined by spaces, and is looked
+ * up from a window of the last three words without allocating.
+ * Not thread-safe.
+ */
+final class PhraseStatistics {
+
+    static final int DEFAULT_CAPACITY = 4096;
+    static final int DEFAULT_AUTHOR_CAPACITY = 512;
+    // Counters of all author summaries read back together, which each take
+    // their full capacity however few words they hold
+    static final int MAX_AUTHOR_COUNTERS = 1 << 22;
+
+    private int capacity;
+    private int authorCapacity;
+    private SpaceSaving bigrams;
+    private SpaceSaving trigrams;
+    private final Map<String, SpaceSaving> authorWords = new HashMap<>();
+
+    // The current message: its author's summary, if known, and its last
+    // words since a break, their starts in the window and whether each was
+    // counted
+    private SpaceSaving author;
+    private final StringBuilder window = new StringBuilder();
+    private final int[] starts = new int[3];
+    private final boolean[] counted = new boolean[3];
+    private int words;
+
+    PhraseStatistics() {
+        this(DEFAULT_CAPACITY, DEFAULT_AUTHOR_CAPACITY);
+    }
+
+    /**
+     * @param capacity counters for bigrams, and as many for trigrams
+     * @param authorCapacity counters for the words of each author
+     * @throws IllegalArgumentException if {@code capacity} is out of the
+     *         range allowed by {@link SpaceSaving}; {@code authorCapacity}
+     *         is checked when the first author is seen
+     */
+    PhraseStatistics(int capacity, int authorCapacity) {
+        this.capacity = capacity;
+        this.authorCapacity = authorCapacity;
+        this.bigrams = new SpaceSaving(capacity);
+        this.trigrams = new SpaceSaving(capacity);
+    }
+
+    /**
+     * Starts a message by {@code author}, or by no one in particular if
+     * {@code null}.
+     */
+    void startMessage(String author) {
+        this.author = author != null && !author.isEmpty()
+            ? authorWords.computeIfAbsent(author, name -> new SpaceSaving(authorCapacity)) : null;
+        boundary();
+    }
+
+    void word(CharSequence text, int start, int end, boolean countedWord) {
+        if (words == 3) {
+            int dropped = starts[1];
+            window.delete(0, dropped);
+            starts[0] = 0;
+            starts[1] = starts[2] - dropped;
+            counted[0] = counted[1];
+            counted[1] = counted[2];
+            words = 2;
+        }
+        if (words > 0) {
+            window.append(' ');
+        }
+        starts[words] = window.length();
+        counted[words] = countedWord;
+        words++;
+        window.append(text, start, end);
+
+        if (countedWord) {
+            if (author != null) {
+                author.add(text, start, end, 1);
+            }
+            if (words >= 2 && counted[words - 2]) {
+                bigrams.add(window, starts[words - 2], window.length(), 1);
+            }
+            if (words == 3 && counted[0]) {
+                trigrams.add(window, 0, window.length(), 1);
+            }
+        }
+    }
+
+    /**
+     * Ends the current phrase, e.g. at an emoji or punctuation.
+     */
+    void boundary() {
+        window.setLength(0);
+        words = 0;
+    }
+
+    /**
+     * Adds the summaries of another part of the chat, which must have the
+     * same capacities unless one of the two has not counted anything yet.
+     *
+     * @throws IllegalArgumentException if the capacities differ
+     */
+    void merge(PhraseStatistics other) {
+        if (other.isEmpty()) {
+            return;
+        }
+        if (isEmpty() && (capacity != other.capacity || authorCapacity != other.authorCapacity)) {
+            capacity = other.capacity;
+            authorCapacity = other.authorCapacity;
+            bigrams = new SpaceSaving(capacity);
+            trigrams = new SpaceSaving(capacity);
+        }
+        if (authorCapacity != other.authorCapacity) {
+            throw new IllegalArgumentException("Cannot merge author word summaries of capacity "
+                + authorCapacity + " and " + other.authorCapacity);
+        }
+        bigrams.merge(other.bigrams);
+        trigrams.merge(other.trigrams);
+        other.authorWords.forEach((name, words) ->
+            authorWords.computeIfAbsent(name, ignored -> new SpaceSaving(authorCapacity)).merge(words));
+    }
+
+    TopPhrases topPhrases(int limit) {
+        TopPhrases phrases = new TopPhrases();
+        phrases.setBigrams(top(bigrams, limit));
+        phrases.setTrigrams(top(trigrams, limit));
+        return phrases;
+    }
+
+    Map<String, HeavyHitters> topWordsByAuthor(int limit) {
+        Map<String, HeavyHitters> byAuthor = new HashMap<>();
+        authorWords.forEach((name, words) -> byAuthor.put(name, top(words, limit)));
+        return byAuthor;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(capacity);
+        out.writeInt(authorCapacity);
+        bigrams.writeTo(out);
+        trigrams.writeTo(out);
+        out.writeInt(authorWords.size());
+        for (Map.Entry<String, SpaceSaving> words : authorWords.entrySet()) {
+            byte[] name = words.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            words.getValue().writeTo(out);
+        }
+    }
+
+    /**
+     * Reads summaries written by {@link #writeTo}.
+     */
+    static PhraseStatistics read(BoundedInput in) throws IOException {
+        PhraseStatistics phrases;
+        try {
+            phrases = new PhraseStatistics(in.readInt(), in.readInt());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid phrase summaries: " + e.getMessage());
+        }
+        phrases.bigrams = readSummary(in, phrases.capacity);
+        phrases.trigrams = readSummary(in, phrases.capacity);
+        // Each a name and a summary of at least 20 bytes
+        int authors = in.readCount(MAX_AUTHOR_COUNTERS / Math.max(phrases.authorCapacity, 1), 24, "author summary");
+        for (int i = 0; i < authors; i++) {
+            phrases.authorWords.put(in.readString("author name"), readSummary(in, phrases.authorCapacity));
+        }
+        return phrases;
+    }
+
+    private boolean isEmpty() {
+        return bigrams.getTotal() == 0 && trigrams.getTotal() == 0 && authorWords.isEmpty();
+    }
+
+    private static SpaceSaving readSummary(BoundedInput in, int capacity) throws IOException {
+        SpaceSaving summary = SpaceSaving.readFrom(in);
+        if (summary.getCapacity() != capacity) {
+            throw new IOException("Invalid phrase summaries: capacity " + summary.getCapacity()
+                + " instead of " + capacity);
+        }
+        return summary;
+    }
+
+    /**
+     * The {@code limit} keys with the highest counts. A key is guaranteed
+     * if its lowest possible count reaches the highest possible count of
+     * every key left out: the next tracked one, or an untracked one.
+     */
+    private static HeavyHitters top(SpaceSaving summary, int limit) {
+        int[] ids = summary.top(Math.max(limit, 0) + 1);
+        int listed = Math.min(Math.max(limit, 0), ids.length);
+        long leftOut = Math.max(summary.minCount(), listed < ids.length ? summary.count(ids[listed]) : 0);
+
+        List<HeavyHitter> top = new ArrayList<>(listed);
+        for (int i = 0; i < listed; i++) {
+            int id = ids[i];
+            long count = summary.count(id);
+            long error = summary.error(id);
+            top.add(new HeavyHitter(summary.key(id), count, error, count - error >= leftOut));
+        }
+        HeavyHitters hitters = new HeavyHitters();
+        hitters.setTotal(summary.getTotal());
+        hitters.setCapacity(summary.getCapacity());
+        hitters.setThreshold(summary.getTotal() / summary.getCapacity());
+        hitters.setTop(top);
+        return hitters;
+    }
+}
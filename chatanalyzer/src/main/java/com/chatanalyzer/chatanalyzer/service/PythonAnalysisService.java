@@ -1,115 +1,116 @@
 package com.chatanalyzer.chatanalyzer.service;
 
+import com.chatanalyzer.chatanalyzer.text.StopWords;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import javax.annotation.PostConstruct;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Service
 public class PythonAnalysisService {
 
-    private static final Pattern EMOJI_PATTERN = Pattern.compile(
-        "[\\x{1F600}-\\x{1F64F}]|[\\x{1F300}-\\x{1F5FF}]|[\\x{1F680}-\\x{1F6FF}]|[\\x{1F1E0}-\\x{1F1FF}]|[\\x{2600}-\\x{26FF}]|[\\x{2700}-\\x{27BF}]"
-    );
+    private static final Logger log = LoggerFactory.getLogger(PythonAnalysisService.class);
+
+    @Autowired
+    private PythonWorkerPool pythonWorkerPool;
+
+    // Characters of message text sent to a Python worker per call
+    @Value("${python.pool.batch-chars:262144}")
+    private int batchChars = 262144;
+
+    // Comma-separated stop word languages used when a request names none
+    @Value("${chat.analysis.stop-words:" + StopWords.DEFAULT_LANGUAGES + "}")
+    private String defaultStopWords = StopWords.DEFAULT_LANGUAGES;
+
+    // Reads the default lists at startup, so a missing one fails fast
+    @PostConstruct
+    void loadStopWords() {
+        stopWords(null);
+    }
+
+    /**
+     * Stop words for a comma-separated list of languages, or the configured
+     * default if {@code languages} is null or blank.
+     *
+     * @throws IllegalArgumentException if a language has no stop word list
+     */
+    public StopWords stopWords(String languages) {
+        if (languages == null || languages.trim().isEmpty()) {
+            return StopWords.forLanguages(defaultStopWords);
+        }
+        return StopWords.forLanguages(languages);
+    }
 
     /**
      * Analyzes text and returns top words and emojis
      * This is a Java implementation that simulates Python text analysis
      */
     public Map<String, Object> analyzeText(String text) {
-        Map<String, Object> results = new HashMap<>();
-        
-        try {
-            // Analyze words
-            List<List<Object>> topWords = getTopWords(text, 10);
-            results.put("top_words", topWords);
-            
-            // Analyze emojis
-            List<List<Object>> topEmojis = getTopEmojis(text, 10);
-            results.put("top_emojis", topEmojis);
-            
-        } catch (Exception e) {
-            System.err.println("Error in text analysis: " + e.getMessage());
-            // Return empty lists on error
-            results.put("top_words", new ArrayList<>());
-            results.put("top_emojis", new ArrayList<>());
-        }
-        
-        return results;
+        TextStatistics statistics = newTextStatistics();
+        statistics.accept(text);
+        return summarize(statistics);
     }
 
     /**
-     * Gets top words from text
+     * Creates an accumulator that callers feed message by message
      */
-    private List<List<Object>> getTopWords(String text, int limit) {
-        if (text == null || text.trim().isEmpty()) {
-            return new ArrayList<>();
-        }
+    public TextStatistics newTextStatistics() {
+        return newTextStatistics(stopWords(null));
+    }
 
-        // Clean text and split into words
-        String cleanText = text.toLowerCase()
-                              .replaceAll("[^a-zA-Z\\s]", " ")
-                              .replaceAll("\\s+", " ")
-                              .trim();
-        
-        if (cleanText.isEmpty()) {
-            return new ArrayList<>();
-        }
+    /**
+     * Creates an accumulator that counts on the Python workers when their
+     * pool is enabled, and in Java otherwise.
+     */
+    public TextStatistics newTextStatistics(StopWords stopWords) {
+        return newTextStatistics(stopWords, new PhraseStatistics());
+    }
 
-        // Count word frequencies
-        Map<String, Integer> wordCount = new HashMap<>();
-        String[] words = cleanText.split("\\s+");
-        
-        for (String word : words) {
-            if (word.length() > 2 && !isStopWord(word)) { // Filter out short words and stop words
-                wordCount.put(word, wordCount.getOrDefault(word, 0) + 1);
-            }
+    TextStatistics newTextStatistics(StopWords stopWords, PhraseStatistics phrases) {
+        if (usesWorkers()) {
+            return new PythonTextStatistics(stopWords, phrases, pythonWorkerPool, batchChars);
         }
-
-        // Sort by frequency and return top words
-        return wordCount.entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .limit(limit)
-                .map(entry -> Arrays.<Object>asList(entry.getKey(), entry.getValue()))
-                .collect(Collectors.toList());
+        return new TextStatistics(stopWords, phrases);
     }
 
     /**
-     * Gets top emojis from text
+     * Whether exact analyses started now count words and emojis on the
+     * Python workers.
      */
-    private List<List<Object>> getTopEmojis(String text, int limit) {
-        if (text == null || text.trim().isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        Map<String, Integer> emojiCount = new HashMap<>();
-        Matcher matcher = EMOJI_PATTERN.matcher(text);
-        
-        while (matcher.find()) {
-            String emoji = matcher.group();
-            emojiCount.put(emoji, emojiCount.getOrDefault(emoji, 0) + 1);
-        }
+    public boolean usesWorkers() {
+        return pythonWorkerPool != null && pythonWorkerPool.isEnabled();
+    }
 
-        return emojiCount.entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .limit(limit)
-                .map(entry -> Arrays.<Object>asList(entry.getKey(), entry.getValue()))
-                .collect(Collectors.toList());
+    /**
+     * Returns top words and emojis from accumulated statistics
+     */
+    public Map<String, Object> summarize(TextStatistics statistics) {
+        return summarize(statistics, 10);
     }
 
     /**
-     * Simple stop words filter
+     * Returns the {@code limit} top words and emojis from accumulated statistics
      */
-    private boolean isStopWord(String word) {
-        Set<String> stopWords = Set.of(
-            "the", "and", "or", "but", "in", "on", "at", "to", "for", "of", "with", "by",
-            "is", "are", "was", "were", "be", "been", "being", "have", "has", "had",
-            "do", "does", "did", "will", "would", "could", "should", "may", "might",
-            "a", "an", "this", "that", "these", "those", "i", "you", "he", "she", "it",
-            "we", "they", "me", "him", "her", "us", "them", "my", "your", "his", "her",
-            "its", "our", "their", "am", "can", "not", "no", "yes", "ok", "okay", "so"
-        );
-        return stopWords.contains(word.toLowerCase());
+    public Map<String, Object> summarize(TextStatistics statistics, int limit) {
+        Map<String, Object> results = new HashMap<>();
+        
+        try {
+            // Analyze words
+            results.put("top_words", statistics.topWords(limit));
+            
+            // Analyze emojis
+            results.put("top_emojis", statistics.topEmojis(limit));
+            
+        } catch (Exception e) {
+            log.error("Could not rank words and emojis", e);
+            // Return empty lists on error
+            results.put("top_words", new ArrayList<>());
+            results.put("top_emojis", new ArrayList<>());
+        }
+        
+        return results;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.text.StopWords;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Text statistics counted by {@code analyzer.py} workers. Messages are
+ * batched, one per line, and each batch is sent to the worker pool, which
+ * answers with raw word and emoji counts that are added to the running
+ * totals. The workers split text into words and emojis exactly as
+ * {@link com.chatanalyzer.chatanalyzer.text.TokenScanner} does, so a batch
+ * the pool cannot take is counted in Java instead and the totals come out
+ * the same; a busy or broken pool slows nothing down. Phrases are always
+ * counted in Java, as messages arrive.
+ */
+class PythonTextStatistics extends TextStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(PythonTextStatistics.class);
+
+    private final PythonWorkerPool pool;
+    private final List<String> stopWordList;
+    private final int batchChars;
+    private final StringBuilder batch = new StringBuilder();
+    private boolean fallbackReported;
+
+    PythonTextStatistics(StopWords stopWords, PhraseStatistics phrases, PythonWorkerPool pool, int batchChars) {
+        super(stopWords, phrases);
+        this.pool = pool;
+        this.stopWordList = stopWords.getWords();
+        this.batchChars = batchChars;
+    }
+
+    @Override
+    public void accept(String author, String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        countPhrases(author, text);
+        batch.append(text).append('\n');
+        if (batch.length() >= batchChars) {
+            flush();
+        }
+    }
+
+    @Override
+    public void merge(TextStatistics other) {
+        flush();
+        if (other instanceof PythonTextStatistics) {
+            ((PythonTextStatistics) other).flush();
+        }
+        super.merge(other);
+    }
+
+    @Override
+    public List<List<Object>> topWords(int limit) {
+        flush();
+        return super.topWords(limit);
+    }
+
+    @Override
+    public List<List<Object>> topEmojis(int limit) {
+        flush();
+        return super.topEmojis(limit);
+    }
+
+    private void flush() {
+        if (batch.length() == 0) {
+            return;
+        }
+        String text = batch.toString();
+        batch.setLength(0);
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("op", "count");
+        request.put("text", text);
+        // The words themselves: the worker cannot read the lists from the jar
+        request.put("stop_words", stopWordList);
+        JsonNode counts;
+        try {
+            counts = pool.call(request);
+        } catch (PythonWorkerException e) {
+            if (!fallbackReported) {
+                log.warn("Python analysis unavailable, counting in Java", e);
+                fallbackReported = true;
+            }
+            // Newlines end words and emojis, so the batch counts as its messages would
+            countWords(text);
+            return;
+        }
+
+        for (Iterator<Map.Entry<String, JsonNode>> it = counts.path("words").fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> word = it.next();
+            addWord(word.getKey(), word.getValue().asInt());
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> it = counts.path("emojis").fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> emoji = it.next();
+            addEmoji(emoji.getKey(), emoji.getValue().asInt());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One {@code analyzer.py --serve} process. Requests and responses are
+ * frames of a 4-byte big-endian length followed by UTF-8 JSON, written to
+ * the process's stdin and read from its stdout; stderr goes to ours.
+ *
+ * <p>A worker serves one call at a time. Once a call fails the worker is
+ * left in an unknown state and must be {@link #destroy() destroyed}.
+ */
+final class PythonWorker {
+
+    private final int id;
+    private final Process process;
+    private final DataOutputStream requests;
+    private final DataInputStream responses;
+    private final int maxFrameBytes;
+
+    private volatile boolean timedOut;
+
+    private PythonWorker(int id, Process process, int maxFrameBytes) {
+        this.id = id;
+        this.process = process;
+        this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    static PythonWorker start(int id, String executable, Path script, int maxFrameBytes) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(executable, script.getFileName().toString(), "--serve")
+            .redirectError(ProcessBuilder.Redirect.INHERIT);
+        if (script.getParent() != null) {
+            builder.directory(script.getParent().toFile());
+        }
+        return new PythonWorker(id, builder.start(), maxFrameBytes);
+    }
+
+    /**
+     * Sends one request and waits for its response. The process is killed
+     * if no response arrives within {@code timeout}.
+     *
+     * @throws TimeoutException if the call timed out
+     * @throws IOException if the process died or broke the protocol
+     */
+    byte[] call(byte[] request, Duration timeout, ScheduledExecutorService watchdog)
+            throws IOException, TimeoutException {
+        ScheduledFuture<?> kill = watchdog.schedule(() -> {
+            timedOut = true;
+            process.destroyForcibly();
+        }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        try {
+            requests.writeInt(request.length);
+            requests.write(request);
+            requests.flush();
+
+            int length = responses.readInt();
+            if (length < 0 || length > maxFrameBytes) {
+                throw new IOException("Python worker " + id + " sent a frame of " + length + " bytes");
+            }
+            byte[] response = new byte[length];
+            responses.readFully(response);
+            return response;
+        } catch (IOException e) {
+            if (timedOut) {
+                throw new TimeoutException("Python worker " + id + " did not answer within " + timeout);
+            }
+            if (e instanceof EOFException) {
+                throw new IOException("Python worker " + id + " exited" + exitStatus(), e);
+            }
+            throw e;
+        } finally {
+            kill.cancel(false);
+        }
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    int getId() {
+        return id;
+    }
+
+    void destroy() {
+        process.destroyForcibly();
+    }
+
+    private String exitStatus() {
+        try {
+            return process.waitFor(100, TimeUnit.MILLISECONDS) ? " with status " + process.exitValue() : "";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PythonWorker{" +
+                "id=" + id +
+                ", alive=" + isAlive() +
+                '}';
+    }
+}
@@ -0,0 +1,17 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+/**
+ * Thrown when a call to the Python worker pool cannot be answered, because
+ * the pool is disabled or saturated, or the worker failed or timed out.
+ * Callers fall back to the Java analysis.
+ */
+public class PythonWorkerException extends RuntimeException {
+
+    public PythonWorkerException(String message) {
+        super(message);
+    }
+
+    public PythonWorkerException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,283 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed set of long-lived {@code analyzer.py --serve} processes, so Python
+ * analysis does not pay interpreter startup on every upload.
+ *
+ * <p>Each call borrows an idle worker. If none becomes idle within
+ * {@code python.pool.acquire-timeout} the call is rejected rather than
+ * queued, and the caller falls back to the Java analysis; load beyond what
+ * the workers can take therefore never piles up behind them. A call that
+ * takes longer than {@code python.pool.call-timeout} kills its worker.
+ * Workers that crash, time out or fail the periodic ping are replaced on a
+ * background thread, at most once per health check while they keep
+ * failing to start.
+ *
+ * <p>Disabled unless {@code python.pool.enabled} is set.
+ */
+@Component
+public class PythonWorkerPool implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(PythonWorkerPool.class);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${python.pool.enabled:false}")
+    private boolean enabled;
+
+    @Value("${python.executable:python3}")
+    private String executable;
+
+    @Value("${python.script.path:analyzer.py}")
+    private String scriptPath;
+
+    @Value("${python.pool.size:2}")
+    private int size;
+
+    @Value("${python.pool.acquire-timeout:1s}")
+    private Duration acquireTimeout;
+
+    @Value("${python.pool.call-timeout:30s}")
+    private Duration callTimeout;
+
+    @Value("${python.pool.health-check-interval:30s}")
+    private Duration healthCheckInterval;
+
+    @Value("${python.pool.max-frame-size:64MB}")
+    private DataSize maxFrameSize;
+
+    private static final Object PING = Collections.singletonMap("op", "ping");
+
+    private final BlockingQueue<PythonWorker> idle = new LinkedBlockingQueue<>();
+    // Running workers, idle or busy
+    private final AtomicInteger live = new AtomicInteger();
+    private final AtomicInteger workerIds = new AtomicInteger();
+
+    private final LongAdder starts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    // Starts, pings and replaces workers; only this thread adds workers
+    private ScheduledExecutorService maintenance;
+    // Kills workers whose call timed out
+    private ScheduledExecutorService watchdog;
+    private volatile boolean stopped;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        maintenance = Executors.newSingleThreadScheduledExecutor(daemon("python-pool"));
+        watchdog = Executors.newSingleThreadScheduledExecutor(daemon("python-pool-watchdog"));
+        maintenance.execute(this::replenish);
+        maintenance.scheduleWithFixedDelay(this::checkHealth, healthCheckInterval.toMillis(),
+            healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        stopped = true;
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+            watchdog.shutdownNow();
+        }
+        // Busy workers are destroyed when they are released
+        for (PythonWorker worker; (worker = idle.poll()) != null; ) {
+            worker.destroy();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && !stopped;
+    }
+
+    /**
+     * Sends {@code request} as JSON to an idle worker and returns its answer.
+     *
+     * @throws PythonWorkerException if the pool is disabled, no worker became
+     *         idle in time, or the worker failed, timed out or answered with
+     *         an error
+     */
+    public JsonNode call(Object request) {
+        if (!isEnabled()) {
+            throw new PythonWorkerException("Python worker pool is disabled");
+        }
+        if (live.get() == 0) {
+            rejections.increment();
+            throw new PythonWorkerException("No Python workers are running");
+        }
+
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(request);
+        } catch (IOException e) {
+            throw new PythonWorkerException("Could not encode Python worker request", e);
+        }
+        if (payload.length > maxFrameSize.toBytes()) {
+            throw new PythonWorkerException("Python worker request of " + payload.length + " bytes is too large");
+        }
+
+        PythonWorker worker;
+        try {
+            worker = idle.poll(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PythonWorkerException("Interrupted while waiting for a Python worker", e);
+        }
+        if (worker == null) {
+            rejections.increment();
+            throw new PythonWorkerException("All Python workers are busy");
+        }
+
+        byte[] response;
+        try {
+            response = worker.call(payload, callTimeout, watchdog);
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            failures.increment();
+            discard(worker);
+            throw new PythonWorkerException(e.getMessage(), e);
+        }
+        release(worker);
+
+        JsonNode result;
+        try {
+            result = objectMapper.readTree(response);
+        } catch (IOException e) {
+            failures.increment();
+            throw new PythonWorkerException("Python worker sent invalid JSON", e);
+        }
+        if (result.has("error")) {
+            failures.increment();
+            throw new PythonWorkerException("Python worker failed: " + result.get("error").asText());
+        }
+        return result;
+    }
+
+    private void release(PythonWorker worker) {
+        if (stopped) {
+            worker.destroy();
+        } else {
+            idle.add(worker);
+        }
+    }
+
+    private void discard(PythonWorker worker) {
+        worker.destroy();
+        live.decrementAndGet();
+        if (!stopped) {
+            maintenance.execute(this::replenish);
+        }
+    }
+
+    // Starts workers until the pool is full, giving up on the first failure
+    // until the next health check
+    private void replenish() {
+        while (!stopped && live.get() < size) {
+            PythonWorker worker = null;
+            try {
+                worker = PythonWorker.start(workerIds.incrementAndGet(), executable, script(),
+                    (int) maxFrameSize.toBytes());
+                ping(worker);
+            } catch (IOException | TimeoutException | RuntimeException e) {
+                log.warn("Could not start Python worker", e);
+                if (worker != null) {
+                    worker.destroy();
+                }
+                return;
+            }
+            starts.increment();
+            live.incrementAndGet();
+            release(worker);
+        }
+    }
+
+    // Pings the workers that are idle right now; busy ones prove themselves
+    // by answering their calls
+    private void checkHealth() {
+        for (int i = idle.size(); i > 0; i--) {
+            PythonWorker worker = idle.poll();
+            if (worker == null) {
+                break;
+            }
+            try {
+                ping(worker);
+                release(worker);
+            } catch (IOException | TimeoutException | RuntimeException e) {
+                log.warn("Python worker {} failed its health check", worker.getId(), e);
+                failures.increment();
+                worker.destroy();
+                live.decrementAndGet();
+            }
+        }
+        replenish();
+    }
+
+    private void ping(PythonWorker worker) throws IOException, TimeoutException {
+        JsonNode pong = objectMapper.readTree(worker.call(objectMapper.writeValueAsBytes(PING), callTimeout, watchdog));
+        if (!pong.path("ok").asBoolean()) {
+            throw new IOException("Python worker " + worker.getId() + " answered ping with " + pong);
+        }
+    }
+
+    private Path script() {
+        return Paths.get(scriptPath).toAbsolutePath();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("python.workers", live, AtomicInteger::get)
+                .tag("state", "live")
+                .description("Running Python workers")
+                .register(registry);
+        Gauge.builder("python.workers", idle, BlockingQueue::size)
+                .tag("state", "idle")
+                .register(registry);
+        FunctionCounter.builder("python.workers.started", starts, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("python.calls.failed", failures, LongAdder::sum)
+                .description("Calls and health checks that failed or timed out")
+                .register(registry);
+        FunctionCounter.builder("python.calls.rejected", rejections, LongAdder::sum)
+                .description("Calls rejected because no worker was available")
+                .register(registry);
+    }
+}
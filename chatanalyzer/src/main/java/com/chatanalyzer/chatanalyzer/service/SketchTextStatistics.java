@@ -0,0 +1,172 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.count.BoundedInput;
+import com.chatanalyzer.chatanalyzer.count.CountMinSketch;
+import com.chatanalyzer.chatanalyzer.count.HyperLogLog;
+import com.chatanalyzer.chatanalyzer.count.SpaceSaving;
+import com.chatanalyzer.chatanalyzer.model.Approximation;
+import com.chatanalyzer.chatanalyzer.text.StopWords;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Word and emoji statistics in a fixed amount of memory, for the
+ * approximate analysis mode. Words and emojis go through the same filters
+ * as in {@link TextStatistics}, but are counted in sketches instead of
+ * exact tables:
+ * <ul>
+ *   <li>a {@link SpaceSaving} summary per kind keeps the most frequent
+ *       keys, which become the top lists;</li>
+ *   <li>a {@link CountMinSketch} per kind caps each of their counts,
+ *       usually tightening the Space-Saving overestimate;</li>
+ *   <li>a {@link HyperLogLog} estimates the number of distinct words.</li>
+ * </ul>
+ * All of them merge associatively, so parts of a chat analyzed on other
+ * threads or nodes combine exactly as if counted together, and none grows
+ * with the vocabulary of the chat. Phrases are summarized as in exact mode,
+ * which already takes bounded memory.
+ */
+class SketchTextStatistics extends TextStatistics {
+
+    private final CountMinSketch wordFrequencies;
+    private final CountMinSketch emojiFrequencies;
+    private final SpaceSaving topWordCandidates;
+    private final SpaceSaving topEmojiCandidates;
+    private final HyperLogLog distinctWords;
+
+    SketchTextStatistics(StopWords stopWords, PhraseStatistics phrases, int width, int depth, int capacity,
+                         int precision) {
+        this(stopWords, phrases, new CountMinSketch(width, depth), new CountMinSketch(width, depth),
+            new SpaceSaving(capacity), new SpaceSaving(capacity), new HyperLogLog(precision));
+    }
+
+    private SketchTextStatistics(StopWords stopWords, PhraseStatistics phrases, CountMinSketch wordFrequencies,
+                                 CountMinSketch emojiFrequencies, SpaceSaving topWordCandidates,
+                                 SpaceSaving topEmojiCandidates, HyperLogLog distinctWords) {
+        super(stopWords, phrases);
+        this.wordFrequencies = wordFrequencies;
+        this.emojiFrequencies = emojiFrequencies;
+        this.topWordCandidates = topWordCandidates;
+        this.topEmojiCandidates = topEmojiCandidates;
+        this.distinctWords = distinctWords;
+    }
+
+    @Override
+    void countWord(CharSequence text, int start, int end) {
+        wordFrequencies.add(text, start, end, 1);
+        topWordCandidates.add(text, start, end, 1);
+        distinctWords.add(text, start, end);
+    }
+
+    @Override
+    void countEmoji(CharSequence text, int start, int end) {
+        emojiFrequencies.add(text, start, end, 1);
+        topEmojiCandidates.add(text, start, end, 1);
+    }
+
+    @Override
+    void addWord(String word, int count) {
+        wordFrequencies.add(word, count);
+        topWordCandidates.add(word, count);
+        distinctWords.add(word);
+    }
+
+    @Override
+    void addEmoji(String emoji, int count) {
+        emojiFrequencies.add(emoji, count);
+        topEmojiCandidates.add(emoji, count);
+    }
+
+    /**
+     * Adds the sketches of another part of the chat, counted with the same
+     * stop words and sketch sizes.
+     */
+    @Override
+    public void merge(TextStatistics other) {
+        if (!(other instanceof SketchTextStatistics)) {
+            throw new IllegalArgumentException("Cannot merge exact statistics into approximate ones");
+        }
+        if (!other.getStopWords().getLanguages().equals(getStopWords().getLanguages())) {
+            throw new IllegalArgumentException("Cannot merge statistics counted with stop words "
+                + getStopWords().getLanguages() + " and " + other.getStopWords().getLanguages());
+        }
+        SketchTextStatistics sketches = (SketchTextStatistics) other;
+        wordFrequencies.merge(sketches.wordFrequencies);
+        emojiFrequencies.merge(sketches.emojiFrequencies);
+        topWordCandidates.merge(sketches.topWordCandidates);
+        topEmojiCandidates.merge(sketches.topEmojiCandidates);
+        distinctWords.merge(sketches.distinctWords);
+        mergePhrases(other);
+    }
+
+    @Override
+    public List<List<Object>> topWords(int limit) {
+        return top(topWordCandidates, wordFrequencies, limit);
+    }
+
+    @Override
+    public List<List<Object>> topEmojis(int limit) {
+        return top(topEmojiCandidates, emojiFrequencies, limit);
+    }
+
+    @Override
+    Approximation approximation() {
+        Approximation approximation = new Approximation();
+        approximation.setDistinctWords(distinctWords.estimate());
+        approximation.setDistinctWordsRelativeError(distinctWords.relativeError());
+        approximation.setWordCountError(topWordCandidates.minCount());
+        approximation.setEmojiCountError(topEmojiCandidates.minCount());
+        return approximation;
+    }
+
+    /**
+     * Writes the stop words, sketches and phrase summaries, to be read back
+     * by {@link #read}.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(String.join(",", getStopWords().getLanguages()));
+        wordFrequencies.writeTo(out);
+        emojiFrequencies.writeTo(out);
+        topWordCandidates.writeTo(out);
+        topEmojiCandidates.writeTo(out);
+        distinctWords.writeTo(out);
+        writePhrases(out);
+    }
+
+    /**
+     * Reads statistics written by {@link #writeTo}.
+     */
+    static SketchTextStatistics read(BoundedInput in) throws IOException {
+        StopWords stopWords;
+        try {
+            stopWords = StopWords.forLanguages(in.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        SketchTextStatistics statistics = new SketchTextStatistics(stopWords, new PhraseStatistics(),
+            CountMinSketch.readFrom(in), CountMinSketch.readFrom(in), SpaceSaving.readFrom(in),
+            SpaceSaving.readFrom(in), HyperLogLog.readFrom(in));
+        statistics.readPhrases(in);
+        return statistics;
+    }
+
+    /**
+     * The tracked keys by count, each count capped by the Count-Min
+     * estimate, which is also an upper bound of the true count.
+     */
+    private static List<List<Object>> top(SpaceSaving candidates, CountMinSketch frequencies, int limit) {
+        List<List<Object>> ranked = new ArrayList<>();
+        for (int id : candidates.top(candidates.size())) {
+            String key = candidates.key(id);
+            ranked.add(Arrays.<Object>asList(key, Math.min(candidates.count(id), frequencies.estimate(key))));
+        }
+        ranked.sort((a, b) -> {
+            int byCount = Long.compare((Long) b.get(1), (Long) a.get(1));
+            return byCount != 0 ? byCount : ((String) a.get(0)).compareTo((String) b.get(0));
+        });
+        return new ArrayList<>(ranked.subList(0, Math.min(Math.max(limit, 0), ranked.size())));
+    }
+}
@@ -0,0 +1,266 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.count.BoundedInput;
+import com.chatanalyzer.chatanalyzer.count.StringCounter;
+import com.chatanalyzer.chatanalyzer.model.Approximation;
+import com.chatanalyzer.chatanalyzer.model.HeavyHitters;
+import com.chatanalyzer.chatanalyzer.model.TopPhrases;
+import com.chatanalyzer.chatanalyzer.text.StopWords;
+import com.chatanalyzer.chatanalyzer.text.TokenScanner;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Incremental word and emoji counts. Message texts are consumed one at a
+ * time, so the chat never has to be joined into a single string.
+ *
+ * <p>Each message is tokenized in one pass by a {@link TokenScanner}, and
+ * its words and emojis are looked up in {@link StringCounter}s straight from
+ * the scanner's slices, so a token that was seen before is counted without
+ * allocating. Stop words are tested the same way, against a
+ * {@link StopWords} set chosen per analysis.
+ *
+ * <p>The same pass feeds {@link PhraseStatistics}, which keeps the most
+ * frequent phrases and the most frequent words of each author in bounded
+ * memory, whichever way the words and emojis themselves are counted.
+ */
+public class TextStatistics {
+
+    private final StopWords stopWords;
+    private final StringCounter wordCounts = new StringCounter(1024);
+    private final StringCounter emojiCounts = new StringCounter(64);
+    private PhraseStatistics phrases;
+    private final TokenScanner scanner = new TokenScanner();
+
+    // Count words that pass the length and stop word filters and all emojis,
+    // phrases, or both
+    private final TokenScanner.TokenSink counter = sink(true, true);
+    private final TokenScanner.TokenSink wordCounter = sink(true, false);
+    private final TokenScanner.TokenSink phraseCounter = sink(false, true);
+
+    /**
+     * Counts with the default English stop words.
+     */
+    public TextStatistics() {
+        this(StopWords.forLanguages(StopWords.DEFAULT_LANGUAGES));
+    }
+
+    public TextStatistics(StopWords stopWords) {
+        this(stopWords, new PhraseStatistics());
+    }
+
+    TextStatistics(StopWords stopWords, PhraseStatistics phrases) {
+        this.stopWords = stopWords;
+        this.phrases = phrases;
+    }
+
+    /**
+     * Adds the words and emojis of one message to the running counts.
+     */
+    public void accept(String text) {
+        accept(null, text);
+    }
+
+    /**
+     * Like {@link #accept(String)}, also counting the words towards the top
+     * words of {@code author}, unless it is {@code null}.
+     */
+    public void accept(String author, String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        phrases.startMessage(author);
+        scanner.scan(text, counter);
+    }
+
+    /**
+     * Counts the words and emojis of {@code text}, but not its phrases, e.g.
+     * for messages whose phrases were counted as they arrived.
+     */
+    void countWords(String text) {
+        scanner.scan(text, wordCounter);
+    }
+
+    /**
+     * Counts the phrases of a message, but not its words and emojis, e.g.
+     * for messages whose words are counted elsewhere.
+     */
+    void countPhrases(String author, String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        phrases.startMessage(author);
+        scanner.scan(text, phraseCounter);
+    }
+
+    /**
+     * Adds the counts of another accumulator, e.g. one built over a
+     * different chunk of the same chat.
+     */
+    public void merge(TextStatistics other) {
+        wordCounts.merge(other.wordCounts);
+        emojiCounts.merge(other.emojiCounts);
+        mergePhrases(other);
+    }
+
+    void mergePhrases(TextStatistics other) {
+        phrases.merge(other.phrases);
+    }
+
+    // Where each word and emoji that passed the filters is counted
+    void countWord(CharSequence text, int start, int end) {
+        wordCounts.add(text, start, end, 1);
+    }
+
+    void countEmoji(CharSequence text, int start, int end) {
+        emojiCounts.add(text, start, end, 1);
+    }
+
+    // Counts found elsewhere, e.g. by a Python worker
+    void addWord(String word, int count) {
+        wordCounts.add(word, count);
+    }
+
+    void addEmoji(String emoji, int count) {
+        emojiCounts.add(emoji, count);
+    }
+
+    StopWords getStopWords() {
+        return stopWords;
+    }
+
+    /**
+     * Error bounds of the counts, or {@code null} as they are exact.
+     */
+    Approximation approximation() {
+        return null;
+    }
+
+    /**
+     * Writes the word and emoji counts and the phrase summaries, to be added
+     * back by {@link #readCounts}.
+     */
+    void writeCounts(DataOutput out) throws IOException {
+        writeCounter(out, wordCounts);
+        writeCounter(out, emojiCounts);
+        writePhrases(out);
+    }
+
+    void readCounts(BoundedInput in) throws IOException {
+        readCounter(in, wordCounts);
+        readCounter(in, emojiCounts);
+        readPhrases(in);
+    }
+
+    void writePhrases(DataOutput out) throws IOException {
+        phrases.writeTo(out);
+    }
+
+    // Replaces the phrase summaries, which must not have counted anything yet
+    void readPhrases(BoundedInput in) throws IOException {
+        phrases = PhraseStatistics.read(in);
+    }
+
+    // Keys with a count, each as (int length, UTF-8 bytes, int count)
+    private static void writeCounter(DataOutput out, StringCounter counts) throws IOException {
+        int keys = 0;
+        for (int id = 0; id < counts.size(); id++) {
+            if (counts.count(id) > 0) keys++;
+        }
+        out.writeInt(keys);
+        for (int id = 0; id < counts.size(); id++) {
+            if (counts.count(id) == 0) continue;
+            byte[] key = counts.key(id).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(counts.count(id));
+        }
+    }
+
+    private static void readCounter(BoundedInput in, StringCounter counts) throws IOException {
+        // Each a key length and a count
+        for (int keys = in.readCount(Integer.MAX_VALUE, 8, "key"); keys > 0; keys--) {
+            counts.add(in.readString("key"), in.readInt());
+        }
+    }
+
+    /**
+     * Number of whitespace-separated tokens in a message, as counted for
+     * {@code totalWords}.
+     */
+    public static int countTokens(String text) {
+        if (text == null) return 0;
+
+        int tokens = 0;
+        boolean inToken = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean space = c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+            if (!space && !inToken) tokens++;
+            inToken = !space;
+        }
+        return tokens;
+    }
+
+    public List<List<Object>> topWords(int limit) {
+        return top(wordCounts, limit);
+    }
+
+    public List<List<Object>> topEmojis(int limit) {
+        return top(emojiCounts, limit);
+    }
+
+    public TopPhrases topPhrases(int limit) {
+        return phrases.topPhrases(limit);
+    }
+
+    public Map<String, HeavyHitters> topWordsByAuthor(int limit) {
+        return phrases.topWordsByAuthor(limit);
+    }
+
+    private TokenScanner.TokenSink sink(boolean withWords, boolean withPhrases) {
+        return new TokenScanner.TokenSink() {
+            @Override
+            public void word(CharSequence word, int start, int end) {
+                boolean counted = end - start > 2 && !stopWords.contains(word, start, end);
+                if (withWords && counted) {
+                    countWord(word, start, end);
+                }
+                if (withPhrases) {
+                    phrases.word(word, start, end, counted);
+                }
+            }
+
+            @Override
+            public void emoji(CharSequence text, int start, int end) {
+                if (withWords) {
+                    countEmoji(text, start, end);
+                }
+                if (withPhrases) {
+                    phrases.boundary();
+                }
+            }
+
+            @Override
+            public void boundary() {
+                if (withPhrases) {
+                    phrases.boundary();
+                }
+            }
+        };
+    }
+
+    /**
+     * Sorts by frequency, breaking ties by key so results do not depend on
+     * hash iteration order.
+     */
+    private static List<List<Object>> top(StringCounter counts, int limit) {
+        List<List<Object>> top = new ArrayList<>();
+        for (int id : counts.top(limit)) {
+            top.add(Arrays.<Object>asList(counts.key(id), counts.count(id)));
+        }
+        return top;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,190 @@
+package com.chatanalyzer.chatanalyzer.text;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Stop words of one or more languages, tested against word slices without
+ * allocating.
+ *
+ * <p>Each language's list lives in {@code stopwords/<language>.txt} on the
+ * classpath, one lowercase word per line, with {@code #} comment lines.
+ * Python workers get the words from {@link #getWords} with each request
+ * rather than reading the files, which are not on disk once packaged, so
+ * the Java and Python analyzers drop the same words. Lists are read once
+ * per combination of languages and the result is shared; instances are
+ * immutable and thread-safe.
+ *
+ * <p>The words are kept in a trie over {@code 'a'..'z'}, the only letters
+ * a {@link TokenScanner} word contains, stored as one flat array of child
+ * links. A lookup follows one link per character and gives up at the
+ * first character no stop word continues with.
+ */
+public final class StopWords {
+
+    public static final String DEFAULT_LANGUAGES = "en";
+
+    private static final String RESOURCE_DIR = "stopwords/";
+    private static final Pattern LANGUAGE = Pattern.compile("[a-z]+(-[a-z]+)*");
+    private static final Pattern WORD = Pattern.compile("[a-z]+");
+    private static final int LETTERS = 26;
+
+    private static final ConcurrentHashMap<List<String>, StopWords> LOADED = new ConcurrentHashMap<>();
+
+    private final List<String> languages;
+    private final List<String> words;
+    // children[node * LETTERS + letter] is the child node, 0 if none; node 0 is the root
+    private final int[] children;
+    private final boolean[] terminal;
+
+    private StopWords(List<String> languages, SortedSet<String> words) {
+        int maxNodes = 1;
+        for (String word : words) {
+            maxNodes += word.length();
+        }
+        int[] children = new int[maxNodes * LETTERS];
+        boolean[] terminal = new boolean[maxNodes];
+
+        int nodes = 1;
+        for (String word : words) {
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                int link = node * LETTERS + word.charAt(i) - 'a';
+                if (children[link] == 0) {
+                    children[link] = nodes++;
+                }
+                node = children[link];
+            }
+            terminal[node] = true;
+        }
+
+        this.languages = Collections.unmodifiableList(languages);
+        this.words = Collections.unmodifiableList(new ArrayList<>(words));
+        this.children = Arrays.copyOf(children, nodes * LETTERS);
+        this.terminal = Arrays.copyOf(terminal, nodes);
+    }
+
+    /**
+     * The union of the stop words of a comma-separated list of languages,
+     * e.g. {@code "en,hinglish"}.
+     *
+     * @throws IllegalArgumentException if no languages are given, or one of
+     *         them has no stop word list
+     */
+    public static StopWords forLanguages(String languages) {
+        if (languages == null) {
+            throw new IllegalArgumentException("No stop word languages given");
+        }
+        return forLanguages(Arrays.asList(languages.split(",")));
+    }
+
+    /**
+     * @see #forLanguages(String)
+     */
+    public static StopWords forLanguages(Collection<String> languages) {
+        SortedSet<String> names = new TreeSet<>();
+        for (String language : languages) {
+            String name = language.trim().toLowerCase(Locale.ROOT);
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+        }
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("No stop word languages given");
+        }
+
+        List<String> key = new ArrayList<>(names);
+        StopWords stopWords = LOADED.get(key);
+        if (stopWords == null) {
+            stopWords = LOADED.computeIfAbsent(key, StopWords::load);
+        }
+        return stopWords;
+    }
+
+    private static StopWords load(List<String> languages) {
+        SortedSet<String> words = new TreeSet<>();
+        for (String language : languages) {
+            readList(language, words);
+        }
+        return new StopWords(languages, words);
+    }
+
+    private static void readList(String language, Set<String> words) {
+        String resource = RESOURCE_DIR + language + ".txt";
+        InputStream in = LANGUAGE.matcher(language).matches()
+            ? StopWords.class.getClassLoader().getResourceAsStream(resource)
+            : null;
+        if (in == null) {
+            throw new IllegalArgumentException("No stop words for language: " + language);
+        }
+
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                String word = line.trim();
+                if (word.isEmpty() || word.startsWith("#")) continue;
+                if (!WORD.matcher(word).matches()) {
+                    throw new IllegalStateException("Invalid stop word '" + word + "' in " + resource);
+                }
+                words.add(word);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + resource, e);
+        }
+    }
+
+    /**
+     * Whether {@code text[start, end)} is a stop word.
+     */
+    public boolean contains(CharSequence text, int start, int end) {
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            int letter = text.charAt(i) - 'a';
+            if (letter < 0 || letter >= LETTERS) {
+                return false;
+            }
+            node = children[node * LETTERS + letter];
+            if (node == 0) {
+                return false;
+            }
+        }
+        return terminal[node];
+    }
+
+    public boolean contains(String word) {
+        return contains(word, 0, word.length());
+    }
+
+    /**
+     * The languages these stop words were read for, sorted.
+     */
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    /**
+     * The stop words of all the languages, sorted.
+     */
+    public List<String> getWords() {
+        return words;
+    }
+
+    public int size() {
+        return words.size();
+    }
+
+    @Override
+    public String toString() {
+        return "StopWords{" +
+                "languages=" + languages +
+                ", size=" + words.size() +
+                '}';
+    }
+}
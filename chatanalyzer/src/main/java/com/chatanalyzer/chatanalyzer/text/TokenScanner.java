@@ -0,0 +1,172 @@
+package com.chatanalyzer.chatanalyzer.text;
+
+/**
+ * Splits message text into words and emojis in a single pass, looking at
+ * each code point once.
+ *
+ * <p>Words are maximal runs of ASCII letters after lowercasing; anything
+ * else ends a word. An emoji token is a whole emoji as displayed: a base
+ * pictograph with its variation selector, skin-tone modifier and tag
+ * characters, any further pictographs joined to it with ZWJ (U+200D), or
+ * a pair of regional indicators forming a flag. The emoji variation
+ * selector (U+FE0F) is dropped, so the text and emoji presentation of a
+ * symbol count as one. Tokens are handed to a {@link TokenSink} as slices,
+ * so scanning allocates nothing.
+ *
+ * <p>An instance keeps reusable buffers and is not thread-safe.
+ */
+public final class TokenScanner {
+
+    private static final char ZERO_WIDTH_JOINER = '\u200D';
+    private static final char VARIATION_SELECTOR = '\uFE0F';
+
+    /**
+     * Receives tokens as they are found. Slices are only valid during the call.
+     */
+    public interface TokenSink {
+
+        /**
+         * A lowercased word, {@code word[start, end)}.
+         */
+        void word(CharSequence word, int start, int end);
+
+        /**
+         * An emoji of one or more code points, {@code text[start, end)}.
+         */
+        void emoji(CharSequence text, int start, int end);
+
+        /**
+         * Punctuation ending a clause or sentence, or a line break; the
+         * words before and after it do not make a phrase.
+         */
+        default void boundary() {
+        }
+    }
+
+    private final StringBuilder word = new StringBuilder();
+    private final StringBuilder emoji = new StringBuilder();
+
+    public void scan(String text, TokenSink sink) {
+        int length = text.length();
+        word.setLength(0);
+
+        for (int i = 0; i < length; ) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (c >= 'a' && c <= 'z') {
+                    word.append(c);
+                } else if (c >= 'A' && c <= 'Z') {
+                    word.append((char) (c + ('a' - 'A')));
+                } else {
+                    endWord(sink);
+                    if (isBoundary(c)) {
+                        sink.boundary();
+                    }
+                }
+                i++;
+                continue;
+            }
+
+            int codePoint = text.codePointAt(i);
+            int next = i + Character.charCount(codePoint);
+            if (isPictograph(codePoint) || isRegionalIndicator(codePoint)) {
+                endWord(sink);
+                int end = emojiEnd(text, codePoint, next, length);
+                emitEmoji(text, i, end, sink);
+                i = end;
+                continue;
+            }
+
+            // Some non-ASCII letters lowercase to ASCII, e.g. the Kelvin sign
+            char lower = Character.isBmpCodePoint(codePoint) ? Character.toLowerCase(c) : 0;
+            if (lower >= 'a' && lower <= 'z') {
+                word.append(lower);
+            } else {
+                endWord(sink);
+            }
+            i = next;
+        }
+        endWord(sink);
+    }
+
+    private void endWord(TokenSink sink) {
+        if (word.length() > 0) {
+            sink.word(word, 0, word.length());
+            word.setLength(0);
+        }
+    }
+
+    private void emitEmoji(String text, int start, int end, TokenSink sink) {
+        int selector = text.indexOf(VARIATION_SELECTOR, start);
+        if (selector < 0 || selector >= end) {
+            sink.emoji(text, start, end);
+            return;
+        }
+
+        emoji.setLength(0);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c != VARIATION_SELECTOR) emoji.append(c);
+        }
+        sink.emoji(emoji, 0, emoji.length());
+    }
+
+    /**
+     * @return the end of the emoji whose first code point ends at {@code p}
+     */
+    private static int emojiEnd(String text, int first, int p, int length) {
+        if (isRegionalIndicator(first)) {
+            if (p < length && isRegionalIndicator(text.codePointAt(p))) {
+                return p + 2;
+            }
+            return p;
+        }
+
+        p = skipModifiers(text, p, length);
+        while (p + 1 < length && text.charAt(p) == ZERO_WIDTH_JOINER) {
+            int joined = text.codePointAt(p + 1);
+            if (!isPictograph(joined)) break;
+            p = skipModifiers(text, p + 1 + Character.charCount(joined), length);
+        }
+        return p;
+    }
+
+    private static int skipModifiers(String text, int p, int length) {
+        while (p < length) {
+            int codePoint = text.codePointAt(p);
+            if (codePoint != VARIATION_SELECTOR && !isSkinTone(codePoint) && !isTag(codePoint)) break;
+            p += Character.charCount(codePoint);
+        }
+        return p;
+    }
+
+    private static boolean isBoundary(char c) {
+        return c == '.' || c == ',' || c == '!' || c == '?' || c == ';' || c == ':' || c == '\n';
+    }
+
+    /**
+     * Miscellaneous symbols and dingbats, and the emoticon, pictograph,
+     * transport and supplemental symbol blocks.
+     */
+    private static boolean isPictograph(int codePoint) {
+        return codePoint >= 0x1F300 && codePoint <= 0x1F5FF
+            || codePoint >= 0x1F600 && codePoint <= 0x1F64F
+            || codePoint >= 0x1F680 && codePoint <= 0x1F6FF
+            || codePoint >= 0x1F900 && codePoint <= 0x1F9FF
+            || codePoint >= 0x1FA70 && codePoint <= 0x1FAFF
+            || codePoint >= 0x2600 && codePoint <= 0x27BF;
+    }
+
+    private static boolean isRegionalIndicator(int codePoint) {
+        return codePoint >= 0x1F1E6 && codePoint <= 0x1F1FF;
+    }
+
+    private static boolean isSkinTone(int codePoint) {
+        return codePoint >= 0x1F3FB && codePoint <= 0x1F3FF;
+    }
+
+    // Tag characters, as in subdivision flags like England's
+    private static boolean isTag(int codePoint) {
+        return codePoint >= 0xE0020 && codePoint <= 0xE007F;
+    }
+}
@@ -0,0 +1,147 @@
+package com.chatanalyzer.chatanalyzer.controller;
+
+import com.chatanalyzer.chatanalyzer.config.AnalysisResponseConverter;
+import com.chatanalyzer.chatanalyzer.model.AnalysisMode;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.service.AnalysisMetrics;
+import com.chatanalyzer.chatanalyzer.service.ChatAnalyzerService;
+import com.chatanalyzer.chatanalyzer.service.PythonAnalysisService;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AnalysisResponseTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final AnalysisResponseConverter CONVERTER = converter(MAPPER);
+
+    private static ChatAnalysis analysis;
+
+    @BeforeAll
+    static void analyze() {
+        ChatAnalyzerService service = new ChatAnalyzerService();
+        ReflectionTestUtils.setField(service, "pythonAnalysisService", new PythonAnalysisService());
+        ReflectionTestUtils.setField(service, "chunkSize", 4096);
+        String export = "1/3/21, 9:00 - Ann: good morning 😀 see you tonight\n"
+            + "1/3/21, 9:05 - Bob: morning! pizza tonight?\n"
+            + "not a message line\n"
+            + "1/4/21, 18:30 - Ann: <Media omitted>\n"
+            + "1/4/21, 18:31 - Cleo: pizza pizza 🍕 see you tonight\n";
+        // Approximate, so that the optional sections are all there
+        analysis = service.analyzeChat(export, service.stopWords(null), AnalysisMode.APPROXIMATE);
+        assertThat(analysis.getParseReport()).isNotNull();
+        assertThat(analysis.getApproximation()).isNotNull();
+        assertThat(analysis.getQuarterHourActivity()).isNotNull();
+    }
+
+    @Test
+    void fieldsAreTheJacksonProperties() {
+        JsonNode json = MAPPER.valueToTree(analysis);
+        assertThat(json.fieldNames()).toIterable()
+            .containsExactlyElementsOf(CONVERTER.getFields().subList(0, json.size()));
+        assertThat(CONVERTER.getFields()).hasSize(json.size() + 1).endsWith("quarterHourActivity");
+    }
+
+    @Test
+    void fieldsFollowTheMapperSettings() throws IOException {
+        ObjectMapper snakeCase = new ObjectMapper()
+            .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        AnalysisResponseConverter converter = converter(snakeCase);
+        ChatAnalysis withoutReport = analysis.withParseReport(false);
+        assertThat(withoutReport.getParseReport()).isNull();
+
+        MockHttpOutputMessage expected = new MockHttpOutputMessage();
+        new MappingJackson2HttpMessageConverter(snakeCase).write(withoutReport, MediaType.APPLICATION_JSON, expected);
+        MockHttpOutputMessage streamed = write(converter, AnalysisResponse.ok(withoutReport, null, "gzip"));
+        assertThat(gunzip(streamed)).isEqualTo(expected.getBodyAsString(StandardCharsets.UTF_8));
+
+        assertThat(converter.getFields()).contains("total_messages", "quarter_hour_activity");
+        assertThatThrownBy(() -> converter.parseFields("totalMessages")).isInstanceOf(IllegalArgumentException.class);
+        JsonNode json = snakeCase.readTree(write(converter,
+            AnalysisResponse.ok(withoutReport, converter.parseFields("parse_report,quarter_hour_activity"), null))
+            .getBodyAsBytes());
+        assertThat(json.fieldNames()).toIterable().containsExactly("quarter_hour_activity");
+    }
+
+    @Test
+    void streamedResponseEqualsJsonConverterOutput() throws IOException {
+        MockHttpOutputMessage expected = new MockHttpOutputMessage();
+        ResponseEntity<?> plain = AnalysisResponse.ok(analysis, null, null);
+        assertThat(plain.getBody()).isSameAs(analysis);
+        // Either way, caches must tell the plain and gzipped responses apart
+        assertThat(plain.getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+        new MappingJackson2HttpMessageConverter(MAPPER).write(plain.getBody(), MediaType.APPLICATION_JSON, expected);
+
+        ResponseEntity<?> streamed = AnalysisResponse.ok(analysis, null, "gzip, deflate");
+        assertThat(streamed.getBody()).isInstanceOf(AnalysisResponse.class);
+        assertThat(streamed.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(streamed.getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+
+        assertThat(gunzip(write(streamed))).isEqualTo(expected.getBodyAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void selectedFieldsOnly() throws IOException {
+        ResponseEntity<?> streamed = AnalysisResponse.ok(analysis,
+            CONVERTER.parseFields("totalMessages, quarterHourActivity,parseReport"), null);
+
+        JsonNode json = MAPPER.readTree(write(streamed).getBodyAsBytes());
+        assertThat(json.fieldNames()).toIterable()
+            .containsExactly("totalMessages", "parseReport", "quarterHourActivity");
+        assertThat(json.get("totalMessages").asInt()).isEqualTo(analysis.getTotalMessages());
+        assertThat(json.get("quarterHourActivity")).isEqualTo(MAPPER.valueToTree(analysis.getQuarterHourActivity()));
+    }
+
+    @Test
+    void unknownFieldIsRejected() {
+        assertThatThrownBy(() -> CONVERTER.parseFields("totalMessages,nope"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("nope");
+        assertThat(CONVERTER.parseFields(" ")).isNull();
+        assertThat(CONVERTER.parseFields("timeline,topWords"))
+            .isEqualTo(new LinkedHashSet<>(Arrays.asList("timeline", "topWords")));
+    }
+
+    private static AnalysisResponseConverter converter(ObjectMapper mapper) {
+        return new AnalysisResponseConverter(mapper, new AnalysisMetrics(new SimpleMeterRegistry()));
+    }
+
+    private static MockHttpOutputMessage write(ResponseEntity<?> response) throws IOException {
+        return write(CONVERTER, response);
+    }
+
+    private static MockHttpOutputMessage write(AnalysisResponseConverter converter, ResponseEntity<?> response)
+            throws IOException {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        message.getHeaders().putAll(response.getHeaders());
+        converter.write((AnalysisResponse) response.getBody(), MediaType.APPLICATION_JSON, message);
+        return message;
+    }
+
+    private static String gunzip(MockHttpOutputMessage message) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(message.getBodyAsBytes()))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
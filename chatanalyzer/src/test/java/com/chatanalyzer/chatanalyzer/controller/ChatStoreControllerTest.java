@@ -0,0 +1,85 @@
+package com.chatanalyzer.chatanalyzer.controller;
+
+import com.chatanalyzer.chatanalyzer.model.ChatStats;
+import com.chatanalyzer.chatanalyzer.service.ChatAnalyzerService;
+import com.chatanalyzer.chatanalyzer.service.ChatIndexService;
+import com.chatanalyzer.chatanalyzer.service.PythonAnalysisService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatStoreControllerTest {
+
+    private static final String EXPORT = "1/3/21, 9:00 - Ann: good morning\n"
+        + "1/3/21, 9:05 - Bob: morning! pizza tonight?\n"
+        + "1/9/21, 18:30 - Ann: <Media omitted>\n"
+        + "2/1/21, 18:31 - Cleo: pizza pizza see you tonight\n";
+
+    @TempDir
+    Path dir;
+
+    private ChatStoreController controller;
+    private String chatId;
+
+    @BeforeEach
+    void setUp() {
+        ChatAnalyzerService analyzer = new ChatAnalyzerService();
+        ReflectionTestUtils.setField(analyzer, "pythonAnalysisService", new PythonAnalysisService());
+        ReflectionTestUtils.setField(analyzer, "chunkSize", 4096);
+        ChatIndexService chats = new ChatIndexService();
+        ReflectionTestUtils.setField(chats, "chatAnalyzerService", analyzer);
+        ReflectionTestUtils.setField(chats, "indexDir", dir.toString());
+        chatId = chats.createIndex(new ByteArrayInputStream(EXPORT.getBytes(StandardCharsets.UTF_8)));
+
+        controller = new ChatStoreController();
+        ReflectionTestUtils.setField(controller, "chatIndexService", chats);
+        ReflectionTestUtils.setField(controller, "chatAnalyzerService", analyzer);
+    }
+
+    @Test
+    void statsOverARange() {
+        ResponseEntity<?> response = controller.chatStats(chatId, LocalDate.of(2020, 12, 1), LocalDate.of(2021, 1, 9),
+            null, "week");
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        ChatStats stats = (ChatStats) response.getBody();
+        assertThat(stats.getFrom()).isEqualTo("2020-12-01");
+        assertThat(stats.getTo()).isEqualTo("2021-01-09");
+        assertThat(stats.getGranularity()).isEqualTo("week");
+        assertThat(stats.getTotalMessages()).isEqualTo(3);
+        assertThat(stats.getTotalWords()).isEqualTo(5);
+        assertThat(stats.getMediaMessages()).isEqualTo(1);
+        assertThat(stats.getUserMessageCounts()).containsExactly(Map.entry("Ann", 2), Map.entry("Bob", 1));
+        // Weeks start on Monday
+        assertThat(stats.getTimeline()).containsExactly(Map.entry("2020-12-28", 2), Map.entry("2021-01-04", 1));
+
+        stats = (ChatStats) controller.chatStats(chatId, LocalDate.of(2021, 1, 4), null, "Cleo", "day").getBody();
+        assertThat(stats.getTotalMessages()).isEqualTo(1);
+        assertThat(stats.getTimeline()).containsExactly(Map.entry("2021-02-01", 1));
+
+        stats = (ChatStats) controller.chatStats(chatId, LocalDate.of(2022, 1, 1), null, null, "day").getBody();
+        assertThat(stats.getTotalMessages()).isZero();
+        assertThat(stats.getTimeline()).isEmpty();
+    }
+
+    @Test
+    void badRequestsAreRejected() {
+        assertThat(controller.chatStats(chatId, LocalDate.of(2021, 2, 1), LocalDate.of(2021, 1, 1), null, "day")
+            .getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(controller.chatStats(chatId, null, null, null, "year").getStatusCode())
+            .isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(controller.chatStats("0".repeat(32), null, null, null, "day").getStatusCode())
+            .isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(controller.chatStats("../" + chatId, null, null, null, "day").getStatusCode())
+            .isEqualTo(HttpStatus.NOT_FOUND);
+    }
+}
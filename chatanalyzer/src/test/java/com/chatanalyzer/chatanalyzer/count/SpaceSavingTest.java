@@ -0,0 +1,127 @@
+package com.chatanalyzer.chatanalyzer.count;
+
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpaceSavingTest {
+
+    @Test
+    void countsAreBoundedByTheError() {
+        SpaceSaving summary = new SpaceSaving(100);
+        Map<String, Long> exact = new HashMap<>();
+        stream(summary, exact, new Random(1), 0, 200_000);
+
+        assertThat(summary.size()).isEqualTo(100);
+        assertThat(summary.minCount()).isLessThanOrEqualTo(summary.getTotal() / 100);
+        for (int id = 0; id < summary.size(); id++) {
+            assertThat(summary.error(id)).isLessThanOrEqualTo(summary.minCount());
+        }
+        assertBounds(summary, exact);
+    }
+
+    @Test
+    void mergedSummaryKeepsTheBounds() {
+        SpaceSaving merged = new SpaceSaving(100);
+        SpaceSaving other = new SpaceSaving(100);
+        Map<String, Long> exact = new HashMap<>();
+        // Parts with different favourites, so that many keys are missing
+        // from one of the two summaries
+        stream(merged, exact, new Random(2), 0, 100_000);
+        stream(other, exact, new Random(3), 300, 100_000);
+        merged.merge(other);
+
+        assertThat(merged.getTotal()).isEqualTo(200_000);
+        assertThat(merged.size()).isEqualTo(100);
+        assertBounds(merged, exact);
+
+        assertThatThrownBy(() -> merged.merge(new SpaceSaving(50)))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void summaryWithRoomIsExact() {
+        SpaceSaving summary = new SpaceSaving(1000);
+        Map<String, Long> exact = new HashMap<>();
+        stream(summary, exact, new Random(4), 0, 50_000);
+
+        assertThat(summary.size()).isEqualTo(exact.size());
+        assertThat(summary.minCount()).isZero();
+        for (int id = 0; id < summary.size(); id++) {
+            assertThat(summary.count(id)).isEqualTo(exact.get(summary.key(id)));
+            assertThat(summary.error(id)).isZero();
+        }
+        assertThat(summary.estimate("never seen")).isZero();
+    }
+
+    @Test
+    void sliceIsCountedAsItsKey() {
+        SpaceSaving summary = new SpaceSaving(10);
+        summary.add("see you tonight", 4, 7, 2);
+        summary.add("you", 1);
+
+        assertThat(summary.estimate("you")).isEqualTo(3);
+        assertThat(summary.size()).isEqualTo(1);
+    }
+
+    @Test
+    void writtenSummaryReadsBackTheSame() throws IOException {
+        SpaceSaving summary = new SpaceSaving(100);
+        stream(summary, new HashMap<>(), new Random(5), 0, 20_000);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        summary.writeTo(new DataOutputStream(bytes));
+        SpaceSaving read = SpaceSaving.readFrom(new BoundedInput(bytes.toByteArray()));
+
+        assertThat(read.getCapacity()).isEqualTo(100);
+        assertThat(read.getTotal()).isEqualTo(summary.getTotal());
+        assertThat(read.minCount()).isEqualTo(summary.minCount());
+        assertThat(entries(read)).isEqualTo(entries(summary));
+        assertThat(read.estimate("word0")).isEqualTo(summary.estimate("word0"));
+    }
+
+    /**
+     * Adds {@code count} keys drawn with Zipf-like skew from a thousand,
+     * starting at {@code first}.
+     */
+    private static void stream(SpaceSaving summary, Map<String, Long> exact, Random random, int first, int count) {
+        for (int i = 0; i < count; i++) {
+            String key = "word" + (first + (int) Math.pow(1000, random.nextDouble()) - 1);
+            summary.add(key, 1);
+            exact.merge(key, 1L, Long::sum);
+        }
+    }
+
+    private static void assertBounds(SpaceSaving summary, Map<String, Long> exact) {
+        long threshold = summary.getTotal() / summary.getCapacity();
+        Map<String, Long> tracked = new HashMap<>();
+        for (int id = 0; id < summary.size(); id++) {
+            long trueCount = exact.getOrDefault(summary.key(id), 0L);
+            assertThat(summary.count(id)).as(summary.key(id)).isGreaterThanOrEqualTo(trueCount);
+            assertThat(summary.count(id) - summary.error(id)).as(summary.key(id)).isLessThanOrEqualTo(trueCount);
+            assertThat(summary.error(id)).isLessThanOrEqualTo(threshold);
+            tracked.put(summary.key(id), summary.count(id));
+        }
+        exact.forEach((key, trueCount) -> {
+            assertThat(summary.estimate(key)).as(key).isGreaterThanOrEqualTo(trueCount);
+            if (trueCount > threshold) {
+                assertThat(tracked).as("heavy %s", key).containsKey(key);
+            }
+        });
+    }
+
+    private static Map<String, String> entries(SpaceSaving summary) {
+        Map<String, String> entries = new HashMap<>();
+        for (int id = 0; id < summary.size(); id++) {
+            entries.put(summary.key(id), summary.count(id) + "±" + summary.error(id));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,184 @@
+package com.chatanalyzer.chatanalyzer.count;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StringCounterTest {
+
+    @Test
+    void countsMatchAHashMap() {
+        StringCounter counter = new StringCounter(4);
+        Map<String, Integer> exact = new HashMap<>();
+        Random random = new Random(5);
+        // Keys are counted from slices of a longer text, as words are
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            String key = key(random, 3000);
+            int delta = random.nextInt(3) + 1;
+            text.setLength(0);
+            text.append("<<").append(key).append(">>");
+            counter.add(text, 2, 2 + key.length(), delta);
+            exact.merge(key, delta, Integer::sum);
+        }
+
+        assertThat(counter.size()).isEqualTo(exact.size());
+        assertThat(counter.toMap()).isEqualTo(exact);
+        exact.forEach((key, count) -> assertThat(counter.get(key)).as(key).isEqualTo(count));
+    }
+
+    @Test
+    void idsSurviveGrowth() {
+        StringCounter counter = new StringCounter(1);
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            String key = "k" + i;
+            assertThat(counter.add(key, i)).isEqualTo(i);
+            added.add(key);
+        }
+
+        // Well past several rehashes, every key keeps its id, String and count
+        for (int id = 0; id < added.size(); id++) {
+            String key = added.get(id);
+            assertThat(counter.key(id)).isEqualTo(key);
+            assertThat(counter.count(id)).isEqualTo(id);
+            assertThat(counter.intern(new StringBuilder(key), 0, key.length())).isEqualTo(id);
+            assertThat(counter.key(counter.indexOf(key, 0, key.length()))).isSameAs(counter.key(id));
+        }
+        assertThat(counter.size()).isEqualTo(added.size());
+    }
+
+    @Test
+    void collidingKeysStayApart() {
+        // "Aa" and "BB" share their String hash, and so their slot
+        StringCounter counter = new StringCounter();
+        counter.add("Aa", 1);
+        counter.add("BB", 2);
+        counter.add("AaAa", 3);
+        counter.add("BBBB", 4);
+        counter.add("AaBB", 5);
+
+        assertThat(counter.size()).isEqualTo(5);
+        assertThat(counter.get("Aa")).isEqualTo(1);
+        assertThat(counter.get("BB")).isEqualTo(2);
+        assertThat(counter.get("AaAa")).isEqualTo(3);
+        assertThat(counter.get("BBBB")).isEqualTo(4);
+        assertThat(counter.get("AaBB")).isEqualTo(5);
+        assertThat(counter.get("BBAa")).isZero();
+    }
+
+    @Test
+    void missingKeysAreNotFound() {
+        StringCounter counter = new StringCounter();
+        assertThat(counter.indexOf("a", 0, 1)).isEqualTo(-1);
+
+        counter.add("word", 1);
+        counter.add("", 1);
+        assertThat(counter.indexOf("wor", 0, 3)).isEqualTo(-1);
+        assertThat(counter.indexOf("words", 0, 5)).isEqualTo(-1);
+        assertThat(counter.indexOf("a word", 2, 6)).isZero();
+        assertThat(counter.indexOf("", 0, 0)).isEqualTo(1);
+        assertThat(counter.contains("Word", 0, 4)).isFalse();
+        assertThat(counter.get("Word")).isZero();
+        // Looking up adds nothing
+        assertThat(counter.size()).isEqualTo(2);
+    }
+
+    @Test
+    void topRanksByCountThenKey() {
+        StringCounter counter = new StringCounter();
+        counter.add("pear", 3);
+        counter.add("fig", 5);
+        counter.add("apple", 3);
+        counter.add("kiwi", 3);
+        counter.add("plum", 1);
+        counter.add("zero", 0);
+        counter.add("negative", -2);
+
+        assertThat(keys(counter, 3)).containsExactly("fig", "apple", "kiwi");
+        assertThat(keys(counter, 4)).containsExactly("fig", "apple", "kiwi", "pear");
+        // Keys without a positive count are never listed, whatever the limit
+        assertThat(keys(counter, 100)).containsExactly("fig", "apple", "kiwi", "pear", "plum");
+        assertThat(keys(counter, 0)).isEmpty();
+        assertThat(keys(counter, -1)).isEmpty();
+        assertThat(keys(new StringCounter(), 5)).isEmpty();
+    }
+
+    @Test
+    void topMatchesASortOfAllKeys() {
+        StringCounter counter = new StringCounter();
+        Map<String, Integer> exact = new HashMap<>();
+        Random random = new Random(8);
+        for (int i = 0; i < 50_000; i++) {
+            // Few distinct counts, so that most ranks are decided by key
+            String key = key(random, 2000);
+            counter.add(key, 1);
+            exact.merge(key, 1, Integer::sum);
+        }
+
+        List<String> sorted = exact.entrySet().stream()
+            .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()))
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+        for (int limit : new int[] {1, 10, 100, 1999, exact.size(), exact.size() + 1}) {
+            assertThat(keys(counter, limit)).as("top %d", limit)
+                .isEqualTo(sorted.subList(0, Math.min(limit, sorted.size())));
+        }
+    }
+
+    @Test
+    void mergeAddsCountsOfSharedKeys() {
+        StringCounter merged = new StringCounter(2);
+        StringCounter other = new StringCounter();
+        Map<String, Integer> exact = new HashMap<>();
+        Random random = new Random(9);
+        // Overlapping key ranges: some keys in both tables, some in one
+        for (int i = 0; i < 20_000; i++) {
+            String key = "w" + random.nextInt(1500);
+            merged.add(key, 1);
+            exact.merge(key, 1, Integer::sum);
+        }
+        for (int i = 0; i < 20_000; i++) {
+            String key = "w" + (1000 + random.nextInt(1500));
+            other.add(key, 2);
+            exact.merge(key, 2, Integer::sum);
+        }
+        int ownKeys = merged.size();
+        Map<String, Integer> otherCounts = other.toMap();
+        merged.merge(other);
+
+        assertThat(merged.toMap()).isEqualTo(exact);
+        assertThat(merged.size()).isEqualTo(exact.size());
+        // Keys already present keep their ids; new ones come after them
+        for (int id = 0; id < ownKeys; id++) {
+            assertThat(merged.indexOf(merged.key(id), 0, merged.key(id).length())).isEqualTo(id);
+        }
+        // The other table is left as it was
+        assertThat(other.toMap()).isEqualTo(otherCounts);
+
+        merged.merge(new StringCounter());
+        assertThat(merged.toMap()).isEqualTo(exact);
+    }
+
+    private static List<String> keys(StringCounter counter, int limit) {
+        List<String> keys = new ArrayList<>();
+        for (int id : counter.top(limit)) {
+            keys.add(counter.key(id));
+        }
+        return keys;
+    }
+
+    // Skewed towards a few frequent keys, of one to several characters
+    private static String key(Random random, int distinct) {
+        int rank = (int) Math.pow(distinct, random.nextDouble()) - 1;
+        return Integer.toString(rank, 36);
+    }
+}
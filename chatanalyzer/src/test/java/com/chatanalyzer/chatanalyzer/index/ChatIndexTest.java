@@ -0,0 +1,190 @@
+package com.chatanalyzer.chatanalyzer.index;
+
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import com.chatanalyzer.chatanalyzer.parser.WhatsAppLineParser;
+import com.chatanalyzer.chatanalyzer.service.TextStatistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatIndexTest {
+
+    private static final String[] AUTHORS = {"Ann", "Bob", "Zoë 🌸", "+1 555-0100"};
+    private static final String[] TEXTS = {
+        "hi", "see you tonight", "", "  spaced\tout  ", "line one\nline two\nline three",
+        "café naïve Straße", "😂😂 👍🏽", "don't", "x".repeat(5000)
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void columnsReadBackAsWritten() throws IOException {
+        List<ChatMessage> messages = messages(3000, 31);
+        ChatIndex index = write(messages, dir.resolve("chat.0.idx"));
+
+        assertThat(index.generation()).isZero();
+        assertMessages(index, messages);
+        // Authors are numbered in the order they first wrote
+        for (int id = 0; id < index.authorCount(); id++) {
+            assertThat(index.authorId(index.author(id))).isEqualTo(id);
+        }
+        assertThat(index.authorCount()).isEqualTo(AUTHORS.length);
+        assertThat(index.authorId("Cleo")).isEqualTo(-1);
+        // Neither the side file nor the temporary file is left behind
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files).containsExactly(dir.resolve("chat.0.idx"));
+        }
+    }
+
+    @Test
+    void epochDaysAndMinutesCoverUndatedMessages() throws IOException {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(new ChatMessage(LocalDate.of(2023, 3, 5), "9:41 PM", "Ann", "late", false));
+        messages.add(new ChatMessage(null, null, "Ann", "no header", false));
+        messages.add(new ChatMessage(LocalDate.of(2021, 1, 1), "25:00", "Bob", "bad time", false));
+        messages.add(new ChatMessage(LocalDate.of(2022, 6, 1), "00:00", 0, "Bob", "<Media omitted>", true));
+        ChatIndex index = write(messages, dir.resolve("chat.0.idx"));
+
+        assertThat(index.minEpochDay()).isEqualTo(LocalDate.of(2021, 1, 1).toEpochDay());
+        assertThat(index.maxEpochDay()).isEqualTo(LocalDate.of(2023, 3, 5).toEpochDay());
+        assertThat(index.epochMinute(0)).isEqualTo(LocalDate.of(2023, 3, 5).toEpochDay() * 1440 + 21 * 60 + 41);
+        assertThat(index.epochDay(1)).isEqualTo(Integer.MIN_VALUE);
+        assertThat(index.epochMinute(1)).isEqualTo(Long.MIN_VALUE);
+        // An unknown time counts as midnight
+        assertThat(index.minuteOfDay(2)).isEqualTo(-1);
+        assertThat(index.epochMinute(2)).isEqualTo(LocalDate.of(2021, 1, 1).toEpochDay() * 1440);
+        assertThat(index.isMedia(3)).isTrue();
+        assertThat(index.wordCount(3)).isZero();
+    }
+
+    @Test
+    void emptyChatHasNoDays() throws IOException {
+        ChatIndex index = write(new ArrayList<>(), dir.resolve("chat.0.idx"));
+        assertThat(index.size()).isZero();
+        assertThat(index.authorCount()).isZero();
+        assertThat(index.minEpochDay()).isEqualTo(Integer.MAX_VALUE);
+        assertThat(index.maxEpochDay()).isEqualTo(Integer.MIN_VALUE);
+    }
+
+    @Test
+    void nextGenerationAppendsToTheBase() throws IOException {
+        List<ChatMessage> messages = messages(2000, 32);
+        List<ChatMessage> first = messages.subList(0, 1234);
+        Path baseFile = dir.resolve("chat.0.idx");
+        ChatIndex base = write(first, baseFile);
+
+        // New authors get the next ids
+        List<ChatMessage> later = new ArrayList<>(messages.subList(1234, messages.size()));
+        later.add(new ChatMessage(LocalDate.of(2024, 2, 29), "12:00", "Cleo", "joined late", false));
+        Path nextFile = dir.resolve("chat.1.idx");
+        ChatIndex next;
+        try (ChatIndexWriter writer = new ChatIndexWriter(nextFile, base)) {
+            later.forEach(writer::add);
+            assertThat(writer.getCount()).isEqualTo(messages.size() + 1);
+            writer.finish();
+        }
+        next = ChatIndex.open(nextFile);
+
+        List<ChatMessage> all = new ArrayList<>(messages);
+        all.add(later.get(later.size() - 1));
+        assertThat(next.generation()).isEqualTo(1);
+        assertMessages(next, all);
+        assertThat(next.authorId("Cleo")).isEqualTo(AUTHORS.length);
+        for (int id = 0; id < base.authorCount(); id++) {
+            assertThat(next.author(id)).isEqualTo(base.author(id));
+        }
+
+        // The base file is left as it was, and still reads the same
+        assertMessages(base, first);
+        assertMessages(ChatIndex.open(baseFile), first);
+        // Apart from the generation, the columns and text equal those of
+        // an index written at once
+        ChatIndex whole = write(all, dir.resolve("whole.0.idx"));
+        byte[] appended = Files.readAllBytes(nextFile);
+        appended[91] = 0;
+        assertThat(appended).isEqualTo(Files.readAllBytes(dir.resolve("whole.0.idx")));
+        assertThat(whole.generation()).isZero();
+    }
+
+    @Test
+    void nextGenerationNeedsItsOwnFile() throws IOException {
+        Path baseFile = dir.resolve("chat.0.idx");
+        ChatIndex base = write(messages(10, 33), baseFile);
+        byte[] before = Files.readAllBytes(baseFile);
+
+        try (ChatIndexWriter writer = new ChatIndexWriter(baseFile, base)) {
+            writer.add(new ChatMessage(LocalDate.of(2024, 1, 1), "10:00", "Ann", "more", false));
+            assertThatThrownBy(writer::finish).isInstanceOf(IOException.class);
+        }
+        assertThat(Files.readAllBytes(baseFile)).isEqualTo(before);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files).containsExactly(baseFile);
+        }
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        Path file = dir.resolve("not.idx");
+        Files.write(file, new byte[ChatIndex.HEADER_SIZE]);
+        assertThatThrownBy(() -> ChatIndex.open(file)).isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Dated messages in order, a few days apart at most, from
+     * {@link #AUTHORS}, with every so often a media placeholder or a time
+     * left to be parsed from the header.
+     */
+    private static List<ChatMessage> messages(int count, long seed) {
+        Random random = new Random(seed);
+        List<ChatMessage> messages = new ArrayList<>(count);
+        LocalDate date = LocalDate.of(2022, 12, 30);
+        for (int i = 0; i < count; i++) {
+            date = date.plusDays(random.nextInt(8) == 0 ? random.nextInt(3) : 0);
+            int minute = random.nextInt(1440);
+            String time = String.format("%02d:%02d", minute / 60, minute % 60);
+            String author = AUTHORS[Math.min(AUTHORS.length - 1, random.nextInt(AUTHORS.length + 2))];
+            if (random.nextInt(30) == 0) {
+                messages.add(new ChatMessage(date, time, minute, author, "<Media omitted>", true));
+            } else {
+                String text = TEXTS[random.nextInt(TEXTS.length)];
+                messages.add(random.nextBoolean()
+                    ? new ChatMessage(date, time, minute, author, text, false)
+                    : new ChatMessage(date, time, author, text, false));
+            }
+        }
+        return messages;
+    }
+
+    private static ChatIndex write(List<ChatMessage> messages, Path file) throws IOException {
+        try (ChatIndexWriter writer = new ChatIndexWriter(file)) {
+            messages.forEach(writer::add);
+            writer.finish();
+        }
+        return ChatIndex.open(file);
+    }
+
+    private static void assertMessages(ChatIndex index, List<ChatMessage> messages) {
+        assertThat(index.size()).isEqualTo(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage message = messages.get(i);
+            assertThat(index.text(i)).as("text of %d", i).isEqualTo(message.getText());
+            assertThat(index.author(index.authorIdAt(i))).isEqualTo(message.getAuthor());
+            assertThat(index.epochDay(i)).isEqualTo(message.getDate().toEpochDay());
+            assertThat(index.minuteOfDay(i)).isEqualTo(WhatsAppLineParser.minuteOfDay(message.getTime()));
+            assertThat(index.isMedia(i)).isEqualTo(message.isMediaMessage());
+            assertThat(index.wordCount(i))
+                .isEqualTo(message.isMediaMessage() ? 0 : TextStatistics.countTokens(message.getText()));
+        }
+    }
+}
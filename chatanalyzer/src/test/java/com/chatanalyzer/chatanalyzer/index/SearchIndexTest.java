@@ -0,0 +1,194 @@
+package com.chatanalyzer.chatanalyzer.index;
+
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchIndexTest {
+
+    // "the" is in most messages, so that its postings have many skips
+    static final String[] WORDS = {"the", "the", "the", "you", "see", "tonight", "pizza", "good", "morning", "lol"};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void postingsReadBackAsWritten() throws IOException {
+        List<String> messages = messages(5000, 21);
+        SearchIndex index = write(messages, dir.resolve("chat.search"));
+
+        assertThat(index.messageCount()).isEqualTo(messages.size());
+        for (String term : new String[] {"the", "pizza", "lol"}) {
+            List<Integer> docs = docs(messages, term);
+            assertThat(index.docFreq(term)).isEqualTo(docs.size());
+            assertThat(docs.size()).as(term).isGreaterThan(3 * SearchIndex.SKIP_INTERVAL);
+
+            SearchIndex.Postings postings = index.postings(term);
+            assertThat(postings.doc()).isEqualTo(-1);
+            int[] into = new int[64];
+            for (int rank = 0; rank < docs.size(); rank++) {
+                assertThat(postings.next()).isTrue();
+                int doc = docs.get(rank);
+                assertThat(postings.doc()).isEqualTo(doc);
+                assertThat(postings.rank()).isEqualTo(rank);
+                // Positions of every third message only, so that others are
+                // passed over unread
+                if (rank % 3 == 0) {
+                    int count = postings.positions(into);
+                    assertThat(Arrays.copyOf(into, count)).as("%s in %d", term, doc)
+                        .containsExactly(positions(messages.get(doc), term));
+                } else {
+                    assertThat(postings.freq()).isEqualTo(positions(messages.get(doc), term).length);
+                }
+            }
+            assertThat(postings.next()).isFalse();
+            assertThat(postings.rank()).isEqualTo(docs.size());
+        }
+        assertThat(index.postings("nope")).isNull();
+        assertThat(index.docFreq("nope")).isZero();
+    }
+
+    @Test
+    void advanceJumpsToTheFirstMessageAtOrAfterTarget() throws IOException {
+        List<String> messages = messages(5000, 22);
+        SearchIndex index = write(messages, dir.resolve("chat.search"));
+        Random random = new Random(23);
+
+        for (String term : new String[] {"the", "morning"}) {
+            List<Integer> docs = docs(messages, term);
+            for (int walk = 0; walk < 20; walk++) {
+                SearchIndex.Postings postings = index.postings(term);
+                int target = 0;
+                int[] into = new int[64];
+                while (true) {
+                    // Mostly short steps, some over several skip intervals
+                    target += 1 + (random.nextInt(4) == 0 ? random.nextInt(2000) : random.nextInt(20));
+                    int rank = rankOf(docs, target);
+                    if (rank == docs.size()) {
+                        assertThat(postings.advance(target)).isFalse();
+                        assertThat(postings.rank()).isEqualTo(docs.size());
+                        break;
+                    }
+                    assertThat(postings.advance(target)).isTrue();
+                    assertThat(postings.doc()).as("%s from %d", term, target).isEqualTo(docs.get(rank));
+                    assertThat(postings.rank()).isEqualTo(rank);
+                    int count = postings.positions(into);
+                    assertThat(Arrays.copyOf(into, count))
+                        .containsExactly(positions(messages.get(postings.doc()), term));
+                    target = postings.doc();
+                }
+            }
+        }
+    }
+
+    @Test
+    void appendedIndexEqualsOneBuiltAtOnce() throws IOException {
+        List<String> messages = messages(3000, 24);
+        Path whole = dir.resolve("whole.search");
+        write(messages, whole);
+
+        // Cut inside a skip interval of most terms
+        SearchIndex base = write(messages.subList(0, 1777), dir.resolve("base.search"));
+        SearchIndexWriter appended = new SearchIndexWriter(base);
+        for (String message : messages.subList(1777, messages.size())) {
+            appended.add(message(message));
+        }
+        appended.finish(dir.resolve("appended.search"));
+
+        assertThat(Files.readAllBytes(dir.resolve("appended.search"))).isEqualTo(Files.readAllBytes(whole));
+    }
+
+    /**
+     * Messages of two to twenty of {@link #WORDS}, some with punctuation
+     * between them, and every so often a media placeholder, given as
+     * {@code null}.
+     */
+    static List<String> messages(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(50) == 0) {
+                messages.add(null);
+                continue;
+            }
+            StringBuilder text = new StringBuilder();
+            for (int words = 2 + random.nextInt(19); words > 0; words--) {
+                if (text.length() > 0) {
+                    int separator = random.nextInt(12);
+                    text.append(separator == 0 ? ". " : separator == 1 ? ", " : separator == 2 ? "!? " : " ");
+                }
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(random.nextInt(10) == 0 ? word.toUpperCase() : word);
+            }
+            messages.add(text.toString());
+        }
+        return messages;
+    }
+
+    static SearchIndex write(List<String> messages, Path file) throws IOException {
+        SearchIndexWriter writer = new SearchIndexWriter();
+        messages.forEach(message -> writer.add(message(message)));
+        writer.finish(file);
+        return SearchIndex.open(file);
+    }
+
+    /**
+     * The lowercased words of a message, with {@code null} where
+     * punctuation breaks it, at their token positions.
+     */
+    static List<String> tokens(String message) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : message.toLowerCase().split(" ")) {
+            String word = token.replaceAll("[^a-z]", "");
+            if (!word.isEmpty()) {
+                tokens.add(word);
+            }
+            if (word.length() < token.length()) {
+                tokens.add(null);
+            }
+        }
+        return tokens;
+    }
+
+    private static ChatMessage message(String text) {
+        return new ChatMessage(null, null, "Ann", text != null ? text : "<Media omitted>", text == null);
+    }
+
+    private static List<Integer> docs(List<String> messages, String term) {
+        List<Integer> docs = new ArrayList<>();
+        for (int doc = 0; doc < messages.size(); doc++) {
+            if (messages.get(doc) != null && tokens(messages.get(doc)).contains(term)) {
+                docs.add(doc);
+            }
+        }
+        return docs;
+    }
+
+    private static int[] positions(String message, String term) {
+        List<String> tokens = tokens(message);
+        List<Integer> positions = new ArrayList<>();
+        for (int position = 0; position < tokens.size(); position++) {
+            if (term.equals(tokens.get(position))) {
+                positions.add(position);
+            }
+        }
+        return positions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int rankOf(List<Integer> docs, int target) {
+        int rank = 0;
+        while (rank < docs.size() && docs.get(rank) < target) {
+            rank++;
+        }
+        return rank;
+    }
+}
@@ -0,0 +1,114 @@
+package com.chatanalyzer.chatanalyzer.index;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SearchQueryTest {
+
+    @TempDir
+    static Path dir;
+
+    private static List<String> messages;
+    private static SearchIndex index;
+
+    @BeforeAll
+    static void index() throws IOException {
+        messages = SearchIndexTest.messages(4000, 31);
+        index = SearchIndexTest.write(messages, dir.resolve("chat.search"));
+    }
+
+    @Test
+    void totalsAndPagesMatchEveryMessageChecked() {
+        // Each query with the phrases it stands for
+        Object[][] queries = {
+            {"the", new String[][] {{"the"}}},
+            {"LOL", new String[][] {{"lol"}}},
+            {"pizza tonight", new String[][] {{"pizza"}, {"tonight"}}},
+            {"\"see you\"", new String[][] {{"see", "you"}}},
+            {"pizza \"good morning\" the", new String[][] {{"pizza"}, {"good", "morning"}, {"the"}}},
+            {"\"the the\"", new String[][] {{"the", "the"}}},
+            {"\"see you tonight\" good", new String[][] {{"see", "you", "tonight"}, {"good"}}},
+        };
+        IntPredicate[] filters = {null, doc -> doc % 3 == 0};
+        int[][] ranges = {{0, Integer.MAX_VALUE}, {1000, 1499}, {3999, 3999}, {500, 100}};
+
+        for (Object[] query : queries) {
+            SearchQuery parsed = SearchQuery.parse((String) query[0]);
+            for (IntPredicate filter : filters) {
+                for (int[] range : ranges) {
+                    List<Integer> expected = new ArrayList<>();
+                    for (int doc = range[0]; doc <= Math.min(range[1], messages.size() - 1); doc++) {
+                        if ((filter == null || filter.test(doc)) && matches(messages.get(doc), (String[][]) query[1])) {
+                            expected.add(doc);
+                        }
+                    }
+                    for (long skip : new long[] {0, 3, 129, 5000}) {
+                        for (int size : new int[] {1, 20, 400}) {
+                            List<Integer> page = new ArrayList<>();
+                            int total = parsed.run(index, range[0], range[1], filter, skip, size, page::add);
+
+                            String what = query[0] + " in " + Arrays.toString(range) + (filter != null ? " filtered" : "")
+                                + ", skip " + skip + " size " + size;
+                            assertThat(total).as(what).isEqualTo(expected.size());
+                            int from = (int) Math.min(skip, expected.size());
+                            assertThat(page).as(what)
+                                .isEqualTo(expected.subList(from, Math.min(from + size, expected.size())));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void phraseDoesNotRunOverPunctuation() throws IOException {
+        SearchIndex small = SearchIndexTest.write(
+            Arrays.asList("good. morning", "good morning", "Good, morning!", "morning good"), dir.resolve("small.search"));
+        assertThat(run(small, "\"good morning\"")).containsExactly(1);
+        // Punctuation inside quotes splits the phrase
+        assertThat(run(small, "\"good. morning\"")).containsExactly(0, 1, 2, 3);
+        assertThat(run(small, "good morning")).containsExactly(0, 1, 2, 3);
+        assertThat(run(small, "\"morning good\"")).containsExactly(3);
+        assertThat(run(small, "\"good morning\" pizza")).isEmpty();
+    }
+
+    @Test
+    void queryWithoutWordsIsRejected() {
+        assertThatThrownBy(() -> SearchQuery.parse(" ")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SearchQuery.parse("\"?!\" ...")).isInstanceOf(IllegalArgumentException.class);
+        String tooLong = String.join(" ", Collections.nCopies(SearchQuery.MAX_TOKENS + 1, "the"));
+        assertThatThrownBy(() -> SearchQuery.parse(tooLong))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("more than " + SearchQuery.MAX_TOKENS);
+    }
+
+    private static List<Integer> run(SearchIndex index, String query) {
+        List<Integer> docs = new ArrayList<>();
+        SearchQuery.parse(query).run(index, 0, Integer.MAX_VALUE, null, 0, 100, docs::add);
+        return docs;
+    }
+
+    private static boolean matches(String message, String[][] phrases) {
+        if (message == null) {
+            return false;
+        }
+        List<String> tokens = SearchIndexTest.tokens(message);
+        for (String[] phrase : phrases) {
+            if (Collections.indexOfSubList(tokens, Arrays.asList(phrase)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
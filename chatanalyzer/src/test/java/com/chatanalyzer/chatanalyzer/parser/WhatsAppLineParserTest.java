@@ -0,0 +1,404 @@
+package com.chatanalyzer.chatanalyzer.parser;
+
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import com.chatanalyzer.chatanalyzer.parser.WhatsAppLineParser.DateOrder;
+import org.junit.jupiter.api.Test;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WhatsAppLineParserTest {
+
+    private static final String FIXTURE = "/exports/mixed-formats.txt";
+
+    // The regex and formatter loop that WhatsAppLineParser replaced, as it
+    // was in ChatAnalyzerService
+    private static final Pattern LEGACY_PATTERN = Pattern.compile(
+        "^(\\d{1,2}/\\d{1,2}/\\d{2,4}),?\\s+(\\d{1,2}:\\d{2}(?:\\s*(?:AM|PM|am|pm))?)\\s*-\\s*([^:]+):\\s*(.*)$"
+    );
+    private static final String[] LEGACY_FORMATS = {
+        "M/d/yyyy", "MM/dd/yyyy", "d/M/yyyy", "dd/MM/yyyy",
+        "M/d/yy", "MM/dd/yy", "d/M/yy", "dd/MM/yy"
+    };
+
+    @Test
+    void firstUnambiguousDateDecidesTheOrder() throws IOException {
+        assertThat(detect("5/6/23, 9:00 - Ann: hi\n13/6/23, 9:00 - Bob: hi\n6/14/23, 9:00 - Ann: hi\n"))
+            .isEqualTo(DateOrder.DAY_FIRST);
+        assertThat(detect("5/6/23, 9:00 - Ann: hi\n6/14/23, 9:00 - Bob: hi\n13/6/23, 9:00 - Ann: hi\n"))
+            .isEqualTo(DateOrder.MONTH_FIRST);
+        // Nothing decides: month first
+        assertThat(detect("5/6/23, 9:00 - Ann: hi\n12/12/23, 9:00 - Bob: hi\n"))
+            .isEqualTo(DateOrder.MONTH_FIRST);
+        // Lines that are not messages do not decide either
+        assertThat(detect("13/6/23, 9:00 - Ann joined\n13/6/23 - Bob: hi\n32/6/23, 9:00 - Bob: hi\n"))
+            .isEqualTo(DateOrder.MONTH_FIRST);
+    }
+
+    @Test
+    void dateOrderIsReadFromTheFirst64KCharacters() throws IOException {
+        String decider = "13/6/23, 9:00 - Bob: hi\n";
+        String filler = "5/6/23, 9:00 - Ann: hi\n";
+
+        StringBuilder within = new StringBuilder();
+        while (within.length() + filler.length() + decider.length() <= WhatsAppLineParser.SAMPLE_SIZE) {
+            within.append(filler);
+        }
+        assertThat(detect(within + decider)).isEqualTo(DateOrder.DAY_FIRST);
+
+        StringBuilder beyond = new StringBuilder();
+        while (beyond.length() < WhatsAppLineParser.SAMPLE_SIZE) {
+            beyond.append(filler);
+        }
+        assertThat(detect(beyond + decider)).isEqualTo(DateOrder.MONTH_FIRST);
+    }
+
+    @Test
+    void detectionLeavesTheReaderWhereItWas() throws IOException {
+        String export = "13/6/23, 9:00 - Bob: hi\n5/6/23, 9:00 - Ann: hi\n";
+        BufferedReader reader = new BufferedReader(new StringReader(export), WhatsAppLineParser.SAMPLE_SIZE + 1);
+        WhatsAppLineParser.detectDateOrder(reader);
+        assertThat(reader.readLine()).isEqualTo("13/6/23, 9:00 - Bob: hi");
+    }
+
+    @Test
+    void twoDigitYearsAreInThe2000s() {
+        assertThat(date("1/3/99")).isEqualTo(LocalDate.of(2099, 1, 3));
+        assertThat(date("1/3/21")).isEqualTo(LocalDate.of(2021, 1, 3));
+        assertThat(date("1/3/00")).isEqualTo(LocalDate.of(2000, 1, 3));
+        assertThat(date("1/3/1999")).isEqualTo(LocalDate.of(1999, 1, 3));
+    }
+
+    @Test
+    void unresolvableDatesFallBackToToday() {
+        for (String unresolvable : new String[] {"1/3/021", "1/3/0000", "13/13/21", "0/3/21", "1/0/21", "1/32/21"}) {
+            WhatsAppLineParser parser = new WhatsAppLineParser();
+            LocalDate before = LocalDate.now();
+            ChatMessage message = parser.parse(unresolvable + ", 9:00 - Ann: hi");
+            assertThat(message).as(unresolvable).isNotNull();
+            assertThat(message.getDate()).as(unresolvable).isBetween(before, LocalDate.now());
+            assertThat(parser.getReport().getDateFallbacks()).as(unresolvable).isEqualTo(1);
+            assertThat(parser.getReport().getRejectedLines()).as(unresolvable).isZero();
+        }
+    }
+
+    @Test
+    void daysPastTheEndOfTheMonthAreClamped() {
+        assertThat(date("2/30/21")).isEqualTo(LocalDate.of(2021, 2, 28));
+        assertThat(date("2/31/2021")).isEqualTo(LocalDate.of(2021, 2, 28));
+        assertThat(date("2/29/24")).isEqualTo(LocalDate.of(2024, 2, 29));
+        assertThat(date("2/30/2000")).isEqualTo(LocalDate.of(2000, 2, 29));
+        assertThat(date("2/29/1900")).isEqualTo(LocalDate.of(1900, 2, 28));
+        assertThat(date("4/31/22")).isEqualTo(LocalDate.of(2022, 4, 30));
+        assertThat(date(DateOrder.DAY_FIRST, "31/4/22")).isEqualTo(LocalDate.of(2022, 4, 30));
+        assertThat(date(DateOrder.DAY_FIRST, "30/2/21")).isEqualTo(LocalDate.of(2021, 2, 28));
+    }
+
+    @Test
+    void dateOrderOnlyDecidesAmbiguousDates() {
+        assertThat(date(DateOrder.MONTH_FIRST, "5/6/23")).isEqualTo(LocalDate.of(2023, 5, 6));
+        assertThat(date(DateOrder.DAY_FIRST, "5/6/23")).isEqualTo(LocalDate.of(2023, 6, 5));
+        assertThat(date(DateOrder.MONTH_FIRST, "13/6/23")).isEqualTo(LocalDate.of(2023, 6, 13));
+        assertThat(date(DateOrder.DAY_FIRST, "6/13/23")).isEqualTo(LocalDate.of(2023, 6, 13));
+    }
+
+    @Test
+    void twelveAndTwentyFourHourTimes() {
+        assertTime("9:41 PM", 21 * 60 + 41);
+        assertTime("9:41PM", 21 * 60 + 41);
+        assertTime("12:00 AM", 0);
+        assertTime("12:59 am", 59);
+        assertTime("12:30 pm", 12 * 60 + 30);
+        assertTime("1:05 am", 65);
+        assertTime("21:42", 21 * 60 + 42);
+        assertTime("0:05", 5);
+        assertTime("00:00", 0);
+        assertTime("23:59", 23 * 60 + 59);
+
+        // Out of range: still a message, at no minute of the day
+        assertTime("24:00", -1);
+        assertTime("9:60", -1);
+        assertTime("13:00 PM", -1);
+        assertTime("0:30 AM", -1);
+    }
+
+    @Test
+    void entryMinutesCoverEveryTimeOfDay() {
+        WhatsAppLineParser parser = new WhatsAppLineParser(DateOrder.MONTH_FIRST);
+        long day = LocalDate.of(2021, 1, 3).toEpochDay();
+        // More distinct times than the parser first makes room for
+        for (int minute = 0; minute < 1440; minute++) {
+            String line = String.format("1/3/21, %d:%02d - Ann: hi", minute / 60, minute % 60);
+            assertThat(parser.entryMinute(line)).as(line).isEqualTo(day * 1440 + minute);
+            assertThat(parser.accept(line)).isNull();
+            assertThat(parser.finish().getMinuteOfDay()).isEqualTo(minute);
+        }
+        assertThat(parser.entryMinute("1/3/21, 24:00 - Ann: hi")).isEqualTo(day * 1440);
+        assertThat(parser.entryMinute("see you then")).isEqualTo(WhatsAppLineParser.NO_MINUTE);
+    }
+
+    @Test
+    void linesThatAreNotMessages() {
+        String[] notMessages = {
+            "12/28/21, 9:14 PM - Ann created group \"Dinner club\"",
+            "1/3/21, 9:00 - Bob joined using this group's invite link",
+            "just text on a line",
+            "- Bob: a dash but no date",
+            "1/3/21 - Bob: a date but no time",
+            "1/3/21, 9:00 PM Bob: no dash",
+            "1/3/21, 9:5 - Bob: one digit minutes",
+            "123/3/21, 9:00 - Bob: three digit month",
+            "1/3/20210, 9:00 - Bob: five digit year",
+            "1/3/21,9:00 - Bob: no space after the comma",
+            "1/3/21, 9:00 -: no author",
+            "1/3/21, 9:00 - Bob: a line\u2028separator",
+            "1/3/21, 9:00 - Bob: a paragraph\u2029separator",
+            "1/3/21, 9:00 - Bob: a next\u0085line"
+        };
+        WhatsAppLineParser parser = new WhatsAppLineParser();
+        for (String line : notMessages) {
+            assertThat(parser.parse(line)).as(line).isNull();
+        }
+        assertThat(parser.getReport().getRejectedLines()).isEqualTo(notMessages.length);
+
+        // Blank lines are neither messages nor rejected
+        WhatsAppLineParser blank = new WhatsAppLineParser();
+        for (String line : new String[] {"", "   ", "\t"}) {
+            assertThat(blank.parse(line)).isNull();
+        }
+        assertThat(blank.getReport().getRejectedLines()).isZero();
+        assertThat(blank.getReport().isClean()).isTrue();
+    }
+
+    @Test
+    void fieldsAreTrimmed() {
+        ChatMessage message = new WhatsAppLineParser().parse("  1/3/21,  9:00 AM  -  Ann Lee - work:   a: b   ");
+        assertThat(message.getTime()).isEqualTo("9:00 AM");
+        assertThat(message.getAuthor()).isEqualTo("Ann Lee - work");
+        assertThat(message.getText()).isEqualTo("a: b");
+        assertThat(message.isMediaMessage()).isFalse();
+
+        assertThat(new WhatsAppLineParser().parse("1/3/21, 9:00 - Bob: <Media omitted>").isMediaMessage()).isTrue();
+        assertThat(new WhatsAppLineParser().parse("1/3/21, 9:00 - Bob: ").getText()).isEmpty();
+    }
+
+    @Test
+    void continuationLinesJoinTheMessageBefore() {
+        List<ChatMessage> messages = feed(new WhatsAppLineParser(),
+            "1/3/21, 9:00 - Ann: first line",
+            "second line",
+            "",
+            "  indented third line  ",
+            "1/3/21, 9:01 - Bob: single",
+            "1/3/21, 9:02 - Ann: trailing blank lines",
+            "",
+            "   ");
+
+        assertThat(messages).extracting(ChatMessage::getText).containsExactly(
+            "first line\nsecond line\n\n  indented third line",
+            "single",
+            "trailing blank lines");
+        assertThat(messages).extracting(ChatMessage::getAuthor).containsExactly("Ann", "Bob", "Ann");
+        assertThat(messages).extracting(ChatMessage::getMinuteOfDay).containsExactly(540, 541, 542);
+    }
+
+    @Test
+    void mediaIsDetectedOnTheWholeMessage() {
+        List<ChatMessage> messages = feed(new WhatsAppLineParser(),
+            "1/3/21, 9:00 - Ann: look",
+            "IMG-0001.jpg <Media omitted>",
+            "1/3/21, 9:01 - Bob: <Media omitted>",
+            "with a caption");
+
+        assertThat(messages).extracting(ChatMessage::isMediaMessage).containsExactly(true, true);
+    }
+
+    @Test
+    void continuationBeforeTheFirstMessageIsRejected() {
+        WhatsAppLineParser parser = new WhatsAppLineParser();
+        List<ChatMessage> messages = feed(parser,
+            "text cut from an earlier export",
+            "",
+            "more of it",
+            "1/3/21, 9:00 - Ann: hi",
+            "there");
+
+        assertThat(messages).extracting(ChatMessage::getText).containsExactly("hi\nthere");
+        assertThat(parser.getReport().getRejectedLines()).isEqualTo(2);
+        assertThat(parser.getReport().getRejectedSamples())
+            .containsExactly("text cut from an earlier export", "more of it");
+    }
+
+    @Test
+    void continuationAfterASystemNoticeIsRejected() {
+        WhatsAppLineParser parser = new WhatsAppLineParser();
+        List<ChatMessage> messages = feed(parser,
+            "1/3/21, 9:00 - Ann: before the notice",
+            "1/3/21, 9:01 - Ann changed the group description",
+            "Dinner every friday",
+            "1/3/21, 9:02 - Bob: after the notice",
+            "and its continuation");
+
+        // The notice ends Ann's message and its own lines are not hers
+        assertThat(messages).extracting(ChatMessage::getText)
+            .containsExactly("before the notice", "after the notice\nand its continuation");
+        assertThat(parser.getReport().getRejectedSamples())
+            .containsExactly("1/3/21, 9:01 - Ann changed the group description", "Dinner every friday");
+    }
+
+    @Test
+    void finishWithoutPendingMessage() {
+        WhatsAppLineParser parser = new WhatsAppLineParser();
+        assertThat(parser.finish()).isNull();
+        assertThat(parser.accept("1/3/21, 9:00 - Ann: hi")).isNull();
+        assertThat(parser.finish().getText()).isEqualTo("hi");
+        assertThat(parser.finish()).isNull();
+
+        // The buffer of continuation lines starts empty for the next message
+        assertThat(feed(parser, "1/3/21, 9:00 - Ann: a", "b", "1/3/21, 9:01 - Bob: c", "d"))
+            .extracting(ChatMessage::getText).containsExactly("a\nb", "c\nd");
+    }
+
+    @Test
+    void fixtureParsesAsWithTheRegex() throws IOException {
+        List<String> lines = fixture();
+        WhatsAppLineParser parser = new WhatsAppLineParser(DateOrder.MONTH_FIRST);
+        int messages = 0;
+        for (String line : lines) {
+            assertSameAsLegacy(parser, line);
+            if (legacyParse(line) != null) messages++;
+        }
+        // The fixture is mostly messages, so this compares more than nulls
+        assertThat(messages).isGreaterThan(lines.size() / 2);
+    }
+
+    @Test
+    void randomLinesParseAsWithTheRegex() {
+        String[] prefixes = {"", "", "  ", "\t"};
+        String[] numbers = {"0", "1", "01", "2", "4", "05", "9", "12", "13", "29", "30", "31", "32", "123", ""};
+        String[] years = {"21", "99", "00", "2021", "2024", "1900", "0000", "021", "20210", "2"};
+        String[] separators = {", ", " ", ",", ",\t", ",  ", "  "};
+        String[] times = {
+            "9:00", "09:41", "21:42", "0:05", "24:00", "9:60", "9:5", "123:00",
+            "12:00 AM", "9:41 PM", "9:41PM", "10:00 am", "9:41 Pm", "13:00 PM", "9:41  pm"
+        };
+        String[] dashes = {" - ", "-", " -", "- ", "  -  ", " ", " – "};
+        String[] authors = {"Ann", "Ann Lee", " ", "", "Bob - work", "José", "+1 555 0100"};
+        String[] colons = {": ", ":", ":  ", "", " : "};
+        String[] texts = {
+            "hi", "a: b", "", "<Media omitted>", "sticker omitted", "x y", "  spaced  ", "😂👍🏽", "9:00 - x: y"
+        };
+
+        Random random = new Random(3);
+        WhatsAppLineParser parser = new WhatsAppLineParser(DateOrder.MONTH_FIRST);
+        for (int i = 0; i < 20_000; i++) {
+            String line = pick(random, prefixes) + pick(random, numbers) + "/" + pick(random, numbers) + "/"
+                + pick(random, years) + pick(random, separators) + pick(random, times) + pick(random, dashes)
+                + pick(random, authors) + pick(random, colons) + pick(random, texts);
+            assertSameAsLegacy(parser, line);
+        }
+    }
+
+    // Every message completed by feeding the lines in order
+    private static List<ChatMessage> feed(WhatsAppLineParser parser, String... lines) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (String line : lines) {
+            ChatMessage message = parser.accept(line);
+            if (message != null) messages.add(message);
+        }
+        ChatMessage last = parser.finish();
+        if (last != null) messages.add(last);
+        return messages;
+    }
+
+    private static void assertSameAsLegacy(WhatsAppLineParser parser, String line) {
+        ChatMessage expected = legacyParse(line);
+        ChatMessage actual = parser.parse(line);
+        if (expected == null) {
+            assertThat(actual).as(line).isNull();
+            return;
+        }
+        assertThat(actual).as(line).isNotNull();
+        assertThat(Arrays.asList(actual.getDate(), actual.getTime(), actual.getAuthor(), actual.getText(),
+                actual.isMediaMessage()))
+            .as(line)
+            .isEqualTo(Arrays.asList(expected.getDate(), expected.getTime(), expected.getAuthor(),
+                expected.getText(), expected.isMediaMessage()));
+        assertThat(actual.getMinuteOfDay()).as(line).isEqualTo(WhatsAppLineParser.minuteOfDay(expected.getTime()));
+    }
+
+    private static ChatMessage legacyParse(String line) {
+        if (line.trim().isEmpty()) return null;
+
+        Matcher matcher = LEGACY_PATTERN.matcher(line.trim());
+        if (!matcher.matches()) return null;
+
+        String text = matcher.group(4).trim();
+        return new ChatMessage(legacyDate(matcher.group(1)), matcher.group(2), matcher.group(3).trim(), text,
+            WhatsAppLineParser.isMediaMessage(text));
+    }
+
+    private static LocalDate legacyDate(String date) {
+        for (String format : LEGACY_FORMATS) {
+            try {
+                return LocalDate.parse(date, DateTimeFormatter.ofPattern(format));
+            } catch (DateTimeParseException e) {
+                // Try next format
+            }
+        }
+        return LocalDate.now();
+    }
+
+    private static void assertTime(String time, int minuteOfDay) {
+        ChatMessage message = new WhatsAppLineParser().parse("1/3/21, " + time + " - Ann: hi");
+        assertThat(message).as(time).isNotNull();
+        assertThat(message.getTime()).isEqualTo(time);
+        assertThat(message.getMinuteOfDay()).as(time).isEqualTo(minuteOfDay);
+        assertThat(WhatsAppLineParser.minuteOfDay(time)).as(time).isEqualTo(minuteOfDay);
+    }
+
+    private static LocalDate date(String date) {
+        return date(DateOrder.MONTH_FIRST, date);
+    }
+
+    private static LocalDate date(DateOrder order, String date) {
+        WhatsAppLineParser parser = new WhatsAppLineParser(order);
+        ChatMessage message = parser.parse(date + ", 9:00 - Ann: hi");
+        assertThat(parser.getReport().getDateFallbacks()).as(date).isZero();
+        return message.getDate();
+    }
+
+    private static DateOrder detect(String export) throws IOException {
+        return WhatsAppLineParser.detectDateOrder(new BufferedReader(new StringReader(export)));
+    }
+
+    private static List<String> fixture() throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (InputStream in = WhatsAppLineParserTest.class.getResourceAsStream(FIXTURE);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,128 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AnalysisCacheTest {
+
+    private AnalysisCache cache;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        cache = new AnalysisCache();
+        ReflectionTestUtils.setField(cache, "maxSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofHours(1));
+        registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+    }
+
+    @Test
+    void repeatedGetIsHit() {
+        ChatAnalysis analysis = new ChatAnalysis();
+        cache.get("key", () -> analysis);
+
+        assertThat(cache.get("key", () -> null)).isSameAs(analysis);
+        assertThat(gets("hit")).isEqualTo(1);
+        assertThat(gets("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void waitForSuccessfulComputationIsCoalesced() throws Exception {
+        ChatAnalysis analysis = new ChatAnalysis();
+        CountDownLatch computing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ChatAnalysis> first = CompletableFuture.supplyAsync(() -> cache.get("key", () -> {
+            computing.countDown();
+            await(release);
+            return analysis;
+        }));
+        computing.await(10, TimeUnit.SECONDS);
+        CompletableFuture<ChatAnalysis> second = CompletableFuture.supplyAsync(() -> cache.get("key", () -> null));
+        waitForWaiter();
+        release.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS)).isSameAs(analysis);
+        assertThat(second.get(10, TimeUnit.SECONDS)).isSameAs(analysis);
+        assertThat(gets("coalesced")).isEqualTo(1);
+        assertThat(gets("hit")).isZero();
+        assertThat(gets("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void waitForFailedComputationIsNotCounted() throws Exception {
+        CountDownLatch computing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ChatAnalysis> first = CompletableFuture.supplyAsync(() -> cache.get("key", () -> {
+            computing.countDown();
+            await(release);
+            throw new IllegalArgumentException("not a chat");
+        }));
+        computing.await(10, TimeUnit.SECONDS);
+        CompletableFuture<ChatAnalysis> second = CompletableFuture.supplyAsync(() -> cache.get("key", () -> null));
+        waitForWaiter();
+        release.countDown();
+
+        assertThatThrownBy(() -> first.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> second.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(gets("coalesced")).isZero();
+        assertThat(gets("hit")).isZero();
+        assertThat(gets("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void weightFollowsTheSizeOfTheAnalysis() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        long previous = 0;
+        for (int messages : new int[] {100, 5000, 50000}) {
+            ChatAnalysis analysis = ChatAnalyzerServiceTest.analyze(
+                ChatAnalyzerServiceTest.export(messages, 7), 4096, null);
+            long weight = AnalysisCache.estimateWeight(analysis);
+            // About what the analysis takes as objects rather than as JSON
+            int json = mapper.writeValueAsBytes(analysis).length;
+            assertThat(weight).as("%d messages", messages).isBetween(2L * json, 16L * json).isGreaterThan(previous);
+            previous = weight;
+        }
+    }
+
+    @Test
+    void analysisHeavierThanTheCacheIsNotKept() {
+        ChatAnalysis analysis = ChatAnalyzerServiceTest.analyze(ChatAnalyzerServiceTest.export(50000, 7), 4096, null);
+        ReflectionTestUtils.setField(cache, "maxSize", DataSize.ofBytes(AnalysisCache.estimateWeight(analysis) - 1));
+        cache.get("key", () -> analysis);
+        assertThat(registry.get("cache.weight").gauge().value()).isZero();
+
+        assertThat(cache.get("key", ChatAnalysis::new)).isNotSameAs(analysis);
+        assertThat(gets("miss")).isEqualTo(2);
+    }
+
+    private double gets(String result) {
+        return registry.get("cache.gets").tag("result", result).functionCounter().count();
+    }
+
+    // The second request has nothing to signal once it waits; give it time
+    // to reach the in-flight computation
+    private static void waitForWaiter() throws InterruptedException {
+        Thread.sleep(200);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
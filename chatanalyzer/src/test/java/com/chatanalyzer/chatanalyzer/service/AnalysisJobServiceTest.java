@@ -0,0 +1,236 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.model.AnalysisJobStatus;
+import com.chatanalyzer.chatanalyzer.model.AnalysisJobStatus.State;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.text.StopWords;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AnalysisJobServiceTest {
+
+    @TempDir
+    Path spoolDir;
+
+    private AnalysisJobService jobs;
+    private ThreadPoolExecutor executor;
+    private BlockingAnalyzer analyzer;
+
+    @BeforeEach
+    void setUp() {
+        // One worker and room for one queued job
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        analyzer = new BlockingAnalyzer();
+        jobs = new AnalysisJobService();
+        ReflectionTestUtils.setField(jobs, "chatAnalyzerService", analyzer);
+        ReflectionTestUtils.setField(jobs, "analysisJobExecutor", executor);
+        ReflectionTestUtils.setField(jobs, "spoolDir", spoolDir.toString());
+        ReflectionTestUtils.setField(jobs, "retention", Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        // Let queued jobs run out, so that they delete their spool files
+        analyzer.release.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void jobRunsToItsResult() throws Exception {
+        analyzer.release.countDown();
+        AnalysisJobStatus submitted = submit(ChatAnalyzerServiceTest.export(100, 1));
+        assertThat(submitted.getState()).isIn(State.QUEUED, State.RUNNING, State.SUCCEEDED);
+
+        AnalysisJobStatus done = awaitFinished(submitted.getJobId());
+        assertThat(done.getState()).isEqualTo(State.SUCCEEDED);
+        assertThat(done.getResult().getTotalMessages()).isEqualTo(100);
+        assertThat(done.getBytesParsed()).isEqualTo(done.getBytesTotal());
+        assertThat(spoolFiles()).isZero();
+    }
+
+    @Test
+    void failedJobKeepsItsError() throws Exception {
+        analyzer.release.countDown();
+        String jobId = submit("no messages here\n").getJobId();
+
+        AnalysisJobStatus done = awaitFinished(jobId);
+        assertThat(done.getState()).isEqualTo(State.FAILED);
+        assertThat(done.getError()).contains("No valid chat messages");
+        assertThat(spoolFiles()).isZero();
+    }
+
+    @Test
+    void cancelWhileQueuedStopsTheJobAtOnce() throws Exception {
+        String running = submit(ChatAnalyzerServiceTest.export(10, 1)).getJobId();
+        analyzer.started.await(10, TimeUnit.SECONDS);
+        String queued = submit(ChatAnalyzerServiceTest.export(10, 2)).getJobId();
+        assertThat(jobs.getStatus(queued).getState()).isEqualTo(State.QUEUED);
+        assertThat(spoolFiles()).isEqualTo(2);
+
+        AnalysisJobStatus cancelled = jobs.cancel(queued);
+        assertThat(cancelled.getState()).isEqualTo(State.CANCELLED);
+        assertThat(cancelled.getStartedAt()).isNull();
+        assertThat(cancelled.getFinishedAt()).isNotNull();
+        // Its spool file goes at once, and its slot in the queue is freed
+        assertThat(spoolFiles()).isEqualTo(1);
+        assertThat(executor.getQueue()).isEmpty();
+
+        analyzer.release.countDown();
+        assertThat(awaitFinished(running).getState()).isEqualTo(State.SUCCEEDED);
+        assertThat(jobs.getStatus(queued).getState()).isEqualTo(State.CANCELLED);
+        assertThat(analyzer.calls.get()).isEqualTo(1);
+        assertThat(spoolFiles()).isZero();
+    }
+
+    @Test
+    void cancelWhileRunningStopsAtTheNextCheck() throws Exception {
+        String jobId = submit(ChatAnalyzerServiceTest.export(10, 1)).getJobId();
+        analyzer.started.await(10, TimeUnit.SECONDS);
+
+        // Still running until the analysis sees the request
+        AnalysisJobStatus cancelling = jobs.cancel(jobId);
+        assertThat(cancelling.getState()).isEqualTo(State.RUNNING);
+        assertThat(cancelling.getStartedAt()).isNotNull();
+
+        AnalysisJobStatus cancelled = awaitFinished(jobId);
+        assertThat(cancelled.getState()).isEqualTo(State.CANCELLED);
+        assertThat(cancelled.getResult()).isNull();
+        assertThat(spoolFiles()).isZero();
+
+        // Cancelling a finished job changes nothing
+        assertThat(jobs.cancel(jobId).getFinishedAt()).isEqualTo(cancelled.getFinishedAt());
+    }
+
+    @Test
+    void jobsBeyondTheQueueAreRejected() throws Exception {
+        String running = submit(ChatAnalyzerServiceTest.export(10, 1)).getJobId();
+        analyzer.started.await(10, TimeUnit.SECONDS);
+        String queued = submit(ChatAnalyzerServiceTest.export(10, 2)).getJobId();
+
+        assertThatThrownBy(() -> submit(ChatAnalyzerServiceTest.export(10, 3)))
+            .isInstanceOf(RejectedExecutionException.class)
+            .hasMessageContaining("Too many analysis jobs");
+        // Nothing was spooled for the rejected job
+        assertThat(spoolFiles()).isEqualTo(2);
+
+        analyzer.release.countDown();
+        assertThat(awaitFinished(running).getState()).isEqualTo(State.SUCCEEDED);
+        assertThat(awaitFinished(queued).getState()).isEqualTo(State.SUCCEEDED);
+        // With the queue drained, jobs are accepted again
+        assertThat(awaitFinished(submit(ChatAnalyzerServiceTest.export(10, 3)).getJobId()).getState())
+            .isEqualTo(State.SUCCEEDED);
+    }
+
+    @Test
+    void finishedJobsAreEvictedAfterRetention() throws Exception {
+        ReflectionTestUtils.setField(jobs, "retention", Duration.ofMillis(100));
+        String finished = submit(ChatAnalyzerServiceTest.export(10, 1)).getJobId();
+        analyzer.started.await(10, TimeUnit.SECONDS);
+        analyzer.release.countDown();
+        awaitFinished(finished);
+
+        analyzer.hold();
+        String running = submit(ChatAnalyzerServiceTest.export(10, 2)).getJobId();
+        analyzer.started.await(10, TimeUnit.SECONDS);
+        Thread.sleep(300);
+        // Eviction happens on submit, and only takes finished jobs
+        submit(ChatAnalyzerServiceTest.export(10, 3));
+
+        assertThatThrownBy(() -> jobs.getStatus(finished)).isInstanceOf(JobNotFoundException.class);
+        assertThat(jobs.getStatus(running).getState()).isEqualTo(State.RUNNING);
+    }
+
+    @Test
+    void unknownJobsAreNotFound() {
+        assertThatThrownBy(() -> jobs.getStatus("missing")).isInstanceOf(JobNotFoundException.class);
+        assertThatThrownBy(() -> jobs.cancel("missing")).isInstanceOf(JobNotFoundException.class);
+        assertThatThrownBy(() -> jobs.getStatus(null)).isInstanceOf(JobNotFoundException.class);
+    }
+
+    private AnalysisJobStatus submit(String export) throws IOException {
+        return jobs.submit(new ByteArrayInputStream(export.getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    private AnalysisJobStatus awaitFinished(String jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        AnalysisJobStatus status = jobs.getStatus(jobId);
+        while (status.getFinishedAt() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            status = jobs.getStatus(jobId);
+        }
+        assertThat(status.getFinishedAt()).as("job %s finished", jobId).isNotNull();
+        // The spool file is deleted just after the job finishes
+        while (Files.exists(spoolDir.resolve(jobId + ".txt")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return status;
+    }
+
+    private long spoolFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Analyzes for real once released, and until then waits, giving up
+     * like the parse loop does if the job is cancelled.
+     */
+    private static final class BlockingAnalyzer extends ChatAnalyzerService {
+
+        volatile CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        BlockingAnalyzer() {
+            ReflectionTestUtils.setField(this, "pythonAnalysisService", new PythonAnalysisService());
+            ReflectionTestUtils.setField(this, "chunkSize", Integer.MAX_VALUE);
+        }
+
+        // Blocks the jobs from here on
+        void hold() {
+            started = new CountDownLatch(1);
+            release = new CountDownLatch(1);
+        }
+
+        @Override
+        public ChatAnalysis analyzeChat(InputStream inputStream, StopWords stopWords, AnalysisProgress progress) {
+            calls.incrementAndGet();
+            CountDownLatch release = this.release;
+            started.countDown();
+            try {
+                while (!release.await(10, TimeUnit.MILLISECONDS)) {
+                    if (progress.isCancelled()) {
+                        throw new CancellationException("Analysis cancelled");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted");
+            }
+            return super.analyzeChat(inputStream, stopWords, progress);
+        }
+    }
+}
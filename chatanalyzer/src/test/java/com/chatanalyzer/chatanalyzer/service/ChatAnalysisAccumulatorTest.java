@@ -0,0 +1,109 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.model.ActivityHeatmap;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatAnalysisAccumulatorTest {
+
+    private static final DateTimeFormatter HEADER_DATE = DateTimeFormatter.ofPattern("M/d/yy");
+
+    @Test
+    void heatmapCountsMessagesByWeekdayAndTimeOfDay() {
+        // 3 January 2021 was a Sunday
+        String export = "1/3/21, 9:00 AM - Ann: morning\n"
+            + "1/3/21, 9:14 AM - Bob: morning\n"
+            + "1/3/21, 9:15 AM - Ann: coffee?\n"
+            + "1/3/21, 9:59 PM - Ann: night\n"
+            + "1/3/21, 12:00 AM - Bob: <Media omitted>\n"
+            + "Ann changed the subject\n"
+            + "1/4/21, 11:59 PM - Cleo: late\n"
+            + "and later\n"
+            + "1/4/21, 24:00 - Cleo: out of range\n";
+        ChatAnalysis analysis = ChatAnalyzerServiceTest.analyzerService(4096, null).analyzeChat(export);
+        assertThat(analysis.getTotalMessages()).isEqualTo(7);
+
+        ActivityHeatmap hourly = analysis.getActivity();
+        assertThat(hourly.getSlotMinutes()).isEqualTo(60);
+        int[][] expected = new int[7][24];
+        expected[6][9] = 3;
+        expected[6][21] = 1;
+        expected[6][0] = 1;
+        expected[0][23] = 1;
+        assertThat(hourly.getMessages()).isEqualTo(expected);
+        assertThat(hourly.getByAuthor().get("Ann")[6]).containsExactly(row(24, 9, 2, 21, 1));
+        assertThat(hourly.getByAuthor().get("Bob")[6]).containsExactly(row(24, 9, 1, 0, 1));
+        assertThat(hourly.getByAuthor().get("Cleo")[0]).containsExactly(row(24, 23, 1));
+
+        ActivityHeatmap quarters = analysis.getQuarterHourActivity();
+        assertThat(quarters.getSlotMinutes()).isEqualTo(15);
+        assertThat(quarters.getMessages()[6]).containsExactly(row(96, 36, 2, 37, 1, 87, 1, 0, 1));
+        assertThat(quarters.getMessages()[0]).containsExactly(row(96, 95, 1));
+    }
+
+    @Test
+    void heatmapMatchesTheMessagesAtAnyChunkSize() {
+        String export = ChatAnalyzerServiceTest.export(5000, 51, 0.1);
+        int[][] expected = new int[7][96];
+        Map<String, int[][]> byAuthor = new HashMap<>();
+        for (String line : export.split("\n")) {
+            if (line.isEmpty() || !Character.isDigit(line.charAt(0))) continue;
+            int comma = line.indexOf(',');
+            int dash = line.indexOf(" - ");
+            LocalDate date = LocalDate.parse(line.substring(0, comma), HEADER_DATE);
+            String[] time = line.substring(comma + 2, dash).split(":");
+            int weekday = date.getDayOfWeek().getValue() - 1;
+            int quarter = (Integer.parseInt(time[0]) * 60 + Integer.parseInt(time[1])) / 15;
+            expected[weekday][quarter]++;
+            String author = line.substring(dash + 3, line.indexOf(": ", dash));
+            byAuthor.computeIfAbsent(author, key -> new int[7][96])[weekday][quarter]++;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunkSize : new int[] {1 << 20, 4096, 333}) {
+                ChatAnalysis analysis = ChatAnalyzerServiceTest.analyze(export, chunkSize, pool);
+                ActivityHeatmap quarters = analysis.getQuarterHourActivity();
+                assertThat(quarters.getMessages()).as("chunks of %d", chunkSize).isEqualTo(expected);
+                assertThat(quarters.getByAuthor()).containsOnlyKeys(byAuthor.keySet());
+                byAuthor.forEach((author, matrix) ->
+                    assertThat(quarters.getByAuthor().get(author)).as(author).isEqualTo(matrix));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void messagesGetTheirSlotFromTheirTime() {
+        ChatAnalysisAccumulator accumulator = ChatAnalyzerServiceTest.analyzerService(4096, null).newAccumulator();
+        // 4 January 2021 was a Monday
+        LocalDate monday = LocalDate.of(2021, 1, 4);
+        accumulator.accept(new ChatMessage(monday, "9:41 PM", "Ann", "built without a minute", false));
+        ChatMessage moved = new ChatMessage(monday, "08:00", 8 * 60, "Ann", "moved", false);
+        moved.setTime("10:30");
+        accumulator.accept(moved);
+        accumulator.accept(new ChatMessage(monday, null, "Ann", "no time", false));
+
+        int[] expected = row(96, 21 * 4 + 2, 1, 42, 1);
+        assertThat(accumulator.getActivity(15).getMessages()[0]).containsExactly(expected);
+        assertThat(accumulator.getTotalMessages()).isEqualTo(3);
+    }
+
+    // A row of zeroes but for the given slot and count pairs
+    private static int[] row(int slots, int... counts) {
+        int[] row = new int[slots];
+        for (int i = 0; i < counts.length; i += 2) {
+            row[counts[i]] += counts[i + 1];
+        }
+        return row;
+    }
+}
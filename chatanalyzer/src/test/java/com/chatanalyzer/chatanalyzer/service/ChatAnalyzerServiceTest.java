@@ -0,0 +1,275 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.model.AnalysisMode;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.model.ConversationStats;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatAnalyzerServiceTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final DateTimeFormatter HEADER = DateTimeFormatter.ofPattern("M/d/yy, H:mm");
+    private static final String[] AUTHORS = {"Ann", "Bob", "Cleo"};
+    // Pauses around the default idle gap of 60 minutes, so that sessions
+    // start and end all over the chat, and at chunk edges
+    private static final int[] GAPS = {0, 0, 1, 2, 5, 15, 59, 60, 61, 180, 1440};
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void chunkedConversationsMatchSingleChunk() {
+        String export = export(3000, 7);
+        ConversationStats single = analyze(export, Integer.MAX_VALUE, null).getConversations();
+        assertThat(single.getSessions()).isGreaterThan(100);
+        assertThat(single.getReplyLatency()).containsKeys(AUTHORS);
+
+        // One message per chunk puts a chunk edge inside every session
+        for (int chunkSize : new int[] {1, 200, 4096}) {
+            assertThat(json(analyze(export, chunkSize, null).getConversations()))
+                .as("sequential chunks of %d", chunkSize)
+                .isEqualTo(json(single));
+            assertThat(json(analyze(export, chunkSize, pool).getConversations()))
+                .as("parallel chunks of %d", chunkSize)
+                .isEqualTo(json(single));
+        }
+    }
+
+    @Test
+    void chunkedAnalysisMatchesSingleChunk() {
+        String export = export(3000, 11, 0.2);
+        Object single = json(analyze(export, Integer.MAX_VALUE, null));
+
+        for (int chunkSize : new int[] {1, 100, 5000}) {
+            assertThat(json(analyze(export, chunkSize, null)))
+                .as("sequential chunks of %d", chunkSize)
+                .isEqualTo(single);
+            assertThat(json(analyze(export, chunkSize, pool)))
+                .as("parallel chunks of %d", chunkSize)
+                .isEqualTo(single);
+        }
+    }
+
+    @Test
+    void multiLineMessagesStayWholeAcrossChunkEdges() {
+        // Every message goes on over more lines; with one-character chunks a
+        // chunk would end after every line if edges were not held back
+        String export = export(400, 3, 1.0);
+        ChatAnalysis single = analyze(export, Integer.MAX_VALUE, null);
+        assertThat(single.getTotalMessages()).isEqualTo(400);
+        // "message N about dinner plans" and "see you at 8 then"
+        assertThat(single.getTotalWords()).isEqualTo(400 * (5 + 5));
+
+        for (int chunkSize : new int[] {1, 7, 60}) {
+            assertThat(json(analyze(export, chunkSize, pool)))
+                .as("chunks of %d", chunkSize)
+                .isEqualTo(json(single));
+        }
+    }
+
+    @Test
+    void sketchRoundTripsToApproximateAnalysis() {
+        String export = export(2000, 5, 0.1);
+        ChatAnalyzerService service = analyzerService(4096, null);
+        byte[] sketch = service.sketchChat(utf8(export), service.stopWords(null));
+
+        ChatAnalysis merged = service.mergeSketches(Collections.singletonList(new ByteArrayInputStream(sketch)), 10);
+        ChatAnalysis analysis = service.analyzeChat(export, service.stopWords(null), AnalysisMode.APPROXIMATE);
+        assertThat(withoutParseReport(merged)).isEqualTo(withoutParseReport(analysis));
+        assertThat(merged.getTopPhrases().getBigrams().getTop()).isNotEmpty();
+    }
+
+    @Test
+    void mergedSketchesOfPartsMatchSketchOfWhole() {
+        String export = export(3000, 9, 0.1);
+        // Parts meet between two messages, most likely inside a session
+        int cut = nthMessage(export, 1500);
+        ChatAnalyzerService service = analyzerService(4096, null);
+        byte[] whole = service.sketchChat(utf8(export), service.stopWords(null));
+        byte[] first = service.sketchChat(utf8(export.substring(0, cut)), service.stopWords(null));
+        byte[] second = service.sketchChat(utf8(export.substring(cut)), service.stopWords(null));
+
+        ChatAnalysis expected = service.mergeSketches(Collections.singletonList(new ByteArrayInputStream(whole)), 10);
+        ChatAnalysis merged = service.mergeSketches(
+            Arrays.asList(new ByteArrayInputStream(first), new ByteArrayInputStream(second)), 10);
+        // Few distinct words and phrases, so even the summaries are exact
+        assertThat(json(merged)).isEqualTo(json(expected));
+        assertThat(merged.getTotalMessages()).isEqualTo(3000);
+    }
+
+    @Test
+    void sketchOfUnknownVersionIsRejected() {
+        ChatAnalyzerService service = analyzerService(4096, null);
+        byte[] sketch = service.sketchChat(utf8(export(100, 1)), service.stopWords(null));
+        // Right after the magic number
+        ByteBuffer.wrap(sketch).putInt(4, 99);
+        List<InputStream> sketches = Collections.singletonList(new ByteArrayInputStream(sketch));
+
+        assertThatThrownBy(() -> service.mergeSketches(sketches, 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("version 99");
+        // The format starts at version 1, and no other is read
+        assertThat(ByteBuffer.wrap(service.sketchChat(utf8(export(100, 1)), service.stopWords(null))).getInt(4))
+            .isEqualTo(1);
+        for (int version : new int[] {0, 2}) {
+            byte[] other = service.sketchChat(utf8(export(100, 1)), service.stopWords(null));
+            ByteBuffer.wrap(other).putInt(4, version);
+            assertThatThrownBy(() -> merge(service, other))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("version " + version);
+        }
+        assertThatThrownBy(() -> service.mergeSketches(
+                Collections.singletonList(new ByteArrayInputStream(Arrays.copyOf(sketch, sketch.length / 2))), 10))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.mergeSketches(
+                Collections.singletonList(new ByteArrayInputStream(new byte[] {1, 2, 3, 4})), 10))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void truncatedOrForgedSketchesAreRejected() {
+        ChatAnalyzerService service = analyzerService(4096, null);
+        byte[] sketch = service.sketchChat(utf8(export(300, 2, 0.1)), service.stopWords(null));
+
+        for (int length = 0; length < sketch.length; length += 1 + length / 8) {
+            byte[] truncated = Arrays.copyOf(sketch, length);
+            assertThatThrownBy(() -> merge(service, truncated))
+                .as("first %d bytes", length)
+                .isInstanceOf(IllegalArgumentException.class);
+        }
+        // Right after the magic number, version and totals, the author count
+        // and then the length of the first name
+        for (int offset : new int[] {20, 24}) {
+            for (int forged : new int[] {Integer.MAX_VALUE, -1, sketch.length}) {
+                byte[] copy = sketch.clone();
+                ByteBuffer.wrap(copy).putInt(offset, forged);
+                assertThatThrownBy(() -> merge(service, copy))
+                    .as("%d at %d", forged, offset)
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("Invalid");
+            }
+        }
+        // Any int may be forged; the sketch is then read or rejected, never
+        // allocated for
+        Random random = new Random(4);
+        for (int i = 0; i < 500; i++) {
+            byte[] copy = sketch.clone();
+            int forged = random.nextBoolean() ? Integer.MAX_VALUE - random.nextInt(16) : random.nextInt();
+            ByteBuffer.wrap(copy).putInt(random.nextInt(copy.length - 3), forged);
+            try {
+                merge(service, copy);
+            } catch (IllegalArgumentException e) {
+                // rejected
+            }
+        }
+
+        InputStream oversized = new InputStream() {
+            private long left = ChatAnalyzerService.MAX_SKETCH_BYTES + 1L;
+
+            @Override
+            public int read() {
+                return left-- > 0 ? 0 : -1;
+            }
+        };
+        assertThatThrownBy(() -> service.mergeSketches(Collections.singletonList(oversized), 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("exceeds");
+    }
+
+    static ChatAnalyzerService analyzerService(int chunkSize, ForkJoinPool analysisPool) {
+        ChatAnalyzerService service = new ChatAnalyzerService();
+        ReflectionTestUtils.setField(service, "pythonAnalysisService", new PythonAnalysisService());
+        ReflectionTestUtils.setField(service, "analysisPool", analysisPool);
+        ReflectionTestUtils.setField(service, "chunkSize", chunkSize);
+        return service;
+    }
+
+    static ChatAnalysis analyze(String export, int chunkSize, ForkJoinPool analysisPool) {
+        return analyzerService(chunkSize, analysisPool).analyzeChat(export);
+    }
+
+    /**
+     * A chronological export of {@code messages} single-line messages by
+     * {@link #AUTHORS}, the same for the same seed.
+     */
+    static String export(int messages, long seed) {
+        return export(messages, seed, 0);
+    }
+
+    /**
+     * An export as above in which the given share of messages goes on over
+     * two more lines, the second of them blank.
+     */
+    static String export(int messages, long seed, double multiLine) {
+        Random random = new Random(seed);
+        LocalDateTime time = LocalDateTime.of(2021, 3, 1, 8, 0);
+        StringBuilder export = new StringBuilder();
+        for (int i = 0; i < messages; i++) {
+            time = time.plusMinutes(GAPS[random.nextInt(GAPS.length)]);
+            export.append(time.format(HEADER)).append(" - ")
+                .append(AUTHORS[random.nextInt(AUTHORS.length)]).append(": ")
+                .append("message ").append(i % 50).append(" about dinner plans\n");
+            if (multiLine > 0 && random.nextDouble() < multiLine) {
+                export.append("see you at 8 then\n\n");
+            }
+        }
+        return export.toString();
+    }
+
+    // Headers start with the month, continuation lines never with a digit
+    private static int nthMessage(String export, int message) {
+        int index = 0;
+        for (int i = 0; i < message; i++) {
+            do {
+                index = export.indexOf('\n', index) + 1;
+            } while (!Character.isDigit(export.charAt(index)));
+        }
+        return index;
+    }
+
+    private static ChatAnalysis merge(ChatAnalyzerService service, byte[] sketch) {
+        return service.mergeSketches(Collections.singletonList(new ByteArrayInputStream(sketch)), 10);
+    }
+
+    private static InputStream utf8(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Object withoutParseReport(ChatAnalysis analysis) {
+        ObjectNode json = MAPPER.valueToTree(analysis);
+        json.remove("parseReport");
+        return json;
+    }
+
+    static Object json(Object value) {
+        return MAPPER.valueToTree(value);
+    }
+}
@@ -0,0 +1,297 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.index.ChatIndex;
+import com.chatanalyzer.chatanalyzer.model.ChatAnalysis;
+import com.chatanalyzer.chatanalyzer.model.ChatStats;
+import com.chatanalyzer.chatanalyzer.model.Granularity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatIndexServiceTest {
+
+    private static final int SEED = 41;
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("M/d/yy");
+
+    @TempDir
+    Path dir;
+
+    private ChatAnalyzerService analyzer;
+    private ChatIndexService chats;
+
+    @BeforeEach
+    void setUp() {
+        analyzer = ChatAnalyzerServiceTest.analyzerService(1 << 20, null);
+        chats = new ChatIndexService();
+        ReflectionTestUtils.setField(chats, "chatAnalyzerService", analyzer);
+        ReflectionTestUtils.setField(chats, "indexDir", dir.toString());
+    }
+
+    @Test
+    void appendAddsOnlyTheNewMessages() throws IOException {
+        String export = ChatAnalyzerServiceTest.export(3000, SEED);
+        List<String> lines = lines(export);
+        String whole = chats.createIndex(utf8(export));
+
+        // Cut both between minutes and inside one
+        for (int cut : new int[] {sameMinuteCut(lines, 1000, false), sameMinuteCut(lines, 1500, true)}) {
+            String chatId = chats.createIndex(utf8(prefix(lines, cut)));
+            assertThat(chats.append(chatId, utf8(prefix(lines, 2000)))).as("cut at %d", cut).isEqualTo(2000 - cut);
+            // The stored history is repeated, as in a later export
+            assertThat(chats.append(chatId, utf8(export))).isEqualTo(1000);
+            assertThat(chats.append(chatId, utf8(export))).isZero();
+            assertSameChat(chatId, whole);
+        }
+    }
+
+    @Test
+    void appendSwitchesToTheNextGeneration() throws IOException {
+        List<String> lines = lines(ChatAnalyzerServiceTest.export(500, SEED));
+        String chatId = chats.createIndex(utf8(prefix(lines, 300)));
+        ChatIndex first = chats.getIndex(chatId);
+        // Fill the caches of the first generation
+        chats.search(chatId, "dinner", null, null, "Ann", 0, 10);
+        chats.analyze(chatId, null, null, null, 10, null);
+
+        chats.append(chatId, utf8(prefix(lines, 500)));
+        ChatIndex second = chats.getIndex(chatId);
+        assertThat(second.generation()).isEqualTo(1);
+        assertThat(second.size()).isEqualTo(500);
+        assertThat(files(chatId)).containsExactlyInAnyOrder(
+            chatId + ".1.idx", chatId + ".1.search", chatId + ".words");
+        // The replaced index still reads as it did
+        assertThat(first.size()).isEqualTo(300);
+        assertThat(first.text(299)).isEqualTo(second.text(299));
+
+        // A reader still on the first generation gets its summaries, but they
+        // are not kept for it
+        assertThat(ReflectionTestUtils.<Object>invokeMethod(chats, "rollupOf", chatId, first)).isNotNull();
+        ReflectionTestUtils.invokeMethod(chats, "storedTextStatistics", chatId, first);
+        ReflectionTestUtils.invokeMethod(chats, "authorBitmap", chatId, first, 0);
+        for (String cache : new String[] {"rollups", "storedTextStatistics", "searchIndexes", "authorBitmaps"}) {
+            Map<Object, ?> entries = (Map<Object, ?>) ReflectionTestUtils.getField(chats, cache);
+            assertThat(entries).as(cache).doesNotContainKey(first);
+        }
+
+        // A restart opens the latest generation
+        ChatIndexService restarted = new ChatIndexService();
+        ReflectionTestUtils.setField(restarted, "chatAnalyzerService", ChatAnalyzerServiceTest.analyzerService(1 << 20, null));
+        ReflectionTestUtils.setField(restarted, "indexDir", dir.toString());
+        assertThat(restarted.getIndex(chatId).generation()).isEqualTo(1);
+        assertThat(restarted.search(chatId, "dinner", null, null, null, 0, 1).getTotal()).isEqualTo(500);
+    }
+
+    @Test
+    void appendsParsedAgainstAReplacedIndexAddOnlyWhatIsStillNew() throws Exception {
+        String export = ChatAnalyzerServiceTest.export(2000, SEED);
+        List<String> lines = lines(export);
+        String whole = chats.createIndex(utf8(export));
+        int base = sameMinuteCut(lines, 800, true);
+        int other = sameMinuteCut(lines, 1200, true);
+
+        for (int slow : new int[] {1600, other - 1, other}) {
+            String chatId = chats.createIndex(utf8(prefix(lines, base)));
+            // Parsed against the base, then held until another append is done
+            CountDownLatch reading = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            InputStream held = new ByteArrayInputStream(prefix(lines, slow).getBytes(StandardCharsets.UTF_8)) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    reading.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.read(b, off, len);
+                }
+            };
+            CompletableFuture<Integer> slowAppend = CompletableFuture.supplyAsync(() -> chats.append(chatId, held));
+            assertThat(reading.await(10, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(chats.append(chatId, utf8(prefix(lines, other)))).isEqualTo(other - base);
+            release.countDown();
+            assertThat(slowAppend.get(10, TimeUnit.SECONDS)).as("append up to %d", slow)
+                .isEqualTo(Math.max(0, slow - other));
+            assertThat(chats.getIndex(chatId).size()).isEqualTo(Math.max(slow, other));
+
+            chats.append(chatId, utf8(export));
+            assertSameChat(chatId, whole);
+        }
+    }
+
+    @Test
+    void rangesMatchAFullAnalysisOfTheirMessages() {
+        // Every so often a media message
+        List<String> lines = new ArrayList<>();
+        for (String line : lines(ChatAnalyzerServiceTest.export(3000, SEED))) {
+            lines.add(lines.size() % 13 == 0 ? line.substring(0, line.indexOf(": ") + 2) + "<Media omitted>\n" : line);
+        }
+        String chatId = chats.createIndex(utf8(String.join("", lines)));
+        LocalDate first = date(lines.get(0));
+        LocalDate last = date(lines.get(lines.size() - 1));
+
+        LocalDate[][] ranges = {
+            {null, null},
+            {first.minusYears(5), first.plusDays(20)},
+            {last.minusDays(30), last.plusYears(5)},
+            {first.minusDays(1), last.plusDays(1)},
+            {first, last},
+            {first.plusDays(40), first.plusDays(40)},
+            {first.plusDays(40), first.plusDays(100)},
+            {null, first.plusDays(100)},
+            {first.plusDays(100), null},
+            {first.minusDays(30), first.minusDays(1)},
+            {last.plusDays(1), last.plusDays(30)},
+            {LocalDate.of(1, 1, 1), LocalDate.of(9999, 12, 31)}
+        };
+        for (LocalDate[] range : ranges) {
+            for (String author : new String[] {null, "Bob", "Zed"}) {
+                String description = range[0] + ".." + range[1] + " by " + author;
+                List<String> selected = new ArrayList<>();
+                for (String line : lines) {
+                    LocalDate date = date(line);
+                    if ((range[0] == null || !date.isBefore(range[0])) && (range[1] == null || !date.isAfter(range[1]))
+                            && (author == null || line.contains(" - " + author + ": "))) {
+                        selected.add(line);
+                    }
+                }
+
+                ChatStats stats = chats.stats(chatId, range[0], range[1], author, Granularity.DAY);
+                ChatAnalysis analysis = chats.analyze(chatId, range[0], range[1], author, 20, null);
+                if (selected.isEmpty()) {
+                    assertThat(stats.getTotalMessages()).as(description).isZero();
+                    assertThat(stats.getTimeline()).as(description).isEmpty();
+                    assertThat(stats.getUserMessageCounts()).as(description).isEmpty();
+                    assertThat(analysis.getTotalMessages()).as(description).isZero();
+                    continue;
+                }
+                ChatAnalysis expected = analyzer.analyzeChat(String.join("", selected));
+
+                assertThat(stats.getTotalMessages()).as(description).isEqualTo(expected.getTotalMessages());
+                assertThat(stats.getTotalWords()).as(description).isEqualTo(expected.getTotalWords());
+                assertThat(stats.getMediaMessages()).as(description).isEqualTo(expected.getMediaMessages());
+                assertThat(stats.getUserMessageCounts()).as(description).isEqualTo(expected.getUserMessageCounts());
+                assertThat(stats.getTimeline()).as(description).isEqualTo(expected.getTimeline());
+
+                assertThat(analysis.getTotalMessages()).as(description).isEqualTo(expected.getTotalMessages());
+                assertThat(analysis.getTotalWords()).as(description).isEqualTo(expected.getTotalWords());
+                assertThat(analysis.getMediaMessages()).as(description).isEqualTo(expected.getMediaMessages());
+                assertThat(analysis.getUserMessageCounts()).as(description).isEqualTo(expected.getUserMessageCounts());
+                assertThat(analysis.getTimeline()).as(description).isEqualTo(expected.getTimeline());
+                assertThat(analysis.getTopWords()).as(description).isEqualTo(expected.getTopWords());
+                assertThat(ChatAnalyzerServiceTest.json(analysis.getActivity())).as(description)
+                    .isEqualTo(ChatAnalyzerServiceTest.json(expected.getActivity()));
+                // Replies need everyone's messages, so only unfiltered
+                // conversations are those of the selected messages alone
+                if (author == null) {
+                    assertThat(ChatAnalyzerServiceTest.json(analysis.getConversations())).as(description)
+                        .isEqualTo(ChatAnalyzerServiceTest.json(expected.getConversations()));
+                }
+            }
+        }
+    }
+
+    @Test
+    void weeksAndMonthsAddUpTheDays() {
+        List<String> lines = lines(ChatAnalyzerServiceTest.export(3000, SEED));
+        String chatId = chats.createIndex(utf8(String.join("", lines)));
+        LocalDate from = date(lines.get(0)).plusDays(10);
+        LocalDate to = date(lines.get(lines.size() - 1)).minusDays(10);
+
+        ChatStats days = chats.stats(chatId, from, to, null, Granularity.DAY);
+        for (Granularity granularity : new Granularity[] {Granularity.WEEK, Granularity.MONTH}) {
+            Map<String, Integer> expected = new LinkedHashMap<>();
+            // Buckets are named by their start, even where it is before from
+            days.getTimeline().forEach((day, count) ->
+                expected.merge(granularity.bucketStart(LocalDate.parse(day)).toString(), count, Integer::sum));
+            ChatStats stats = chats.stats(chatId, from, to, null, granularity);
+            assertThat(stats.getTimeline()).as(granularity.name()).isEqualTo(expected);
+            assertThat(stats.getTotalMessages()).isEqualTo(days.getTotalMessages());
+        }
+    }
+
+    private void assertSameChat(String chatId, String expectedId) {
+        ChatIndex index = chats.getIndex(chatId);
+        ChatIndex expected = chats.getIndex(expectedId);
+        assertThat(index.size()).isEqualTo(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(index.epochMinute(i)).isEqualTo(expected.epochMinute(i));
+            assertThat(index.author(index.authorIdAt(i))).isEqualTo(expected.author(expected.authorIdAt(i)));
+            assertThat(index.text(i)).isEqualTo(expected.text(i));
+        }
+
+        ChatAnalysis analysis = chats.analyze(chatId, null, null, null, 20, null);
+        ChatAnalysis expectedAnalysis = chats.analyze(expectedId, null, null, null, 20, null);
+        assertThat(analysis.getTotalWords()).isEqualTo(expectedAnalysis.getTotalWords());
+        assertThat(analysis.getUserMessageCounts()).isEqualTo(expectedAnalysis.getUserMessageCounts());
+        assertThat(analysis.getTopWords()).isEqualTo(expectedAnalysis.getTopWords());
+        assertThat(ChatAnalyzerServiceTest.json(chats.stats(chatId, null, null, null, Granularity.WEEK)))
+            .isEqualTo(ChatAnalyzerServiceTest.json(chats.stats(expectedId, null, null, null, Granularity.WEEK)));
+        for (String query : new String[] {"dinner", "\"message 7 about\"", "Cleo"}) {
+            assertThat(ChatAnalyzerServiceTest.json(chats.search(chatId, query, null, null, null, 3, 7).getHits()))
+                .isEqualTo(ChatAnalyzerServiceTest.json(chats.search(expectedId, query, null, null, null, 3, 7).getHits()));
+        }
+    }
+
+    /**
+     * The first message count at or after {@code from} at which the export
+     * is cut between two messages of the same minute, or of different ones.
+     */
+    private static int sameMinuteCut(List<String> lines, int from, boolean sameMinute) {
+        for (int cut = from; cut < lines.size(); cut++) {
+            if (header(lines.get(cut - 1)).equals(header(lines.get(cut))) == sameMinute) {
+                return cut;
+            }
+        }
+        throw new IllegalStateException("No cut after " + from);
+    }
+
+    private static LocalDate date(String line) {
+        return LocalDate.parse(line.substring(0, line.indexOf(',')), DATE);
+    }
+
+    private static String header(String line) {
+        return line.substring(0, line.indexOf(" - "));
+    }
+
+    private static List<String> lines(String export) {
+        return export.lines().map(line -> line + "\n").collect(Collectors.toList());
+    }
+
+    private static String prefix(List<String> lines, int messages) {
+        return String.join("", lines.subList(0, messages));
+    }
+
+    private List<String> files(String chatId) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString())
+                .filter(name -> name.startsWith(chatId))
+                .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private static InputStream utf8(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
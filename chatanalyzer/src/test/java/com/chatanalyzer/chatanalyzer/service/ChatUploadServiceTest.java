@@ -0,0 +1,167 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatUploadServiceTest {
+
+    private static final String CHAT = "1/3/21, 9:00 - Ann: good morning\n1/3/21, 9:05 - Bob: morning!\n";
+
+    private ChatUploadService uploads;
+
+    @BeforeEach
+    void setUp() {
+        uploads = new ChatUploadService();
+        ReflectionTestUtils.setField(uploads, "maxSize", DataSize.ofMegabytes(2));
+        ReflectionTestUtils.setField(uploads, "maxEntries", 5);
+    }
+
+    @Test
+    void compressedUploadsOpenAsChatText() throws IOException {
+        assertThat(read(uploads.open(upload("chat.txt", utf8(CHAT))))).isEqualTo(CHAT);
+        assertThat(read(uploads.open(upload("chat.txt.gz", gzip(utf8(CHAT)))))).isEqualTo(CHAT);
+        byte[] zip = zip("IMG-0001.jpg", random(300_000), "_chat.txt", utf8(CHAT));
+        assertThat(read(uploads.open(upload("export.ZIP", zip)))).isEqualTo(CHAT);
+    }
+
+    @Test
+    void textOverMaxSizeIsRejected() throws IOException {
+        // Random text, so that the ratio stays low
+        byte[] text = random(3 * 1024 * 1024);
+        InputStream gz = uploads.open(upload("chat.gz", gzip(text)));
+        assertThatThrownBy(() -> read(gz))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("exceeds 2MB");
+
+        InputStream zipped = uploads.open(upload("chat.zip", zip("_chat.txt", text)));
+        assertThatThrownBy(() -> read(zipped))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("exceeds 2MB");
+    }
+
+    @Test
+    void uploadExpandingPastMaxRatioIsRejected() throws IOException {
+        byte[] zeros = new byte[1536 * 1024];
+        InputStream gz = uploads.open(upload("chat.gz", gzip(zeros)));
+        assertThatThrownBy(() -> read(gz))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("expands more than 100 times");
+
+        // Media count too, though they are never handed out
+        byte[] zip = zip("VID-0001.mp4", zeros, "_chat.txt", utf8(CHAT));
+        assertThatThrownBy(() -> uploads.open(upload("export.zip", zip)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("expands more than 100 times");
+
+        // Below the ratio-free size, any ratio is fine
+        assertThat(read(uploads.open(upload("chat.gz", gzip(new byte[512 * 1024]))))).hasSize(512 * 1024);
+    }
+
+    @Test
+    void archiveWithTooManyEntriesIsRejected() throws IOException {
+        byte[] five = zip("1.jpg", utf8("1"), "2.jpg", utf8("2"), "3.jpg", utf8("3"), "4.jpg", utf8("4"),
+            "_chat.txt", utf8(CHAT));
+        assertThat(read(uploads.open(upload("export.zip", five)))).isEqualTo(CHAT);
+
+        byte[] six = zip("1.jpg", utf8("1"), "2.jpg", utf8("2"), "3.jpg", utf8("3"), "4.jpg", utf8("4"),
+            "5.jpg", utf8("5"), "_chat.txt", utf8(CHAT));
+        assertThatThrownBy(() -> uploads.open(upload("export.zip", six)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("more than 5 entries");
+        assertThatThrownBy(() -> uploads.forEachChat(upload("export.zip", six), (name, text) -> { }))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("more than 5 entries");
+    }
+
+    @Test
+    void eachChatOfAnArchiveIsHandled() throws IOException {
+        byte[] zip = zip("Ann.txt", utf8(CHAT), "IMG-0001.jpg", random(1000), "__MACOSX/._Bob.txt", utf8("x"),
+            "Bob.txt", utf8(CHAT + CHAT));
+        List<String> chats = new ArrayList<>();
+        uploads.forEachChat(upload("chats.zip", zip), (name, text) -> {
+            // Ann.txt is left mostly unread, which must not disturb the next entry
+            chats.add(name + "=" + (name.equals("Ann.txt") ? text.read() : read(text).length()));
+        });
+
+        assertThat(chats).containsExactly("Ann.txt=" + (int) '1', "Bob.txt=" + 2 * CHAT.length());
+    }
+
+    @Test
+    void invalidUploadsAreRejected() throws IOException {
+        assertThatThrownBy(() -> uploads.open(upload("chat.gz", utf8(CHAT))))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Invalid .gz file");
+        byte[] truncated = gzip(random(100_000));
+        InputStream gz = uploads.open(upload("chat.gz", Arrays.copyOf(truncated, truncated.length / 2)));
+        assertThatThrownBy(() -> read(gz)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> uploads.open(upload("export.zip", zip("IMG-0001.jpg", random(10)))))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("No chat text");
+        assertThatThrownBy(() -> uploads.open(upload("chat.pdf", utf8(CHAT))))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static MockMultipartFile upload(String name, byte[] content) {
+        return new MockMultipartFile("chatFile", name, null, content);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Digits, which barely compress below half their size
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) ('0' + random.nextInt(10));
+        }
+        return bytes;
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A zip of the given entry names and contents, in turn.
+     */
+    private static byte[] zip(Object... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry((String) entries[i]));
+                out.write((byte[]) entries[i + 1]);
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
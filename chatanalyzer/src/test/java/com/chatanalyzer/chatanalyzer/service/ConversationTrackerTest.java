@@ -0,0 +1,117 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.count.BoundedInput;
+import com.chatanalyzer.chatanalyzer.model.ConversationStats;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConversationTrackerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String[] AUTHORS = {"Ann", "Bob", "Cleo", "Dan"};
+    private static final int[] GAPS = {0, 1, 3, 10, 30, 59, 60, 61, 240};
+
+    @Test
+    void partsJoinedAtTheirSeamsMatchTheWholeChat() {
+        Random random = new Random(17);
+        int[] authors = new int[5000];
+        long[] minutes = new long[authors.length];
+        long minute = 27_000_000;
+        for (int i = 0; i < authors.length; i++) {
+            minute += GAPS[random.nextInt(GAPS.length)];
+            authors[i] = random.nextInt(AUTHORS.length);
+            minutes[i] = minute;
+        }
+        ConversationTracker whole = track(authors, minutes, 0, authors.length, identity());
+
+        for (int parts : new int[] {2, 10, 5000}) {
+            ConversationTracker joined = new ConversationTracker(60);
+            for (int part = 0; part < parts; part++) {
+                int from = authors.length * part / parts;
+                int to = authors.length * (part + 1) / parts;
+                // Parts hand out their own ids, in order of appearance
+                int[] ids = new int[AUTHORS.length];
+                int[] names = new int[AUTHORS.length];
+                Arrays.fill(ids, -1);
+                int next = 0;
+                for (int i = from; i < to; i++) {
+                    if (ids[authors[i]] < 0) {
+                        names[next] = authors[i];
+                        ids[authors[i]] = next++;
+                    }
+                }
+                joined.merge(track(authors, minutes, from, to, ids), names, true);
+            }
+            assertThat(json(joined)).as("%d parts", parts).isEqualTo(json(whole));
+        }
+    }
+
+    @Test
+    void sessionRunningOverTheSeamIsOne() {
+        ConversationTracker first = new ConversationTracker(60);
+        first.accept(0, 100);
+        first.accept(1, 110);
+        ConversationTracker second = new ConversationTracker(60);
+        second.accept(0, 150);
+        second.accept(1, 400);
+
+        ConversationTracker joined = copy(first);
+        joined.merge(second, identity(), true);
+        ConversationStats stats = joined.stats(author -> AUTHORS[author]);
+        assertThat(stats.getSessions()).isEqualTo(2);
+        assertThat(stats.getLongestSessionMessages()).isEqualTo(3);
+        assertThat(stats.getReplies().get("Ann")).containsEntry("Bob", 1);
+        assertThat(stats.getSessionsStartedBy()).containsEntry("Ann", 1).containsEntry("Bob", 1);
+
+        // Separate chats only add up
+        ConversationTracker added = copy(first);
+        added.merge(second, identity(), false);
+        stats = added.stats(author -> AUTHORS[author]);
+        assertThat(stats.getSessions()).isEqualTo(3);
+        assertThat(stats.getLongestSessionMessages()).isEqualTo(2);
+        assertThat(stats.getReplies()).doesNotContainKey("Ann");
+    }
+
+    @Test
+    void differentIdleGapsDoNotMerge() {
+        ConversationTracker tracker = new ConversationTracker(60);
+        assertThatThrownBy(() -> tracker.merge(new ConversationTracker(30), identity(), true))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ConversationTracker(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ConversationTracker track(int[] authors, long[] minutes, int from, int to, int[] ids) {
+        ConversationTracker tracker = new ConversationTracker(60);
+        for (int i = from; i < to; i++) {
+            tracker.accept(ids[authors[i]], minutes[i]);
+        }
+        // Parts from sketches come back through their stored form
+        return copy(tracker);
+    }
+
+    private static ConversationTracker copy(ConversationTracker tracker) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            tracker.writeTo(new DataOutputStream(bytes));
+            return ConversationTracker.read(new BoundedInput(bytes.toByteArray()), tracker.authorCount());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int[] identity() {
+        return new int[] {0, 1, 2, 3};
+    }
+
+    private static Object json(ConversationTracker tracker) {
+        return MAPPER.valueToTree(tracker.stats(author -> AUTHORS[author]));
+    }
+}
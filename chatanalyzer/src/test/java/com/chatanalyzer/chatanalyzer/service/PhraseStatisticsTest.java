@@ -0,0 +1,116 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.model.HeavyHitter;
+import com.chatanalyzer.chatanalyzer.model.HeavyHitters;
+import org.junit.jupiter.api.Test;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PhraseStatisticsTest {
+
+    @Test
+    void guaranteedWordsBeatEveryWordLeftOut() {
+        PhraseStatistics phrases = new PhraseStatistics(64, 32);
+        Map<String, Map<String, Long>> exact = new HashMap<>();
+        Random random = new Random(6);
+        for (int message = 0; message < 20_000; message++) {
+            String author = message % 3 == 0 ? "Ann" : "Bob";
+            phrases.startMessage(author);
+            for (int i = 0; i < 4; i++) {
+                String word = "w" + ((int) Math.pow(400, random.nextDouble()) - 1);
+                phrases.word(word, 0, word.length(), true);
+                exact.computeIfAbsent(author, name -> new HashMap<>()).merge(word, 1L, Long::sum);
+            }
+        }
+
+        Map<String, HeavyHitters> top = phrases.topWordsByAuthor(10);
+        assertThat(top).containsOnlyKeys("Ann", "Bob");
+        top.forEach((author, hitters) -> {
+            List<HeavyHitter> listed = hitters.getTop();
+            assertThat(listed).hasSize(10);
+            assertThat(listed.get(0).isGuaranteed()).isTrue();
+            List<String> keys = listed.stream().map(HeavyHitter::getKey).collect(Collectors.toList());
+            long bestLeftOut = exact.get(author).entrySet().stream()
+                .filter(word -> !keys.contains(word.getKey()))
+                .mapToLong(Map.Entry::getValue)
+                .max().orElse(0);
+            for (HeavyHitter hitter : listed) {
+                long trueCount = exact.get(author).get(hitter.getKey());
+                assertThat(hitter.getCount() - hitter.getError()).isLessThanOrEqualTo(trueCount);
+                assertThat(hitter.getCount()).isGreaterThanOrEqualTo(trueCount);
+                if (hitter.isGuaranteed()) {
+                    assertThat(trueCount).as("%s of %s", hitter.getKey(), author).isGreaterThanOrEqualTo(bestLeftOut);
+                }
+            }
+        });
+    }
+
+    @Test
+    void summariesWithRoomAreExactAndGuaranteed() {
+        PhraseStatistics phrases = new PhraseStatistics(64, 32);
+        phrases.startMessage("Ann");
+        words(phrases, "see you tonight");
+        phrases.startMessage("Bob");
+        words(phrases, "see you tonight then");
+        phrases.startMessage("Ann");
+        words(phrases, "see you");
+
+        HeavyHitters bigrams = phrases.topPhrases(2).getBigrams();
+        assertThat(bigrams.getTop()).extracting(HeavyHitter::getKey).containsExactly("see you", "you tonight");
+        assertThat(bigrams.getTop()).extracting(HeavyHitter::getCount).containsExactly(3L, 2L);
+        assertThat(bigrams.getTop()).allMatch(hitter -> hitter.getError() == 0 && hitter.isGuaranteed());
+        assertThat(bigrams.getTotal()).isEqualTo(6);
+        assertThat(phrases.topPhrases(5).getTrigrams().getTop()).extracting(HeavyHitter::getKey)
+            .containsExactly("see you tonight", "you tonight then");
+        assertThat(phrases.topWordsByAuthor(1).get("Ann").getTop().get(0).getKey()).isEqualTo("see");
+    }
+
+    @Test
+    void phrasesStopAtBoundariesAndUncountedWords() {
+        PhraseStatistics phrases = new PhraseStatistics(64, 32);
+        phrases.startMessage("Ann");
+        words(phrases, "good");
+        phrases.boundary();
+        words(phrases, "morning to you");
+        phrases.startMessage("Bob");
+        words(phrases, "morning");
+
+        // "to" did not pass the word filters, so only phrases around it count
+        assertThat(phrases.topPhrases(10).getBigrams().getTop()).isEmpty();
+        assertThat(phrases.topPhrases(10).getTrigrams().getTop()).extracting(HeavyHitter::getKey)
+            .containsExactly("morning to you");
+    }
+
+    @Test
+    void mergedPartsCountLikeOne() {
+        PhraseStatistics whole = new PhraseStatistics(64, 32);
+        PhraseStatistics first = new PhraseStatistics(64, 32);
+        PhraseStatistics second = new PhraseStatistics(64, 32);
+        String[] messages = {"see you tonight", "pizza tonight", "see you at the pizza place", "see you"};
+        for (int i = 0; i < messages.length; i++) {
+            for (PhraseStatistics part : new PhraseStatistics[] {whole, i < 2 ? first : second}) {
+                part.startMessage(i % 2 == 0 ? "Ann" : "Bob");
+                words(part, messages[i]);
+            }
+        }
+        first.merge(second);
+
+        assertThat(first.topPhrases(10)).usingRecursiveComparison().isEqualTo(whole.topPhrases(10));
+        assertThat(first.topWordsByAuthor(10)).usingRecursiveComparison().isEqualTo(whole.topWordsByAuthor(10));
+    }
+
+    // Words of a message in a row; "to" and "the" stand for words the top
+    // word filters leave out
+    private static void words(PhraseStatistics phrases, String text) {
+        int start = 0;
+        for (String word : text.split(" ")) {
+            phrases.word(text, start, start + word.length(), !word.equals("to") && !word.equals("the"));
+            start += word.length() + 1;
+        }
+    }
+}
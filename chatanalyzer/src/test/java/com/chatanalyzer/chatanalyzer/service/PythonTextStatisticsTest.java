@@ -0,0 +1,126 @@
+package com.chatanalyzer.chatanalyzer.service;
+
+import com.chatanalyzer.chatanalyzer.text.StopWords;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs analyzer.py workers from the module directory, so these tests are
+ * skipped where no {@code python3} can start them.
+ */
+class PythonTextStatisticsTest {
+
+    private static final StopWords STOP_WORDS = StopWords.forLanguages("en,hinglish");
+
+    // Everything the two tokenizers could split differently
+    private static final String[] FRAGMENTS = {
+        "dinner", "Dinner", "DINNER", "the", "hai", "ok", "yes", "don't", "it’s", "mp3", "abc123def",
+        "e-mail", "under_score", "café", "naïve", "Straße", "Kelvin", "İstanbul", "𝐀bc",
+        "http://example.com/menu?day=friday", "ann@example.com", "+1 555-0100", "Bob added Cleo",
+        "Ann left", "<Media omitted>", "This message was deleted",
+        "😂", "❤", "❤️", "👍🏽", "🏽",
+        "👨‍👩‍👧", "👨‍", "❤️‍🔥",
+        "🇮🇳", "🇮",
+        // England: a black flag and tag characters
+        "\uD83C\uDFF4\uDB40\uDC67\uDB40\uDC62\uDB40\uDC65\uDB40\uDC6E\uDB40\uDC67\uDB40\uDC7F",
+        "Ⓜ", "✂", "🅰", "🥳", "🫶",
+        " ", "\u00A0", "\u202F", "  ", "\n", "\t", ".", ",", "!", "?", ":", "(", ")", "'", "\"", "-"
+    };
+
+    private PythonWorkerPool pool;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void startPool() throws InterruptedException {
+        pool = new PythonWorkerPool();
+        ReflectionTestUtils.setField(pool, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(pool, "enabled", true);
+        ReflectionTestUtils.setField(pool, "executable", "python3");
+        ReflectionTestUtils.setField(pool, "scriptPath", "analyzer.py");
+        ReflectionTestUtils.setField(pool, "size", 1);
+        ReflectionTestUtils.setField(pool, "acquireTimeout", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(pool, "callTimeout", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(pool, "healthCheckInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(pool, "maxFrameSize", DataSize.ofMegabytes(64));
+        registry = new SimpleMeterRegistry();
+        pool.bindTo(registry);
+        pool.start();
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (registry.get("python.workers").tag("state", "live").gauge().value() == 0
+                && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assumeTrue(registry.get("python.workers").tag("state", "live").gauge().value() > 0,
+            "python3 could not start analyzer.py");
+    }
+
+    @AfterEach
+    void stopPool() {
+        pool.stop();
+    }
+
+    @Test
+    void workersCountAsJavaDoes() {
+        List<String> messages = messages(new Random(4), 3000);
+        TextStatistics java = new TextStatistics(STOP_WORDS);
+        // Small batches, so that words and emojis at batch edges are covered
+        TextStatistics python = new PythonTextStatistics(STOP_WORDS, new PhraseStatistics(), pool, 2000);
+        for (String message : messages) {
+            java.accept("Ann", message);
+            python.accept("Ann", message);
+        }
+
+        assertThat(python.topWords(Integer.MAX_VALUE)).isEqualTo(java.topWords(Integer.MAX_VALUE));
+        assertThat(python.topEmojis(Integer.MAX_VALUE)).isEqualTo(java.topEmojis(Integer.MAX_VALUE));
+        assertThat(java.topEmojis(Integer.MAX_VALUE)).hasSizeGreaterThan(10);
+        // Nothing was counted by the Java fallback
+        assertThat(registry.get("python.calls.failed").functionCounter().count()).isZero();
+        assertThat(registry.get("python.calls.rejected").functionCounter().count()).isZero();
+    }
+
+    @Test
+    void batchesCountedInJavaAddUpTheSame() {
+        List<String> messages = messages(new Random(5), 2000);
+        TextStatistics java = new TextStatistics(STOP_WORDS);
+        TextStatistics mixed = new PythonTextStatistics(STOP_WORDS, new PhraseStatistics(), pool, 2000);
+        for (int i = 0; i < messages.size(); i++) {
+            if (i == messages.size() / 2) {
+                // Every later batch falls back to Java
+                pool.stop();
+            }
+            java.accept("Ann", messages.get(i));
+            mixed.accept("Ann", messages.get(i));
+        }
+
+        assertThat(mixed.topWords(Integer.MAX_VALUE)).isEqualTo(java.topWords(Integer.MAX_VALUE));
+        assertThat(mixed.topEmojis(Integer.MAX_VALUE)).isEqualTo(java.topEmojis(Integer.MAX_VALUE));
+    }
+
+    private static List<String> messages(Random random, int count) {
+        List<String> messages = new ArrayList<>();
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            message.setLength(0);
+            for (int fragments = 1 + random.nextInt(12); fragments > 0; fragments--) {
+                message.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            messages.add(message.toString());
+        }
+        Collections.shuffle(messages, random);
+        return messages;
+    }
+}
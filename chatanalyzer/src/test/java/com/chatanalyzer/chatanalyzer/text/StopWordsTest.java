@@ -0,0 +1,100 @@
+package com.chatanalyzer.chatanalyzer.text;
+
+import org.junit.jupiter.api.Test;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StopWordsTest {
+
+    @Test
+    void containsExactlyTheListedWords() throws IOException {
+        Set<String> listed = list("en");
+        StopWords stopWords = StopWords.forLanguages("en");
+        assertThat(stopWords.size()).isEqualTo(listed.size());
+        for (String word : listed) {
+            assertThat(stopWords.contains(word)).as(word).isTrue();
+            // Prefixes and extensions of stop words are not stop words
+            // unless listed themselves
+            String longer = word + "x";
+            assertThat(stopWords.contains(longer)).as(longer).isEqualTo(listed.contains(longer));
+            String shorter = word.substring(0, word.length() - 1);
+            assertThat(stopWords.contains(shorter)).as(shorter).isEqualTo(listed.contains(shorter));
+        }
+        assertThat(stopWords.contains("dinner")).isFalse();
+        assertThat(stopWords.contains("")).isFalse();
+    }
+
+    @Test
+    void languagesCombine() throws IOException {
+        Set<String> union = list("en");
+        union.addAll(list("hinglish"));
+
+        StopWords both = StopWords.forLanguages(" Hinglish, en ,,");
+        assertThat(both.getLanguages()).containsExactly("en", "hinglish");
+        assertThat(both.size()).isEqualTo(union.size());
+        for (String word : union) {
+            assertThat(both.contains(word)).as(word).isTrue();
+        }
+        // The same combination, however written, is loaded once
+        assertThat(StopWords.forLanguages(Arrays.asList("en", "hinglish"))).isSameAs(both);
+        assertThat(StopWords.forLanguages("EN")).isSameAs(StopWords.forLanguages(StopWords.DEFAULT_LANGUAGES));
+    }
+
+    @Test
+    void unknownLanguagesAreRejected() {
+        for (String languages : new String[] {"xx", "en,xx", "../stopwords/en", "en.txt", "", " , ", null}) {
+            assertThatThrownBy(() -> StopWords.forLanguages(languages))
+                .as(String.valueOf(languages))
+                .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void slicesAreLookedUpInPlace() {
+        StopWords stopWords = StopWords.forLanguages("en");
+        String text = "xxthexx";
+        assertThat(stopWords.contains(text, 2, 5)).isTrue();
+        assertThat(stopWords.contains(text, 1, 5)).isFalse();
+        assertThat(stopWords.contains(new StringBuilder("and"), 0, 3)).isTrue();
+    }
+
+    @Test
+    void onlyLowercaseAsciiWordsMatch() {
+        StopWords stopWords = StopWords.forLanguages("en");
+        assertThat(stopWords.contains("the")).isTrue();
+        // Words are lowercased by the scanner before they get here
+        assertThat(stopWords.contains("The")).isFalse();
+        assertThat(stopWords.contains("THE")).isFalse();
+        // Characters outside a-z, on either side of the range, match nothing
+        assertThat(stopWords.contains("th`")).isFalse();
+        assertThat(stopWords.contains("th{")).isFalse();
+        assertThat(stopWords.contains("thé")).isFalse();
+        assertThat(stopWords.contains("th3")).isFalse();
+        assertThat(stopWords.contains("the ")).isFalse();
+        assertThat(stopWords.contains("don't")).isFalse();
+        assertThat(stopWords.contains("😂")).isFalse();
+    }
+
+    private static Set<String> list(String language) throws IOException {
+        Set<String> words = new HashSet<>();
+        try (InputStream in = StopWords.class.getClassLoader().getResourceAsStream("stopwords/" + language + ".txt");
+             BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    words.add(line.trim());
+                }
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,147 @@
+package com.chatanalyzer.chatanalyzer.text;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenScannerTest {
+
+    private static final String ZWJ = "\u200D";
+    private static final String VS16 = "\uFE0F";
+    private static final String MEDIUM_SKIN = "\uD83C\uDFFD";
+    private static final String MAN = "\uD83D\uDC68";
+    private static final String WOMAN = "\uD83D\uDC69";
+    private static final String GIRL = "\uD83D\uDC67";
+    private static final String THUMBS_UP = "\uD83D\uDC4D";
+    private static final String JOY = "\uD83D\uDE02";
+    private static final String HEART = "\u2764";
+    private static final String FIRE = "\uD83D\uDD25";
+
+    @Test
+    void wordsAreLowercasedAsciiRuns() {
+        assertThat(tokens("Hello, WORLD hello")).containsExactly("w:hello", "|", "w:world", "w:hello");
+        assertThat(tokens("  tabs\tand   spaces ")).containsExactly("w:tabs", "w:and", "w:spaces");
+        assertThat(tokens("")).isEmpty();
+        assertThat(tokens("  ... ")).containsExactly("|", "|", "|");
+    }
+
+    @Test
+    void apostrophesAndDigitsSplitWords() {
+        assertThat(tokens("don't")).containsExactly("w:don", "w:t");
+        assertThat(tokens("it’s")).containsExactly("w:it", "w:s");
+        assertThat(tokens("mp3 abc123def 2021")).containsExactly("w:mp", "w:abc", "w:def");
+        assertThat(tokens("e-mail under_score")).containsExactly("w:e", "w:mail", "w:under", "w:score");
+    }
+
+    @Test
+    void nonAsciiLettersEndWords() {
+        assertThat(tokens("café naïve")).containsExactly("w:caf", "w:na", "w:ve");
+        assertThat(tokens("Straße")).containsExactly("w:stra", "w:e");
+        // Letters that lowercase to ASCII join the word
+        assertThat(tokens("\u212Aelvin")).containsExactly("w:kelvin");
+        // A letter outside the BMP is a surrogate pair, and no ASCII letter
+        assertThat(tokens("ab\uD835\uDC00cd")).containsExactly("w:ab", "w:cd");
+    }
+
+    @Test
+    void singleAndRepeatedEmojis() {
+        assertThat(tokens(JOY + JOY + " " + JOY)).containsExactly("e:" + JOY, "e:" + JOY, "e:" + JOY);
+        assertThat(tokens("so" + FIRE + "hot")).containsExactly("w:so", "e:" + FIRE, "w:hot");
+        // BMP symbols count with and without the emoji variation selector
+        assertThat(tokens(HEART + " " + HEART + VS16)).containsExactly("e:" + HEART, "e:" + HEART);
+    }
+
+    @Test
+    void skinTonesStayWithTheirEmoji() {
+        assertThat(tokens(THUMBS_UP + MEDIUM_SKIN + THUMBS_UP))
+            .containsExactly("e:" + THUMBS_UP + MEDIUM_SKIN, "e:" + THUMBS_UP);
+        // A modifier on its own is still an emoji
+        assertThat(tokens("a" + MEDIUM_SKIN)).containsExactly("w:a", "e:" + MEDIUM_SKIN);
+    }
+
+    @Test
+    void zwjSequencesAreOneEmoji() {
+        String family = MAN + ZWJ + WOMAN + ZWJ + GIRL;
+        assertThat(tokens(family + "!")).containsExactly("e:" + family, "|");
+
+        String toned = MAN + MEDIUM_SKIN + ZWJ + FIRE;
+        assertThat(tokens(toned + toned)).containsExactly("e:" + toned, "e:" + toned);
+
+        // The selector is dropped inside a sequence too
+        String heartOnFire = HEART + VS16 + ZWJ + FIRE;
+        assertThat(tokens(heartOnFire)).containsExactly("e:" + HEART + ZWJ + FIRE);
+
+        // A joiner with nothing to join is left out
+        assertThat(tokens(MAN + ZWJ)).containsExactly("e:" + MAN);
+        assertThat(tokens(MAN + ZWJ + "x")).containsExactly("e:" + MAN, "w:x");
+    }
+
+    @Test
+    void regionalIndicatorsPairIntoFlags() {
+        String india = "\uD83C\uDDEE\uD83C\uDDF3";
+        String germany = "\uD83C\uDDE9\uD83C\uDDEA";
+        assertThat(tokens(india + germany)).containsExactly("e:" + india, "e:" + germany);
+        // An odd indicator out stands alone
+        assertThat(tokens(india + "\uD83C\uDDEE")).containsExactly("e:" + india, "e:\uD83C\uDDEE");
+
+        String england = "\uD83C\uDFF4\uDB40\uDC67\uDB40\uDC62\uDB40\uDC65\uDB40\uDC6E\uDB40\uDC67\uDB40\uDC7F";
+        assertThat(tokens(england + "x")).containsExactly("e:" + england, "w:x");
+    }
+
+    @Test
+    void loneSurrogatesAreSkipped() {
+        assertThat(tokens("a\uD83Db")).containsExactly("w:a", "w:b");
+        assertThat(tokens("a\uDE02")).containsExactly("w:a");
+    }
+
+    @Test
+    void onlyPunctuationAndLineBreaksAreBoundaries() {
+        assertThat(tokens("one. two, three! four? five; six: seven\neight"))
+            .containsExactly("w:one", "|", "w:two", "|", "w:three", "|", "w:four", "|", "w:five", "|",
+                "w:six", "|", "w:seven", "|", "w:eight");
+        // Other token breaks keep the words on either side in one phrase
+        assertThat(tokens("don't stop-now 4 you (really) " + JOY + " ok"))
+            .doesNotContain("|");
+        assertThat(tokens("a\r\nb")).containsExactly("w:a", "|", "w:b");
+    }
+
+    @Test
+    void scannerIsReusable() {
+        TokenScanner scanner = new TokenScanner();
+        Recorder first = new Recorder();
+        scanner.scan("unfinished", first);
+        Recorder second = new Recorder();
+        scanner.scan("fresh " + HEART + VS16, second);
+        assertThat(first.tokens).containsExactly("w:unfinished");
+        assertThat(second.tokens).containsExactly("w:fresh", "e:" + HEART);
+    }
+
+    private static List<String> tokens(String text) {
+        Recorder recorder = new Recorder();
+        new TokenScanner().scan(text, recorder);
+        return recorder.tokens;
+    }
+
+    // Words as w:word, emojis as e:emoji, boundaries as |
+    private static final class Recorder implements TokenScanner.TokenSink {
+
+        final List<String> tokens = new ArrayList<>();
+
+        @Override
+        public void word(CharSequence word, int start, int end) {
+            tokens.add("w:" + word.subSequence(start, end));
+        }
+
+        @Override
+        public void emoji(CharSequence text, int start, int end) {
+            tokens.add("e:" + text.subSequence(start, end));
+        }
+
+        @Override
+        public void boundary() {
+            tokens.add("|");
+        }
+    }
+}